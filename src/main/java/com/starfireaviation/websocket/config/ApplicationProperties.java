@@ -16,11 +16,534 @@
 
 package com.starfireaviation.websocket.config;
 
+import com.starfireaviation.model.NotificationEventType;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 @Data
 @ConfigurationProperties("websocket")
 public class ApplicationProperties {
 
+    /**
+     * WebSocket transport.
+     */
+    private Transport transport = Transport.SERVLET;
+
+    /**
+     * Port of the WebSocket endpoint when using the Netty transport.
+     */
+    private int nettyPort = CommonConstants.DEFAULT_NETTY_PORT;
+
+    /**
+     * Path of the WebSocket endpoint.
+     */
+    private String endpoint = CommonConstants.DEFAULT_ENDPOINT;
+
+    /**
+     * Origin patterns allowed to open a WebSocket besides the application's own, for example
+     * <code>https://*.starfireaviation.com</code>. None by default.
+     */
+    private String[] allowedOriginPatterns = {};
+
+    /**
+     * Handshake authentication.
+     */
+    private Auth auth = new Auth();
+
+    /**
+     * Client message IDs remembered per user to suppress resent answers.
+     */
+    private int idempotencyWindow = CommonConstants.DEFAULT_IDEMPOTENCY_WINDOW;
+
+    /**
+     * Users whose client message IDs are remembered; the least recently active are forgotten first.
+     */
+    private int idempotencyUsers = CommonConstants.DEFAULT_IDEMPOTENCY_USERS;
+
+    /**
+     * Furthest a client message ID may be ahead of the highest one seen from the user; answers jumping
+     * further are rejected.
+     */
+    private long idempotencyMaxJump = CommonConstants.DEFAULT_IDEMPOTENCY_MAX_JUMP;
+
+    /**
+     * Delivery guarantees.
+     */
+    private Delivery delivery = new Delivery();
+
+    /**
+     * Heartbeats.
+     */
+    private Heartbeat heartbeat = new Heartbeat();
+
+    /**
+     * Per-session send buffers.
+     */
+    private SendBuffer sendBuffer = new SendBuffer();
+
+    /**
+     * Largest record accepted by bulk ingestion, in bytes.
+     */
+    private int ingestMaxRecordBytes = CommonConstants.DEFAULT_INGEST_MAX_RECORD_BYTES;
+
+    /**
+     * Per-message stage tracing.
+     */
+    private Tracing tracing = new Tracing();
+
+    /**
+     * Partitioning of queues by organization.
+     */
+    private Tenancy tenancy = new Tenancy();
+
+    /**
+     * Secondary indexes over queued messages.
+     */
+    private PendingIndex pendingIndex = new PendingIndex();
+
+    /**
+     * Micro-batching of outbound messages.
+     */
+    private Batching batching = new Batching();
+
+    /**
+     * Snapshot of the queues across restarts.
+     */
+    private Snapshot snapshot = new Snapshot();
+
+    /**
+     * Handshake admission control and load shedding.
+     */
+    private Admission admission = new Admission();
+
+    /**
+     * Inline payloads of notifications.
+     */
+    private Inline inline = new Inline();
+
+    /**
+     * WebSocket transports.
+     */
+    public enum Transport {
+
+        /**
+         * Servlet container (Tomcat) WebSocket support, on the application port.
+         */
+        SERVLET,
+
+        /**
+         * Reactor Netty, on its own port.
+         */
+        NETTY
+    }
+
+    /**
+     * What happens to the queue of a session reaped for missing heartbeats.
+     */
+    public enum ReapPolicy {
+
+        /**
+         * Keep the queue for the user's next session.
+         */
+        RETAIN,
+
+        /**
+         * Discard the queue.
+         */
+        DISCARD
+    }
+
+    /**
+     * What happens when a session's send buffer is full.
+     */
+    public enum SlowConsumerPolicy {
+
+        /**
+         * Drop the oldest of the lowest priority messages, or the new message when it is the least
+         * important.
+         */
+        DROP_LOWEST_PRIORITY,
+
+        /**
+         * Discard buffered messages the new message supersedes (identical repeats, such as display
+         * updates of the same thing), disconnecting if that does not make room.
+         */
+        COALESCE,
+
+        /**
+         * Disconnect the session and keep its undelivered messages queued for the next session.
+         */
+        DISCONNECT
+    }
+
+    /**
+     * Handshake authentication properties. Users are identified by the principal the container
+     * authenticated, or else by a token signed with the shared secret.
+     */
+    @Data
+    public static class Auth {
+
+        /**
+         * Secret handshake tokens are signed with; without one only container principals are accepted.
+         */
+        private String secret;
+    }
+
+    /**
+     * Delivery guarantee properties.
+     */
+    @Data
+    public static class Delivery {
+
+        /**
+         * Event types delivered at-least-once (acknowledged by the client, retransmitted otherwise).
+         * All other event types are fire-and-forget.
+         */
+        private Set<NotificationEventType> atLeastOnceTypes = new HashSet<>();
+
+        /**
+         * Time (ms) to wait for an acknowledgement before retransmitting.
+         */
+        private long ackTimeout = CommonConstants.DEFAULT_ACK_TIMEOUT;
+
+        /**
+         * Retransmissions before the session is closed and its messages requeued.
+         */
+        private int maxRetransmits = CommonConstants.DEFAULT_MAX_RETRANSMITS;
+
+        /**
+         * Max unacknowledged messages per session.
+         */
+        private int inFlightWindow = CommonConstants.DEFAULT_IN_FLIGHT_WINDOW;
+
+        /**
+         * Retransmission timer wheel tick (ms).
+         */
+        private long timerTick = CommonConstants.DEFAULT_TIMER_TICK;
+
+        /**
+         * Retransmission timer wheel buckets.
+         */
+        private int timerWheelSize = CommonConstants.DEFAULT_TIMER_WHEEL_SIZE;
+    }
+
+    /**
+     * Heartbeat properties.
+     */
+    @Data
+    public static class Heartbeat {
+
+        /**
+         * If sessions are pinged and reaped when silent.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Time (ms) between pings of a session.
+         */
+        private long interval = CommonConstants.DEFAULT_HEARTBEAT_INTERVAL;
+
+        /**
+         * Time (ms) without any inbound frame, including pongs, after which a session is reaped.
+         */
+        private long timeout = CommonConstants.DEFAULT_HEARTBEAT_TIMEOUT;
+
+        /**
+         * Buckets sessions are spread over; one bucket is swept every interval / buckets ms.
+         */
+        private int buckets = CommonConstants.DEFAULT_HEARTBEAT_BUCKETS;
+
+        /**
+         * What happens to the queue of a reaped session.
+         */
+        private ReapPolicy reapPolicy = ReapPolicy.RETAIN;
+    }
+
+    /**
+     * Send buffer properties. Tracked (at-least-once) messages are never dropped or coalesced.
+     */
+    @Data
+    public static class SendBuffer {
+
+        /**
+         * Max bytes buffered per session, including the frame being written.
+         */
+        private long maxBytes = CommonConstants.DEFAULT_SEND_BUFFER_MAX_BYTES;
+
+        /**
+         * Max messages buffered per session.
+         */
+        private int maxMessages = CommonConstants.DEFAULT_SEND_BUFFER_MAX_MESSAGES;
+
+        /**
+         * Max time (ms) a single write may take before the session is disconnected, whatever the policy.
+         */
+        private long sendDeadline = CommonConstants.DEFAULT_SEND_DEADLINE;
+
+        /**
+         * What happens when the buffer is full.
+         */
+        private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+
+        /**
+         * Size of the pooled direct buffers messages are encoded into; larger messages get a buffer
+         * of their own.
+         */
+        private int encodeBufferSize = CommonConstants.DEFAULT_ENCODE_BUFFER_SIZE;
+
+        /**
+         * Max encode buffers kept for reuse, shared by all sessions.
+         */
+        private int encodeBufferPoolSize = CommonConstants.DEFAULT_ENCODE_BUFFER_POOL_SIZE;
+    }
+
+    /**
+     * Tracing properties.
+     */
+    @Data
+    public static class Tracing {
+
+        /**
+         * One in this many messages is traced; 0 disables tracing.
+         */
+        private int sampleRate;
+
+        /**
+         * Completed traces kept for the admin endpoint.
+         */
+        private int ringSize = CommonConstants.DEFAULT_TRACE_RING_SIZE;
+
+        /**
+         * Traces slower than this (ms) are returned by default.
+         */
+        private long slowThreshold = CommonConstants.DEFAULT_TRACE_SLOW_THRESHOLD;
+    }
+
+    /**
+     * Tenancy properties. Each organization's queues are drained by its own workers under its own rate
+     * limit, both scaled by the organization's weight.
+     */
+    @Data
+    public static class Tenancy {
+
+        /**
+         * If organizations have drain workers. Otherwise, messages are delivered on the sending thread
+         * and rate limits do not apply.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Drain workers per unit of weight.
+         */
+        private int drainWorkers = CommonConstants.DEFAULT_TENANT_DRAIN_WORKERS;
+
+        /**
+         * Messages per second delivered per unit of weight, 0 for no limit.
+         */
+        private long rateLimit;
+
+        /**
+         * Weight by organization; organizations not listed have a weight of 1.
+         */
+        private Map<String, Integer> weights = new HashMap<>();
+    }
+
+    /**
+     * Secondary indexes over queued messages, by NotificationEventType, by referenced entity ID and by
+     * age, used by the pending messages endpoint.
+     */
+    @Data
+    public static class PendingIndex {
+
+        /**
+         * If queued messages are indexed. Otherwise, queries scan every queue. Off by default: indexing
+         * adds hundreds of nanoseconds to every enqueue and drain for the sake of an admin endpoint.
+         */
+        private boolean enabled;
+
+        /**
+         * Width (ms) of the age buckets.
+         */
+        private long ageBucket = CommonConstants.DEFAULT_PENDING_AGE_BUCKET;
+    }
+
+    /**
+     * Micro-batching: messages for a session which opted in are packed into JSON array frames. A session
+     * waits up to its flush window for more messages before writing; the window grows while flushes
+     * pack several messages and shrinks to nothing when they do not, so idle latency is unaffected.
+     */
+    @Data
+    public static class Batching {
+
+        /**
+         * If sessions may opt in with the <code>batch=true</code> handshake parameter.
+         */
+        private boolean enabled;
+
+        /**
+         * Longest flush window (ms).
+         */
+        private long maxWindow = CommonConstants.DEFAULT_BATCH_MAX_WINDOW;
+
+        /**
+         * Max bytes of a batch frame; a batch is flushed early once this much is buffered.
+         */
+        private int maxBytes = CommonConstants.DEFAULT_BATCH_MAX_BYTES;
+
+        /**
+         * Max messages in a batch frame; a batch is flushed early once this many are buffered.
+         */
+        private int maxMessages = CommonConstants.DEFAULT_BATCH_MAX_MESSAGES;
+
+        /**
+         * Flush timer tick (ms).
+         */
+        private long timerTick = CommonConstants.DEFAULT_BATCH_TIMER_TICK;
+    }
+
+    /**
+     * Snapshot of the queues: written on graceful shutdown, after the WebSocket transports have closed
+     * and requeued what their sessions held, and restored on startup before they accept connections.
+     */
+    @Data
+    public static class Snapshot {
+
+        /**
+         * If queues are snapshotted and restored.
+         */
+        private boolean enabled;
+
+        /**
+         * Directory of the snapshot files; must outlive the process (a persistent volume in Kubernetes).
+         */
+        private String directory = CommonConstants.DEFAULT_SNAPSHOT_DIRECTORY;
+
+        /**
+         * Files the snapshot is split into by user ID, written and restored in parallel; 0 for one per
+         * available processor.
+         */
+        private int partitions;
+
+        /**
+         * Owner of the snapshot files, so that replicas sharing the directory never touch each other's;
+         * the host name (the pod name in Kubernetes) when not set.
+         */
+        private String owner;
+    }
+
+    /**
+     * Handshake admission control. Heap occupancy, queue depth and drain lag are sampled and each is
+     * compared with its limit. When any reaches the elevated ratio of its limit, handshakes are paced
+     * and display updates coalesced; when any reaches its limit, handshakes are mostly rejected with a
+     * retry-after hint, queued display updates are compacted and new ones dropped.
+     */
+    @Data
+    public static class Admission {
+
+        /**
+         * If handshakes are subject to admission control.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Time (ms) between samples of the signals.
+         */
+        private long sampleInterval = CommonConstants.DEFAULT_ADMISSION_SAMPLE_INTERVAL;
+
+        /**
+         * Limit of the old generation's (or heap's) occupancy, 0 to 1.
+         */
+        private double maxHeapOccupancy = CommonConstants.DEFAULT_ADMISSION_MAX_HEAP_OCCUPANCY;
+
+        /**
+         * Limit of the messages queued across all organizations.
+         */
+        private long maxQueuedMessages = CommonConstants.DEFAULT_ADMISSION_MAX_QUEUED_MESSAGES;
+
+        /**
+         * Limit of the time (ms) a user may wait for a drain worker.
+         */
+        private long maxDrainLag = CommonConstants.DEFAULT_ADMISSION_MAX_DRAIN_LAG;
+
+        /**
+         * Fraction of a limit at which pressure is elevated.
+         */
+        private double elevatedRatio = CommonConstants.DEFAULT_ADMISSION_ELEVATED_RATIO;
+
+        /**
+         * Handshakes admitted per second while pressure is elevated (0 for no limit).
+         */
+        private long elevatedHandshakeRate = CommonConstants.DEFAULT_ADMISSION_ELEVATED_HANDSHAKE_RATE;
+
+        /**
+         * Handshakes admitted per second while pressure is critical, so that the users whose queues hold
+         * the backlog can still come back for it (0 rejects every handshake).
+         */
+        private long criticalHandshakeRate = CommonConstants.DEFAULT_ADMISSION_CRITICAL_HANDSHAKE_RATE;
+
+        /**
+         * Base retry-after hint (s) of a rejected handshake; up to as much again is added at random so
+         * that rejected clients do not all come back at once.
+         */
+        private int retryAfter = CommonConstants.DEFAULT_ADMISSION_RETRY_AFTER;
+    }
+
+    /**
+     * Inline payloads. Notifications about a question, quiz or event carry the entity itself, rendered
+     * once into a shared cache, so that recipients need not fetch it.
+     */
+    @Data
+    public static class Inline {
+
+        /**
+         * If payloads are embedded.
+         */
+        private boolean enabled;
+
+        /**
+         * URL of each service's entities, by service, with <code>{id}</code> standing for the entity ID,
+         * for example <code>QUESTION: https://api/questions/{id}</code>. Entities of services not listed
+         * are not embedded.
+         */
+        private Map<String, String> urls = new HashMap<>();
+
+        /**
+         * Time (ms) allowed to fetch an entity.
+         */
+        private long timeout = CommonConstants.DEFAULT_INLINE_TIMEOUT;
+
+        /**
+         * Most bytes of rendered content cached.
+         */
+        private long maxBytes = CommonConstants.DEFAULT_INLINE_MAX_BYTES;
+
+        /**
+         * Largest rendered entity (bytes) embedded; larger ones are left for the client to fetch.
+         */
+        private int maxEntryBytes = CommonConstants.DEFAULT_INLINE_MAX_ENTRY_BYTES;
+
+        /**
+         * Time (ms) rendered content is reused without an invalidation, bounding how stale a payload can
+         * be when one is missed.
+         */
+        private long maxAge = CommonConstants.DEFAULT_INLINE_MAX_AGE;
+
+        /**
+         * Threads fetching and rendering entities in the background, so that senders never wait on a
+         * fetch.
+         */
+        private int renderThreads = CommonConstants.DEFAULT_INLINE_RENDER_THREADS;
+
+        /**
+         * Time (ms) a message about to be delivered waits for its entity's render under way, so that the
+         * recipients of a message sent to many get its payload; 0 not to wait.
+         */
+        private long renderWait = CommonConstants.DEFAULT_INLINE_RENDER_WAIT;
+    }
+
 }
@@ -27,4 +27,266 @@ public class CommonConstants {
      * Maximium Queue Size.
      */
     public static final int MAX_QUEUE_SIZE = 10000;
+
+    /**
+     * Locks guarding which shard holds each user's queue.
+     */
+    public static final int USER_LOCK_STRIPES = 256;
+
+    /**
+     * WebSocket close code of a normal closure.
+     */
+    public static final int CLOSE_NORMAL = 1000;
+
+    /**
+     * WebSocket close code of a session closed because it stopped delivering reliably.
+     */
+    public static final int CLOSE_SESSION_NOT_RELIABLE = 4500;
+
+    /**
+     * Default path of the WebSocket endpoint.
+     */
+    public static final String DEFAULT_ENDPOINT = "/ws";
+
+    /**
+     * Default max time (ms) a single WebSocket write may take.
+     */
+    public static final long DEFAULT_SEND_DEADLINE = 10000;
+
+    /**
+     * Default size of the pooled direct buffers messages are encoded into.
+     */
+    public static final int DEFAULT_ENCODE_BUFFER_SIZE = 1024;
+
+    /**
+     * Default max encode buffers kept for reuse.
+     */
+    public static final int DEFAULT_ENCODE_BUFFER_POOL_SIZE = 4096;
+
+    /**
+     * Default max bytes buffered per WebSocket session.
+     */
+    public static final long DEFAULT_SEND_BUFFER_MAX_BYTES = 512 * 1024;
+
+    /**
+     * Default max messages buffered per WebSocket session.
+     */
+    public static final int DEFAULT_SEND_BUFFER_MAX_MESSAGES = 1000;
+
+    /**
+     * Default time (ms) to wait for an acknowledgement before retransmitting.
+     */
+    public static final long DEFAULT_ACK_TIMEOUT = 5000;
+
+    /**
+     * Default number of retransmissions before a session is considered dead.
+     */
+    public static final int DEFAULT_MAX_RETRANSMITS = 5;
+
+    /**
+     * Default max unacknowledged messages per session.
+     */
+    public static final int DEFAULT_IN_FLIGHT_WINDOW = 64;
+
+    /**
+     * Default timer wheel tick (ms).
+     */
+    public static final long DEFAULT_TIMER_TICK = 100;
+
+    /**
+     * Default number of timer wheel buckets.
+     */
+    public static final int DEFAULT_TIMER_WHEEL_SIZE = 512;
+
+    /**
+     * Default client message IDs remembered per user.
+     */
+    public static final int DEFAULT_IDEMPOTENCY_WINDOW = 1024;
+
+    /**
+     * Default users whose client message IDs are remembered.
+     */
+    public static final int DEFAULT_IDEMPOTENCY_USERS = 100_000;
+
+    /**
+     * Default furthest a client message ID may be ahead of the highest seen.
+     */
+    public static final long DEFAULT_IDEMPOTENCY_MAX_JUMP = 65_536;
+
+    /**
+     * Default port of the Netty WebSocket transport.
+     */
+    public static final int DEFAULT_NETTY_PORT = 8081;
+
+    /**
+     * Default time (ms) between pings of a session.
+     */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 30000;
+
+    /**
+     * Default time (ms) without inbound frames after which a session is reaped.
+     */
+    public static final long DEFAULT_HEARTBEAT_TIMEOUT = 75000;
+
+    /**
+     * Default number of heartbeat buckets.
+     */
+    public static final int DEFAULT_HEARTBEAT_BUCKETS = 30;
+
+    /**
+     * Default largest record accepted by bulk ingestion, in bytes.
+     */
+    public static final int DEFAULT_INGEST_MAX_RECORD_BYTES = 64 * 1024;
+
+    /**
+     * Default completed traces kept.
+     */
+    public static final int DEFAULT_TRACE_RING_SIZE = 1024;
+
+    /**
+     * Default threshold (ms) above which a trace is reported as slow.
+     */
+    public static final long DEFAULT_TRACE_SLOW_THRESHOLD = 100;
+
+    /**
+     * Default max traces returned by the admin endpoint.
+     */
+    public static final int DEFAULT_TRACE_LIMIT = 100;
+
+    /**
+     * Default drain workers per unit of organization weight.
+     */
+    public static final int DEFAULT_TENANT_DRAIN_WORKERS = 1;
+
+    /**
+     * Default width (ms) of the age buckets pending messages are indexed by.
+     */
+    public static final long DEFAULT_PENDING_AGE_BUCKET = 1000;
+
+    /**
+     * Default max users listed by the pending messages endpoint.
+     */
+    public static final int DEFAULT_PENDING_LIMIT = 100;
+
+    /**
+     * Default longest time (ms) a message may wait to be batched with others.
+     */
+    public static final long DEFAULT_BATCH_MAX_WINDOW = 5;
+
+    /**
+     * Default max bytes of a batch frame.
+     */
+    public static final int DEFAULT_BATCH_MAX_BYTES = 16384;
+
+    /**
+     * Default max messages in a batch frame.
+     */
+    public static final int DEFAULT_BATCH_MAX_MESSAGES = 64;
+
+    /**
+     * Default batch flush timer tick (ms).
+     */
+    public static final long DEFAULT_BATCH_TIMER_TICK = 1;
+
+    /**
+     * Default max batch buffers kept for reuse.
+     */
+    public static final int DEFAULT_BATCH_BUFFER_POOL_SIZE = 256;
+
+    /**
+     * Buckets of the batch flush timer wheel.
+     */
+    public static final int BATCH_TIMER_WHEEL_SIZE = 64;
+
+    /**
+     * Default directory of the queue snapshot.
+     */
+    public static final String DEFAULT_SNAPSHOT_DIRECTORY = "/var/lib/websocket";
+
+    /**
+     * Read and write buffer size of queue snapshot files.
+     */
+    public static final int SNAPSHOT_BUFFER_SIZE = 65536;
+
+    /**
+     * Lifecycle phase of the queue snapshot: started before, and stopped after, the web server and the
+     * Netty transport.
+     */
+    public static final int SNAPSHOT_LIFECYCLE_PHASE = Integer.MAX_VALUE - 1024;
+
+    /**
+     * Default time (ms) between samples of the admission signals.
+     */
+    public static final long DEFAULT_ADMISSION_SAMPLE_INTERVAL = 250;
+
+    /**
+     * Default limit of heap occupancy.
+     */
+    public static final double DEFAULT_ADMISSION_MAX_HEAP_OCCUPANCY = 0.85;
+
+    /**
+     * Default limit of messages queued across all organizations.
+     */
+    public static final long DEFAULT_ADMISSION_MAX_QUEUED_MESSAGES = 1_000_000;
+
+    /**
+     * Default limit of drain lag (ms).
+     */
+    public static final long DEFAULT_ADMISSION_MAX_DRAIN_LAG = 5000;
+
+    /**
+     * Default fraction of a limit at which pressure is elevated.
+     */
+    public static final double DEFAULT_ADMISSION_ELEVATED_RATIO = 0.8;
+
+    /**
+     * Default handshakes admitted per second under elevated pressure.
+     */
+    public static final long DEFAULT_ADMISSION_ELEVATED_HANDSHAKE_RATE = 200;
+
+    /**
+     * Default handshakes admitted per second under critical pressure.
+     */
+    public static final long DEFAULT_ADMISSION_CRITICAL_HANDSHAKE_RATE = 10;
+
+    /**
+     * Default base retry-after hint (s) of a rejected handshake.
+     */
+    public static final int DEFAULT_ADMISSION_RETRY_AFTER = 5;
+
+    /**
+     * Default time (ms) allowed to fetch an entity to embed.
+     */
+    public static final long DEFAULT_INLINE_TIMEOUT = 2000;
+
+    /**
+     * Default most bytes of rendered content cached.
+     */
+    public static final long DEFAULT_INLINE_MAX_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Default largest rendered entity (bytes) embedded.
+     */
+    public static final int DEFAULT_INLINE_MAX_ENTRY_BYTES = 32 * 1024;
+
+    /**
+     * Default time (ms) rendered content is reused without an invalidation.
+     */
+    public static final long DEFAULT_INLINE_MAX_AGE = 60_000;
+
+    /**
+     * Default threads fetching and rendering entities to embed.
+     */
+    public static final int DEFAULT_INLINE_RENDER_THREADS = 4;
+
+    /**
+     * Default time (ms) a message about to be delivered waits for its entity's render under way.
+     */
+    public static final long DEFAULT_INLINE_RENDER_WAIT = 100;
+
+    /**
+     * Fewest users whose client message IDs each idempotency stripe remembers, so that small limits keep
+     * one exact least recently used order.
+     */
+    public static final int MIN_IDEMPOTENCY_USERS_PER_STRIPE = 64;
 }
@@ -0,0 +1,41 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Exits the application as soon as it is ready. Used by the image build to run the
+ * application once and record the classes loaded during startup for the CDS archive.
+ */
+@Slf4j
+public class ExitOnReadyListener implements ApplicationListener<ApplicationReadyEvent> {
+
+    /**
+     * Exits once the application is ready.
+     *
+     * @param event ApplicationReadyEvent
+     */
+    @Override
+    public void onApplicationEvent(final ApplicationReadyEvent event) {
+        log.info("Application ready after {}, exiting (websocket.exit-on-ready=true)", event.getTimeTaken());
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
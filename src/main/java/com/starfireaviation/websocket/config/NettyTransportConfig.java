@@ -0,0 +1,56 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.config;
+
+import com.starfireaviation.websocket.handler.HandshakeAuthenticator;
+import com.starfireaviation.websocket.handler.InboundFrameDispatcher;
+import com.starfireaviation.websocket.handler.NettyNotificationServer;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.DeliveryService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+@Configuration
+@ConditionalOnProperty(prefix = "websocket", name = "transport", havingValue = "netty")
+public class NettyTransportConfig {
+
+    /**
+     * NettyNotificationServer.
+     *
+     * @param applicationProperties ApplicationProperties
+     * @param deliveryService DeliveryService
+     * @param inboundFrameDispatcher InboundFrameDispatcher
+     * @param admissionController AdmissionController
+     * @param handshakeAuthenticator HandshakeAuthenticator
+     * @return NettyNotificationServer
+     */
+    @Bean
+    @Lazy(false)
+    public NettyNotificationServer nettyNotificationServer(final ApplicationProperties applicationProperties,
+                                                           final DeliveryService deliveryService,
+                                                           final InboundFrameDispatcher inboundFrameDispatcher,
+                                                           final AdmissionController admissionController,
+                                                           final HandshakeAuthenticator handshakeAuthenticator) {
+        final NettyNotificationServer server = new NettyNotificationServer(deliveryService, inboundFrameDispatcher,
+                admissionController, handshakeAuthenticator, applicationProperties.getEndpoint(),
+                applicationProperties.getNettyPort());
+        server.setAllowedOriginPatterns(applicationProperties.getAllowedOriginPatterns());
+        return server;
+    }
+}
@@ -16,11 +16,33 @@
 
 package com.starfireaviation.websocket.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.websocket.handler.HandshakeAuthenticator;
+import com.starfireaviation.websocket.handler.InboundFrameDispatcher;
+import com.starfireaviation.websocket.handler.TokenHandshakeAuthenticator;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.ContentResolver;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.HttpContentResolver;
+import com.starfireaviation.websocket.service.IngestService;
+import com.starfireaviation.websocket.service.MessageResolver;
 import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTracer;
+import com.starfireaviation.websocket.service.QueueSnapshotService;
+import com.starfireaviation.websocket.service.RenderedContentCache;
+import com.starfireaviation.websocket.service.ResponseService;
+import com.starfireaviation.websocket.util.HandshakeToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
+import java.time.Clock;
+
+@Slf4j
 @Configuration
 @EnableConfigurationProperties({
         ApplicationProperties.class,
@@ -28,13 +50,174 @@ import org.springframework.context.annotation.Configuration;
 public class ServiceConfig {
 
     /**
-     * MessageService.
+     * MessageTracer, sampling messages for stage tracing.
+     *
+     * @param applicationProperties ApplicationProperties
+     * @return MessageTracer
+     */
+    @Bean
+    public MessageTracer messageTracer(final ApplicationProperties applicationProperties) {
+        return new MessageTracer(applicationProperties.getTracing().getSampleRate(),
+                applicationProperties.getTracing().getRingSize());
+    }
+
+    /**
+     * MessageService. Always created eagerly, even when lazy initialization is enabled. Messages are
+     * looked up with the application's MessageResolver; without one, templated sends are rejected.
      *
+     * @param messageTracer MessageTracer
+     * @param messageResolver MessageResolver, when the application provides one
+     * @param applicationProperties ApplicationProperties
      * @return MessageService
      */
     @Bean
-    public MessageService messageService() {
-        return new MessageService();
+    @Lazy(false)
+    public MessageService messageService(final MessageTracer messageTracer,
+                                         final ObjectProvider<MessageResolver> messageResolver,
+                                         final ApplicationProperties applicationProperties) {
+        final MessageService messageService = new MessageService(applicationProperties.getTenancy(),
+                applicationProperties.getPendingIndex());
+        messageService.setMessageTracer(messageTracer);
+        messageResolver.ifAvailable(messageService::setMessageResolver);
+        return messageService;
+    }
+
+    /**
+     * DeliveryService, notified of every message queued by the MessageService. Also owns the heartbeat
+     * sweeper.
+     *
+     * @param messageService MessageService
+     * @param applicationProperties ApplicationProperties
+     * @return DeliveryService
+     */
+    @Bean
+    @Lazy(false)
+    public DeliveryService deliveryService(final MessageService messageService,
+                                           final ApplicationProperties applicationProperties) {
+        final DeliveryService deliveryService =
+                new DeliveryService(messageService, applicationProperties.getDelivery(),
+                        applicationProperties.getHeartbeat(), applicationProperties.getSendBuffer(),
+                        applicationProperties.getBatching());
+        messageService.setPendingMessageListener(deliveryService);
+        return deliveryService;
+    }
+
+    /**
+     * HandshakeAuthenticator, identifying the user of each handshake by principal or signed token.
+     *
+     * @param applicationProperties ApplicationProperties
+     * @return HandshakeAuthenticator
+     */
+    @Bean
+    public HandshakeAuthenticator handshakeAuthenticator(final ApplicationProperties applicationProperties) {
+        final String secret = applicationProperties.getAuth().getSecret();
+        if (secret == null || secret.isEmpty()) {
+            log.warn("No websocket.auth.secret is configured; only container principals can connect");
+            return new TokenHandshakeAuthenticator(null, Clock.systemUTC());
+        }
+        return new TokenHandshakeAuthenticator(new HandshakeToken(secret), Clock.systemUTC());
+    }
+
+    /**
+     * AdmissionController, consulted by the WebSocket transports before each handshake.
+     *
+     * @param messageService MessageService
+     * @param applicationProperties ApplicationProperties
+     * @return AdmissionController
+     */
+    @Bean
+    public AdmissionController admissionController(final MessageService messageService,
+                                                   final ApplicationProperties applicationProperties) {
+        return new AdmissionController(applicationProperties.getAdmission(), messageService);
+    }
+
+    /**
+     * RenderedContentCache, embedding entities in the messages about them. Entities are fetched by the
+     * application's ContentResolver, or over HTTP from the configured URLs when there is none.
+     *
+     * @param messageService MessageService
+     * @param contentResolver ContentResolver, when the application provides one
+     * @param objectMapper ObjectMapper
+     * @param applicationProperties ApplicationProperties
+     * @return RenderedContentCache
+     */
+    @Bean
+    @Lazy(false)
+    @ConditionalOnProperty(prefix = "websocket.inline", name = "enabled", havingValue = "true")
+    public RenderedContentCache renderedContentCache(final MessageService messageService,
+                                                     final ObjectProvider<ContentResolver> contentResolver,
+                                                     final ObjectMapper objectMapper,
+                                                     final ApplicationProperties applicationProperties) {
+        final ApplicationProperties.Inline inline = applicationProperties.getInline();
+        final RenderedContentCache renderedContentCache = new RenderedContentCache(
+                contentResolver.getIfAvailable(() -> new HttpContentResolver(inline.getUrls(), inline.getTimeout(),
+                        objectMapper)), objectMapper, inline);
+        messageService.setContentCache(renderedContentCache);
+        return renderedContentCache;
+    }
+
+    /**
+     * ResponseService.
+     *
+     * @param applicationProperties ApplicationProperties
+     * @return ResponseService
+     */
+    @Bean
+    public ResponseService responseService(final ApplicationProperties applicationProperties) {
+        return new ResponseService(applicationProperties.getIdempotencyWindow(),
+                applicationProperties.getIdempotencyUsers(), applicationProperties.getIdempotencyMaxJump());
+    }
+
+    /**
+     * IngestService.
+     *
+     * @param messageService MessageService
+     * @param messageTracer MessageTracer
+     * @param applicationProperties ApplicationProperties
+     * @return IngestService
+     */
+    @Bean
+    public IngestService ingestService(final MessageService messageService, final MessageTracer messageTracer,
+                                       final ApplicationProperties applicationProperties) {
+        return new IngestService(messageService, applicationProperties.getIngestMaxRecordBytes(), messageTracer);
+    }
+
+    /**
+     * InboundFrameDispatcher, shared by the WebSocket transports.
+     *
+     * @param deliveryService DeliveryService
+     * @param responseService ResponseService
+     * @return InboundFrameDispatcher
+     */
+    @Bean
+    public InboundFrameDispatcher inboundFrameDispatcher(final DeliveryService deliveryService,
+                                                         final ResponseService responseService) {
+        return new InboundFrameDispatcher(deliveryService, responseService);
+    }
+
+    /**
+     * QueueSnapshotService, carrying the queues across restarts.
+     *
+     * @param messageService MessageService
+     * @param applicationProperties ApplicationProperties
+     * @return QueueSnapshotService
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "websocket.snapshot", name = "enabled", havingValue = "true")
+    public QueueSnapshotService queueSnapshotService(final MessageService messageService,
+                                                     final ApplicationProperties applicationProperties) {
+        return new QueueSnapshotService(messageService, applicationProperties.getSnapshot());
+    }
+
+    /**
+     * ExitOnReadyListener, used for the CDS training run.
+     *
+     * @return ExitOnReadyListener
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "websocket", name = "exit-on-ready", havingValue = "true")
+    public ExitOnReadyListener exitOnReadyListener() {
+        return new ExitOnReadyListener();
     }
 
 }
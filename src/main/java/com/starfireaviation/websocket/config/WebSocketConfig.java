@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.config;
+
+import com.starfireaviation.websocket.handler.HandshakeAuthenticator;
+import com.starfireaviation.websocket.handler.InboundFrameDispatcher;
+import com.starfireaviation.websocket.handler.NotificationWebSocketHandler;
+import com.starfireaviation.websocket.handler.UserHandshakeInterceptor;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.DeliveryService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+@ConditionalOnProperty(prefix = "websocket", name = "transport", havingValue = "servlet", matchIfMissing = true)
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    /**
+     * ApplicationProperties.
+     */
+    private final ApplicationProperties applicationProperties;
+
+    /**
+     * NotificationWebSocketHandler.
+     */
+    private final NotificationWebSocketHandler notificationWebSocketHandler;
+
+    /**
+     * AdmissionController.
+     */
+    private final AdmissionController admissionController;
+
+    /**
+     * HandshakeAuthenticator.
+     */
+    private final HandshakeAuthenticator handshakeAuthenticator;
+
+    /**
+     * Initializes an instance of <code>WebSocketConfig</code>.
+     *
+     * @param properties ApplicationProperties
+     * @param handler NotificationWebSocketHandler
+     * @param controller AdmissionController
+     * @param authenticator HandshakeAuthenticator
+     */
+    public WebSocketConfig(final ApplicationProperties properties, final NotificationWebSocketHandler handler,
+                           final AdmissionController controller, final HandshakeAuthenticator authenticator) {
+        applicationProperties = properties;
+        notificationWebSocketHandler = handler;
+        admissionController = controller;
+        handshakeAuthenticator = authenticator;
+    }
+
+    /**
+     * NotificationWebSocketHandler.
+     *
+     * @param properties ApplicationProperties
+     * @param deliveryService DeliveryService
+     * @param inboundFrameDispatcher InboundFrameDispatcher
+     * @return NotificationWebSocketHandler
+     */
+    @Bean
+    @Lazy(false)
+    public static NotificationWebSocketHandler notificationWebSocketHandler(
+            final ApplicationProperties properties, final DeliveryService deliveryService,
+            final InboundFrameDispatcher inboundFrameDispatcher) {
+        return new NotificationWebSocketHandler(deliveryService, inboundFrameDispatcher,
+                properties.getSendBuffer().getSendDeadline());
+    }
+
+    /**
+     * Registers the notification WebSocket endpoint.
+     *
+     * @param registry WebSocketHandlerRegistry
+     */
+    @Override
+    public void registerWebSocketHandlers(final WebSocketHandlerRegistry registry) {
+        registry.addHandler(notificationWebSocketHandler, applicationProperties.getEndpoint())
+                .addInterceptors(new UserHandshakeInterceptor(admissionController, handshakeAuthenticator))
+                .setAllowedOriginPatterns(applicationProperties.getAllowedOriginPatterns());
+    }
+}
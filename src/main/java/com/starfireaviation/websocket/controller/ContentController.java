@@ -0,0 +1,72 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.controller;
+
+import com.starfireaviation.websocket.model.ContentCacheStats;
+import com.starfireaviation.websocket.service.RenderedContentCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/content")
+@ConditionalOnProperty(prefix = "websocket.inline", name = "enabled", havingValue = "true")
+public class ContentController {
+
+    /**
+     * RenderedContentCache.
+     */
+    private final RenderedContentCache renderedContentCache;
+
+    /**
+     * Initializes an instance of <code>ContentController</code>.
+     *
+     * @param cache RenderedContentCache
+     */
+    public ContentController(final RenderedContentCache cache) {
+        renderedContentCache = cache;
+    }
+
+    /**
+     * Rendered content cache counters.
+     *
+     * @return ContentCacheStats
+     */
+    @GetMapping
+    public ContentCacheStats stats() {
+        return renderedContentCache.getStats();
+    }
+
+    /**
+     * Invalidates an entity's rendered content, for example after the entity was edited.
+     *
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return 204, or 404 when the entity was not cached
+     */
+    @DeleteMapping("/{service}/{entityId}")
+    public ResponseEntity<Void> invalidate(@PathVariable final String service, @PathVariable final String entityId) {
+        if (renderedContentCache.invalidate(service, entityId)) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+}
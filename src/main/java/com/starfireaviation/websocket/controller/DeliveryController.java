@@ -0,0 +1,113 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.controller;
+
+import com.starfireaviation.websocket.model.AdmissionStats;
+import com.starfireaviation.websocket.model.DeliveryStats;
+import com.starfireaviation.websocket.model.TenantStats;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+@RestController
+@RequestMapping("/delivery")
+public class DeliveryController {
+
+    /**
+     * DeliveryService.
+     */
+    private final DeliveryService deliveryService;
+
+    /**
+     * MessageService.
+     */
+    private final MessageService messageService;
+
+    /**
+     * AdmissionController.
+     */
+    private final AdmissionController admissionController;
+
+    /**
+     * Initializes an instance of <code>DeliveryController</code>.
+     *
+     * @param delivery DeliveryService
+     * @param messages MessageService
+     * @param admission AdmissionController
+     */
+    public DeliveryController(final DeliveryService delivery, final MessageService messages,
+                              final AdmissionController admission) {
+        deliveryService = delivery;
+        messageService = messages;
+        admissionController = admission;
+    }
+
+    /**
+     * Delivery counters, including how many consumers are currently slow.
+     *
+     * @return DeliveryStats
+     */
+    @GetMapping("/stats")
+    public DeliveryStats stats() {
+        return deliveryService.getStats();
+    }
+
+    /**
+     * Queue and drain counters of each organization.
+     *
+     * @return TenantStats, by organization
+     */
+    @GetMapping("/tenants")
+    public List<TenantStats> tenants() {
+        return messageService.getTenantStats();
+    }
+
+    /**
+     * Admission signals and counters, including the current pressure.
+     *
+     * @return AdmissionStats
+     */
+    @GetMapping("/admission")
+    public AdmissionStats admission() {
+        return admissionController.getStats();
+    }
+
+    /**
+     * Users with a live session on this node, as a serialized CompressedBitmap for other replicas to
+     * read with <code>CompressedBitmap.readFrom</code>.
+     *
+     * @return serialized bitmap
+     * @throws IOException never, as it is written to memory
+     */
+    @GetMapping(path = "/presence", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public byte[] presence() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            deliveryService.getPresence().snapshot().writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.controller;
+
+import com.starfireaviation.websocket.model.IngestSummary;
+import com.starfireaviation.websocket.service.IngestService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@Slf4j
+@RestController
+@RequestMapping("/ingest")
+public class IngestController {
+
+    /**
+     * NDJSON media type.
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * IngestService.
+     */
+    private final IngestService ingestService;
+
+    /**
+     * Initializes an instance of <code>IngestController</code>.
+     *
+     * @param service IngestService
+     */
+    public IngestController(final IngestService service) {
+        ingestService = service;
+    }
+
+    /**
+     * Ingests a stream of newline-delimited JSON records, answering with one NDJSON status line per
+     * record as it is processed.
+     *
+     * @param request HttpServletRequest
+     * @param response HttpServletResponse
+     * @throws IOException when the body cannot be read or the statuses written
+     */
+    @PostMapping(consumes = NDJSON)
+    public void ingestNdjson(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        response.setContentType(NDJSON);
+        final IngestSummary summary = ingestService.ingestNdjson(request.getInputStream(), response.getOutputStream());
+        log.info("Ingested NDJSON: {}", summary);
+    }
+
+    /**
+     * Ingests a stream of length-prefixed binary records, answering with one NDJSON status line per
+     * record as it is processed.
+     *
+     * @param request HttpServletRequest
+     * @param response HttpServletResponse
+     * @throws IOException when the body cannot be read or the statuses written
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void ingestBinary(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        response.setContentType(NDJSON);
+        final IngestSummary summary = ingestService.ingestBinary(request.getInputStream(), response.getOutputStream());
+        log.info("Ingested binary: {}", summary);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.controller;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.model.PendingQuery;
+import com.starfireaviation.websocket.model.PendingSummary;
+import com.starfireaviation.websocket.service.MessageService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/admin/pending")
+public class PendingController {
+
+    /**
+     * MessageService.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Initializes an instance of <code>PendingController</code>.
+     *
+     * @param messages MessageService
+     */
+    public PendingController(final MessageService messages) {
+        messageService = messages;
+    }
+
+    /**
+     * Queued messages matching every given filter, answered from the pending indexes.
+     *
+     * @param eventType NotificationEventType
+     * @param service Service
+     * @param entityId referenced entity ID (the first parameter)
+     * @param minAgeMillis minimum time (ms) since the message was created
+     * @param limit max user IDs listed
+     * @return PendingSummary
+     */
+    @GetMapping
+    public PendingSummary pending(@RequestParam(required = false) final NotificationEventType eventType,
+                                  @RequestParam(required = false) final String service,
+                                  @RequestParam(required = false) final String entityId,
+                                  @RequestParam(defaultValue = "0") final long minAgeMillis,
+                                  @RequestParam(defaultValue = "" + CommonConstants.DEFAULT_PENDING_LIMIT)
+                                  final int limit) {
+        final PendingQuery query = new PendingQuery();
+        query.setEventType(eventType);
+        query.setService(service);
+        query.setEntityId(entityId);
+        query.setMinAge(minAgeMillis);
+        query.setLimit(limit);
+        return messageService.queryPending(query);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.controller;
+
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.model.TraceReport;
+import com.starfireaviation.websocket.service.MessageTracer;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/traces")
+public class TraceController {
+
+    /**
+     * MessageTracer.
+     */
+    private final MessageTracer messageTracer;
+
+    /**
+     * Tracing properties.
+     */
+    private final ApplicationProperties.Tracing tracing;
+
+    /**
+     * Initializes an instance of <code>TraceController</code>.
+     *
+     * @param tracer MessageTracer
+     * @param applicationProperties ApplicationProperties
+     */
+    public TraceController(final MessageTracer tracer, final ApplicationProperties applicationProperties) {
+        messageTracer = tracer;
+        tracing = applicationProperties.getTracing();
+    }
+
+    /**
+     * Recent sampled traces at least as slow as the threshold, newest first.
+     *
+     * @param minMillis minimum end-to-end time (ms), defaults to the configured slow threshold
+     * @param limit max traces returned
+     * @return TraceReports
+     */
+    @GetMapping
+    public List<TraceReport> traces(@RequestParam(required = false) final Long minMillis,
+                                    @RequestParam(defaultValue = "" + CommonConstants.DEFAULT_TRACE_LIMIT)
+                                    final int limit) {
+        long threshold = tracing.getSlowThreshold();
+        if (minMillis != null) {
+            threshold = minMillis;
+        }
+        return messageTracer.recent(threshold, limit);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Identifies the user of a WebSocket handshake, and the user's organization. Shared by the servlet and Netty
+ * transports. Nothing the client merely asserts, such as a query parameter, may pick the organization.
+ */
+@FunctionalInterface
+public interface HandshakeAuthenticator {
+
+    /**
+     * Identifies the user of a handshake, and the user's organization.
+     *
+     * @param principal principal the container authenticated, null when none
+     * @param authorization <code>Authorization</code> header, null when missing
+     * @param parameters query parameters
+     * @return HandshakeIdentity, or null when the handshake is not authenticated
+     */
+    HandshakeIdentity authenticate(Principal principal, String authorization, Map<String, List<String>> parameters);
+}
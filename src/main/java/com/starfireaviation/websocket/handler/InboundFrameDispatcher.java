@@ -0,0 +1,114 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.jfr.InboundParseEvent;
+import com.starfireaviation.websocket.jfr.ValidationFailureEvent;
+import com.starfireaviation.websocket.model.InboundFrame;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.ResponseService;
+import com.starfireaviation.websocket.util.InboundFrameDecoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Dispatches decoded inbound frames, whichever transport they arrived on.
+ */
+public class InboundFrameDispatcher {
+
+    /**
+     * DeliveryService.
+     */
+    private final DeliveryService deliveryService;
+
+    /**
+     * ResponseService.
+     */
+    private final ResponseService responseService;
+
+    /**
+     * Initializes an instance of <code>InboundFrameDispatcher</code>.
+     *
+     * @param delivery DeliveryService
+     * @param responses ResponseService
+     */
+    public InboundFrameDispatcher(final DeliveryService delivery, final ResponseService responses) {
+        deliveryService = delivery;
+        responseService = responses;
+    }
+
+    /**
+     * Decodes a binary frame straight from its buffer and dispatches it.
+     *
+     * @param userId User ID
+     * @param payload frame payload
+     * @throws InvalidPayloadException when the frame or its answer is not valid
+     */
+    public void dispatch(final Long userId, final ByteBuffer payload) throws InvalidPayloadException {
+        final InboundParseEvent parseEvent = new InboundParseEvent();
+        parseEvent.begin();
+        final int size = payload.remaining();
+        final InboundFrame inboundFrame;
+        try {
+            inboundFrame = InboundFrameDecoder.decode(payload);
+        } catch (InvalidPayloadException ipe) {
+            ValidationFailureEvent.commit(userId, ValidationFailureEvent.DECODE, InboundFrame.ABSENT,
+                    ipe.getMessage());
+            throw ipe;
+        }
+        parseEvent.complete(userId, size, inboundFrame);
+        dispatch(userId, inboundFrame);
+    }
+
+    /**
+     * Decodes a text frame and dispatches it.
+     *
+     * @param userId User ID
+     * @param payload frame payload
+     * @throws InvalidPayloadException when the frame or its answer is not valid
+     */
+    public void dispatch(final Long userId, final String payload) throws InvalidPayloadException {
+        final InboundParseEvent parseEvent = new InboundParseEvent();
+        parseEvent.begin();
+        final InboundFrame inboundFrame;
+        try {
+            inboundFrame = InboundFrameDecoder.decode(payload);
+        } catch (InvalidPayloadException ipe) {
+            ValidationFailureEvent.commit(userId, ValidationFailureEvent.DECODE, InboundFrame.ABSENT,
+                    ipe.getMessage());
+            throw ipe;
+        }
+        parseEvent.complete(userId, payload.length(), inboundFrame);
+        dispatch(userId, inboundFrame);
+    }
+
+    /**
+     * Dispatches a frame: acknowledgements go to the DeliveryService, answers to the ResponseService.
+     *
+     * @param userId User ID
+     * @param inboundFrame InboundFrame
+     * @throws InvalidPayloadException when the answer is not valid
+     */
+    public void dispatch(final Long userId, final InboundFrame inboundFrame) throws InvalidPayloadException {
+        if (inboundFrame.getAck() != InboundFrame.ABSENT) {
+            deliveryService.acknowledge(userId, inboundFrame.getAck());
+        } else {
+            responseService.handleResponse(userId, inboundFrame);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * DeliveryChannel over a Reactor Netty WebSocket connection. Frames are written straight to the Netty
+ * channel; a write completes once it has been flushed to the socket.
+ */
+public class NettyDeliveryChannel implements DeliveryChannel {
+
+    /**
+     * Connection ID.
+     */
+    private final String id;
+
+    /**
+     * Netty channel of the connection.
+     */
+    private final Channel channel;
+
+    /**
+     * If the channel can still send.
+     */
+    private volatile boolean open = true;
+
+    /**
+     * If the client asked for batched frames.
+     */
+    @Getter
+    @Setter
+    private boolean batching;
+
+    /**
+     * Initializes an instance of <code>NettyDeliveryChannel</code>.
+     *
+     * @param connectionId connection ID
+     * @param nettyChannel Netty channel of the connection
+     */
+    public NettyDeliveryChannel(final String connectionId, final Channel nettyChannel) {
+        id = connectionId;
+        channel = nettyChannel;
+    }
+
+    /**
+     * Marks the channel closed once its connection has terminated.
+     */
+    public void closed() {
+        open = false;
+    }
+
+    /**
+     * Connection ID.
+     *
+     * @return ID
+     */
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Determines if the channel is open.
+     *
+     * @return if open
+     */
+    @Override
+    public boolean isOpen() {
+        return open && channel.isActive();
+    }
+
+    /**
+     * Starts writing a text frame, wrapping the payload without copying it.
+     *
+     * @param payload UTF-8 JSON
+     * @param callback SendCallback
+     * @throws IOException when the channel is closed
+     */
+    @Override
+    public void send(final ByteBuffer payload, final SendCallback callback) throws IOException {
+        checkOpen();
+        channel.writeAndFlush(new TextWebSocketFrame(Unpooled.wrappedBuffer(payload)))
+                .addListener(future -> callback.onComplete(future.cause()));
+    }
+
+    /**
+     * Sends a ping frame.
+     *
+     * @throws IOException when the channel is closed
+     */
+    @Override
+    public void ping() throws IOException {
+        checkOpen();
+        channel.writeAndFlush(new PingWebSocketFrame(), channel.voidPromise());
+    }
+
+    /**
+     * Sends a close frame, then closes the connection.
+     *
+     * @param closeReason CloseReason
+     * @throws IOException when the channel is already closed
+     */
+    @Override
+    public void close(final CloseReason closeReason) throws IOException {
+        checkOpen();
+        open = false;
+        channel.writeAndFlush(new CloseWebSocketFrame(closeReason.getCode(), closeReason.getReason()))
+                .addListener(ChannelFutureListener.CLOSE);
+    }
+
+    /**
+     * Fails when the channel is closed.
+     *
+     * @throws IOException when closed
+     */
+    private void checkOpen() throws IOException {
+        if (!isOpen()) {
+            throw new IOException("Channel " + id + " is closed");
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.DeliveryService;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Publisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.web.cors.CorsConfiguration;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.http.websocket.WebsocketInbound;
+import reactor.netty.http.websocket.WebsocketOutbound;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reactive WebSocket transport on Reactor Netty. Serves the same endpoint as the servlet transport on
+ * its own port, holding connections on a few event loop threads instead of container threads.
+ */
+@Slf4j
+public class NettyNotificationServer implements SmartLifecycle {
+
+    /**
+     * DeliveryService.
+     */
+    private final DeliveryService deliveryService;
+
+    /**
+     * InboundFrameDispatcher.
+     */
+    private final InboundFrameDispatcher inboundFrameDispatcher;
+
+    /**
+     * AdmissionController.
+     */
+    private final AdmissionController admissionController;
+
+    /**
+     * HandshakeAuthenticator.
+     */
+    private final HandshakeAuthenticator handshakeAuthenticator;
+
+    /**
+     * Origins allowed to open a WebSocket besides the server's own.
+     */
+    private final CorsConfiguration allowedOrigins = new CorsConfiguration();
+
+    /**
+     * Path of the WebSocket endpoint.
+     */
+    private final String endpoint;
+
+    /**
+     * Port to listen on (0 for any free port).
+     */
+    private final int configuredPort;
+
+    /**
+     * Connection ID sequence.
+     */
+    private final AtomicLong connectionIds = new AtomicLong();
+
+    /**
+     * Running server, null when stopped.
+     */
+    private volatile DisposableServer server;
+
+    /**
+     * Initializes an instance of <code>NettyNotificationServer</code>.
+     *
+     * @param delivery DeliveryService
+     * @param dispatcher InboundFrameDispatcher
+     * @param controller AdmissionController
+     * @param authenticator HandshakeAuthenticator
+     * @param path path of the WebSocket endpoint
+     * @param port port to listen on
+     */
+    public NettyNotificationServer(final DeliveryService delivery, final InboundFrameDispatcher dispatcher,
+                                   final AdmissionController controller, final HandshakeAuthenticator authenticator,
+                                   final String path, final int port) {
+        deliveryService = delivery;
+        inboundFrameDispatcher = dispatcher;
+        admissionController = controller;
+        handshakeAuthenticator = authenticator;
+        endpoint = path;
+        configuredPort = port;
+    }
+
+    /**
+     * Sets the origin patterns allowed to open a WebSocket besides the server's own. Handshakes without an
+     * <code>Origin</code> header, which browsers always send, are not restricted.
+     *
+     * @param patterns origin patterns
+     */
+    public void setAllowedOriginPatterns(final String... patterns) {
+        allowedOrigins.setAllowedOriginPatterns(List.of(patterns));
+    }
+
+    /**
+     * Binds the server.
+     */
+    @Override
+    public void start() {
+        server = HttpServer.create()
+                .port(configuredPort)
+                .handle(this::handle)
+                .bindNow();
+        log.info("Netty WebSocket transport listening on port {}", server.port());
+    }
+
+    /**
+     * Disposes the server, closing all connections.
+     */
+    @Override
+    public void stop() {
+        final DisposableServer running = server;
+        server = null;
+        if (running != null) {
+            running.disposeNow();
+        }
+    }
+
+    /**
+     * Determines if the server is running.
+     *
+     * @return if running
+     */
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Port the server is listening on.
+     *
+     * @return port, or -1 when not running
+     */
+    public int getPort() {
+        final DisposableServer running = server;
+        if (running == null) {
+            return -1;
+        }
+        return running.port();
+    }
+
+    /**
+     * Upgrades requests for the endpoint from allowed origins which authenticate a user, unless the
+     * AdmissionController defers them.
+     *
+     * @param request HttpServerRequest
+     * @param response HttpServerResponse
+     * @return completion
+     */
+    private Publisher<Void> handle(final HttpServerRequest request, final HttpServerResponse response) {
+        final QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        if (!endpoint.equals(uri.path())) {
+            return response.status(HttpResponseStatus.NOT_FOUND).send();
+        }
+        if (!isAllowedOrigin(request)) {
+            return response.status(HttpResponseStatus.FORBIDDEN).send();
+        }
+        final HandshakeIdentity identity = handshakeAuthenticator.authenticate(null,
+                request.requestHeaders().get(HttpHeaderNames.AUTHORIZATION), uri.parameters());
+        if (identity == null) {
+            return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+        }
+        final int retryAfter = admissionController.admit();
+        if (retryAfter > 0) {
+            return response.status(HttpResponseStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaderNames.RETRY_AFTER, Integer.toString(retryAfter))
+                    .send();
+        }
+        final String organization = getOrganization(identity);
+        final boolean batching = isBatching(uri);
+        return response.sendWebsocket(
+                (in, out) -> session(identity.getUserId(), organization, batching, in, out));
+    }
+
+    /**
+     * Determines if a handshake comes from the server's own origin, an allowed one, or no browser at all.
+     *
+     * @param request HttpServerRequest
+     * @return if the origin is allowed
+     */
+    private boolean isAllowedOrigin(final HttpServerRequest request) {
+        final String origin = request.requestHeaders().get(HttpHeaderNames.ORIGIN);
+        if (origin == null) {
+            return true;
+        }
+        try {
+            final String host = request.requestHeaders().get(HttpHeaderNames.HOST);
+            if (host != null && host.equalsIgnoreCase(URI.create(origin).getRawAuthority())) {
+                return true;
+            }
+        } catch (IllegalArgumentException iae) {
+            return false;
+        }
+        return allowedOrigins.checkOrigin(origin) != null;
+    }
+
+    /**
+     * Gets the organization the user's credentials name.
+     *
+     * @param identity HandshakeIdentity
+     * @return organization, or null when missing or blank
+     */
+    private static String getOrganization(final HandshakeIdentity identity) {
+        final String organization = identity.getOrganization();
+        if (organization == null || organization.isBlank()) {
+            return null;
+        }
+        return organization;
+    }
+
+    /**
+     * Determines if the client asked for batched frames with the <code>batch=true</code> query parameter.
+     *
+     * @param uri request URI
+     * @return if batching
+     */
+    private static boolean isBatching(final QueryStringDecoder uri) {
+        final List<String> batch =
+                uri.parameters().getOrDefault(UserHandshakeInterceptor.BATCH_ATTRIBUTE, List.of());
+        return !batch.isEmpty() && Boolean.parseBoolean(batch.get(0));
+    }
+
+    /**
+     * Runs a WebSocket session: registers its channel for delivery and dispatches inbound frames.
+     * Outbound frames are written by the DeliveryChannel directly to the connection.
+     *
+     * @param userId User ID
+     * @param organization organization, null when the credentials name none
+     * @param batching if the client asked for batched frames
+     * @param in WebsocketInbound
+     * @param out WebsocketOutbound
+     * @return completion, when the connection terminates
+     */
+    private Publisher<Void> session(final Long userId, final String organization, final boolean batching,
+                                    final WebsocketInbound in, final WebsocketOutbound out) {
+        final AtomicReference<Channel> nettyChannel = new AtomicReference<>();
+        out.withConnection(connection -> nettyChannel.set(connection.channel()));
+        final NettyDeliveryChannel channel =
+                new NettyDeliveryChannel("netty-" + connectionIds.incrementAndGet(), nettyChannel.get());
+        channel.setBatching(batching);
+        final Mono<Void> inbound = in.aggregateFrames()
+                .receiveFrames()
+                .doOnNext(frame -> onFrame(userId, channel, frame))
+                .then();
+        deliveryService.register(userId, organization, channel);
+        return inbound
+                .doFinally(signal -> {
+                    channel.closed();
+                    deliveryService.unregister(userId, channel);
+                });
+    }
+
+    /**
+     * Records the activity of any inbound frame, including pongs, then decodes a data frame straight
+     * from its buffer and dispatches it.
+     *
+     * @param userId User ID
+     * @param channel NettyDeliveryChannel the frame arrived on
+     * @param frame WebSocketFrame
+     */
+    private void onFrame(final Long userId, final NettyDeliveryChannel channel, final WebSocketFrame frame) {
+        deliveryService.touch(userId, channel);
+        if (!(frame instanceof TextWebSocketFrame) && !(frame instanceof BinaryWebSocketFrame)) {
+            return;
+        }
+        try {
+            inboundFrameDispatcher.dispatch(userId, frame.content().nioBuffer());
+        } catch (InvalidPayloadException ipe) {
+            log.debug("Invalid frame from user {}: {}", userId, ipe.getMessage());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.service.DeliveryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+/**
+ * Handles the notification WebSocket: registers sessions for delivery and accepts answers and
+ * acknowledgements as JSON text or binary frames.
+ */
+@Slf4j
+public class NotificationWebSocketHandler extends AbstractWebSocketHandler {
+
+    /**
+     * Session attribute holding the DeliveryChannel.
+     */
+    private static final String CHANNEL_ATTRIBUTE = "deliveryChannel";
+
+    /**
+     * DeliveryService.
+     */
+    private final DeliveryService deliveryService;
+
+    /**
+     * InboundFrameDispatcher.
+     */
+    private final InboundFrameDispatcher inboundFrameDispatcher;
+
+    /**
+     * Max time (ms) an asynchronous write may take.
+     */
+    private final long sendTimeout;
+
+    /**
+     * Initializes an instance of <code>NotificationWebSocketHandler</code>.
+     *
+     * @param delivery DeliveryService
+     * @param dispatcher InboundFrameDispatcher
+     * @param timeout max time (ms) an asynchronous write may take
+     */
+    public NotificationWebSocketHandler(final DeliveryService delivery, final InboundFrameDispatcher dispatcher,
+                                        final long timeout) {
+        deliveryService = delivery;
+        inboundFrameDispatcher = dispatcher;
+        sendTimeout = timeout;
+    }
+
+    /**
+     * Registers the session for delivery.
+     *
+     * @param session WebSocketSession
+     */
+    @Override
+    public void afterConnectionEstablished(final WebSocketSession session) {
+        final ServletDeliveryChannel channel = new ServletDeliveryChannel(session, sendTimeout);
+        channel.setBatching(
+                Boolean.TRUE.equals(session.getAttributes().get(UserHandshakeInterceptor.BATCH_ATTRIBUTE)));
+        session.getAttributes().put(CHANNEL_ATTRIBUTE, channel);
+        deliveryService.register(getUserId(session),
+                (String) session.getAttributes().get(UserHandshakeInterceptor.ORGANIZATION_ATTRIBUTE), channel);
+    }
+
+    /**
+     * Handles an answer or acknowledgement from the client.
+     *
+     * @param session WebSocketSession
+     * @param message TextMessage
+     */
+    @Override
+    protected void handleTextMessage(final WebSocketSession session, final TextMessage message) {
+        final Long userId = getUserId(session);
+        touch(session, userId);
+        try {
+            inboundFrameDispatcher.dispatch(userId, message.getPayload());
+        } catch (InvalidPayloadException ipe) {
+            log.debug("Invalid frame from user {}: {}", userId, ipe.getMessage());
+        }
+    }
+
+    /**
+     * Handles an answer or acknowledgement from the client, decoding it straight from the frame buffer.
+     *
+     * @param session WebSocketSession
+     * @param message BinaryMessage
+     */
+    @Override
+    protected void handleBinaryMessage(final WebSocketSession session, final BinaryMessage message) {
+        final Long userId = getUserId(session);
+        touch(session, userId);
+        try {
+            inboundFrameDispatcher.dispatch(userId, message.getPayload());
+        } catch (InvalidPayloadException ipe) {
+            log.debug("Invalid frame from user {}: {}", userId, ipe.getMessage());
+        }
+    }
+
+    /**
+     * Records a heartbeat answer.
+     *
+     * @param session WebSocketSession
+     * @param message PongMessage
+     */
+    @Override
+    protected void handlePongMessage(final WebSocketSession session, final PongMessage message) {
+        touch(session, getUserId(session));
+    }
+
+    /**
+     * Unregisters the session.
+     *
+     * @param session WebSocketSession
+     * @param status CloseStatus
+     */
+    @Override
+    public void afterConnectionClosed(final WebSocketSession session, final CloseStatus status) {
+        final Object channel = session.getAttributes().get(CHANNEL_ATTRIBUTE);
+        if (channel instanceof ServletDeliveryChannel) {
+            deliveryService.unregister(getUserId(session), (ServletDeliveryChannel) channel);
+        }
+    }
+
+    /**
+     * Records inbound activity on the session's channel.
+     *
+     * @param session WebSocketSession
+     * @param userId User ID
+     */
+    private void touch(final WebSocketSession session, final Long userId) {
+        final Object channel = session.getAttributes().get(CHANNEL_ATTRIBUTE);
+        if (channel instanceof ServletDeliveryChannel) {
+            deliveryService.touch(userId, (ServletDeliveryChannel) channel);
+        }
+    }
+
+    /**
+     * Gets the user ID established during the handshake.
+     *
+     * @param session WebSocketSession
+     * @return User ID
+     */
+    private static Long getUserId(final WebSocketSession session) {
+        return (Long) session.getAttributes().get(UserHandshakeInterceptor.USER_ID_ATTRIBUTE);
+    }
+}
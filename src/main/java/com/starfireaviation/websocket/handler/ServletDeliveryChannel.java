@@ -0,0 +1,237 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * DeliveryChannel over a servlet container WebSocketSession. Text frames are written with the
+ * container's asynchronous remote endpoint, so a slow client does not hold a thread.
+ */
+@Slf4j
+public class ServletDeliveryChannel implements DeliveryChannel {
+
+    /**
+     * UTF-8 decoder of the sending thread.
+     */
+    private static final ThreadLocal<CharsetDecoder> DECODER =
+            ThreadLocal.withInitial(StandardCharsets.UTF_8::newDecoder);
+
+    /**
+     * Decoded characters of the sending thread, grown as needed.
+     */
+    private static final ThreadLocal<CharBuffer> CHARS = new ThreadLocal<>();
+
+    /**
+     * WebSocketSession.
+     */
+    private final WebSocketSession session;
+
+    /**
+     * Asynchronous remote endpoint, null when the container does not provide one.
+     */
+    private final RemoteEndpoint.Async asyncRemote;
+
+    /**
+     * Guards the write state.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * If an asynchronous write is outstanding.
+     */
+    private boolean writing;
+
+    /**
+     * Close deferred until the outstanding write completes.
+     */
+    private CloseReason pendingClose;
+
+    /**
+     * If the client asked for batched frames.
+     */
+    @Getter
+    @Setter
+    private boolean batching;
+
+    /**
+     * Initializes an instance of <code>ServletDeliveryChannel</code>.
+     *
+     * @param webSocketSession WebSocketSession
+     * @param sendTimeout max time (ms) an asynchronous write may take
+     */
+    public ServletDeliveryChannel(final WebSocketSession webSocketSession, final long sendTimeout) {
+        session = webSocketSession;
+        Session nativeSession = null;
+        if (webSocketSession instanceof NativeWebSocketSession) {
+            nativeSession = ((NativeWebSocketSession) webSocketSession).getNativeSession(Session.class);
+        }
+        if (nativeSession == null) {
+            asyncRemote = null;
+        } else {
+            asyncRemote = nativeSession.getAsyncRemote();
+            asyncRemote.setSendTimeout(sendTimeout);
+        }
+    }
+
+    /**
+     * Session ID.
+     *
+     * @return ID
+     */
+    @Override
+    public String getId() {
+        return session.getId();
+    }
+
+    /**
+     * Determines if the session is open.
+     *
+     * @return if open
+     */
+    @Override
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    /**
+     * Starts writing a text frame. The JSR-356 API only takes text as a String, so the payload is decoded
+     * once, straight from the pooled buffer.
+     *
+     * @param payload UTF-8 JSON
+     * @param callback SendCallback
+     * @throws IOException when the frame cannot be sent
+     */
+    @Override
+    public void send(final ByteBuffer payload, final SendCallback callback) throws IOException {
+        final String text = decode(payload);
+        if (asyncRemote == null) {
+            session.sendMessage(new TextMessage(text));
+            callback.onComplete(null);
+            return;
+        }
+        synchronized (lock) {
+            writing = true;
+        }
+        try {
+            asyncRemote.sendText(text, result -> {
+                written();
+                callback.onComplete(result.getException());
+            });
+        } catch (IllegalStateException ise) {
+            written();
+            throw new IOException(ise.getMessage(), ise);
+        }
+    }
+
+    /**
+     * Sends a ping frame.
+     *
+     * @throws IOException when the frame cannot be sent
+     */
+    @Override
+    public void ping() throws IOException {
+        session.sendMessage(new PingMessage());
+    }
+
+    /**
+     * Closes the session. While a write is outstanding the close is deferred until it completes, since
+     * the container would otherwise block the caller until then.
+     *
+     * @param closeReason CloseReason
+     * @throws IOException when the session cannot be closed cleanly
+     */
+    @Override
+    public void close(final CloseReason closeReason) throws IOException {
+        synchronized (lock) {
+            if (writing) {
+                pendingClose = closeReason;
+                return;
+            }
+        }
+        session.close(new CloseStatus(closeReason.getCode(), closeReason.getReason()));
+    }
+
+    /**
+     * Decodes UTF-8 into a String through the thread's reusable decoder and char buffer, leaving the
+     * payload's position unchanged.
+     *
+     * @param payload UTF-8 bytes
+     * @return String
+     * @throws CharacterCodingException if the payload is not UTF-8
+     */
+    private static String decode(final ByteBuffer payload) throws CharacterCodingException {
+        CharBuffer chars = CHARS.get();
+        if (chars == null || chars.capacity() < payload.remaining()) {
+            chars = CharBuffer.allocate(payload.remaining());
+            CHARS.set(chars);
+        }
+        chars.clear();
+        final CharsetDecoder decoder = DECODER.get().reset();
+        final int position = payload.position();
+        try {
+            CoderResult result = decoder.decode(payload, chars, true);
+            if (!result.isError()) {
+                result = decoder.flush(chars);
+            }
+            if (result.isError()) {
+                result.throwException();
+            }
+        } finally {
+            payload.position(position);
+        }
+        return chars.flip().toString();
+    }
+
+    /**
+     * Marks the outstanding write complete and performs a deferred close.
+     */
+    private void written() {
+        final CloseReason closeReason;
+        synchronized (lock) {
+            writing = false;
+            closeReason = pendingClose;
+            pendingClose = null;
+        }
+        if (closeReason != null) {
+            try {
+                session.close(new CloseStatus(closeReason.getCode(), closeReason.getReason()));
+            } catch (IOException e) {
+                log.debug("Unable to close session {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+import com.starfireaviation.websocket.util.HandshakeToken;
+
+import java.security.Principal;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Identifies users by the principal the container authenticated, whose name is the user ID, or else by a
+ * HandshakeToken. Browsers cannot set headers on a WebSocket handshake, so the token is taken from an
+ * <code>Authorization: Bearer</code> header or from the <code>access_token</code> query parameter. Only a
+ * token names an organization; users identified by principal keep the organization they are in.
+ */
+public class TokenHandshakeAuthenticator implements HandshakeAuthenticator {
+
+    /**
+     * Query parameter holding the token.
+     */
+    public static final String TOKEN_PARAMETER = "access_token";
+
+    /**
+     * Authorization scheme of the token.
+     */
+    private static final String BEARER = "Bearer ";
+
+    /**
+     * HandshakeToken, null when no secret is configured and only principals are accepted.
+     */
+    private final HandshakeToken handshakeToken;
+
+    /**
+     * Clock tokens expire by.
+     */
+    private final Clock clock;
+
+    /**
+     * Initializes an instance of <code>TokenHandshakeAuthenticator</code>.
+     *
+     * @param token HandshakeToken, null to accept principals only
+     * @param tokenClock clock tokens expire by
+     */
+    public TokenHandshakeAuthenticator(final HandshakeToken token, final Clock tokenClock) {
+        handshakeToken = token;
+        clock = tokenClock;
+    }
+
+    /**
+     * Identifies the user by the principal, or else by a valid token.
+     *
+     * @param principal principal the container authenticated, null when none
+     * @param authorization <code>Authorization</code> header, null when missing
+     * @param parameters query parameters
+     * @return HandshakeIdentity, or null when the handshake is not authenticated
+     */
+    @Override
+    public HandshakeIdentity authenticate(final Principal principal, final String authorization,
+                                          final Map<String, List<String>> parameters) {
+        if (principal != null) {
+            try {
+                return new HandshakeIdentity(Long.valueOf(principal.getName()), null);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+        if (handshakeToken == null) {
+            return null;
+        }
+        return handshakeToken.verify(getToken(authorization, parameters), clock.instant().getEpochSecond());
+    }
+
+    /**
+     * Gets the token from the <code>Authorization</code> header, or else from the query parameter.
+     *
+     * @param authorization <code>Authorization</code> header, null when missing
+     * @param parameters query parameters
+     * @return token, null when missing
+     */
+    private static String getToken(final String authorization, final Map<String, List<String>> parameters) {
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            return authorization.substring(BEARER.length()).trim();
+        }
+        final List<String> tokens = parameters.getOrDefault(TOKEN_PARAMETER, List.of());
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        return tokens.get(0);
+    }
+}
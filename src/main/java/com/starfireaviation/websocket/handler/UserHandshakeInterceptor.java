@@ -0,0 +1,130 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.handler;
+
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+import com.starfireaviation.websocket.service.AdmissionController;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Identifies the user of a WebSocket handshake, and the user's organization, with the HandshakeAuthenticator.
+ * A <code>batch=true</code> parameter asks for messages to be batched into array frames. Authenticated
+ * handshakes are then subject to the AdmissionController, and rejected with a 503 and a
+ * <code>Retry-After</code> header under pressure.
+ */
+@Slf4j
+public class UserHandshakeInterceptor implements HandshakeInterceptor {
+
+    /**
+     * Session attribute holding the user ID.
+     */
+    public static final String USER_ID_ATTRIBUTE = "userId";
+
+    /**
+     * Session attribute holding the organization, when the credentials name one.
+     */
+    public static final String ORGANIZATION_ATTRIBUTE = "organization";
+
+    /**
+     * Session attribute holding if the client asked for batched frames.
+     */
+    public static final String BATCH_ATTRIBUTE = "batch";
+
+    /**
+     * AdmissionController.
+     */
+    private final AdmissionController admissionController;
+
+    /**
+     * HandshakeAuthenticator.
+     */
+    private final HandshakeAuthenticator handshakeAuthenticator;
+
+    /**
+     * Initializes an instance of <code>UserHandshakeInterceptor</code>.
+     *
+     * @param controller AdmissionController
+     * @param authenticator HandshakeAuthenticator
+     */
+    public UserHandshakeInterceptor(final AdmissionController controller,
+                                    final HandshakeAuthenticator authenticator) {
+        admissionController = controller;
+        handshakeAuthenticator = authenticator;
+    }
+
+    /**
+     * Rejects handshakes which are not authenticated, and defers those the AdmissionController does not admit.
+     * The optional <code>batch</code> query parameter opts in to batching.
+     *
+     * @param request ServerHttpRequest
+     * @param response ServerHttpResponse
+     * @param wsHandler WebSocketHandler
+     * @param attributes session attributes
+     * @return if the handshake may proceed
+     */
+    @Override
+    public boolean beforeHandshake(final ServerHttpRequest request, final ServerHttpResponse response,
+                                   final WebSocketHandler wsHandler, final Map<String, Object> attributes) {
+        final MultiValueMap<String, String> parameters =
+                UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        final HandshakeIdentity identity = handshakeAuthenticator.authenticate(request.getPrincipal(),
+                request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION), parameters);
+        if (identity == null) {
+            log.debug("Rejecting unauthenticated handshake from {}", request.getRemoteAddress());
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+        final Long userId = identity.getUserId();
+        attributes.put(USER_ID_ATTRIBUTE, userId);
+        if (identity.getOrganization() != null && !identity.getOrganization().isBlank()) {
+            attributes.put(ORGANIZATION_ATTRIBUTE, identity.getOrganization());
+        }
+        attributes.put(BATCH_ATTRIBUTE, Boolean.parseBoolean(parameters.getFirst(BATCH_ATTRIBUTE)));
+        final int retryAfter = admissionController.admit();
+        if (retryAfter > 0) {
+            log.debug("Deferring handshake of user {} by {}s", userId, retryAfter);
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, Integer.toString(retryAfter));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Nothing to do after the handshake.
+     *
+     * @param request ServerHttpRequest
+     * @param response ServerHttpResponse
+     * @param wsHandler WebSocketHandler
+     * @param exception exception raised during the handshake, if any
+     */
+    @Override
+    public void afterHandshake(final ServerHttpRequest request, final ServerHttpResponse response,
+                               final WebSocketHandler wsHandler, final Exception exception) {
+        // Nothing to do
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A user's queue was drained into the session's send buffer. The duration covers the drain.
+ */
+@Name("com.starfireaviation.websocket.DeliveryDrain")
+@Label("Delivery Drain")
+@Category({"Starfire Aviation", "WebSocket"})
+@Description("A user's queued notifications were moved to the session's send buffer")
+@Enabled(false)
+@StackTrace(false)
+public final class DeliveryDrainEvent extends jdk.jfr.Event {
+
+    /**
+     * User ID.
+     */
+    @Label("User ID")
+    private long userId;
+
+    /**
+     * Messages drained from the queue.
+     */
+    @Label("Drained")
+    private int drained;
+
+    /**
+     * Frames waiting in the send buffer afterwards.
+     */
+    @Label("Buffered Frames")
+    private int bufferedFrames;
+
+    /**
+     * Bytes in the send buffer afterwards.
+     */
+    @Label("Buffered Bytes")
+    @DataAmount
+    private long bufferedBytes;
+
+    /**
+     * Ends the drain and records it, if the event is enabled and anything was drained.
+     *
+     * @param user User ID
+     * @param messages messages drained from the queue
+     * @param frames frames waiting in the send buffer
+     * @param bytes bytes in the send buffer
+     */
+    public void complete(final Long user, final int messages, final int frames, final long bytes) {
+        end();
+        if (messages > 0 && shouldCommit()) {
+            userId = EventValues.id(user);
+            drained = messages;
+            bufferedFrames = frames;
+            bufferedBytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.jfr;
+
+/**
+ * Conversions of field values, which JFR only records as primitives and Strings.
+ */
+final class EventValues {
+
+    /**
+     * Recorded in place of a missing ID.
+     */
+    private static final long ABSENT = -1;
+
+    /**
+     * Not instantiable.
+     */
+    private EventValues() {
+    }
+
+    /**
+     * Recordable ID.
+     *
+     * @param id ID, may be null
+     * @return ID, -1 when null
+     */
+    static long id(final Long id) {
+        if (id == null) {
+            return ABSENT;
+        }
+        return id;
+    }
+
+    /**
+     * Recordable enum constant.
+     *
+     * @param constant enum constant, may be null
+     * @return name, null when null
+     */
+    static String name(final Enum<?> constant) {
+        if (constant == null) {
+            return null;
+        }
+        return constant.name();
+    }
+}
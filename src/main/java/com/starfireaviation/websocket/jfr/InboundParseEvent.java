@@ -0,0 +1,89 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.jfr;
+
+import com.starfireaviation.websocket.model.InboundFrame;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An inbound frame was decoded. The duration covers the decode, including the ResponseParser.
+ */
+@Name("com.starfireaviation.websocket.InboundParse")
+@Label("Inbound Parse")
+@Category({"Starfire Aviation", "WebSocket"})
+@Description("An inbound frame was decoded and its answer parsed")
+@Enabled(false)
+@StackTrace(false)
+public final class InboundParseEvent extends jdk.jfr.Event {
+
+    /**
+     * User ID.
+     */
+    @Label("User ID")
+    private long userId;
+
+    /**
+     * Payload size.
+     */
+    @Label("Payload Size")
+    @DataAmount
+    private int payloadSize;
+
+    /**
+     * Question ID, -1 when absent.
+     */
+    @Label("Question ID")
+    private long questionId;
+
+    /**
+     * Acknowledged message ID, -1 when absent.
+     */
+    @Label("Ack")
+    private long ack;
+
+    /**
+     * ResponseParser result, null when there was no answer.
+     */
+    @Label("Response")
+    private String response;
+
+    /**
+     * Ends the decode and records it, if the event is enabled.
+     *
+     * @param user User ID
+     * @param size payload size
+     * @param inboundFrame decoded InboundFrame
+     */
+    public void complete(final Long user, final int size, final InboundFrame inboundFrame) {
+        end();
+        if (shouldCommit()) {
+            userId = EventValues.id(user);
+            payloadSize = size;
+            questionId = inboundFrame.getQuestionId();
+            ack = inboundFrame.getAck();
+            response = EventValues.name(inboundFrame.getResponse());
+            commit();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.jfr;
+
+import com.starfireaviation.model.NotificationEventType;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A message was added to a user's queue.
+ */
+@Name("com.starfireaviation.websocket.MessageEnqueued")
+@Label("Message Enqueued")
+@Category({"Starfire Aviation", "WebSocket"})
+@Description("A notification was added to a user's queue")
+@Enabled(false)
+@StackTrace(false)
+public final class MessageEnqueuedEvent extends jdk.jfr.Event {
+
+    /**
+     * User ID.
+     */
+    @Label("User ID")
+    private long userId;
+
+    /**
+     * Notification event type.
+     */
+    @Label("Event Type")
+    private String eventType;
+
+    /**
+     * Queue length, including the message.
+     */
+    @Label("Queue Depth")
+    private int queueDepth;
+
+    /**
+     * Records an enqueued message, if the event is enabled.
+     *
+     * @param userId User ID
+     * @param eventType NotificationEventType
+     * @param queueDepth queue length, including the message
+     */
+    public static void commit(final Long userId, final NotificationEventType eventType, final int queueDepth) {
+        final MessageEnqueuedEvent event = new MessageEnqueuedEvent();
+        if (event.isEnabled()) {
+            event.userId = EventValues.id(userId);
+            event.eventType = EventValues.name(eventType);
+            event.queueDepth = queueDepth;
+            event.commit();
+        }
+    }
+}
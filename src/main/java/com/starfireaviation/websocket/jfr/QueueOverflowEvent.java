@@ -0,0 +1,73 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.jfr;
+
+import com.starfireaviation.model.NotificationEventType;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A user's queue was full and its oldest messages were dropped.
+ */
+@Name("com.starfireaviation.websocket.QueueOverflow")
+@Label("Queue Overflow")
+@Category({"Starfire Aviation", "WebSocket"})
+@Description("A user's queue was full and its oldest notifications were dropped")
+@Enabled(false)
+@StackTrace(false)
+public final class QueueOverflowEvent extends jdk.jfr.Event {
+
+    /**
+     * User ID.
+     */
+    @Label("User ID")
+    private long userId;
+
+    /**
+     * Event type of the oldest message dropped.
+     */
+    @Label("Event Type")
+    private String eventType;
+
+    /**
+     * Messages dropped.
+     */
+    @Label("Dropped")
+    private int dropped;
+
+    /**
+     * Records dropped messages, if the event is enabled.
+     *
+     * @param userId User ID
+     * @param eventType NotificationEventType of the oldest message dropped
+     * @param dropped messages dropped
+     */
+    public static void commit(final Long userId, final NotificationEventType eventType, final int dropped) {
+        final QueueOverflowEvent event = new QueueOverflowEvent();
+        if (event.isEnabled()) {
+            event.userId = EventValues.id(userId);
+            event.eventType = EventValues.name(eventType);
+            event.dropped = dropped;
+            event.commit();
+        }
+    }
+}
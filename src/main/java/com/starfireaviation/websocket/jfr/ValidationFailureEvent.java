@@ -0,0 +1,89 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An inbound frame was rejected, either because it could not be decoded or because its answer was not
+ * valid.
+ */
+@Name("com.starfireaviation.websocket.ValidationFailure")
+@Label("Validation Failure")
+@Category({"Starfire Aviation", "WebSocket"})
+@Description("An inbound frame could not be decoded or its answer was not valid")
+@Enabled(false)
+public final class ValidationFailureEvent extends jdk.jfr.Event {
+
+    /**
+     * Stage of a frame which could not be decoded.
+     */
+    public static final String DECODE = "DECODE";
+
+    /**
+     * Stage of an answer which was not valid.
+     */
+    public static final String RESPONSE = "RESPONSE";
+
+    /**
+     * User ID.
+     */
+    @Label("User ID")
+    private long userId;
+
+    /**
+     * Stage which rejected the frame.
+     */
+    @Label("Stage")
+    private String stage;
+
+    /**
+     * Question ID, -1 when absent or unknown.
+     */
+    @Label("Question ID")
+    private long questionId;
+
+    /**
+     * Reason.
+     */
+    @Label("Reason")
+    private String reason;
+
+    /**
+     * Records a rejected frame, if the event is enabled.
+     *
+     * @param userId User ID
+     * @param stage DECODE or RESPONSE
+     * @param questionId Question ID, -1 when absent or unknown
+     * @param reason reason
+     */
+    public static void commit(final Long userId, final String stage, final long questionId, final String reason) {
+        final ValidationFailureEvent event = new ValidationFailureEvent();
+        if (event.isEnabled()) {
+            event.userId = EventValues.id(userId);
+            event.stage = stage;
+            event.questionId = questionId;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
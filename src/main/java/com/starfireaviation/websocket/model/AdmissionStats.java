@@ -0,0 +1,61 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Data;
+
+/**
+ * Snapshot of the AdmissionController's signals and counters.
+ */
+@Data
+public class AdmissionStats {
+
+    /**
+     * Current Pressure.
+     */
+    private Pressure pressure;
+
+    /**
+     * Occupancy of the old generation (or the whole heap), 0 to 1.
+     */
+    private double heapOccupancy;
+
+    /**
+     * Messages queued across all organizations.
+     */
+    private long queuedMessages;
+
+    /**
+     * Time (ms) the longest waiting user has waited for a drain worker.
+     */
+    private long drainLagMillis;
+
+    /**
+     * Handshakes admitted.
+     */
+    private long admitted;
+
+    /**
+     * Handshakes rejected with a retry-after hint.
+     */
+    private long rejected;
+
+    /**
+     * Display updates coalesced away under pressure.
+     */
+    private long shedMessages;
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Data;
+
+/**
+ * Counters of the rendered content cache.
+ */
+@Data
+public class ContentCacheStats {
+
+    /**
+     * Entities cached, including those known to have nothing to embed.
+     */
+    private int entries;
+
+    /**
+     * Bytes of rendered content cached.
+     */
+    private long bytes;
+
+    /**
+     * Lookups answered from the cache, or by waiting for a render already under way.
+     */
+    private long hits;
+
+    /**
+     * Lookups which rendered the entity.
+     */
+    private long misses;
+
+    /**
+     * Lookups by senders which found the entity still rendering, and went on without its payload.
+     */
+    private long pending;
+
+    /**
+     * Renders which failed, leaving the message without a payload.
+     */
+    private long failures;
+
+    /**
+     * Entries evicted to stay within the size bound.
+     */
+    private long evictions;
+
+    /**
+     * Entries invalidated.
+     */
+    private long invalidations;
+
+    /**
+     * Expired renderings reused because their entity still had the version rendered.
+     */
+    private long revalidations;
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Data;
+
+/**
+ * Snapshot of the DeliveryService counters.
+ */
+@Data
+public class DeliveryStats {
+
+    /**
+     * Live sessions.
+     */
+    private int sessions;
+
+    /**
+     * Size (bytes) of the containers of the compressed index of the users with a live session.
+     */
+    private long presenceBytes;
+
+    /**
+     * Sessions currently classified as slow consumers.
+     */
+    private int slowConsumers;
+
+    /**
+     * Messages dropped or coalesced away from slow consumers' send buffers.
+     */
+    private long discardedMessages;
+
+    /**
+     * Sessions disconnected as slow consumers.
+     */
+    private long slowDisconnects;
+
+    /**
+     * Sessions reaped for missing heartbeats.
+     */
+    private long reapedSessions;
+
+    /**
+     * Encode buffers allocated because none was free in the pool, or the message did not fit one.
+     */
+    private long encodeBuffersAllocated;
+
+    /**
+     * Encode buffers free for reuse.
+     */
+    private int encodeBuffersPooled;
+
+    /**
+     * Frames written, a batch counting once.
+     */
+    private long framesWritten;
+
+    /**
+     * Messages written, alone or in batches.
+     */
+    private long messagesWritten;
+}
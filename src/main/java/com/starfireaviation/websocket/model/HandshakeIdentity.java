@@ -0,0 +1,47 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Getter;
+
+/**
+ * The user of an authenticated WebSocket handshake, and the organization the user's credentials vouch for.
+ */
+@Getter
+public final class HandshakeIdentity {
+
+    /**
+     * User ID.
+     */
+    private final Long userId;
+
+    /**
+     * Organization, null when the credentials do not name one.
+     */
+    private final String organization;
+
+    /**
+     * Initializes an instance of <code>HandshakeIdentity</code>.
+     *
+     * @param user User ID
+     * @param userOrganization organization, null when the credentials do not name one
+     */
+    public HandshakeIdentity(final Long user, final String userOrganization) {
+        userId = user;
+        organization = userOrganization;
+    }
+}
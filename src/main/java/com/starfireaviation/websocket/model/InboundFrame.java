@@ -0,0 +1,54 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import com.starfireaviation.model.ResponseOption;
+import lombok.Data;
+
+/**
+ * Answer or acknowledgement sent by a client over its WebSocket session, as decoded by
+ * InboundFrameDecoder. Numeric fields hold ABSENT when not present in the frame.
+ */
+@Data
+public class InboundFrame {
+
+    /**
+     * Value of a numeric field not present in the frame.
+     */
+    public static final long ABSENT = -1;
+
+    /**
+     * Client assigned, per-user increasing ID used to suppress resent answers.
+     */
+    private long clientMessageId = ABSENT;
+
+    /**
+     * Question being answered.
+     */
+    private long questionId = ABSENT;
+
+    /**
+     * Message ID being acknowledged (at-least-once delivery).
+     */
+    private long ack = ABSENT;
+
+    /**
+     * Answer, as evaluated by ResponseParser (null when the frame has no answer).
+     */
+    private ResponseOption response;
+
+}
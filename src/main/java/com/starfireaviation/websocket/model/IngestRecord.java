@@ -0,0 +1,43 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import com.starfireaviation.model.Message;
+import com.starfireaviation.model.NotificationEventType;
+import lombok.Data;
+
+/**
+ * A notification submitted through bulk ingestion.
+ */
+@Data
+public class IngestRecord {
+
+    /**
+     * NotificationEventType.
+     */
+    private NotificationEventType eventType;
+
+    /**
+     * Message.
+     */
+    private Message message;
+
+    /**
+     * Reference ID, for display event types.
+     */
+    private Long referenceId;
+}
@@ -0,0 +1,46 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Data;
+
+/**
+ * Counts of the records in one bulk ingestion request.
+ */
+@Data
+public class IngestSummary {
+
+    /**
+     * Records read.
+     */
+    private long records;
+
+    /**
+     * Records queued for delivery.
+     */
+    private long accepted;
+
+    /**
+     * Records which could not be read.
+     */
+    private long invalid;
+
+    /**
+     * Records the MessageService could not send.
+     */
+    private long rejected;
+}
@@ -0,0 +1,38 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+/**
+ * Relative importance of a WebsocketMessage, used to pick what to drop for a slow consumer.
+ */
+public enum MessagePriority {
+
+    /**
+     * Transient display updates; a newer one of the same thing supersedes an older one.
+     */
+    LOW,
+
+    /**
+     * Everything else.
+     */
+    NORMAL,
+
+    /**
+     * Account changes the user must see.
+     */
+    HIGH
+}
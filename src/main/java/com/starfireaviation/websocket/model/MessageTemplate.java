@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.util.WebsocketMessageEncoder;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Objects;
+
+/**
+ * Static shape of the WebsocketMessage sent for a NotificationEventType.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class MessageTemplate {
+
+    /**
+     * NotificationEventType.
+     */
+    private final NotificationEventType eventType;
+
+    /**
+     * Service.
+     */
+    private final String service;
+
+    /**
+     * Operation (a.k.a. method).
+     */
+    private final String operation;
+
+    /**
+     * Where the parameters come from.
+     */
+    private final ParameterSource parameterSource;
+
+    /**
+     * MessagePriority.
+     */
+    private final MessagePriority priority;
+
+    /**
+     * Pre-encoded JSON for the fields which never change for this template.
+     */
+    @Getter(AccessLevel.NONE)
+    private final byte[] encodedFragment;
+
+    /**
+     * Creates a MessageTemplate, pre-encoding its constant fields.
+     *
+     * @param eventType NotificationEventType
+     * @param service Service
+     * @param operation Operation
+     * @param parameterSource ParameterSource
+     * @param priority MessagePriority
+     * @return MessageTemplate
+     */
+    public static MessageTemplate of(final NotificationEventType eventType, final String service,
+                                     final String operation, final ParameterSource parameterSource,
+                                     final MessagePriority priority) {
+        return new MessageTemplate(eventType, service, operation, parameterSource, priority,
+                WebsocketMessageEncoder.encodeFragment(eventType, service, operation));
+    }
+
+    /**
+     * Pre-encoded JSON for the constant fields. Callers must not modify the returned array.
+     *
+     * @return encoded fragment
+     */
+    public byte[] getEncodedFragment() {
+        return encodedFragment;
+    }
+
+    /**
+     * Determines if a WebsocketMessage has the constant fields of this template.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return if the pre-encoded fragment may be used for the message
+     */
+    public boolean matches(final WebsocketMessage websocketMessage) {
+        return eventType == websocketMessage.getEventType()
+                && Objects.equals(service, websocketMessage.getService())
+                && Objects.equals(operation, websocketMessage.getOperation());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Monotonic timestamps of one sampled message at each TraceStage. Stamped by whichever thread handles
+ * the message at that stage; the hand-offs between stages order the writes. Handed to its recorder
+ * once written.
+ */
+public class MessageTrace {
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Trace ID.
+     */
+    @Getter
+    private final long traceId;
+
+    /**
+     * Recorder of completed traces.
+     */
+    private final Consumer<MessageTrace> recorder;
+
+    /**
+     * Wall clock time (epoch ms) the trace started.
+     */
+    private final long startedAt = System.currentTimeMillis();
+
+    /**
+     * System.nanoTime at each stage, 0 when not reached.
+     */
+    private final long[] stamps = new long[TraceStage.values().length];
+
+    /**
+     * Message being traced, once built.
+     */
+    private WebsocketMessage websocketMessage;
+
+    /**
+     * If the trace has been recorded; later stamps (retransmissions) are ignored.
+     */
+    private boolean completed;
+
+    /**
+     * Initializes an instance of <code>MessageTrace</code>, stamping RECEIVED.
+     *
+     * @param id trace ID
+     * @param onComplete recorder of completed traces
+     */
+    public MessageTrace(final long id, final Consumer<MessageTrace> onComplete) {
+        traceId = id;
+        recorder = onComplete;
+        stamp(TraceStage.RECEIVED);
+    }
+
+    /**
+     * Stamps a stage with the current time.
+     *
+     * @param stage TraceStage
+     */
+    public void stamp(final TraceStage stage) {
+        if (!completed) {
+            stamps[stage.ordinal()] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Attaches the trace to the message built for it.
+     *
+     * @param message WebsocketMessage
+     */
+    public void attach(final WebsocketMessage message) {
+        websocketMessage = message;
+        message.setTrace(this);
+    }
+
+    /**
+     * Stamps the final stage and records the trace.
+     */
+    public void complete() {
+        if (completed) {
+            return;
+        }
+        stamp(TraceStage.WRITTEN);
+        completed = true;
+        recorder.accept(this);
+    }
+
+    /**
+     * Time from the first to the last stage reached.
+     *
+     * @return duration (ns)
+     */
+    public long getTotalNanos() {
+        long first = 0;
+        long last = 0;
+        for (final long stamp : stamps) {
+            if (stamp != 0) {
+                if (first == 0) {
+                    first = stamp;
+                }
+                last = stamp;
+            }
+        }
+        return last - first;
+    }
+
+    /**
+     * Builds the report of the trace.
+     *
+     * @return TraceReport
+     */
+    public TraceReport toReport() {
+        final TraceReport traceReport = new TraceReport();
+        traceReport.setTraceId(traceId);
+        traceReport.setStartedAt(startedAt);
+        if (websocketMessage != null) {
+            traceReport.setUserId(websocketMessage.getUserId());
+            traceReport.setEventType(websocketMessage.getEventType());
+        }
+        final Map<TraceStage, Double> stageMillis = new EnumMap<>(TraceStage.class);
+        long previous = 0;
+        for (final TraceStage stage : TraceStage.values()) {
+            final long stamp = stamps[stage.ordinal()];
+            if (stamp == 0) {
+                continue;
+            }
+            if (previous == 0) {
+                stageMillis.put(stage, 0.0);
+            } else {
+                stageMillis.put(stage, (stamp - previous) / NANOS_PER_MILLI);
+            }
+            previous = stamp;
+        }
+        traceReport.setStageMillis(stageMillis);
+        traceReport.setTotalMillis(getTotalNanos() / NANOS_PER_MILLI);
+        return traceReport;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+/**
+ * Where the parameters of a templated WebsocketMessage come from.
+ */
+public enum ParameterSource {
+
+    /**
+     * Event ID.
+     */
+    EVENT,
+
+    /**
+     * User ID.
+     */
+    USER,
+
+    /**
+     * Question ID followed by the quiz ID (when present).
+     */
+    QUESTION_AND_QUIZ,
+
+    /**
+     * User ID followed by the quiz ID (when present).
+     */
+    USER_AND_QUIZ,
+
+    /**
+     * Reference ID supplied by the caller.
+     */
+    REFERENCE,
+
+    /**
+     * No parameters.
+     */
+    NONE
+}
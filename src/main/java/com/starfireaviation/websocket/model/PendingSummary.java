@@ -0,0 +1,49 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queued messages matching a PendingQuery.
+ */
+@Data
+public class PendingSummary {
+
+    /**
+     * Matching messages.
+     */
+    private long messages;
+
+    /**
+     * Users with matching messages.
+     */
+    private int users;
+
+    /**
+     * IDs of users with matching messages, up to the query's limit.
+     */
+    private List<Long> userIds = new ArrayList<>();
+
+    /**
+     * Users whose queues were examined; with an index, only those it points at.
+     */
+    private int examinedUsers;
+}
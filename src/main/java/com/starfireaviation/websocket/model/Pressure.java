@@ -0,0 +1,39 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+/**
+ * Load on the service, as judged by the AdmissionController from heap occupancy, queue depth and drain
+ * lag.
+ */
+public enum Pressure {
+
+    /**
+     * Every handshake is admitted.
+     */
+    NORMAL,
+
+    /**
+     * Close to a limit: handshakes are paced and display updates are coalesced.
+     */
+    ELEVATED,
+
+    /**
+     * Over a limit: handshakes are rejected, queued display updates are compacted and new ones coalesced.
+     */
+    CRITICAL
+}
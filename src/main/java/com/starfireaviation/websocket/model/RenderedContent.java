@@ -0,0 +1,101 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An entity rendered to JSON once and shared by every message which embeds it. Written into messages
+ * as is, so the bytes must never be modified.
+ */
+@Getter
+@JsonSerialize(using = RenderedContent.Serializer.class)
+public final class RenderedContent implements Serializable {
+
+    /**
+     * Default SerialVersionUID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Service of the entity.
+     */
+    private final String service;
+
+    /**
+     * Entity ID.
+     */
+    private final String entityId;
+
+    /**
+     * JSON of the entity, UTF-8. Callers must not modify the returned array.
+     */
+    private final byte[] json;
+
+    /**
+     * Initializes an instance of <code>RenderedContent</code>.
+     *
+     * @param entityService service of the entity
+     * @param id entity ID
+     * @param rendered JSON of the entity, UTF-8
+     */
+    public RenderedContent(final String entityService, final String id, final byte[] rendered) {
+        service = entityService;
+        entityId = id;
+        json = rendered;
+    }
+
+    /**
+     * Writes the rendered JSON as a raw value.
+     */
+    static class Serializer extends StdSerializer<RenderedContent> {
+
+        /**
+         * Default SerialVersionUID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Initializes an instance of <code>Serializer</code>.
+         */
+        Serializer() {
+            super(RenderedContent.class);
+        }
+
+        /**
+         * Writes the rendered JSON.
+         *
+         * @param value RenderedContent
+         * @param gen JsonGenerator
+         * @param provider SerializerProvider
+         * @throws IOException when the JSON cannot be written
+         */
+        @Override
+        public void serialize(final RenderedContent value, final JsonGenerator gen, final SerializerProvider provider)
+                throws IOException {
+            gen.writeRawValue(new String(value.json, StandardCharsets.UTF_8));
+        }
+    }
+}
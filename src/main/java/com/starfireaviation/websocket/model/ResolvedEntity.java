@@ -0,0 +1,63 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Getter;
+
+/**
+ * An entity looked up to be embedded, with the version its service reports for it, or word that the
+ * entity still has the version already rendered.
+ */
+@Getter
+public final class ResolvedEntity {
+
+    /**
+     * The entity still has the version asked about.
+     */
+    public static final ResolvedEntity UNCHANGED = new ResolvedEntity(null, null);
+
+    /**
+     * The entity, null when there is none to embed.
+     */
+    private final Object entity;
+
+    /**
+     * Version of the entity, for example an ETag; null when its service does not report one.
+     */
+    private final String version;
+
+    /**
+     * Initializes an instance of <code>ResolvedEntity</code>.
+     *
+     * @param resolved the entity, null when there is none to embed
+     * @param entityVersion version of the entity, null when unknown
+     */
+    public ResolvedEntity(final Object resolved, final String entityVersion) {
+        entity = resolved;
+        version = entityVersion;
+    }
+
+    /**
+     * Determines if the entity still has the version asked about.
+     *
+     * @return if unchanged
+     */
+    public boolean isUnchanged() {
+        return this == UNCHANGED;
+    }
+}
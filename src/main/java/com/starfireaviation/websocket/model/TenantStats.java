@@ -0,0 +1,82 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.model;
+
+import lombok.Data;
+
+/**
+ * Queue and drain counters of one organization's shard.
+ */
+@Data
+public class TenantStats {
+
+    /**
+     * Organization.
+     */
+    private String organization;
+
+    /**
+     * Weight, scaling the shard's drain workers and rate limit.
+     */
+    private int weight;
+
+    /**
+     * Drain workers, 0 when messages are delivered on the sending thread.
+     */
+    private int drainWorkers;
+
+    /**
+     * Messages per second delivered, 0 for no limit.
+     */
+    private long rateLimit;
+
+    /**
+     * Users with queued messages.
+     */
+    private int queuedUsers;
+
+    /**
+     * Messages queued.
+     */
+    private long queuedMessages;
+
+    /**
+     * Users waiting for a drain worker.
+     */
+    private int pendingUsers;
+
+    /**
+     * Time (ms) the longest waiting user has waited for a drain worker.
+     */
+    private long drainLagMillis;
+
+    /**
+     * Messages enqueued so far.
+     */
+    private long enqueued;
+
+    /**
+     * Messages drained for delivery so far.
+     */
+    private long drained;
+
+    /**
+     * Times a drain worker waited for the rate limit.
+     */
+    private long throttled;
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+import com.starfireaviation.model.NotificationEventType;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * A completed message trace, with the time spent reaching each stage from the previous one.
+ */
+@Data
+public class TraceReport {
+
+    /**
+     * Trace ID.
+     */
+    private long traceId;
+
+    /**
+     * User the message was for.
+     */
+    private Long userId;
+
+    /**
+     * NotificationEventType.
+     */
+    private NotificationEventType eventType;
+
+    /**
+     * Wall clock time (epoch ms) the trace started.
+     */
+    private long startedAt;
+
+    /**
+     * Time (ms) from the first to the last stage.
+     */
+    private double totalMillis;
+
+    /**
+     * Time (ms) to reach each stage from the previous one, in stage order.
+     */
+    private Map<TraceStage, Double> stageMillis;
+}
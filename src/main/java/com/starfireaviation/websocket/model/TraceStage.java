@@ -0,0 +1,63 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.model;
+
+/**
+ * Stages a traced message is stamped at, in the order it passes through them.
+ */
+public enum TraceStage {
+
+    /**
+     * Entered the service: read by bulk ingestion, or passed to MessageService.
+     */
+    RECEIVED,
+
+    /**
+     * Ingested record decoded.
+     */
+    DECODED,
+
+    /**
+     * User and entities looked up through the MessageResolver.
+     */
+    LOOKED_UP,
+
+    /**
+     * WebsocketMessage built from its template.
+     */
+    BUILT,
+
+    /**
+     * Added to the user's queue.
+     */
+    ENQUEUED,
+
+    /**
+     * Taken from the queue for delivery.
+     */
+    DEQUEUED,
+
+    /**
+     * Encoded into the session's send buffer.
+     */
+    ENCODED,
+
+    /**
+     * Written to the connection.
+     */
+    WRITTEN
+}
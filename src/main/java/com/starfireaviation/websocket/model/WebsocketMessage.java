@@ -16,8 +16,12 @@
 
 package com.starfireaviation.websocket.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.starfireaviation.model.NotificationEventType;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.io.Serializable;
 import java.time.Instant;
@@ -64,4 +68,25 @@ public class WebsocketMessage implements Serializable {
      */
     private Instant timestamp;
 
+    /**
+     * The entity the message is about, when inline payloads are enabled and it could be rendered.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @ToString.Exclude
+    private RenderedContent payload;
+
+    /**
+     * Per-session ID the client acknowledges; only set for at-least-once delivery.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long messageId;
+
+    /**
+     * Stage trace, when the message is sampled for tracing.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient MessageTrace trace;
+
 }
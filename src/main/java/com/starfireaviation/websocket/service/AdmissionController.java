@@ -0,0 +1,241 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.AdmissionStats;
+import com.starfireaviation.websocket.model.Pressure;
+import com.starfireaviation.websocket.util.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether new connections are admitted. A sampler thread compares heap occupancy, the messages
+ * queued and the drain lag with their limits and derives the Pressure from the one closest to its
+ * limit. Under elevated pressure handshakes are paced and low priority messages coalesced; under
+ * critical pressure all but a trickle of handshakes are rejected with a retry-after hint, queued low
+ * priority messages are compacted and new ones still coalesced, never dropped. Existing connections are
+ * never closed: shedding new ones is what keeps them served, and the trickle lets the users whose queues
+ * hold the backlog come back for it.
+ */
+@Slf4j
+public class AdmissionController implements AutoCloseable {
+
+    /**
+     * Admission properties.
+     */
+    private final ApplicationProperties.Admission admission;
+
+    /**
+     * Source of the queue signals, told the pressure so it can shed low priority messages.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Paces handshakes under elevated pressure.
+     */
+    private final RateLimiter elevatedLimiter;
+
+    /**
+     * Paces handshakes under critical pressure.
+     */
+    private final RateLimiter criticalLimiter;
+
+    /**
+     * Old generation (the heap pool which supports usage thresholds), null when there is none.
+     */
+    private final MemoryPoolMXBean oldGeneration;
+
+    /**
+     * Sampler thread.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Handshakes admitted.
+     */
+    private final AtomicLong admitted = new AtomicLong();
+
+    /**
+     * Handshakes rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Pressure at the last sample.
+     */
+    private volatile Pressure pressure = Pressure.NORMAL;
+
+    /**
+     * Heap occupancy at the last sample.
+     */
+    private volatile double heapOccupancy;
+
+    /**
+     * Queued messages at the last sample.
+     */
+    private volatile long queuedMessages;
+
+    /**
+     * Drain lag (ms) at the last sample.
+     */
+    private volatile long drainLagMillis;
+
+    /**
+     * Initializes and starts an <code>AdmissionController</code>.
+     *
+     * @param admissionProperties admission properties
+     * @param owner MessageService
+     */
+    public AdmissionController(final ApplicationProperties.Admission admissionProperties, final MessageService owner) {
+        admission = admissionProperties;
+        messageService = owner;
+        elevatedLimiter = new RateLimiter(admission.getElevatedHandshakeRate());
+        criticalLimiter = new RateLimiter(admission.getCriticalHandshakeRate());
+        MemoryPoolMXBean tenured = null;
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()) {
+                tenured = pool;
+            }
+        }
+        oldGeneration = tenured;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "admission-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::sample, 0, admission.getSampleInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Decides whether to admit a new connection.
+     *
+     * @return 0 to admit, otherwise the seconds after which the client should retry
+     */
+    public int admit() {
+        final Pressure current = pressure;
+        if (!admission.isEnabled() || current == Pressure.NORMAL
+                || current == Pressure.ELEVATED && elevatedLimiter.take(1) == 1
+                || current == Pressure.CRITICAL && admission.getCriticalHandshakeRate() > 0
+                && criticalLimiter.take(1) == 1) {
+            admitted.incrementAndGet();
+            return 0;
+        }
+        rejected.incrementAndGet();
+        return admission.getRetryAfter() + ThreadLocalRandom.current().nextInt(admission.getRetryAfter() + 1);
+    }
+
+    /**
+     * Current pressure.
+     *
+     * @return Pressure at the last sample
+     */
+    public Pressure getPressure() {
+        return pressure;
+    }
+
+    /**
+     * Signals at the last sample and admission counters.
+     *
+     * @return AdmissionStats
+     */
+    public AdmissionStats getStats() {
+        final AdmissionStats stats = new AdmissionStats();
+        stats.setPressure(pressure);
+        stats.setHeapOccupancy(heapOccupancy);
+        stats.setQueuedMessages(queuedMessages);
+        stats.setDrainLagMillis(drainLagMillis);
+        stats.setAdmitted(admitted.get());
+        stats.setRejected(rejected.get());
+        stats.setShedMessages(messageService.getShedCount());
+        return stats;
+    }
+
+    /**
+     * Stops the sampler thread.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Samples the signals and updates the pressure. Signals are only sampled (and pressure stays normal)
+     * when admission control is disabled.
+     */
+    void sample() {
+        try {
+            heapOccupancy = heapOccupancy();
+            queuedMessages = messageService.getQueuedMessages();
+            drainLagMillis = TimeUnit.NANOSECONDS.toMillis(messageService.getDrainLag());
+            if (!admission.isEnabled()) {
+                return;
+            }
+            final double ratio = Math.max(heapOccupancy / admission.getMaxHeapOccupancy(),
+                    Math.max((double) queuedMessages / admission.getMaxQueuedMessages(),
+                            (double) drainLagMillis / admission.getMaxDrainLag()));
+            Pressure next = Pressure.NORMAL;
+            if (ratio >= 1) {
+                next = Pressure.CRITICAL;
+            } else if (ratio >= admission.getElevatedRatio()) {
+                next = Pressure.ELEVATED;
+            }
+            if (next != pressure) {
+                log.info("Pressure {} -> {} (heap {}, queued {}, drain lag {} ms)", pressure, next,
+                        String.format("%.2f", heapOccupancy), queuedMessages, drainLagMillis);
+                pressure = next;
+                messageService.setPressure(next);
+                if (next == Pressure.CRITICAL) {
+                    log.info("Compacted {} queued display updates", messageService.compactQueues());
+                }
+            }
+        } catch (RuntimeException re) {
+            log.warn("Admission sample failed: {}", re.getMessage(), re);
+        }
+    }
+
+    /**
+     * Occupancy of the old generation by the objects which survived its last collection, or of the whole
+     * heap when that is not known. Current usage would count the garbage promoted since, and so climb to
+     * critical between collections while the heap is mostly garbage. Until the old generation has been
+     * collected once there is no such figure (it reads 0), so current usage stands in for it.
+     *
+     * @return occupancy, 0 to 1
+     */
+    private double heapOccupancy() {
+        if (oldGeneration != null) {
+            MemoryUsage usage = oldGeneration.getCollectionUsage();
+            if (usage == null || usage.getUsed() == 0) {
+                usage = oldGeneration.getUsage();
+            }
+            if (usage.getMax() > 0) {
+                return (double) usage.getUsed() / usage.getMax();
+            }
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.util.TimerWheel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Flush timer and adaptive window of a session which batches its messages. The window doubles (up to
+ * the max) each time a flush packs several messages, and halves each time a flush finds only one, so a
+ * lightly loaded session settles at no window at all and writes each message at once. A session which
+ * has been idle for longer than the max window starts again from no window. Guarded by the owning
+ * DeliverySession.
+ */
+class BatchFlush extends TimerWheel.Timeout {
+
+    /**
+     * Session to flush.
+     */
+    private final DeliverySession deliverySession;
+
+    /**
+     * Longest window (ms).
+     */
+    private final long maxWindow;
+
+    /**
+     * Current window (ms); 0 writes at once.
+     */
+    @Getter
+    private long window;
+
+    /**
+     * If a flush is scheduled.
+     */
+    @Getter
+    @Setter
+    private boolean scheduled;
+
+    /**
+     * Time (ms) of the last flush.
+     */
+    private long lastFlush;
+
+    /**
+     * Initializes an instance of <code>BatchFlush</code>.
+     *
+     * @param session DeliverySession
+     * @param max longest window (ms)
+     */
+    BatchFlush(final DeliverySession session, final long max) {
+        deliverySession = session;
+        maxWindow = max;
+    }
+
+    /**
+     * Delay before flushing a message buffered now into an idle session.
+     *
+     * @param now current time (ms)
+     * @return delay (ms), 0 to write at once
+     */
+    long delay(final long now) {
+        if (now - lastFlush > maxWindow) {
+            window = 0;
+        }
+        return window;
+    }
+
+    /**
+     * Adapts the window to how many messages a flush packed.
+     *
+     * @param messages messages in the flushed frame
+     * @param now current time (ms)
+     */
+    void flushed(final int messages, final long now) {
+        lastFlush = now;
+        if (messages > 1) {
+            window = Math.min(maxWindow, Math.max(1, window * 2));
+        } else {
+            window = window / 2;
+        }
+    }
+
+    /**
+     * Hands the expired timer back to its session for flushing.
+     */
+    @Override
+    protected void expire() {
+        deliverySession.onFlushTimeout();
+    }
+}
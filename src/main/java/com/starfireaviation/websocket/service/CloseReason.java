@@ -0,0 +1,71 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.config.CommonConstants;
+import lombok.Getter;
+
+/**
+ * Why DeliveryService closes a DeliveryChannel, with the WebSocket close code and reason each transport
+ * sends.
+ */
+public enum CloseReason {
+
+    /**
+     * The user opened a newer session.
+     */
+    REPLACED(CommonConstants.CLOSE_NORMAL, "Replaced by a newer session"),
+
+    /**
+     * Sends or pings failed, or messages went unacknowledged after every retransmission.
+     */
+    NOT_RELIABLE(CommonConstants.CLOSE_SESSION_NOT_RELIABLE, null),
+
+    /**
+     * No inbound frame or pong within the heartbeat timeout.
+     */
+    HEARTBEAT_TIMEOUT(CommonConstants.CLOSE_SESSION_NOT_RELIABLE, "Heartbeat timeout"),
+
+    /**
+     * The send buffer overflowed, or a write exceeded the send deadline.
+     */
+    SLOW_CONSUMER(CommonConstants.CLOSE_SESSION_NOT_RELIABLE, "Slow consumer");
+
+    /**
+     * WebSocket close code.
+     */
+    @Getter
+    private final int code;
+
+    /**
+     * Close reason sent to the client, null for none.
+     */
+    @Getter
+    private final String reason;
+
+    /**
+     * Initializes a <code>CloseReason</code>.
+     *
+     * @param closeCode WebSocket close code
+     * @param closeReason close reason sent to the client, null for none
+     */
+    CloseReason(final int closeCode, final String closeReason) {
+        code = closeCode;
+        reason = closeReason;
+    }
+}
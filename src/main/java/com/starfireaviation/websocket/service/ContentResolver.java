@@ -0,0 +1,53 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.model.ResolvedEntity;
+
+import java.io.IOException;
+
+/**
+ * Looks up the entities notifications are about, so they can be embedded in the messages.
+ */
+@FunctionalInterface
+public interface ContentResolver {
+
+    /**
+     * Looks up an entity.
+     *
+     * @param service service of the entity, for example QUESTION
+     * @param entityId entity ID
+     * @return the entity, rendered to JSON with Jackson, or null when there is none to embed
+     * @throws IOException when the entity cannot be looked up
+     */
+    Object resolve(String service, String entityId) throws IOException;
+
+    /**
+     * Looks up an entity unless it still has the version already rendered. Resolvers which cannot tell
+     * the version look the entity up every time, and the rendering is replaced once it is too old.
+     *
+     * @param service service of the entity, for example QUESTION
+     * @param entityId entity ID
+     * @param version version of the rendering held, null when there is none
+     * @return ResolvedEntity, or ResolvedEntity.UNCHANGED when the entity still has that version
+     * @throws IOException when the entity cannot be looked up
+     */
+    default ResolvedEntity resolve(final String service, final String entityId, final String version)
+            throws IOException {
+        return new ResolvedEntity(resolve(service, entityId), null);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Transport-neutral connection to a client, used by DeliveryService to deliver messages. Sends on a
+ * channel are serialized by the DeliverySession which owns it, with at most one send outstanding.
+ */
+public interface DeliveryChannel {
+
+    /**
+     * Identifier of the underlying connection, for logging.
+     *
+     * @return ID
+     */
+    String getId();
+
+    /**
+     * Determines if the channel can still send.
+     *
+     * @return if open
+     */
+    boolean isOpen();
+
+    /**
+     * Determines if the client asked for messages to be batched into JSON array frames.
+     *
+     * @return if batching
+     */
+    default boolean isBatching() {
+        return false;
+    }
+
+    /**
+     * Starts sending an encoded message as a text frame. The callback runs once the frame has been
+     * written to the connection, possibly on the calling thread. The payload buffer is pooled: the
+     * channel may read it, without copying, until the callback runs but must not keep it afterwards.
+     *
+     * @param payload UTF-8 JSON, a message or an array of messages, from position to limit
+     * @param callback SendCallback
+     * @throws IOException when the send cannot be started
+     */
+    void send(ByteBuffer payload, SendCallback callback) throws IOException;
+
+    /**
+     * Sends a ping frame, which the client answers with a pong.
+     *
+     * @throws IOException when the frame cannot be sent
+     */
+    void ping() throws IOException;
+
+    /**
+     * Closes the channel.
+     *
+     * @param closeReason CloseReason
+     * @throws IOException when the channel cannot be closed cleanly
+     */
+    void close(CloseReason closeReason) throws IOException;
+
+    /**
+     * Completion of a send.
+     */
+    @FunctionalInterface
+    interface SendCallback {
+
+        /**
+         * Called when a send completes.
+         *
+         * @param failure cause of the failure, null on success
+         */
+        void onComplete(Throwable failure);
+    }
+}
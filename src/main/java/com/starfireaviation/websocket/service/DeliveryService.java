@@ -0,0 +1,800 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.jfr.DeliveryDrainEvent;
+import com.starfireaviation.websocket.model.DeliveryStats;
+import com.starfireaviation.websocket.model.TraceStage;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.util.DirectBufferPool;
+import com.starfireaviation.websocket.util.PresenceIndex;
+import com.starfireaviation.websocket.util.TimerWheel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers queued messages to the live session of each user, over whichever transport it connected
+ * with. Each session has a bounded send buffer with one write outstanding, so a slow consumer only
+ * backs up itself; when its buffer fills, the slow-consumer policy applies. Event types configured for
+ * at-least-once delivery are held in the session's in-flight window until acknowledged and are
+ * retransmitted from a shared timer wheel. Sessions which stop answering heartbeats are reaped. Sessions
+ * which opted in to batching have their messages packed into array frames, flushed after an adaptive
+ * window or once a batch is full.
+ */
+@Slf4j
+public class DeliveryService implements PendingMessageListener, AutoCloseable {
+
+    /**
+     * MessageService.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Event types delivered at-least-once.
+     */
+    private final Set<NotificationEventType> atLeastOnceTypes = EnumSet.noneOf(NotificationEventType.class);
+
+    /**
+     * Time (ms) to wait for an acknowledgement.
+     */
+    private final long ackTimeout;
+
+    /**
+     * Retransmissions before a session is considered dead.
+     */
+    private final int maxRetransmits;
+
+    /**
+     * Max unacknowledged messages per session.
+     */
+    private final int inFlightWindow;
+
+    /**
+     * Retransmission timers.
+     */
+    private final TimerWheel timerWheel;
+
+    /**
+     * Live sessions by user ID.
+     */
+    private final Map<Long, DeliverySession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Users with a live session, the compact key set of the sessions which shards check before
+     * scheduling a delivery.
+     */
+    private final PresenceIndex presence = new PresenceIndex();
+
+    /**
+     * What happens to the queue of a reaped session.
+     */
+    private final ApplicationProperties.ReapPolicy reapPolicy;
+
+    /**
+     * Heartbeat sweeper, null when heartbeats are disabled.
+     */
+    private final HeartbeatSweeper heartbeatSweeper;
+
+    /**
+     * Sessions reaped for missing heartbeats.
+     */
+    private final AtomicLong reapedCount = new AtomicLong();
+
+    /**
+     * Send buffer properties.
+     */
+    private final ApplicationProperties.SendBuffer sendBuffer;
+
+    /**
+     * Sessions whose send buffer has overflowed and not yet drained.
+     */
+    private final AtomicInteger slowConsumerCount = new AtomicInteger();
+
+    /**
+     * Messages dropped or coalesced away from send buffers.
+     */
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    /**
+     * Sessions disconnected as slow consumers.
+     */
+    private final AtomicLong slowDisconnectCount = new AtomicLong();
+
+    /**
+     * Buffers messages are encoded into, shared by all sessions.
+     */
+    private final DirectBufferPool bufferPool;
+
+    /**
+     * Batching properties.
+     */
+    private final ApplicationProperties.Batching batching;
+
+    /**
+     * Batch flush timers, null when batching is disabled.
+     */
+    private final TimerWheel batchTimer;
+
+    /**
+     * Buffers batches are packed into, null when batching is disabled.
+     */
+    private final DirectBufferPool batchPool;
+
+    /**
+     * Frames written, batches counting once.
+     */
+    private final AtomicLong framesWritten = new AtomicLong();
+
+    /**
+     * Messages written, alone or in batches.
+     */
+    private final AtomicLong messagesWritten = new AtomicLong();
+
+    /**
+     * Initializes an instance of <code>DeliveryService</code> without batching.
+     *
+     * @param service MessageService
+     * @param delivery delivery properties
+     * @param heartbeat heartbeat properties
+     * @param sendBufferProperties send buffer properties
+     */
+    public DeliveryService(final MessageService service, final ApplicationProperties.Delivery delivery,
+                           final ApplicationProperties.Heartbeat heartbeat,
+                           final ApplicationProperties.SendBuffer sendBufferProperties) {
+        this(service, delivery, heartbeat, sendBufferProperties, new ApplicationProperties.Batching());
+    }
+
+    /**
+     * Initializes an instance of <code>DeliveryService</code>.
+     *
+     * @param service MessageService
+     * @param delivery delivery properties
+     * @param heartbeat heartbeat properties
+     * @param sendBufferProperties send buffer properties
+     * @param batchingProperties batching properties
+     */
+    public DeliveryService(final MessageService service, final ApplicationProperties.Delivery delivery,
+                           final ApplicationProperties.Heartbeat heartbeat,
+                           final ApplicationProperties.SendBuffer sendBufferProperties,
+                           final ApplicationProperties.Batching batchingProperties) {
+        messageService = service;
+        batching = batchingProperties;
+        if (batchingProperties.isEnabled()) {
+            batchTimer = new TimerWheel("batch-timer", CommonConstants.BATCH_TIMER_WHEEL_SIZE,
+                    batchingProperties.getTimerTick());
+            batchPool = new DirectBufferPool(batchingProperties.getMaxBytes(),
+                    CommonConstants.DEFAULT_BATCH_BUFFER_POOL_SIZE);
+        } else {
+            batchTimer = null;
+            batchPool = null;
+        }
+        sendBuffer = sendBufferProperties;
+        bufferPool = new DirectBufferPool(sendBufferProperties.getEncodeBufferSize(),
+                sendBufferProperties.getEncodeBufferPoolSize());
+        atLeastOnceTypes.addAll(delivery.getAtLeastOnceTypes());
+        ackTimeout = delivery.getAckTimeout();
+        maxRetransmits = delivery.getMaxRetransmits();
+        inFlightWindow = delivery.getInFlightWindow();
+        timerWheel = new TimerWheel("retransmit-timer", delivery.getTimerWheelSize(), delivery.getTimerTick());
+        reapPolicy = heartbeat.getReapPolicy();
+        if (heartbeat.isEnabled()) {
+            heartbeatSweeper = new HeartbeatSweeper(this, heartbeat.getBuckets(), heartbeat.getInterval(),
+                    heartbeat.getTimeout());
+        } else {
+            heartbeatSweeper = null;
+        }
+    }
+
+    /**
+     * Registers the live session of a user and delivers anything queued for them. A newer session
+     * replaces (and closes) an older one.
+     *
+     * @param userId User ID
+     * @param channel DeliveryChannel
+     */
+    public void register(final Long userId, final DeliveryChannel channel) {
+        register(userId, null, channel);
+    }
+
+    /**
+     * Registers the live session of a user of an organization and delivers anything queued for them.
+     * A newer session replaces (and closes) an older one.
+     *
+     * @param userId User ID
+     * @param organization organization, null to keep the user's current one
+     * @param channel DeliveryChannel
+     */
+    public void register(final Long userId, final String organization, final DeliveryChannel channel) {
+        if (organization != null) {
+            messageService.assignOrganization(userId, organization);
+        }
+        final DeliverySession deliverySession = new DeliverySession(userId, channel, this, inFlightWindow, sendBuffer);
+        if (batchTimer != null && channel.isBatching()) {
+            deliverySession.batch(batching.getMaxWindow());
+        }
+        final DeliverySession previous = sessions.put(userId, deliverySession);
+        // Present before draining, so a message queued meanwhile is either drained here or scheduled
+        presence.add(userId);
+        if (heartbeatSweeper != null) {
+            heartbeatSweeper.add(deliverySession);
+        }
+        if (previous != null && previous.getChannel() != channel) {
+            removed(previous);
+            close(previous.getChannel(), CloseReason.REPLACED);
+        }
+        onPending(userId);
+    }
+
+    /**
+     * Unregisters the session of a user, requeueing its unacknowledged messages.
+     *
+     * @param userId User ID
+     * @param channel DeliveryChannel
+     */
+    public void unregister(final Long userId, final DeliveryChannel channel) {
+        final DeliverySession deliverySession = sessions.get(userId);
+        if (deliverySession != null && deliverySession.getChannel() == channel
+                && removeSession(deliverySession)) {
+            removed(deliverySession);
+        }
+    }
+
+    /**
+     * Records inbound activity on a user's session, postponing its heartbeat deadline.
+     *
+     * @param userId User ID
+     * @param channel DeliveryChannel the frame arrived on
+     */
+    public void touch(final Long userId, final DeliveryChannel channel) {
+        final DeliverySession deliverySession = sessions.get(userId);
+        if (deliverySession != null && deliverySession.getChannel() == channel) {
+            deliverySession.touch();
+        }
+    }
+
+    /**
+     * Handles a client acknowledgement, freeing room in the in-flight window.
+     *
+     * @param userId User ID
+     * @param messageId acknowledged message ID
+     */
+    public void acknowledge(final Long userId, final long messageId) {
+        final DeliverySession deliverySession = sessions.get(userId);
+        if (deliverySession == null) {
+            return;
+        }
+        final InFlightMessage inFlightMessage = deliverySession.acknowledge(messageId);
+        if (inFlightMessage != null) {
+            timerWheel.cancel(inFlightMessage);
+            onPending(userId);
+        }
+    }
+
+    /**
+     * Delivers the queued messages of a user, if the user has a live session.
+     *
+     * @param userId User ID
+     */
+    @Override
+    public void onPending(final Long userId) {
+        final DeliverySession deliverySession = sessions.get(userId);
+        if (deliverySession == null || !deliverySession.getChannel().isOpen()) {
+            return;
+        }
+        synchronized (deliverySession) {
+            final DeliveryDrainEvent drainEvent = new DeliveryDrainEvent();
+            drainEvent.begin();
+            final List<WebsocketMessage> pending = messageService.drain(userId);
+            final SendBuffer buffer = deliverySession.getSendBuffer();
+            // A batching session packs the whole drain, so writes are held until it is buffered
+            final boolean hold = deliverySession.getBatchFlush() != null && !buffer.isDraining();
+            if (hold) {
+                buffer.setDraining(true);
+            }
+            try {
+                drainPending(deliverySession, pending);
+            } finally {
+                if (hold) {
+                    buffer.setDraining(false);
+                    flush(deliverySession);
+                }
+                drainEvent.complete(userId, pending.size(), deliverySession.getSendBuffer().size(),
+                        deliverySession.getSendBuffer().getBytes());
+            }
+        }
+    }
+
+    /**
+     * Moves drained messages to a session's send buffer, requeueing those the in-flight window has no
+     * room for and disconnecting the session if the buffer overflows.
+     *
+     * @param deliverySession DeliverySession, locked by the caller
+     * @param pending drained messages, oldest first
+     */
+    private void drainPending(final DeliverySession deliverySession, final List<WebsocketMessage> pending) {
+        final Long userId = deliverySession.getUserId();
+        for (int i = 0; i < pending.size(); i++) {
+            final WebsocketMessage websocketMessage = pending.get(i);
+            if (websocketMessage.getTrace() != null) {
+                websocketMessage.getTrace().stamp(TraceStage.DEQUEUED);
+            }
+            if (atLeastOnceTypes.contains(websocketMessage.getEventType())) {
+                if (!deliverySession.hasWindowCapacity()) {
+                    // Resumes when an acknowledgement frees room in the window
+                    messageService.requeue(userId, pending.subList(i, pending.size()));
+                    return;
+                }
+                timerWheel.schedule(deliverySession.track(websocketMessage), ackTimeout);
+                if (!enqueue(deliverySession, websocketMessage)) {
+                    disconnectSlow(deliverySession, pending.subList(i + 1, pending.size()));
+                    return;
+                }
+            } else if (!enqueue(deliverySession, websocketMessage)) {
+                disconnectSlow(deliverySession, pending.subList(i, pending.size()));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retransmits a message which was not acknowledged in time, or gives up on the session once the
+     * retransmissions are exhausted.
+     *
+     * @param inFlightMessage InFlightMessage
+     */
+    void retransmit(final InFlightMessage inFlightMessage) {
+        final DeliverySession deliverySession = inFlightMessage.getDeliverySession();
+        synchronized (deliverySession) {
+            if (!deliverySession.isInFlight(inFlightMessage)) {
+                return;
+            }
+            if (inFlightMessage.incrementAttempts() > maxRetransmits + 1) {
+                log.warn("User {} did not acknowledge message {} after {} retransmissions, closing session",
+                        deliverySession.getUserId(), inFlightMessage.getWebsocketMessage().getMessageId(),
+                        maxRetransmits);
+                fail(deliverySession, List.of(), CloseReason.NOT_RELIABLE);
+                return;
+            }
+            timerWheel.schedule(inFlightMessage, ackTimeout);
+            if (deliverySession.getSendBuffer().contains(inFlightMessage.getWebsocketMessage())) {
+                // Still waiting to be written the first time
+                return;
+            }
+            if (!enqueue(deliverySession, inFlightMessage.getWebsocketMessage())) {
+                disconnectSlow(deliverySession, List.of());
+            }
+        }
+    }
+
+    /**
+     * Pings a session on behalf of the heartbeat sweeper.
+     *
+     * @param deliverySession DeliverySession
+     */
+    void ping(final DeliverySession deliverySession) {
+        synchronized (deliverySession) {
+            final SendBuffer buffer = deliverySession.getSendBuffer();
+            if (buffer.isStalled(System.currentTimeMillis(), sendBuffer.getSendDeadline())) {
+                disconnectSlow(deliverySession, List.of());
+                return;
+            }
+            if (buffer.isWriting()) {
+                // Busy; the write deadline covers liveness until it completes
+                return;
+            }
+            try {
+                deliverySession.getChannel().ping();
+            } catch (IOException | RuntimeException e) {
+                log.debug("Unable to ping user {}: {}", deliverySession.getUserId(), e.getMessage());
+                fail(deliverySession, List.of(), CloseReason.NOT_RELIABLE);
+            }
+        }
+    }
+
+    /**
+     * Reaps a session which missed its heartbeat deadline. Its queue is kept for the next session of
+     * the user, or discarded, according to the reap policy.
+     *
+     * @param deliverySession DeliverySession
+     */
+    void reap(final DeliverySession deliverySession) {
+        final Long userId = deliverySession.getUserId();
+        log.debug("Reaping session {} of user {} after missed heartbeats",
+                deliverySession.getChannel().getId(), userId);
+        synchronized (deliverySession) {
+            if (removeSession(deliverySession)) {
+                reapedCount.incrementAndGet();
+                removed(deliverySession);
+                if (reapPolicy == ApplicationProperties.ReapPolicy.DISCARD) {
+                    messageService.discard(userId);
+                }
+            } else if (heartbeatSweeper != null) {
+                heartbeatSweeper.remove(deliverySession);
+            }
+        }
+        close(deliverySession.getChannel(), CloseReason.HEARTBEAT_TIMEOUT);
+    }
+
+    /**
+     * Number of live sessions.
+     *
+     * @return session count
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Determines if a user has a live session, without looking the session up.
+     *
+     * @param userId User ID
+     * @return if the user is online
+     */
+    @Override
+    public boolean isOnline(final Long userId) {
+        return presence.contains(userId);
+    }
+
+    /**
+     * Users with a live session, for example to split the subscribers of a topic into those to deliver
+     * to and those to keep messages for.
+     *
+     * @return PresenceIndex
+     */
+    public PresenceIndex getPresence() {
+        return presence;
+    }
+
+    /**
+     * Snapshot of the delivery counters.
+     *
+     * @return DeliveryStats
+     */
+    public DeliveryStats getStats() {
+        final DeliveryStats stats = new DeliveryStats();
+        stats.setSessions(getSessionCount());
+        stats.setPresenceBytes(presence.getSizeInBytes());
+        stats.setSlowConsumers(getSlowConsumerCount());
+        stats.setDiscardedMessages(getDiscardedCount());
+        stats.setSlowDisconnects(getSlowDisconnectCount());
+        stats.setReapedSessions(getReapedCount());
+        stats.setEncodeBuffersAllocated(bufferPool.getAllocatedCount());
+        stats.setEncodeBuffersPooled(bufferPool.getPooledCount());
+        stats.setFramesWritten(framesWritten.get());
+        stats.setMessagesWritten(messagesWritten.get());
+        return stats;
+    }
+
+    /**
+     * Number of sessions currently classified as slow consumers: their send buffer has overflowed and
+     * has not yet drained.
+     *
+     * @return slow consumer count
+     */
+    public int getSlowConsumerCount() {
+        return slowConsumerCount.get();
+    }
+
+    /**
+     * Number of messages dropped or coalesced away from slow consumers' send buffers.
+     *
+     * @return discarded count
+     */
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    /**
+     * Number of sessions disconnected as slow consumers.
+     *
+     * @return slow disconnect count
+     */
+    public long getSlowDisconnectCount() {
+        return slowDisconnectCount.get();
+    }
+
+    /**
+     * Number of sessions reaped for missing heartbeats.
+     *
+     * @return reaped count
+     */
+    public long getReapedCount() {
+        return reapedCount.get();
+    }
+
+    /**
+     * Flushes a batching session whose window has ended.
+     *
+     * @param deliverySession DeliverySession
+     */
+    void flushBatch(final DeliverySession deliverySession) {
+        synchronized (deliverySession) {
+            deliverySession.getBatchFlush().setScheduled(false);
+            writeNext(deliverySession);
+        }
+    }
+
+    /**
+     * Stops the retransmission and batch timers and the heartbeat sweeper.
+     */
+    @Override
+    public void close() {
+        timerWheel.close();
+        if (batchTimer != null) {
+            batchTimer.close();
+        }
+        if (heartbeatSweeper != null) {
+            heartbeatSweeper.close();
+        }
+    }
+
+    /**
+     * Adds a message to a session's send buffer and starts writing it if the session is idle. Called
+     * with the session locked.
+     *
+     * @param deliverySession DeliverySession
+     * @param websocketMessage WebsocketMessage
+     * @return false when the session is gone or must be disconnected as a slow consumer
+     */
+    private boolean enqueue(final DeliverySession deliverySession, final WebsocketMessage websocketMessage) {
+        final SendBuffer buffer = deliverySession.getSendBuffer();
+        if (buffer.isClosed() || buffer.isStalled(System.currentTimeMillis(), sendBuffer.getSendDeadline())) {
+            return false;
+        }
+        final boolean wasSlow = buffer.isSlow();
+        final long discarded = buffer.getDiscarded();
+        final SendBuffer.OfferResult result = buffer.offer(new OutboundFrame(websocketMessage, bufferPool));
+        discardedCount.addAndGet(buffer.getDiscarded() - discarded);
+        if (!wasSlow && buffer.isSlow()) {
+            slowConsumerCount.incrementAndGet();
+            log.debug("User {} is a slow consumer ({} bytes buffered)", deliverySession.getUserId(),
+                    buffer.getBytes());
+        }
+        if (result == SendBuffer.OfferResult.OVERFLOW) {
+            return false;
+        }
+        flush(deliverySession);
+        return true;
+    }
+
+    /**
+     * Starts writing a session's buffered frames, or, for a batching session, schedules the write at the
+     * end of its window unless the batch is already full. Called with the session locked.
+     *
+     * @param deliverySession DeliverySession
+     */
+    private void flush(final DeliverySession deliverySession) {
+        final BatchFlush batchFlush = deliverySession.getBatchFlush();
+        final SendBuffer buffer = deliverySession.getSendBuffer();
+        if (batchFlush == null || buffer.isWriting() || buffer.isDraining()) {
+            // Anything buffered behind an outstanding write goes out when it completes
+            writeNext(deliverySession);
+            return;
+        }
+        if (batchFlush.isScheduled()) {
+            if (buffer.size() >= batching.getMaxMessages() || buffer.getBytes() >= batching.getMaxBytes()) {
+                batchTimer.cancel(batchFlush);
+                batchFlush.setScheduled(false);
+                writeNext(deliverySession);
+            }
+            return;
+        }
+        final long delay = batchFlush.delay(System.currentTimeMillis());
+        if (delay > 0) {
+            batchFlush.setScheduled(true);
+            batchTimer.schedule(batchFlush, delay);
+        } else {
+            writeNext(deliverySession);
+        }
+    }
+
+    /**
+     * Starts writing the next frame, packing a batching session's buffered frames into one.
+     *
+     * @param deliverySession DeliverySession
+     * @return frame to write, or null
+     */
+    private OutboundFrame startWrite(final DeliverySession deliverySession) {
+        final long now = System.currentTimeMillis();
+        final BatchFlush batchFlush = deliverySession.getBatchFlush();
+        final OutboundFrame frame;
+        if (batchFlush == null) {
+            frame = deliverySession.getSendBuffer().startWrite(now);
+        } else {
+            frame = deliverySession.getSendBuffer().startBatch(now, batching.getMaxBytes(),
+                    batching.getMaxMessages(), batchPool);
+            if (frame != null) {
+                batchFlush.flushed(frame.getMessageCount(), now);
+            }
+        }
+        if (frame != null) {
+            framesWritten.incrementAndGet();
+            messagesWritten.addAndGet(frame.getMessageCount());
+        }
+        return frame;
+    }
+
+    /**
+     * Writes buffered frames until one is left outstanding. A write which completes on this thread
+     * continues the loop instead of recursing. Called with the session locked.
+     *
+     * @param deliverySession DeliverySession
+     */
+    private void writeNext(final DeliverySession deliverySession) {
+        final SendBuffer buffer = deliverySession.getSendBuffer();
+        if (buffer.isDraining()) {
+            return;
+        }
+        buffer.setDraining(true);
+        try {
+            OutboundFrame frame = startWrite(deliverySession);
+            while (frame != null) {
+                deliverySession.getChannel().send(frame.getPayload(),
+                        failure -> onWritten(deliverySession, failure));
+                frame = startWrite(deliverySession);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to deliver to user {}: {}", deliverySession.getUserId(), e.getMessage());
+            buffer.abortWrite();
+            fail(deliverySession, List.of(), CloseReason.NOT_RELIABLE);
+        } finally {
+            buffer.setDraining(false);
+        }
+    }
+
+    /**
+     * Completes a write and starts the next one.
+     *
+     * @param deliverySession DeliverySession
+     * @param failure cause of a failed write, null on success
+     */
+    private void onWritten(final DeliverySession deliverySession, final Throwable failure) {
+        synchronized (deliverySession) {
+            if (failure != null) {
+                log.warn("Unable to deliver to user {}: {}", deliverySession.getUserId(), failure.getMessage());
+                deliverySession.getSendBuffer().abortWrite();
+                fail(deliverySession, List.of(), CloseReason.NOT_RELIABLE);
+                return;
+            }
+            final OutboundFrame written = deliverySession.getSendBuffer().getWriting();
+            if (written != null) {
+                written.complete();
+            }
+            if (deliverySession.getSendBuffer().completeWrite()) {
+                slowConsumerCount.decrementAndGet();
+                log.debug("User {} caught up", deliverySession.getUserId());
+            }
+            writeNext(deliverySession);
+        }
+    }
+
+    /**
+     * Disconnects a slow consumer, spooling its undelivered messages back to its queue.
+     *
+     * @param deliverySession DeliverySession
+     * @param undelivered messages not yet buffered, oldest first
+     */
+    private void disconnectSlow(final DeliverySession deliverySession, final List<WebsocketMessage> undelivered) {
+        if (sessions.get(deliverySession.getUserId()) == deliverySession) {
+            slowDisconnectCount.incrementAndGet();
+            log.info("Disconnecting slow consumer {} ({} bytes buffered)", deliverySession.getUserId(),
+                    deliverySession.getSendBuffer().getBytes());
+        }
+        fail(deliverySession, undelivered, CloseReason.SLOW_CONSUMER);
+    }
+
+    /**
+     * Gives up on a session: requeues its buffered, undelivered and unacknowledged messages and closes
+     * it. Safe to call more than once.
+     *
+     * @param deliverySession DeliverySession
+     * @param undelivered messages not yet buffered, oldest first
+     * @param closeReason CloseReason
+     */
+    private void fail(final DeliverySession deliverySession, final List<WebsocketMessage> undelivered,
+                      final CloseReason closeReason) {
+        final Long userId = deliverySession.getUserId();
+        messageService.requeue(userId, new ArrayList<>(undelivered));
+        if (removeSession(deliverySession)) {
+            removed(deliverySession);
+        }
+        close(deliverySession.getChannel(), closeReason);
+    }
+
+    /**
+     * Removes a session if it is still the user's live session, and the user from the presence index
+     * unless a newer session has been registered meanwhile.
+     *
+     * @param deliverySession DeliverySession
+     * @return true if the session was removed
+     */
+    private boolean removeSession(final DeliverySession deliverySession) {
+        final Long userId = deliverySession.getUserId();
+        if (!sessions.remove(userId, deliverySession)) {
+            return false;
+        }
+        presence.remove(userId);
+        if (sessions.containsKey(userId)) {
+            presence.add(userId);
+        }
+        return true;
+    }
+
+    /**
+     * Cleans up after a session has been removed: stops its heartbeats and requeues its unwritten and
+     * unacknowledged messages.
+     *
+     * @param deliverySession DeliverySession
+     */
+    private void removed(final DeliverySession deliverySession) {
+        if (heartbeatSweeper != null) {
+            heartbeatSweeper.remove(deliverySession);
+        }
+        synchronized (deliverySession) {
+            if (deliverySession.getBatchFlush() != null) {
+                batchTimer.cancel(deliverySession.getBatchFlush());
+            }
+            final SendBuffer buffer = deliverySession.getSendBuffer();
+            if (buffer.clearSlow()) {
+                slowConsumerCount.decrementAndGet();
+            }
+            messageService.requeue(deliverySession.getUserId(), buffer.release());
+            requeueInFlight(deliverySession);
+        }
+    }
+
+    /**
+     * Cancels the timers of a session's unacknowledged messages and puts them back in the user's queue.
+     *
+     * @param deliverySession DeliverySession
+     */
+    private void requeueInFlight(final DeliverySession deliverySession) {
+        final List<WebsocketMessage> unacked = new ArrayList<>();
+        for (final InFlightMessage inFlightMessage : deliverySession.release()) {
+            timerWheel.cancel(inFlightMessage);
+            inFlightMessage.getWebsocketMessage().setMessageId(null);
+            unacked.add(inFlightMessage.getWebsocketMessage());
+        }
+        messageService.requeue(deliverySession.getUserId(), unacked);
+    }
+
+    /**
+     * Closes a channel, ignoring failures.
+     *
+     * @param channel DeliveryChannel
+     * @param closeReason CloseReason
+     */
+    private static void close(final DeliveryChannel channel, final CloseReason closeReason) {
+        try {
+            channel.close(closeReason);
+        } catch (IOException | RuntimeException e) {
+            log.debug("Unable to close channel {}: {}", channel.getId(), e.getMessage());
+        }
+    }
+}
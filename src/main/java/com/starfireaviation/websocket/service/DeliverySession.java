@@ -0,0 +1,225 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Delivery state of a user's live session, including its send buffer and its bounded window of
+ * unacknowledged messages. Message IDs are assigned per session in sequence, so the window is a ring
+ * indexed by ID.
+ */
+public class DeliverySession {
+
+    /**
+     * User ID.
+     */
+    @Getter
+    private final Long userId;
+
+    /**
+     * DeliveryChannel.
+     */
+    @Getter
+    private final DeliveryChannel channel;
+
+    /**
+     * Owner, notified of ack and flush timeouts.
+     */
+    private final DeliveryService deliveryService;
+
+    /**
+     * Frames waiting to be written.
+     */
+    @Getter
+    private final SendBuffer sendBuffer;
+
+    /**
+     * Unacknowledged messages, indexed by message ID modulo the window size.
+     */
+    private final InFlightMessage[] window;
+
+    /**
+     * Next message ID to assign.
+     */
+    private long nextMessageId = 1;
+
+    /**
+     * Lowest message ID which may still be unacknowledged.
+     */
+    private long oldestUnacked = 1;
+
+    /**
+     * Time (ms) of the last inbound frame, including pongs.
+     */
+    @Getter
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    /**
+     * Heartbeat bucket the session is swept in.
+     */
+    @Getter
+    @Setter
+    private int heartbeatBucket;
+
+    /**
+     * Batch flush timer, null when the session does not batch.
+     */
+    @Getter
+    private BatchFlush batchFlush;
+
+    /**
+     * Initializes an instance of <code>DeliverySession</code>.
+     *
+     * @param id User ID
+     * @param deliveryChannel DeliveryChannel
+     * @param owner DeliveryService
+     * @param windowSize max unacknowledged messages
+     * @param sendBufferProperties send buffer properties
+     */
+    public DeliverySession(final Long id, final DeliveryChannel deliveryChannel, final DeliveryService owner,
+                           final int windowSize, final ApplicationProperties.SendBuffer sendBufferProperties) {
+        userId = id;
+        channel = deliveryChannel;
+        deliveryService = owner;
+        window = new InFlightMessage[windowSize];
+        sendBuffer = new SendBuffer(sendBufferProperties);
+    }
+
+    /**
+     * Packs the session's messages into batch frames from now on. Called before the session is published.
+     *
+     * @param maxWindow longest time (ms) a message may wait to be batched
+     */
+    void batch(final long maxWindow) {
+        batchFlush = new BatchFlush(this, maxWindow);
+    }
+
+    /**
+     * Records inbound activity, postponing the heartbeat deadline.
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Determines if another message may be sent at-least-once.
+     *
+     * @return if the in-flight window has room
+     */
+    public synchronized boolean hasWindowCapacity() {
+        return nextMessageId - oldestUnacked < window.length;
+    }
+
+    /**
+     * Assigns the next message ID and tracks the message until it is acknowledged.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return InFlightMessage
+     */
+    public synchronized InFlightMessage track(final WebsocketMessage websocketMessage) {
+        final long messageId = nextMessageId++;
+        websocketMessage.setMessageId(messageId);
+        final InFlightMessage inFlightMessage = new InFlightMessage(this, websocketMessage);
+        window[slot(messageId)] = inFlightMessage;
+        return inFlightMessage;
+    }
+
+    /**
+     * Removes an acknowledged message from the window.
+     *
+     * @param messageId message ID
+     * @return the acknowledged InFlightMessage, or null if unknown or already acknowledged
+     */
+    public synchronized InFlightMessage acknowledge(final long messageId) {
+        if (messageId < oldestUnacked || messageId >= nextMessageId) {
+            return null;
+        }
+        final int slot = slot(messageId);
+        final InFlightMessage inFlightMessage = window[slot];
+        if (inFlightMessage == null) {
+            return null;
+        }
+        window[slot] = null;
+        while (oldestUnacked < nextMessageId && window[slot(oldestUnacked)] == null) {
+            oldestUnacked++;
+        }
+        return inFlightMessage;
+    }
+
+    /**
+     * Determines if a message is still waiting for its acknowledgement.
+     *
+     * @param inFlightMessage InFlightMessage
+     * @return if the message is in the window
+     */
+    public synchronized boolean isInFlight(final InFlightMessage inFlightMessage) {
+        final Long messageId = inFlightMessage.getWebsocketMessage().getMessageId();
+        return messageId != null && messageId >= oldestUnacked && messageId < nextMessageId
+                && window[slot(messageId)] == inFlightMessage;
+    }
+
+    /**
+     * Empties the window, returning the unacknowledged messages oldest first.
+     *
+     * @return unacknowledged InFlightMessages
+     */
+    public synchronized List<InFlightMessage> release() {
+        final List<InFlightMessage> unacked = new ArrayList<>();
+        for (long messageId = oldestUnacked; messageId < nextMessageId; messageId++) {
+            final int slot = slot(messageId);
+            if (window[slot] != null) {
+                unacked.add(window[slot]);
+                window[slot] = null;
+            }
+        }
+        oldestUnacked = nextMessageId;
+        return unacked;
+    }
+
+    /**
+     * Called by the timer wheel when a message was not acknowledged in time.
+     *
+     * @param inFlightMessage InFlightMessage
+     */
+    void onAckTimeout(final InFlightMessage inFlightMessage) {
+        deliveryService.retransmit(inFlightMessage);
+    }
+
+    /**
+     * Called by the batch timer when the flush window ends.
+     */
+    void onFlushTimeout() {
+        deliveryService.flushBatch(this);
+    }
+
+    /**
+     * Ring index of a message ID.
+     *
+     * @param messageId message ID
+     * @return slot
+     */
+    private int slot(final long messageId) {
+        return (int) (messageId % window.length);
+    }
+}
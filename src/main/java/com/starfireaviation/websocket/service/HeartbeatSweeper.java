@@ -0,0 +1,141 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Liveness detection for all sessions on a single thread. Sessions are spread round-robin over a ring
+ * of buckets; each tick sweeps one bucket, pinging its sessions and reaping those which have been
+ * silent past the timeout, so every session is visited once per heartbeat interval without a timer of
+ * its own.
+ */
+@Slf4j
+public class HeartbeatSweeper implements AutoCloseable {
+
+    /**
+     * Owner, which pings and reaps sessions.
+     */
+    private final DeliveryService deliveryService;
+
+    /**
+     * Sessions by bucket.
+     */
+    private final List<Set<DeliverySession>> buckets;
+
+    /**
+     * Time (ms) without inbound activity after which a session is reaped.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Round-robin bucket assignment.
+     */
+    private final AtomicInteger nextBucket = new AtomicInteger();
+
+    /**
+     * Next bucket to sweep (only used by the sweeper thread).
+     */
+    private int sweepIndex;
+
+    /**
+     * Sweeper thread.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Initializes and starts a <code>HeartbeatSweeper</code>.
+     *
+     * @param owner DeliveryService
+     * @param bucketCount number of buckets
+     * @param intervalMillis time (ms) to sweep every bucket once
+     * @param timeout time (ms) without inbound activity after which a session is reaped
+     */
+    public HeartbeatSweeper(final DeliveryService owner, final int bucketCount, final long intervalMillis,
+                            final long timeout) {
+        deliveryService = owner;
+        timeoutMillis = timeout;
+        buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(ConcurrentHashMap.newKeySet());
+        }
+        final long tick = Math.max(1, intervalMillis / bucketCount);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "heartbeat-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::sweep, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts watching a session.
+     *
+     * @param deliverySession DeliverySession
+     */
+    public void add(final DeliverySession deliverySession) {
+        final int bucket = Math.floorMod(nextBucket.getAndIncrement(), buckets.size());
+        deliverySession.setHeartbeatBucket(bucket);
+        buckets.get(bucket).add(deliverySession);
+    }
+
+    /**
+     * Stops watching a session.
+     *
+     * @param deliverySession DeliverySession
+     */
+    public void remove(final DeliverySession deliverySession) {
+        buckets.get(deliverySession.getHeartbeatBucket()).remove(deliverySession);
+    }
+
+    /**
+     * Stops the sweeper thread.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sweeps the next bucket: reaps the sessions past their deadline and pings the rest.
+     */
+    private void sweep() {
+        final Set<DeliverySession> bucket = buckets.get(sweepIndex);
+        sweepIndex = (sweepIndex + 1) % buckets.size();
+        final long now = System.currentTimeMillis();
+        for (final DeliverySession deliverySession : bucket) {
+            try {
+                if (now - deliverySession.getLastActivity() >= timeoutMillis) {
+                    deliveryService.reap(deliverySession);
+                } else {
+                    deliveryService.ping(deliverySession);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Heartbeat failed for user {}", deliverySession.getUserId(), e);
+            }
+        }
+    }
+}
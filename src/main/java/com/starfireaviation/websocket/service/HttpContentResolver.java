@@ -0,0 +1,141 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.websocket.model.ResolvedEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Fetches entities from the services which own them, over HTTP. The response must be JSON; it is
+ * parsed, so that a malformed body is never spliced into a message. The ETag of a response is its
+ * version, so that an old rendering is revalidated with a conditional request rather than fetched again.
+ */
+public class HttpContentResolver implements ContentResolver {
+
+    /**
+     * Placeholder for the entity ID in a URL.
+     */
+    public static final String ID_PLACEHOLDER = "{id}";
+
+    /**
+     * URL of each service's entities, by service.
+     */
+    private final Map<String, String> urls;
+
+    /**
+     * Time allowed per request.
+     */
+    private final Duration timeout;
+
+    /**
+     * Parses responses.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * HTTP client, shared by every request.
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * Initializes an instance of <code>HttpContentResolver</code>.
+     *
+     * @param serviceUrls URL of each service's entities, by service, with {id} standing for the entity ID
+     * @param timeoutMillis time (ms) allowed per request
+     * @param mapper ObjectMapper
+     */
+    public HttpContentResolver(final Map<String, String> serviceUrls, final long timeoutMillis,
+                               final ObjectMapper mapper) {
+        urls = Map.copyOf(serviceUrls);
+        timeout = Duration.ofMillis(timeoutMillis);
+        objectMapper = mapper;
+        httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    /**
+     * Fetches an entity.
+     *
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return the entity's JSON tree, or null when the service has no URL or the entity is not found
+     * @throws IOException when the request fails or the response is not JSON
+     */
+    @Override
+    public Object resolve(final String service, final String entityId) throws IOException {
+        return resolve(service, entityId, null).getEntity();
+    }
+
+    /**
+     * Fetches an entity unless its ETag still matches the version held, using a conditional request.
+     *
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @param version ETag of the rendering held, null when there is none
+     * @return ResolvedEntity carrying the ETag of the response, ResolvedEntity.UNCHANGED on a
+     *         <code>304</code>
+     * @throws IOException when the request fails or the response is not JSON
+     */
+    @Override
+    public ResolvedEntity resolve(final String service, final String entityId, final String version)
+            throws IOException {
+        final String url = urls.get(service);
+        if (url == null) {
+            return new ResolvedEntity(null, null);
+        }
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(
+                        URI.create(url.replace(ID_PLACEHOLDER, URLEncoder.encode(entityId, StandardCharsets.UTF_8))))
+                .timeout(timeout)
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .GET();
+        if (version != null) {
+            builder.header(HttpHeaders.IF_NONE_MATCH, version);
+        }
+        final HttpRequest request = builder.build();
+        final HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted fetching " + request.uri());
+        }
+        if (version != null && response.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+            return ResolvedEntity.UNCHANGED;
+        }
+        if (response.statusCode() == HttpStatus.NOT_FOUND.value()) {
+            return new ResolvedEntity(null, null);
+        }
+        if (HttpStatus.Series.resolve(response.statusCode()) != HttpStatus.Series.SUCCESSFUL) {
+            throw new IOException("Fetching " + request.uri() + " returned " + response.statusCode());
+        }
+        return new ResolvedEntity(objectMapper.readTree(response.body()),
+                response.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.util.TimerWheel;
+import lombok.Getter;
+
+/**
+ * A message delivered at-least-once which the client has not acknowledged yet.
+ */
+@Getter
+public class InFlightMessage extends TimerWheel.Timeout {
+
+    /**
+     * Session the message was sent on.
+     */
+    private final DeliverySession deliverySession;
+
+    /**
+     * WebsocketMessage.
+     */
+    private final WebsocketMessage websocketMessage;
+
+    /**
+     * Times the message has been sent.
+     */
+    private int attempts = 1;
+
+    /**
+     * Initializes an instance of <code>InFlightMessage</code>.
+     *
+     * @param session DeliverySession
+     * @param message WebsocketMessage
+     */
+    InFlightMessage(final DeliverySession session, final WebsocketMessage message) {
+        deliverySession = session;
+        websocketMessage = message;
+    }
+
+    /**
+     * Records another send attempt.
+     *
+     * @return attempts so far
+     */
+    int incrementAttempts() {
+        return ++attempts;
+    }
+
+    /**
+     * Hands the expired message back to its session for retransmission.
+     */
+    @Override
+    protected void expire() {
+        deliverySession.onAckTimeout(this);
+    }
+}
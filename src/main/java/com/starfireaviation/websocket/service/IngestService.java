@@ -0,0 +1,267 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.model.IngestRecord;
+import com.starfireaviation.websocket.model.IngestStatus;
+import com.starfireaviation.websocket.model.IngestSummary;
+import com.starfireaviation.websocket.model.MessageTrace;
+import com.starfireaviation.websocket.model.TraceStage;
+import com.starfireaviation.websocket.util.BoundedLineReader;
+import com.starfireaviation.websocket.util.IngestRecordDecoder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds streamed batches of notifications to the MessageService. Records are read, sent and reported
+ * one at a time as the body arrives, with a fixed-size record buffer, so memory does not depend on the
+ * size of the body. The outcome of every record is written to an NDJSON status stream.
+ */
+@Slf4j
+public class IngestService {
+
+    /**
+     * Records between flushes of the status stream.
+     */
+    private static final int FLUSH_INTERVAL = 1024;
+
+    /**
+     * Shared, thread-safe generator factory. Status lines are separated by newlines only.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().setRootValueSeparator(null);
+
+    /**
+     * MessageService.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Largest record accepted, in bytes.
+     */
+    private final int maxRecordBytes;
+
+    /**
+     * Samples records for stage tracing.
+     */
+    private final MessageTracer messageTracer;
+
+    /**
+     * Initializes an instance of <code>IngestService</code>.
+     *
+     * @param service MessageService
+     * @param maxBytes largest record accepted, in bytes
+     * @param tracer samples records for stage tracing
+     */
+    public IngestService(final MessageService service, final int maxBytes, final MessageTracer tracer) {
+        messageService = service;
+        maxRecordBytes = maxBytes;
+        messageTracer = tracer;
+    }
+
+    /**
+     * Ingests newline-delimited JSON records.
+     *
+     * @param in request body
+     * @param statusOut status stream
+     * @return IngestSummary
+     * @throws IOException when the body cannot be read or the status stream written
+     */
+    public IngestSummary ingestNdjson(final InputStream in, final OutputStream statusOut) throws IOException {
+        final IngestSummary summary = new IngestSummary();
+        final BoundedLineReader reader = new BoundedLineReader(in, maxRecordBytes);
+        try (JsonGenerator status = JSON_FACTORY.createGenerator(statusOut, JsonEncoding.UTF8)) {
+            while (reader.next()) {
+                if (reader.isOverflow()) {
+                    report(status, summary, IngestStatus.INVALID, "Record exceeds " + maxRecordBytes + " bytes");
+                    continue;
+                }
+                final MessageTrace trace = messageTracer.start();
+                try {
+                    send(status, summary, IngestRecordDecoder.decodeJson(reader.getLine(), 0, reader.getLength()),
+                            trace);
+                } catch (InvalidPayloadException ipe) {
+                    report(status, summary, IngestStatus.INVALID, ipe.getMessage());
+                }
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Ingests length-prefixed binary records: a 4 byte big-endian length followed by the record.
+     *
+     * @param in request body
+     * @param statusOut status stream
+     * @return IngestSummary
+     * @throws IOException when the body cannot be read or the status stream written
+     */
+    public IngestSummary ingestBinary(final InputStream in, final OutputStream statusOut) throws IOException {
+        final IngestSummary summary = new IngestSummary();
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        final byte[] record = new byte[maxRecordBytes];
+        final byte[] header = new byte[Integer.BYTES];
+        final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        try (JsonGenerator status = JSON_FACTORY.createGenerator(statusOut, JsonEncoding.UTF8)) {
+            int first = data.read();
+            while (first >= 0) {
+                try {
+                    header[0] = (byte) first;
+                    data.readFully(header, 1, Integer.BYTES - 1);
+                    final int length = headerBuffer.getInt(0);
+                    if (length < 0) {
+                        // The stream cannot be resynchronized
+                        report(status, summary, IngestStatus.INVALID, "Negative record length");
+                        break;
+                    }
+                    if (length > maxRecordBytes) {
+                        skip(data, length);
+                        report(status, summary, IngestStatus.INVALID, "Record exceeds " + maxRecordBytes + " bytes");
+                    } else {
+                        data.readFully(record, 0, length);
+                        decodeAndSend(status, summary, record, length);
+                    }
+                } catch (EOFException eofe) {
+                    report(status, summary, IngestStatus.INVALID, "Truncated record");
+                    break;
+                }
+                first = data.read();
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Decodes a binary record and sends it.
+     *
+     * @param status status stream
+     * @param summary IngestSummary
+     * @param record record buffer
+     * @param length record length
+     * @throws IOException when the status stream cannot be written
+     */
+    private void decodeAndSend(final JsonGenerator status, final IngestSummary summary, final byte[] record,
+                               final int length) throws IOException {
+        final MessageTrace trace = messageTracer.start();
+        try {
+            send(status, summary, IngestRecordDecoder.decodeBinary(record, 0, length), trace);
+        } catch (InvalidPayloadException ipe) {
+            report(status, summary, IngestStatus.INVALID, ipe.getMessage());
+        }
+    }
+
+    /**
+     * Sends a record through the MessageService.
+     *
+     * @param status status stream
+     * @param summary IngestSummary
+     * @param ingestRecord IngestRecord
+     * @param trace MessageTrace, null when the record is not sampled
+     * @throws IOException when the status stream cannot be written
+     */
+    private void send(final JsonGenerator status, final IngestSummary summary, final IngestRecord ingestRecord,
+                      final MessageTrace trace) throws IOException {
+        if (trace != null) {
+            trace.stamp(TraceStage.DECODED);
+        }
+        if (MessageTemplates.forType(ingestRecord.getEventType()) == null) {
+            report(status, summary, IngestStatus.REJECTED, "Unsupported eventType " + ingestRecord.getEventType());
+            return;
+        }
+        try {
+            messageService.send(ingestRecord.getEventType(), ingestRecord.getMessage(),
+                    ingestRecord.getReferenceId(), trace);
+        } catch (RuntimeException e) {
+            log.debug("Unable to send {} for message {}: {}", ingestRecord.getEventType(),
+                    ingestRecord.getMessage().getId(), e.toString());
+            String reason = e.getMessage();
+            if (reason == null) {
+                reason = e.toString();
+            }
+            report(status, summary, IngestStatus.REJECTED, reason);
+            return;
+        }
+        report(status, summary, IngestStatus.ACCEPTED, null);
+    }
+
+    /**
+     * Counts a record and writes its status line.
+     *
+     * @param status status stream
+     * @param summary IngestSummary
+     * @param ingestStatus IngestStatus
+     * @param error reason the record was not accepted, or null
+     * @throws IOException when the status stream cannot be written
+     */
+    private static void report(final JsonGenerator status, final IngestSummary summary,
+                               final IngestStatus ingestStatus, final String error) throws IOException {
+        summary.setRecords(summary.getRecords() + 1);
+        switch (ingestStatus) {
+            case ACCEPTED:
+                summary.setAccepted(summary.getAccepted() + 1);
+                break;
+            case INVALID:
+                summary.setInvalid(summary.getInvalid() + 1);
+                break;
+            default:
+                summary.setRejected(summary.getRejected() + 1);
+        }
+        status.writeStartObject();
+        status.writeNumberField("record", summary.getRecords());
+        status.writeStringField("status", ingestStatus.name());
+        if (error != null) {
+            status.writeStringField("error", error);
+        }
+        status.writeEndObject();
+        status.writeRaw('\n');
+        if (summary.getRecords() % FLUSH_INTERVAL == 0) {
+            status.flush();
+        }
+    }
+
+    /**
+     * Skips the body of an oversized record.
+     *
+     * @param data body
+     * @param length bytes to skip
+     * @throws IOException when the body cannot be read
+     */
+    private static void skip(final DataInputStream data, final int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = data.skipBytes(remaining);
+            if (skipped <= 0) {
+                if (data.read() < 0) {
+                    throw new EOFException();
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.model.Event;
+import com.starfireaviation.model.Message;
+import com.starfireaviation.model.Question;
+import com.starfireaviation.model.Quiz;
+import com.starfireaviation.model.User;
+
+/**
+ * Looks up the user a Message is for and the entities it is about, for the MessageService to build
+ * notifications from. The application provides one as a bean, typically backed by the services which
+ * own messages, users and events.
+ */
+public interface MessageResolver {
+
+    /**
+     * User to notify.
+     *
+     * @param message Message
+     * @return User, or null when unknown
+     */
+    User getUser(Message message);
+
+    /**
+     * Event the message is about.
+     *
+     * @param message Message
+     * @return Event, or null when unknown
+     */
+    Event getEvent(Message message);
+
+    /**
+     * Question the message is about.
+     *
+     * @param message Message
+     * @return Question, or null when unknown
+     */
+    Question getQuestion(Message message);
+
+    /**
+     * Quiz the message is about.
+     *
+     * @param message Message
+     * @return Quiz, or null when the message is not about a quiz
+     */
+    Quiz getQuiz(Message message);
+}
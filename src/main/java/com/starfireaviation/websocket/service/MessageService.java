@@ -22,18 +22,35 @@ import com.starfireaviation.model.NotificationEventType;
 import com.starfireaviation.model.Question;
 import com.starfireaviation.model.Quiz;
 import com.starfireaviation.model.User;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.model.MessagePriority;
+import com.starfireaviation.websocket.model.MessageTrace;
+import com.starfireaviation.websocket.model.MessageTemplate;
+import com.starfireaviation.websocket.model.ParameterSource;
+import com.starfireaviation.websocket.model.PendingQuery;
+import com.starfireaviation.websocket.model.PendingSummary;
+import com.starfireaviation.websocket.model.Pressure;
+import com.starfireaviation.websocket.model.TenantStats;
+import com.starfireaviation.websocket.model.TraceStage;
 import com.starfireaviation.websocket.model.WebsocketMessage;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * MessageService.
+ * MessageService. Queues are partitioned by the organization of their user.
  */
 @Slf4j
-public class MessageService {
+public class MessageService implements AutoCloseable {
 
     /**
      * EVENT_SERVICE.
@@ -66,27 +83,164 @@ public class MessageService {
     public static final String GET_OPERATION = "GET";
 
     /**
-     * Map of Messages.
+     * Queues, by organization.
      */
-    private Map<Long, List<WebsocketMessage>> messagesMap;
+    private final Map<String, TenantShard> shards = new ConcurrentHashMap<>();
 
     /**
-     * Sends a message for an upcoming event.
+     * Organization of each assigned user.
+     */
+    private final Map<Long, String> organizations = new ConcurrentHashMap<>();
+
+    /**
+     * Locks by user ID, striped. Held while a user's shard is looked up and used, so that a change of
+     * organization cannot move the user's queue in between. Never held while delivering.
+     */
+    private final Object[] userLocks = new Object[CommonConstants.USER_LOCK_STRIPES];
+
+    /**
+     * Tenancy properties.
+     */
+    private final ApplicationProperties.Tenancy tenancy;
+
+    /**
+     * Pending index properties.
+     */
+    private final ApplicationProperties.PendingIndex pendingIndex;
+
+    /**
+     * Notified whenever a message is queued.
+     */
+    @Setter
+    private PendingMessageListener pendingMessageListener;
+
+    /**
+     * Samples messages for stage tracing.
+     */
+    @Setter
+    private MessageTracer messageTracer = MessageTracer.DISABLED;
+
+    /**
+     * Pressure reported by the AdmissionController, deciding how low priority messages are queued.
+     */
+    @Getter
+    @Setter
+    private volatile Pressure pressure = Pressure.NORMAL;
+
+    /**
+     * Low priority messages coalesced away under pressure.
+     */
+    private final AtomicLong shed = new AtomicLong();
+
+    /**
+     * Rendered entities embedded in messages, null when payloads are not embedded.
+     */
+    @Setter
+    private RenderedContentCache contentCache;
+
+    /**
+     * Looks up the users and entities of the Messages sent, null until the application provides one.
+     */
+    @Setter
+    private volatile MessageResolver messageResolver;
+
+    /**
+     * Initializes an instance of <code>MessageService</code> which delivers on the sending thread, without
+     * rate limits.
+     */
+    public MessageService() {
+        this(new ApplicationProperties.Tenancy());
+        tenancy.setEnabled(false);
+    }
+
+    /**
+     * Initializes an instance of <code>MessageService</code>.
      *
+     * @param tenancyProperties tenancy properties
+     */
+    public MessageService(final ApplicationProperties.Tenancy tenancyProperties) {
+        this(tenancyProperties, new ApplicationProperties.PendingIndex());
+    }
+
+    /**
+     * Initializes an instance of <code>MessageService</code>.
+     *
+     * @param tenancyProperties tenancy properties
+     * @param pendingIndexProperties pending index properties
+     */
+    public MessageService(final ApplicationProperties.Tenancy tenancyProperties,
+                          final ApplicationProperties.PendingIndex pendingIndexProperties) {
+        tenancy = tenancyProperties;
+        pendingIndex = pendingIndexProperties;
+        for (int i = 0; i < userLocks.length; i++) {
+            userLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Sends a message of the given type, built from its registered MessageTemplate.
+     *
+     * @param eventType NotificationEventType
      * @param message Message
      */
-    public void sendEventUpcomingMsg(final Message message) {
+    public void send(final NotificationEventType eventType, final Message message) {
+        send(eventType, message, null);
+    }
+
+    /**
+     * Sends a message of the given type, built from its registered MessageTemplate. The message may be
+     * sampled for tracing.
+     *
+     * @param eventType NotificationEventType
+     * @param message Message
+     * @param referenceId Reference ID (only used by templates with a REFERENCE parameter source)
+     */
+    public void send(final NotificationEventType eventType, final Message message, final Long referenceId) {
+        send(eventType, message, referenceId, messageTracer.start());
+    }
+
+    /**
+     * Sends a message of the given type under a trace started by the caller.
+     *
+     * @param eventType NotificationEventType
+     * @param message Message
+     * @param referenceId Reference ID (only used by templates with a REFERENCE parameter source)
+     * @param trace MessageTrace, null when the message is not sampled
+     */
+    protected void send(final NotificationEventType eventType, final Message message, final Long referenceId,
+                        final MessageTrace trace) {
+        final MessageTemplate template = MessageTemplates.forType(eventType);
+        if (template == null) {
+            log.warn("No message template for event type {}", eventType);
+            return;
+        }
         final User user = getUser(message);
-        final Event event = getEvent(message);
+        final List<String> parameters = getParameters(template.getParameterSource(), message, user, referenceId);
+        if (trace != null) {
+            trace.stamp(TraceStage.LOOKED_UP);
+        }
         final WebsocketMessage websocketMessage = new WebsocketMessage();
         websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(EVENT_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.EVENT_UPCOMING);
-        websocketMessage.setParameters(List.of(event.getId().toString()));
+        websocketMessage.setService(template.getService());
+        websocketMessage.setOperation(template.getOperation());
+        websocketMessage.setEventType(template.getEventType());
+        websocketMessage.setParameters(parameters);
         websocketMessage.setTimestamp(Instant.now());
+        if (trace != null) {
+            trace.stamp(TraceStage.BUILT);
+            trace.attach(websocketMessage);
+        }
 
-        sendMessage(websocketMessage);
+        enqueue(websocketMessage);
+    }
+
+    /**
+     * Sends a message for an upcoming event.
+     *
+     * @param message Message
+     */
+    public void sendEventUpcomingMsg(final Message message) {
+        send(NotificationEventType.EVENT_UPCOMING, message);
     }
 
     /**
@@ -95,17 +249,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendEventStartMsg(final Message message) {
-        final User user = getUser(message);
-        final Event event = getEvent(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(EVENT_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.EVENT_START);
-        websocketMessage.setParameters(List.of(event.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.EVENT_START, message);
     }
 
     /**
@@ -114,17 +258,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendEventRSVPMsg(final Message message) {
-        final User user = getUser(message);
-        final Event event = getEvent(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(EVENT_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.EVENT_RSVP);
-        websocketMessage.setParameters(List.of(event.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.EVENT_RSVP, message);
     }
 
     /**
@@ -133,23 +267,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendQuestionAskedMsg(final Message message) {
-        final User user = getUser(message);
-        final Question question = getQuestion(message);
-        final Quiz quiz = getQuiz(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(QUESTION_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
-        final List<String> parameters = new ArrayList<>();
-        parameters.add(question.getId().toString());
-        if (quiz.getId() != null) {
-            parameters.add(quiz.getId().toString());
-        }
-        websocketMessage.setParameters(parameters);
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.QUESTION_ASKED, message);
     }
 
     /**
@@ -158,17 +276,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendEventRegisterMsg(final Message message) {
-        final User user = getUser(message);
-        final Event event = getEvent(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(EVENT_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.EVENT_REGISTER);
-        websocketMessage.setParameters(List.of(event.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.EVENT_REGISTER, message);
     }
 
     /**
@@ -177,17 +285,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendEventUnregisterMsg(final Message message) {
-        final User user = getUser(message);
-        final Event event = getEvent(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(EVENT_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.EVENT_UNREGISTER);
-        websocketMessage.setParameters(List.of(event.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.EVENT_UNREGISTER, message);
     }
 
     /**
@@ -196,16 +294,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendUserDeleteMsg(final Message message) {
-        final User user = getUser(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(USER_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.USER_DELETE);
-        websocketMessage.setParameters(List.of(user.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.USER_DELETE, message);
     }
 
     /**
@@ -214,22 +303,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendQuizCompleteMsg(final Message message) {
-        final User user = getUser(message);
-        final Quiz quiz = getQuiz(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(QUIZ_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.QUIZ_COMPLETE);
-        final List<String> parameters = new ArrayList<>();
-        parameters.add(user.getId().toString());
-        if (quiz.getId() != null) {
-            parameters.add(quiz.getId().toString());
-        }
-        websocketMessage.setParameters(parameters);
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.QUIZ_COMPLETE, message);
     }
 
     /**
@@ -238,16 +312,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendUserSettingsVerifiedMsg(final Message message) {
-        final User user = getUser(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(USER_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.USER_VERIFIED);
-        websocketMessage.setParameters(List.of(user.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.USER_VERIFIED, message);
     }
 
     /**
@@ -256,16 +321,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendUserSettingsChangeMsg(final Message message) {
-        final User user = getUser(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(USER_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.USER_SETTINGS);
-        websocketMessage.setParameters(List.of(user.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.USER_SETTINGS, message);
     }
 
     /**
@@ -274,16 +330,7 @@ public class MessageService {
      * @param message Message
      */
     public void sendPasswordResetMsg(final Message message) {
-        final User user = getUser(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setService(USER_SERVICE);
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(NotificationEventType.PASSWORD_RESET);
-        websocketMessage.setParameters(List.of(user.getId().toString()));
-        websocketMessage.setTimestamp(Instant.now());
-
-        sendMessage(websocketMessage);
+        send(NotificationEventType.PASSWORD_RESET, message);
     }
 
     /**
@@ -304,32 +351,12 @@ public class MessageService {
      */
     public void sendDisplayMsg(final Message message, final Long referenceId,
                                final NotificationEventType notificationEventType) {
-        final User user = getUser(message);
-        final WebsocketMessage websocketMessage = new WebsocketMessage();
-        websocketMessage.setUserId(user.getId());
-        websocketMessage.setOperation(GET_OPERATION);
-        websocketMessage.setEventType(notificationEventType);
-        websocketMessage.setTimestamp(Instant.now());
-        switch (notificationEventType) {
-            case LESSON_DISPLAYED:
-                websocketMessage.setParameters(List.of(referenceId.toString()));
-                websocketMessage.setService(USER_SERVICE);
-                break;
-            case QUESTION_DISPLAYED:
-                websocketMessage.setParameters(List.of(referenceId.toString()));
-                websocketMessage.setService(QUESTION_SERVICE);
-                break;
-            case REFERENCE_MATERIAL_DISPLAYED:
-                websocketMessage.setParameters(List.of(referenceId.toString()));
-                websocketMessage.setService(REFERENCE_MATERIAL_SERVICE);
-                break;
-            default:
-                websocketMessage.setService(null);
-                websocketMessage.setOperation(null);
-                websocketMessage.setEventType(NotificationEventType.HOME_DISPLAYED);
+        final MessageTemplate template = MessageTemplates.forType(notificationEventType);
+        if (template != null && template.getParameterSource() == ParameterSource.REFERENCE) {
+            send(notificationEventType, message, referenceId);
+        } else {
+            send(NotificationEventType.HOME_DISPLAYED, message);
         }
-
-        sendMessage(websocketMessage);
     }
 
     /**
@@ -346,30 +373,450 @@ public class MessageService {
      *
      * @param websocketMessage WebSocketMessage
      */
-    private void sendMessage(final WebsocketMessage websocketMessage) {
-        List<WebsocketMessage> websocketMessages;
-        if (messagesMap.containsKey(websocketMessage.getUserId())) {
-            websocketMessages = messagesMap.get(websocketMessage.getUserId());
+    public void sendMessage(final WebsocketMessage websocketMessage) {
+        if (websocketMessage.getTrace() == null) {
+            final MessageTrace trace = messageTracer.start();
+            if (trace != null) {
+                trace.attach(websocketMessage);
+            }
+        }
+        enqueue(websocketMessage);
+    }
+
+    /**
+     * Adds a built message to its user's queue, in the shard of the user's organization.
+     *
+     * @param websocketMessage WebSocketMessage
+     */
+    private void enqueue(final WebsocketMessage websocketMessage) {
+        final Long userId = websocketMessage.getUserId();
+        final Pressure current = pressure;
+        final TenantShard shard;
+        if (current == Pressure.NORMAL || MessageTemplates.priority(websocketMessage) != MessagePriority.LOW) {
+            if (contentCache != null && websocketMessage.getPayload() == null) {
+                embed(websocketMessage, false);
+            }
+            synchronized (lockOf(userId)) {
+                shard = shardOf(userId);
+                shard.add(websocketMessage);
+            }
         } else {
-            websocketMessages = new ArrayList<>();
+            synchronized (lockOf(userId)) {
+                shard = shardOf(userId);
+                shed.addAndGet(shard.add(websocketMessage, true));
+            }
         }
-        websocketMessages.add(websocketMessage);
-        messagesMap.put(websocketMessage.getUserId(), websocketMessages);
+        shard.schedule(userId);
     }
 
+    /**
+     * Removes and returns a user's queued messages, as many as the organization's rate limit allows.
+     * Messages held back are delivered once the limit allows.
+     *
+     * @param userId User ID
+     * @return queued messages, oldest first (empty when none are queued)
+     */
+    public List<WebsocketMessage> drain(final Long userId) {
+        final List<WebsocketMessage> drained;
+        synchronized (lockOf(userId)) {
+            drained = shardOf(userId).drain(userId);
+        }
+        if (contentCache != null) {
+            for (final WebsocketMessage websocketMessage : drained) {
+                if (websocketMessage.getPayload() == null) {
+                    embed(websocketMessage, true);
+                }
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Removes and returns all queued messages for a user, regardless of rate limits.
+     *
+     * @param userId User ID
+     * @return queued messages, oldest first (empty when none are queued)
+     */
+    public List<WebsocketMessage> discard(final Long userId) {
+        synchronized (lockOf(userId)) {
+            return shardOf(userId).remove(userId);
+        }
+    }
+
+    /**
+     * Puts messages which could not be delivered back at the head of a user's queue.
+     *
+     * @param userId User ID
+     * @param undelivered messages, oldest first
+     */
+    public void requeue(final Long userId, final List<WebsocketMessage> undelivered) {
+        synchronized (lockOf(userId)) {
+            shardOf(userId).requeue(userId, undelivered);
+        }
+    }
+
+    /**
+     * Assigns a user to an organization, moving anything queued for the user to the organization's
+     * shard. Users are in the default organization until assigned. The move holds the user's lock, so
+     * messages queued meanwhile land behind the moved ones, in the new shard.
+     *
+     * @param userId User ID
+     * @param organization organization, which must come from the user's verified credentials
+     */
+    public void assignOrganization(final Long userId, final String organization) {
+        final TenantShard to;
+        synchronized (lockOf(userId)) {
+            final String previous = organizations.put(userId, organization);
+            if (organization.equals(previous)
+                    || previous == null && CommonConstants.DEFAULT_ORGANIZATION.equals(organization)) {
+                return;
+            }
+            TenantShard from = shards.get(CommonConstants.DEFAULT_ORGANIZATION);
+            if (previous != null) {
+                from = shards.get(previous);
+            }
+            if (from == null) {
+                return;
+            }
+            final List<WebsocketMessage> moved = from.remove(userId);
+            if (moved.isEmpty()) {
+                return;
+            }
+            to = shard(organization);
+            to.requeue(userId, moved);
+        }
+        to.schedule(userId);
+    }
+
+    /**
+     * Queue and drain counters of every organization with a shard.
+     *
+     * @return TenantStats, by organization
+     */
+    public List<TenantStats> getTenantStats() {
+        final List<TenantStats> stats = new ArrayList<>();
+        for (final TenantShard shard : shards.values()) {
+            stats.add(shard.getStats());
+        }
+        stats.sort(Comparator.comparing(TenantStats::getOrganization));
+        return stats;
+    }
+
+    /**
+     * Messages queued across every organization.
+     *
+     * @return queued messages
+     */
+    public long getQueuedMessages() {
+        long queued = 0;
+        for (final TenantShard shard : shards.values()) {
+            queued += shard.getQueued();
+        }
+        return queued;
+    }
+
+    /**
+     * Longest time any user has waited for a drain worker, across every organization.
+     *
+     * @return drain lag (ns)
+     */
+    public long getDrainLag() {
+        final long now = System.nanoTime();
+        long lag = 0;
+        for (final TenantShard shard : shards.values()) {
+            lag = Math.max(lag, shard.getDrainLag(now));
+        }
+        return lag;
+    }
+
+    /**
+     * Compacts every queue, keeping only the newest low priority message of each event type for each user.
+     *
+     * @return messages removed
+     */
+    public long compactQueues() {
+        long removed = 0;
+        for (final TenantShard shard : shards.values()) {
+            removed += shard.compact();
+        }
+        shed.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Low priority messages coalesced away under pressure.
+     *
+     * @return messages shed
+     */
+    public long getShedCount() {
+        return shed.get();
+    }
+
+    /**
+     * Finds the queued messages matching a query, across every organization.
+     *
+     * @param query PendingQuery
+     * @return PendingSummary
+     */
+    public PendingSummary queryPending(final PendingQuery query) {
+        final PendingSummary summary = new PendingSummary();
+        final long now = System.currentTimeMillis();
+        for (final TenantShard shard : shards.values()) {
+            shard.query(query, now, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Puts a user's restored queue back, in the shard of its organization, ahead of anything queued
+     * since.
+     *
+     * @param organization organization of the user
+     * @param userId User ID
+     * @param restored messages, oldest first
+     */
+    void restore(final String organization, final Long userId, final List<WebsocketMessage> restored) {
+        synchronized (lockOf(userId)) {
+            if (organization != null && !CommonConstants.DEFAULT_ORGANIZATION.equals(organization)) {
+                organizations.putIfAbsent(userId, organization);
+            }
+            shardOf(userId).requeue(userId, restored);
+        }
+    }
+
+    /**
+     * Shards created so far.
+     *
+     * @return live view of the shards
+     */
+    Collection<TenantShard> getShards() {
+        return shards.values();
+    }
+
+    /**
+     * Stops the drain workers.
+     */
+    @Override
+    public void close() {
+        shards.values().forEach(TenantShard::close);
+    }
+
+    /**
+     * Notifies the listener that a user has messages to deliver. Called by the user's shard.
+     *
+     * @param userId User ID
+     */
+    void notifyPending(final Long userId) {
+        if (pendingMessageListener != null) {
+            pendingMessageListener.onPending(userId);
+        }
+    }
+
+    /**
+     * Determines if a user is online, so that their shard schedules deliveries. Called by the user's shard.
+     *
+     * @param userId User ID
+     * @return if the listener may deliver to the user now
+     */
+    boolean isOnline(final Long userId) {
+        final PendingMessageListener listener = pendingMessageListener;
+        return listener == null || listener.isOnline(userId);
+    }
+
+    /**
+     * Lock guarding which shard holds a user's queue.
+     *
+     * @param userId User ID
+     * @return lock
+     */
+    private Object lockOf(final Long userId) {
+        return userLocks[Math.floorMod(userId.hashCode(), userLocks.length)];
+    }
+
+    /**
+     * Shard of a user's organization. Callers hold the user's lock while using it.
+     *
+     * @param userId User ID
+     * @return TenantShard
+     */
+    private TenantShard shardOf(final Long userId) {
+        return shard(organizations.getOrDefault(userId, CommonConstants.DEFAULT_ORGANIZATION));
+    }
+
+    /**
+     * Shard of an organization, created on first use.
+     *
+     * @param organization organization
+     * @return TenantShard
+     */
+    private TenantShard shard(final String organization) {
+        final TenantShard shard = shards.get(organization);
+        if (shard != null) {
+            return shard;
+        }
+        return shards.computeIfAbsent(organization, key -> {
+            final int weight = tenancy.getWeights().getOrDefault(key, 1);
+            int workers = 0;
+            if (tenancy.isEnabled()) {
+                workers = weight * tenancy.getDrainWorkers();
+            }
+            PendingIndex index = null;
+            if (pendingIndex.isEnabled()) {
+                index = new PendingIndex(pendingIndex.getAgeBucket());
+            }
+            log.info("Creating shard for organization {} with weight {}", key, weight);
+            return new TenantShard(key, weight, workers, weight * tenancy.getRateLimit(), index, this);
+        });
+    }
+
+    /**
+     * Embeds the entity a message is about: the event of an event message, the question of a question
+     * message or the quiz of a quiz message. Messages of other shapes are left as they are. A sender never
+     * waits for a fetch: an entity not rendered yet is left out. When the message is drained, it waits a
+     * short while for a render still under way.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @param draining if the message is about to be delivered, rather than being sent
+     */
+    private void embed(final WebsocketMessage websocketMessage, final boolean draining) {
+        final MessageTemplate template = MessageTemplates.forType(websocketMessage.getEventType());
+        final List<String> parameters = websocketMessage.getParameters();
+        if (template == null || !template.matches(websocketMessage) || parameters == null) {
+            return;
+        }
+        final int entityParameter;
+        switch (template.getParameterSource()) {
+            case EVENT:
+            case QUESTION_AND_QUIZ:
+                entityParameter = 0;
+                break;
+            case USER_AND_QUIZ:
+                entityParameter = 1;
+                break;
+            default:
+                return;
+        }
+        if (parameters.size() <= entityParameter || parameters.get(entityParameter) == null) {
+            return;
+        }
+        if (draining) {
+            websocketMessage.setPayload(contentCache.await(template.getService(), parameters.get(entityParameter)));
+        } else {
+            websocketMessage.setPayload(contentCache.peek(template.getService(), parameters.get(entityParameter)));
+        }
+    }
+
+    /**
+     * Resolves the parameters of a templated message.
+     *
+     * @param parameterSource ParameterSource
+     * @param message Message
+     * @param user User
+     * @param referenceId Reference ID
+     * @return parameters
+     */
+    private List<String> getParameters(final ParameterSource parameterSource, final Message message,
+                                       final User user, final Long referenceId) {
+        switch (parameterSource) {
+            case EVENT:
+                final Event event = getEvent(message);
+                return List.of(event.getId().toString());
+            case USER:
+                return List.of(user.getId().toString());
+            case QUESTION_AND_QUIZ:
+                final Question question = getQuestion(message);
+                return withQuiz(question.getId(), message);
+            case USER_AND_QUIZ:
+                return withQuiz(user.getId(), message);
+            case REFERENCE:
+                if (referenceId == null) {
+                    throw new IllegalArgumentException("Missing referenceId for message " + message.getId());
+                }
+                return List.of(referenceId.toString());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Builds a parameter list of an ID followed by the quiz ID (when present).
+     *
+     * @param id first parameter
+     * @param message Message
+     * @return parameters
+     */
+    private List<String> withQuiz(final Long id, final Message message) {
+        final Quiz quiz = getQuiz(message);
+        final List<String> parameters = new ArrayList<>();
+        parameters.add(id.toString());
+        if (quiz != null && quiz.getId() != null) {
+            parameters.add(quiz.getId().toString());
+        }
+        return parameters;
+    }
+
+    /**
+     * Looks up the event a message is about.
+     *
+     * @param message Message
+     * @return Event
+     */
     private Event getEvent(final Message message) {
-        return null;
+        final Event event = resolver().getEvent(message);
+        if (event == null || event.getId() == null) {
+            throw new IllegalArgumentException("Unknown event for message " + message.getId());
+        }
+        return event;
     }
 
+    /**
+     * Looks up the user a message is for.
+     *
+     * @param message Message
+     * @return User
+     */
     private User getUser(final Message message) {
-        return null;
+        final User user = resolver().getUser(message);
+        if (user == null || user.getId() == null) {
+            throw new IllegalArgumentException("Unknown user for message " + message.getId());
+        }
+        return user;
     }
 
+    /**
+     * Looks up the question a message is about.
+     *
+     * @param message Message
+     * @return Question
+     */
     private Question getQuestion(final Message message) {
-        return null;
+        final Question question = resolver().getQuestion(message);
+        if (question == null || question.getId() == null) {
+            throw new IllegalArgumentException("Unknown question for message " + message.getId());
+        }
+        return question;
     }
 
+    /**
+     * Looks up the quiz a message is about.
+     *
+     * @param message Message
+     * @return Quiz, or null when the message is not about a quiz
+     */
     private Quiz getQuiz(final Message message) {
-        return null;
+        return resolver().getQuiz(message);
+    }
+
+    /**
+     * MessageResolver, which the application must provide before messages are built.
+     *
+     * @return MessageResolver
+     */
+    private MessageResolver resolver() {
+        final MessageResolver resolver = messageResolver;
+        if (resolver == null) {
+            throw new IllegalStateException("No MessageResolver is configured");
+        }
+        return resolver;
     }
 }
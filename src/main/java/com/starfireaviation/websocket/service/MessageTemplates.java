@@ -0,0 +1,158 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.MessagePriority;
+import com.starfireaviation.websocket.model.MessageTemplate;
+import com.starfireaviation.websocket.model.ParameterSource;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.util.DirectBufferPool;
+import com.starfireaviation.websocket.util.WebsocketMessageEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Registry of the MessageTemplate for each supported NotificationEventType.
+ */
+public final class MessageTemplates {
+
+    /**
+     * Templates by NotificationEventType.
+     */
+    private static final Map<NotificationEventType, MessageTemplate> TEMPLATES;
+
+    static {
+        final Map<NotificationEventType, MessageTemplate> templates = new EnumMap<>(NotificationEventType.class);
+        register(templates, NotificationEventType.EVENT_UPCOMING, MessageService.EVENT_SERVICE,
+                ParameterSource.EVENT, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.EVENT_START, MessageService.EVENT_SERVICE,
+                ParameterSource.EVENT, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.EVENT_RSVP, MessageService.EVENT_SERVICE,
+                ParameterSource.EVENT, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.EVENT_REGISTER, MessageService.EVENT_SERVICE,
+                ParameterSource.EVENT, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.EVENT_UNREGISTER, MessageService.EVENT_SERVICE,
+                ParameterSource.EVENT, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.QUESTION_ASKED, MessageService.QUESTION_SERVICE,
+                ParameterSource.QUESTION_AND_QUIZ, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.QUIZ_COMPLETE, MessageService.QUIZ_SERVICE,
+                ParameterSource.USER_AND_QUIZ, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.USER_DELETE, MessageService.USER_SERVICE,
+                ParameterSource.USER, MessagePriority.HIGH);
+        register(templates, NotificationEventType.USER_VERIFIED, MessageService.USER_SERVICE,
+                ParameterSource.USER, MessagePriority.HIGH);
+        register(templates, NotificationEventType.USER_SETTINGS, MessageService.USER_SERVICE,
+                ParameterSource.USER, MessagePriority.NORMAL);
+        register(templates, NotificationEventType.PASSWORD_RESET, MessageService.USER_SERVICE,
+                ParameterSource.USER, MessagePriority.HIGH);
+        register(templates, NotificationEventType.LESSON_DISPLAYED, MessageService.USER_SERVICE,
+                ParameterSource.REFERENCE, MessagePriority.LOW);
+        register(templates, NotificationEventType.QUESTION_DISPLAYED, MessageService.QUESTION_SERVICE,
+                ParameterSource.REFERENCE, MessagePriority.LOW);
+        register(templates, NotificationEventType.REFERENCE_MATERIAL_DISPLAYED,
+                MessageService.REFERENCE_MATERIAL_SERVICE, ParameterSource.REFERENCE, MessagePriority.LOW);
+        templates.put(NotificationEventType.HOME_DISPLAYED,
+                MessageTemplate.of(NotificationEventType.HOME_DISPLAYED, null, null, ParameterSource.NONE,
+                        MessagePriority.LOW));
+        TEMPLATES = Collections.unmodifiableMap(templates);
+    }
+
+    /**
+     * Utility class.
+     */
+    private MessageTemplates() {
+    }
+
+    /**
+     * Gets the MessageTemplate for a NotificationEventType.
+     *
+     * @param eventType NotificationEventType
+     * @return MessageTemplate, or null when the event type is not supported
+     */
+    public static MessageTemplate forType(final NotificationEventType eventType) {
+        if (eventType == null) {
+            return null;
+        }
+        return TEMPLATES.get(eventType);
+    }
+
+    /**
+     * Gets the priority of a WebsocketMessage.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return MessagePriority, NORMAL when the event type has no template
+     */
+    public static MessagePriority priority(final WebsocketMessage websocketMessage) {
+        final MessageTemplate template = forType(websocketMessage.getEventType());
+        if (template == null) {
+            return MessagePriority.NORMAL;
+        }
+        return template.getPriority();
+    }
+
+    /**
+     * Encodes a WebsocketMessage, reusing the pre-encoded fragment of its template when it matches.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return JSON bytes
+     */
+    public static byte[] encode(final WebsocketMessage websocketMessage) {
+        final MessageTemplate template = forType(websocketMessage.getEventType());
+        if (template != null && template.matches(websocketMessage)) {
+            return WebsocketMessageEncoder.encode(websocketMessage, template.getEncodedFragment());
+        }
+        return WebsocketMessageEncoder.encode(websocketMessage);
+    }
+
+    /**
+     * Encodes a WebsocketMessage into a pooled buffer, reusing the pre-encoded fragment of its template
+     * when it matches.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @param pool DirectBufferPool
+     * @return buffer holding the JSON bytes, ready to be read
+     */
+    public static ByteBuffer encode(final WebsocketMessage websocketMessage, final DirectBufferPool pool) {
+        final MessageTemplate template = forType(websocketMessage.getEventType());
+        if (template != null && template.matches(websocketMessage)) {
+            return WebsocketMessageEncoder.encode(websocketMessage, template.getEncodedFragment(), pool);
+        }
+        return WebsocketMessageEncoder.encode(websocketMessage, WebsocketMessageEncoder.encodeFragment(
+                websocketMessage.getEventType(), websocketMessage.getService(), websocketMessage.getOperation()),
+                pool);
+    }
+
+    /**
+     * Registers a GET template.
+     *
+     * @param templates templates being built
+     * @param eventType NotificationEventType
+     * @param service Service
+     * @param parameterSource ParameterSource
+     * @param priority MessagePriority
+     */
+    private static void register(final Map<NotificationEventType, MessageTemplate> templates,
+                                 final NotificationEventType eventType, final String service,
+                                 final ParameterSource parameterSource, final MessagePriority priority) {
+        templates.put(eventType,
+                MessageTemplate.of(eventType, service, MessageService.GET_OPERATION, parameterSource, priority));
+    }
+}
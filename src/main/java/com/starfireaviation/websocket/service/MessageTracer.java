@@ -0,0 +1,129 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.model.MessageTrace;
+import com.starfireaviation.websocket.model.TraceReport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Samples messages for stage tracing and keeps the most recent completed traces in a fixed-size ring.
+ * Recording claims a slot with a single atomic increment, so writers never block each other; readers
+ * take a best-effort snapshot. With sampling off, starting a trace is a field read.
+ */
+public class MessageTracer {
+
+    /**
+     * Tracer which never samples.
+     */
+    public static final MessageTracer DISABLED = new MessageTracer(0, 1);
+
+    /**
+     * One in this many messages is traced; 0 disables tracing.
+     */
+    private final int sampleRate;
+
+    /**
+     * Completed traces.
+     */
+    private final AtomicReferenceArray<MessageTrace> ring;
+
+    /**
+     * Ring size - 1 (the size is a power of two).
+     */
+    private final int mask;
+
+    /**
+     * Traces recorded so far; the next slot to write.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Trace ID sequence.
+     */
+    private final AtomicLong traceIds = new AtomicLong();
+
+    /**
+     * Initializes an instance of <code>MessageTracer</code>.
+     *
+     * @param rate one in this many messages is traced, 0 for none
+     * @param ringSize completed traces kept, rounded up to a power of two
+     */
+    public MessageTracer(final int rate, final int ringSize) {
+        sampleRate = rate;
+        final int size = Integer.highestOneBit(Math.max(1, ringSize - 1)) << 1;
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    /**
+     * Starts a trace if this message is sampled.
+     *
+     * @return MessageTrace, or null when not sampled
+     */
+    public MessageTrace start() {
+        if (sampleRate == 0 || sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return null;
+        }
+        return new MessageTrace(traceIds.incrementAndGet(), this::record);
+    }
+
+    /**
+     * Records a completed trace, overwriting the oldest.
+     *
+     * @param messageTrace MessageTrace
+     */
+    void record(final MessageTrace messageTrace) {
+        ring.set((int) (head.getAndIncrement() & mask), messageTrace);
+    }
+
+    /**
+     * Reports the most recent completed traces which took at least the given time, newest first.
+     *
+     * @param minMillis minimum total time (ms)
+     * @param limit max traces reported
+     * @return TraceReports
+     */
+    public List<TraceReport> recent(final long minMillis, final int limit) {
+        final long minNanos = TimeUnit.MILLISECONDS.toNanos(minMillis);
+        final List<TraceReport> traceReports = new ArrayList<>();
+        final long newest = head.get();
+        for (long index = newest - 1; index >= 0 && index >= newest - ring.length()
+                && traceReports.size() < limit; index--) {
+            final MessageTrace messageTrace = ring.get((int) (index & mask));
+            if (messageTrace != null && messageTrace.getTotalNanos() >= minNanos) {
+                traceReports.add(messageTrace.toReport());
+            }
+        }
+        return traceReports;
+    }
+
+    /**
+     * Number of traces recorded since startup.
+     *
+     * @return recorded count
+     */
+    public long getRecordedCount() {
+        return head.get();
+    }
+}
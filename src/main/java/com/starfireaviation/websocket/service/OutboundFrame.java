@@ -0,0 +1,216 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.model.MessagePriority;
+import com.starfireaviation.websocket.model.TraceStage;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.util.DirectBufferPool;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An encoded WebsocketMessage waiting in a session's SendBuffer, or a batch of them packed into one
+ * JSON array frame. The payload lives in a pooled buffer, returned to the pool when the frame is written
+ * or dropped.
+ */
+public class OutboundFrame {
+
+    /**
+     * WebsocketMessage, null for a batch.
+     */
+    @Getter
+    private final WebsocketMessage websocketMessage;
+
+    /**
+     * Encoded message, ready to be read.
+     */
+    @Getter
+    private final ByteBuffer payload;
+
+    /**
+     * Encoded length in bytes.
+     */
+    @Getter
+    private final int length;
+
+    /**
+     * MessagePriority.
+     */
+    @Getter
+    private final MessagePriority priority;
+
+    /**
+     * Frames packed into a batch, oldest first; null for a single message.
+     */
+    @Getter
+    private final List<OutboundFrame> parts;
+
+    /**
+     * Pool the payload buffer came from.
+     */
+    private final DirectBufferPool bufferPool;
+
+    /**
+     * If the payload buffer has been returned to the pool.
+     */
+    private boolean released;
+
+    /**
+     * Initializes an instance of <code>OutboundFrame</code>, encoding the message into a pooled buffer.
+     *
+     * @param message WebsocketMessage
+     * @param pool DirectBufferPool
+     */
+    public OutboundFrame(final WebsocketMessage message, final DirectBufferPool pool) {
+        websocketMessage = message;
+        parts = null;
+        bufferPool = pool;
+        payload = MessageTemplates.encode(message, pool);
+        length = payload.remaining();
+        priority = MessageTemplates.priority(message);
+        if (message.getTrace() != null) {
+            message.getTrace().stamp(TraceStage.ENCODED);
+        }
+    }
+
+    /**
+     * Initializes a batch <code>OutboundFrame</code>, copying the payloads of its parts into one JSON
+     * array. The parts keep their own payloads, so an aborted batch can be unpacked and written again.
+     *
+     * @param frames parts, oldest first
+     * @param batchLength length of the array: the parts, a comma between each, and the brackets
+     * @param pool DirectBufferPool of batch buffers
+     */
+    OutboundFrame(final List<OutboundFrame> frames, final int batchLength, final DirectBufferPool pool) {
+        websocketMessage = null;
+        parts = frames;
+        bufferPool = pool;
+        payload = pool.acquire(batchLength);
+        payload.put((byte) '[');
+        for (int i = 0; i < frames.size(); i++) {
+            if (i > 0) {
+                payload.put((byte) ',');
+            }
+            final ByteBuffer part = frames.get(i).payload;
+            final int position = part.position();
+            payload.put(part);
+            part.position(position);
+        }
+        payload.put((byte) ']');
+        payload.flip();
+        length = payload.remaining();
+        priority = frames.get(0).priority;
+    }
+
+    /**
+     * Determines if the frame is a batch of messages.
+     *
+     * @return if a batch
+     */
+    public boolean isBatch() {
+        return parts != null;
+    }
+
+    /**
+     * Number of messages in the frame.
+     *
+     * @return message count
+     */
+    public int getMessageCount() {
+        if (parts == null) {
+            return 1;
+        }
+        return parts.size();
+    }
+
+    /**
+     * Completes the traces of the frame's messages once it has been written.
+     */
+    public void complete() {
+        if (parts == null) {
+            if (websocketMessage.getTrace() != null) {
+                websocketMessage.getTrace().complete();
+            }
+            return;
+        }
+        for (final OutboundFrame part : parts) {
+            part.complete();
+        }
+    }
+
+    /**
+     * Returns the payload buffer to the pool, once, along with those of a batch's parts. The payload must
+     * not be read afterwards. Called with the session locked.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            bufferPool.release(payload);
+            if (parts != null) {
+                for (final OutboundFrame part : parts) {
+                    part.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a batch's own payload buffer to the pool, leaving its parts to be written again.
+     *
+     * @return parts, oldest first
+     */
+    List<OutboundFrame> unpack() {
+        if (!released) {
+            released = true;
+            bufferPool.release(payload);
+        }
+        return parts;
+    }
+
+    /**
+     * Determines if the frame is tracked for at-least-once delivery, in which case it must not be
+     * discarded: the in-flight window owns it.
+     *
+     * @return if tracked
+     */
+    public boolean isTracked() {
+        return websocketMessage != null && websocketMessage.getMessageId() != null;
+    }
+
+    /**
+     * Determines if this (newer) frame makes an older one redundant: a repeat of an identical message,
+     * such as a display update of the same thing, replaces the original. Updates of different things are
+     * never merged, whatever their priority.
+     *
+     * @param older OutboundFrame queued earlier
+     * @return if the older frame may be discarded
+     */
+    public boolean supersedes(final OutboundFrame older) {
+        if (older.isTracked()) {
+            return false;
+        }
+        final WebsocketMessage olderMessage = older.websocketMessage;
+        return websocketMessage.getEventType() == olderMessage.getEventType()
+                && Objects.equals(websocketMessage.getService(), olderMessage.getService())
+                && Objects.equals(websocketMessage.getOperation(), olderMessage.getOperation())
+                && Objects.equals(websocketMessage.getParameters(), olderMessage.getParameters());
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.PendingQuery;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary indexes over a shard's queued messages: by NotificationEventType, by referenced entity ID
+ * (the first parameter) and by age bucket of the message timestamp. Each maps a key to the users with
+ * such messages queued and how many, so a query only examines the queues of the users every applicable
+ * index points at. Updated by the shard, under the user's queue lock, as messages are queued and removed.
+ */
+class PendingIndex {
+
+    /**
+     * Width (ms) of the age buckets.
+     */
+    private final long bucketWidth;
+
+    /**
+     * Message counts by user, by NotificationEventType.
+     */
+    private final Map<NotificationEventType, Map<Long, Integer>> byType = new ConcurrentHashMap<>();
+
+    /**
+     * Message counts by user, by referenced entity ID.
+     */
+    private final Map<String, Map<Long, Integer>> byEntity = new ConcurrentHashMap<>();
+
+    /**
+     * Message counts by user, by age bucket (timestamp divided by the bucket width).
+     */
+    private final Map<Long, Map<Long, Integer>> byAge = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes an instance of <code>PendingIndex</code>.
+     *
+     * @param ageBucket width (ms) of the age buckets
+     */
+    PendingIndex(final long ageBucket) {
+        bucketWidth = Math.max(1, ageBucket);
+    }
+
+    /**
+     * Indexes a queued message.
+     *
+     * @param userId User ID
+     * @param websocketMessage WebsocketMessage
+     */
+    void add(final Long userId, final WebsocketMessage websocketMessage) {
+        update(userId, websocketMessage, 1);
+    }
+
+    /**
+     * Removes a message no longer queued.
+     *
+     * @param userId User ID
+     * @param websocketMessage WebsocketMessage
+     */
+    void remove(final Long userId, final WebsocketMessage websocketMessage) {
+        update(userId, websocketMessage, -1);
+    }
+
+    /**
+     * Removes messages no longer queued.
+     *
+     * @param userId User ID
+     * @param websocketMessages WebsocketMessages
+     */
+    void removeAll(final Long userId, final List<WebsocketMessage> websocketMessages) {
+        for (final WebsocketMessage websocketMessage : websocketMessages) {
+            update(userId, websocketMessage, -1);
+        }
+    }
+
+    /**
+     * Users which may have messages matching a query: those the type and entity indexes both point at,
+     * intersected smallest first. The age index, whose buckets have to be merged, is only used when
+     * neither applies. The messages themselves still have to be checked.
+     *
+     * @param query PendingQuery
+     * @param cutoff latest timestamp (epoch ms) old enough to match
+     * @return candidate user IDs, or null when no index applies
+     */
+    Set<Long> candidates(final PendingQuery query, final long cutoff) {
+        final List<Set<Long>> indexed = new ArrayList<>();
+        if (query.getEventType() != null) {
+            indexed.add(users(byType, query.getEventType()));
+        }
+        if (query.getEntityId() != null) {
+            indexed.add(users(byEntity, query.getEntityId()));
+        }
+        if (indexed.isEmpty() && query.getMinAge() > 0) {
+            return usersSince(cutoff);
+        }
+        if (indexed.isEmpty()) {
+            return null;
+        }
+        if (indexed.size() == 1) {
+            return indexed.get(0);
+        }
+        indexed.sort(Comparator.comparingInt(Set::size));
+        final Set<Long> candidates = new HashSet<>(indexed.get(0));
+        for (int i = 1; i < indexed.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(indexed.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * Determines if a message matches a query.
+     *
+     * @param query PendingQuery
+     * @param websocketMessage WebsocketMessage
+     * @param cutoff latest timestamp (epoch ms) old enough to match
+     * @return if it matches
+     */
+    static boolean matches(final PendingQuery query, final WebsocketMessage websocketMessage, final long cutoff) {
+        if (query.getEventType() != null && query.getEventType() != websocketMessage.getEventType()) {
+            return false;
+        }
+        if (query.getService() != null && !query.getService().equals(websocketMessage.getService())) {
+            return false;
+        }
+        if (query.getEntityId() != null && !query.getEntityId().equals(entityId(websocketMessage))) {
+            return false;
+        }
+        return query.getMinAge() <= 0 || websocketMessage.getTimestamp() != null
+                && websocketMessage.getTimestamp().toEpochMilli() <= cutoff;
+    }
+
+    /**
+     * Referenced entity ID of a message: its first parameter.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return entity ID, or null when the message has no parameters
+     */
+    private static String entityId(final WebsocketMessage websocketMessage) {
+        final List<String> parameters = websocketMessage.getParameters();
+        if (parameters == null || parameters.isEmpty()) {
+            return null;
+        }
+        return parameters.get(0);
+    }
+
+    /**
+     * Adjusts a message's user counts in every index.
+     *
+     * @param userId User ID
+     * @param websocketMessage WebsocketMessage
+     * @param delta 1 when queued, -1 when removed
+     */
+    private void update(final Long userId, final WebsocketMessage websocketMessage, final int delta) {
+        count(byType, websocketMessage.getEventType(), userId, delta);
+        count(byEntity, entityId(websocketMessage), userId, delta);
+        if (websocketMessage.getTimestamp() != null) {
+            count(byAge, Math.floorDiv(websocketMessage.getTimestamp().toEpochMilli(), bucketWidth), userId,
+                    delta);
+        }
+    }
+
+    /**
+     * Users in the age buckets which may hold messages at least as old as the cutoff.
+     *
+     * @param cutoff latest timestamp (epoch ms) old enough to match
+     * @return user IDs
+     */
+    private Set<Long> usersSince(final long cutoff) {
+        final long lastBucket = Math.floorDiv(cutoff, bucketWidth);
+        final Set<Long> users = new HashSet<>();
+        for (final Map.Entry<Long, Map<Long, Integer>> bucket : byAge.entrySet()) {
+            if (bucket.getKey() <= lastBucket) {
+                users.addAll(bucket.getValue().keySet());
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Users an index entry points at.
+     *
+     * @param index index
+     * @param key key
+     * @param <K> key type
+     * @return user IDs, a live view
+     */
+    private static <K> Set<Long> users(final Map<K, Map<Long, Integer>> index, final K key) {
+        final Map<Long, Integer> counts = index.get(key);
+        if (counts == null) {
+            return Set.of();
+        }
+        return counts.keySet();
+    }
+
+    /**
+     * Adjusts a user's count under an index key, removing the user, and then the key, at zero. A count
+     * which stays above zero is adjusted without locking the key, which is only removed once no user
+     * is counted under it.
+     *
+     * @param index index
+     * @param key key, null when the message is not indexed by it
+     * @param userId User ID
+     * @param delta 1 or -1
+     * @param <K> key type
+     */
+    private static <K> void count(final Map<K, Map<Long, Integer>> index, final K key, final Long userId,
+                                  final int delta) {
+        if (key == null) {
+            return;
+        }
+        final Map<Long, Integer> counts = index.get(key);
+        if (counts != null) {
+            if (delta > 0 && counts.computeIfPresent(userId, PendingIndex::increment) != null) {
+                return;
+            }
+            final Integer count = counts.get(userId);
+            if (delta < 0 && count != null && count > 1 && counts.replace(userId, count, count - 1)) {
+                return;
+            }
+        }
+        index.compute(key, (k, users) -> {
+            Map<Long, Integer> updated = users;
+            if (updated == null) {
+                if (delta < 0) {
+                    return null;
+                }
+                updated = new ConcurrentHashMap<>();
+            }
+            updated.merge(userId, delta, PendingIndex::sum);
+            if (updated.isEmpty()) {
+                return null;
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Increments a count.
+     *
+     * @param userId User ID
+     * @param count current count
+     * @return new count
+     */
+    private static Integer increment(final Long userId, final Integer count) {
+        return count + 1;
+    }
+
+    /**
+     * Adds counts, removing the entry at zero.
+     *
+     * @param count current count
+     * @param delta change
+     * @return new count, or null at zero
+     */
+    private static Integer sum(final Integer count, final Integer delta) {
+        final int sum = count + delta;
+        if (sum == 0) {
+            return null;
+        }
+        return sum;
+    }
+}
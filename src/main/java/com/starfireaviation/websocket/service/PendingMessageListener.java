@@ -0,0 +1,42 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+/**
+ * Listener notified when messages are queued for a user.
+ */
+@FunctionalInterface
+public interface PendingMessageListener {
+
+    /**
+     * Called after a message has been queued for a user.
+     *
+     * @param userId User ID
+     */
+    void onPending(Long userId);
+
+    /**
+     * Determines if a user may be delivered to now. Messages queued for other users are only delivered
+     * once they connect, so their shard does not schedule a delivery.
+     *
+     * @param userId User ID
+     * @return if the user is online (true unless the listener knows better)
+     */
+    default boolean isOnline(final Long userId) {
+        return true;
+    }
+}
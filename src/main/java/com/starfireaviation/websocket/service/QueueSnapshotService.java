@@ -0,0 +1,384 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.util.QueueSnapshotReader;
+import com.starfireaviation.websocket.util.QueueSnapshotWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carries the queues across a restart. On stop, after the WebSocket transports have closed and their
+ * sessions have requeued what they held, every queue is written to a checksummed snapshot, split by user
+ * ID into files written in parallel. On start, before the transports accept connections, the files are
+ * read back in parallel, verified and requeued, then deleted. A file which fails verification is set
+ * aside with a <code>.corrupt</code> suffix and skipped. File names carry their owner,
+ * <code>queues-&lt;owner&gt;_&lt;partition&gt;.snapshot</code>, and only the owner's own files are ever
+ * written, restored or deleted, so replicas sharing a directory keep to their own snapshots.
+ */
+@Slf4j
+public class QueueSnapshotService implements SmartLifecycle {
+
+    /**
+     * Prefix of snapshot file names.
+     */
+    private static final String FILE_PREFIX = "queues-";
+
+    /**
+     * Separator between the owner and the partition in snapshot file names; never part of an owner.
+     */
+    private static final String OWNER_SEPARATOR = "_";
+
+    /**
+     * Characters of an owner which are replaced, to keep file names and the listing glob literal.
+     */
+    private static final String OWNER_UNSAFE = "[^A-Za-z0-9.-]";
+
+    /**
+     * Owner of a snapshot when the host name is unknown.
+     */
+    private static final String DEFAULT_OWNER = "localhost";
+
+    /**
+     * Suffix of snapshot file names.
+     */
+    private static final String FILE_SUFFIX = ".snapshot";
+
+    /**
+     * Suffix of a snapshot file being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Suffix of a snapshot file set aside as corrupt.
+     */
+    private static final String CORRUPT_SUFFIX = ".corrupt";
+
+    /**
+     * MessageService.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Directory of the snapshot files.
+     */
+    private final Path directory;
+
+    /**
+     * Files a snapshot is split into.
+     */
+    private final int partitions;
+
+    /**
+     * Prefix of this owner's snapshot file names.
+     */
+    private final String ownerPrefix;
+
+    /**
+     * If started.
+     */
+    private volatile boolean running;
+
+    /**
+     * Initializes an instance of <code>QueueSnapshotService</code>.
+     *
+     * @param service MessageService
+     * @param snapshot snapshot properties
+     */
+    public QueueSnapshotService(final MessageService service, final ApplicationProperties.Snapshot snapshot) {
+        messageService = service;
+        directory = Paths.get(snapshot.getDirectory());
+        if (snapshot.getPartitions() > 0) {
+            partitions = snapshot.getPartitions();
+        } else {
+            partitions = Runtime.getRuntime().availableProcessors();
+        }
+        String owner = snapshot.getOwner();
+        if (owner == null || owner.isBlank()) {
+            owner = hostName();
+        }
+        ownerPrefix = FILE_PREFIX + owner.replaceAll(OWNER_UNSAFE, "-") + OWNER_SEPARATOR;
+    }
+
+    /**
+     * Restores the snapshot, if there is one.
+     */
+    @Override
+    public void start() {
+        try {
+            restore();
+        } catch (IOException e) {
+            log.error("Unable to restore the queue snapshot from {}: {}", directory, e.getMessage(), e);
+        }
+        running = true;
+    }
+
+    /**
+     * Writes the snapshot.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            snapshot();
+        } catch (IOException e) {
+            log.error("Unable to write the queue snapshot to {}: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Determines if started.
+     *
+     * @return if running
+     */
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Phase: before the transports on start, after them on stop.
+     *
+     * @return phase
+     */
+    @Override
+    public int getPhase() {
+        return CommonConstants.SNAPSHOT_LIFECYCLE_PHASE;
+    }
+
+    /**
+     * Writes every queue to this owner's snapshot files, replacing its previous snapshot once all are
+     * written.
+     *
+     * @return messages written
+     * @throws IOException when a file cannot be written
+     */
+    public long snapshot() throws IOException {
+        final long start = System.nanoTime();
+        Files.createDirectories(directory);
+        final List<Callable<Long>> tasks = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            final int partition = i;
+            tasks.add(() -> writePartition(partition));
+        }
+        final long messages;
+        try {
+            messages = runAll(tasks);
+        } catch (IOException e) {
+            for (int i = 0; i < partitions; i++) {
+                Files.deleteIfExists(tempFile(i));
+            }
+            throw e;
+        }
+        for (final Path previous : snapshotFiles()) {
+            Files.delete(previous);
+        }
+        long bytes = 0;
+        for (int i = 0; i < partitions; i++) {
+            final Path file = directory.resolve(ownerPrefix + i + FILE_SUFFIX);
+            Files.move(tempFile(i), file, StandardCopyOption.ATOMIC_MOVE);
+            bytes += Files.size(file);
+        }
+        log.info("Wrote snapshot of {} queued messages ({} bytes in {} files) in {} ms", messages, bytes,
+                partitions, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return messages;
+    }
+
+    /**
+     * Restores the queues from this owner's snapshot files, then deletes them.
+     *
+     * @return messages restored
+     * @throws IOException when the directory cannot be read
+     */
+    public long restore() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        final List<Path> files = snapshotFiles();
+        if (files.isEmpty()) {
+            return 0;
+        }
+        final long start = System.nanoTime();
+        final List<Callable<Long>> tasks = new ArrayList<>(files.size());
+        for (final Path file : files) {
+            tasks.add(() -> restoreFile(file));
+        }
+        final long messages = runAll(tasks);
+        log.info("Restored {} queued messages from {} snapshot files in {} ms", messages, files.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return messages;
+    }
+
+    /**
+     * Writes the queues of the users in one partition to its temporary file, synced to disk.
+     *
+     * @param partition partition
+     * @return messages written
+     * @throws IOException when the file cannot be written
+     */
+    private long writePartition(final int partition) throws IOException {
+        try (FileChannel channel = FileChannel.open(tempFile(partition), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             QueueSnapshotWriter writer = new QueueSnapshotWriter(Channels.newOutputStream(channel),
+                     CommonConstants.SNAPSHOT_BUFFER_SIZE)) {
+            for (final TenantShard shard : messageService.getShards()) {
+                for (final Long userId : shard.getUsers()) {
+                    if (Math.floorMod(userId, partitions) != partition) {
+                        continue;
+                    }
+                    final List<WebsocketMessage> queue = shard.copy(userId);
+                    if (!queue.isEmpty()) {
+                        writer.write(shard.getOrganization(), userId, queue);
+                    }
+                }
+            }
+            writer.finish();
+            channel.force(true);
+            return writer.getMessages();
+        }
+    }
+
+    /**
+     * Reads and verifies one snapshot file, then requeues its queues and deletes it. A file which fails
+     * verification is set aside.
+     *
+     * @param file snapshot file
+     * @return messages restored
+     * @throws IOException when the file cannot be opened, moved or deleted
+     */
+    private long restoreFile(final Path file) throws IOException {
+        final List<String> organizations = new ArrayList<>();
+        final List<Long> userIds = new ArrayList<>();
+        final List<List<WebsocketMessage>> queues = new ArrayList<>();
+        long messages = 0;
+        try (QueueSnapshotReader reader = new QueueSnapshotReader(Files.newInputStream(file),
+                CommonConstants.SNAPSHOT_BUFFER_SIZE)) {
+            while (reader.next()) {
+                organizations.add(reader.getOrganization());
+                userIds.add(reader.getUserId());
+                queues.add(reader.getMessages());
+            }
+            messages = reader.getMessageCount();
+        } catch (IOException e) {
+            log.error("Setting aside queue snapshot {}: {}", file, e.getMessage());
+            Files.move(file, file.resolveSibling(file.getFileName() + CORRUPT_SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return 0;
+        }
+        for (int i = 0; i < userIds.size(); i++) {
+            messageService.restore(organizations.get(i), userIds.get(i), queues.get(i));
+        }
+        Files.delete(file);
+        return messages;
+    }
+
+    /**
+     * This owner's snapshot files in the directory.
+     *
+     * @return files
+     * @throws IOException when the directory cannot be read
+     */
+    private List<Path> snapshotFiles() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, ownerPrefix + "*" + FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    /**
+     * Temporary file of a partition.
+     *
+     * @param partition partition
+     * @return file
+     */
+    private Path tempFile(final int partition) {
+        return directory.resolve(ownerPrefix + partition + FILE_SUFFIX + TEMP_SUFFIX);
+    }
+
+    /**
+     * Name of this host: the pod name in Kubernetes, stable across restarts in a StatefulSet.
+     *
+     * @return host name
+     */
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException uhe) {
+            log.warn("Unable to determine the host name, naming queue snapshots {}", DEFAULT_OWNER);
+            return DEFAULT_OWNER;
+        }
+    }
+
+    /**
+     * Runs tasks on a thread each, up to one per available processor, and sums their results.
+     *
+     * @param tasks tasks
+     * @return sum of the results
+     * @throws IOException the first failure of a task
+     */
+    private static long runAll(final List<Callable<Long>> tasks) throws IOException {
+        final AtomicInteger threads = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()), runnable -> {
+                    final Thread thread = new Thread(runnable, "snapshot-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            long total = 0;
+            for (final Future<Long> future : executor.invokeAll(tasks)) {
+                total += future.get();
+            }
+            return total;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
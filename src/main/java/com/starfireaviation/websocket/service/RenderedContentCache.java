@@ -0,0 +1,468 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.ContentCacheStats;
+import com.starfireaviation.websocket.model.RenderedContent;
+import com.starfireaviation.websocket.model.ResolvedEntity;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Entities rendered to JSON once and shared by every message which embeds them, so that a question
+ * asked of a whole class is fetched and rendered once rather than once per recipient. Concurrent
+ * lookups of an entity being rendered wait for that render. The cache is bounded by the bytes it
+ * holds, evicting the least recently used entries. An entry is dropped when its entity is invalidated.
+ * Once older than the max age it is rendered again, unless the resolver reports that the entity still
+ * has the version rendered, in which case the rendering is reused. A render under way when its entity
+ * is invalidated is used for the lookups already waiting on it, but not cached. Senders peek rather
+ * than wait: a miss starts the render on a background thread, and the message goes without its payload
+ * until the render is done. When the message is about to be delivered, it waits a short while for a
+ * render still under way.
+ */
+@Slf4j
+public class RenderedContentCache implements AutoCloseable {
+
+    /**
+     * Initial capacity of the entry map.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Load factor of the entry map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Bytes charged per entry on top of its content, so entries with nothing to embed are bounded too.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * Looks up entities.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Renders entities to JSON.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Inline properties.
+     */
+    private final ApplicationProperties.Inline inline;
+
+    /**
+     * Fetches and renders entities for peeking lookups.
+     */
+    private final ExecutorService renderer;
+
+    /**
+     * Entries by service and entity ID, least recently used first. Guarded by this.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /**
+     * Bytes charged for the rendered entries. Guarded by this.
+     */
+    private long bytes;
+
+    /**
+     * Counters. Guarded by this.
+     */
+    private final ContentCacheStats counters = new ContentCacheStats();
+
+    /**
+     * Initializes an instance of <code>RenderedContentCache</code>.
+     *
+     * @param resolver ContentResolver
+     * @param mapper ObjectMapper
+     * @param inlineProperties inline properties
+     */
+    public RenderedContentCache(final ContentResolver resolver, final ObjectMapper mapper,
+                                final ApplicationProperties.Inline inlineProperties) {
+        contentResolver = resolver;
+        objectMapper = mapper;
+        inline = inlineProperties;
+        final AtomicInteger threads = new AtomicInteger();
+        renderer = Executors.newFixedThreadPool(Math.max(1, inline.getRenderThreads()), runnable -> {
+            final Thread thread = new Thread(runnable, "content-render-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets an entity's rendered content, rendering it on the calling thread on a miss and waiting for a
+     * render under way.
+     *
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return RenderedContent, or null when there is nothing to embed
+     */
+    public RenderedContent get(final String service, final String entityId) {
+        final String key = service + ':' + entityId;
+        final long now = System.currentTimeMillis();
+        final Entry entry = new Entry(key);
+        CompletableFuture<RenderedContent> waiting = null;
+        synchronized (this) {
+            final Entry cached = entries.get(key);
+            if (cached != null && (cached.rendering != null || now - cached.renderedAt < inline.getMaxAge())) {
+                counters.setHits(counters.getHits() + 1);
+                if (cached.rendering == null) {
+                    return cached.content;
+                }
+                waiting = cached.rendering;
+            } else {
+                if (cached != null) {
+                    remove(cached);
+                    entry.revalidate(cached);
+                }
+                counters.setMisses(counters.getMisses() + 1);
+                entries.put(key, entry);
+            }
+        }
+        if (waiting != null) {
+            return waiting.join();
+        }
+        return render(entry, service, entityId);
+    }
+
+    /**
+     * Gets an entity's rendered content without waiting for it. On a miss the entity is rendered on a
+     * background thread, for the lookups after it.
+     *
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return RenderedContent, or null when there is nothing to embed or it is not rendered yet
+     */
+    public RenderedContent peek(final String service, final String entityId) {
+        final String key = service + ':' + entityId;
+        final long now = System.currentTimeMillis();
+        final Entry entry = new Entry(key);
+        synchronized (this) {
+            final Entry cached = entries.get(key);
+            if (cached != null && cached.rendering != null) {
+                counters.setPending(counters.getPending() + 1);
+                return null;
+            }
+            if (cached != null && now - cached.renderedAt < inline.getMaxAge()) {
+                counters.setHits(counters.getHits() + 1);
+                return cached.content;
+            }
+            if (cached != null) {
+                remove(cached);
+                entry.revalidate(cached);
+            }
+            counters.setMisses(counters.getMisses() + 1);
+            entries.put(key, entry);
+        }
+        try {
+            renderer.execute(() -> render(entry, service, entityId));
+        } catch (RejectedExecutionException ree) {
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+            entry.rendering.complete(null);
+        }
+        return null;
+    }
+
+    /**
+     * Gets an entity's rendered content for a message about to be delivered, waiting up to the render
+     * wait for a render under way. Neither counted nor starting a render: the lookup made when the
+     * message was sent did both.
+     *
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return RenderedContent, or null when there is nothing to embed or it is not rendered in time
+     */
+    public RenderedContent await(final String service, final String entityId) {
+        final CompletableFuture<RenderedContent> rendering;
+        synchronized (this) {
+            final Entry cached = entries.get(service + ':' + entityId);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.rendering == null) {
+                if (System.currentTimeMillis() - cached.renderedAt < inline.getMaxAge()) {
+                    return cached.content;
+                }
+                return null;
+            }
+            rendering = cached.rendering;
+        }
+        try {
+            return rendering.get(inline.getRenderWait(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops the render threads.
+     */
+    @Override
+    public void close() {
+        renderer.shutdownNow();
+    }
+
+    /**
+     * Renders an entity into its entry, caching it unless the entry was invalidated meanwhile, and
+     * completes the lookups waiting on it.
+     *
+     * @param entry Entry being rendered
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return RenderedContent, or null when there is nothing to embed
+     */
+    private RenderedContent render(final Entry entry, final String service, final String entityId) {
+        final String key = entry.key;
+        RenderedContent content = null;
+        boolean failed = false;
+        try {
+            content = resolveAndRender(entry, service, entityId);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            log.warn("Unable to render {} {} for embedding: {}", service, entityId, e.getMessage());
+        }
+        final CompletableFuture<RenderedContent> rendering = entry.rendering;
+        synchronized (this) {
+            entry.rendering = null;
+            entry.previousContent = null;
+            if (failed) {
+                counters.setFailures(counters.getFailures() + 1);
+            }
+            if (entries.get(key) == entry) {
+                if (failed) {
+                    entries.remove(key);
+                } else {
+                    entry.content = content;
+                    entry.renderedAt = System.currentTimeMillis();
+                    entry.size = size(entry);
+                    bytes += entry.size;
+                    evict();
+                }
+            }
+        }
+        rendering.complete(content);
+        return content;
+    }
+
+    /**
+     * Drops an entity's rendered content, so that the next lookup renders it again.
+     *
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return if the entity was cached
+     */
+    public synchronized boolean invalidate(final String service, final String entityId) {
+        final Entry entry = entries.get(service + ':' + entityId);
+        if (entry == null) {
+            return false;
+        }
+        remove(entry);
+        counters.setInvalidations(counters.getInvalidations() + 1);
+        return true;
+    }
+
+    /**
+     * Cache counters.
+     *
+     * @return ContentCacheStats
+     */
+    public synchronized ContentCacheStats getStats() {
+        final ContentCacheStats stats = new ContentCacheStats();
+        stats.setEntries(entries.size());
+        stats.setBytes(bytes);
+        stats.setHits(counters.getHits());
+        stats.setMisses(counters.getMisses());
+        stats.setPending(counters.getPending());
+        stats.setFailures(counters.getFailures());
+        stats.setEvictions(counters.getEvictions());
+        stats.setInvalidations(counters.getInvalidations());
+        stats.setRevalidations(counters.getRevalidations());
+        return stats;
+    }
+
+    /**
+     * Looks up and renders an entity, or reuses the expired rendering the entry revalidates when the
+     * entity still has its version.
+     *
+     * @param entry Entry being rendered
+     * @param service service of the entity
+     * @param entityId entity ID
+     * @return RenderedContent, or null when there is no entity or it is too large to embed
+     * @throws IOException when the entity cannot be looked up
+     */
+    private RenderedContent resolveAndRender(final Entry entry, final String service, final String entityId)
+            throws IOException {
+        final ResolvedEntity resolved = contentResolver.resolve(service, entityId, entry.previousVersion);
+        if (resolved.isUnchanged()) {
+            synchronized (this) {
+                counters.setRevalidations(counters.getRevalidations() + 1);
+            }
+            entry.version = entry.previousVersion;
+            return entry.previousContent;
+        }
+        entry.version = resolved.getVersion();
+        final Object entity = resolved.getEntity();
+        if (entity == null) {
+            return null;
+        }
+        final byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(entity);
+        } catch (JsonProcessingException jpe) {
+            throw new IOException("Unable to render " + service + " " + entityId, jpe);
+        }
+        if (json.length > inline.getMaxEntryBytes()) {
+            log.debug("Not embedding {} {}: {} bytes", service, entityId, json.length);
+            return null;
+        }
+        return new RenderedContent(service, entityId, json);
+    }
+
+    /**
+     * Removes an entry. Called with the lock held.
+     *
+     * @param entry Entry
+     */
+    private void remove(final Entry entry) {
+        entries.remove(entry.key);
+        bytes -= entry.size;
+    }
+
+    /**
+     * Evicts the least recently used rendered entries until the cache is within its bound. Called with
+     * the lock held.
+     */
+    private void evict() {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > inline.getMaxBytes() && iterator.hasNext()) {
+            final Entry eldest = iterator.next();
+            if (eldest.rendering == null) {
+                iterator.remove();
+                bytes -= eldest.size;
+                counters.setEvictions(counters.getEvictions() + 1);
+            }
+        }
+    }
+
+    /**
+     * Bytes charged for a rendered entry.
+     *
+     * @param entry Entry
+     * @return bytes
+     */
+    private static long size(final Entry entry) {
+        long size = ENTRY_OVERHEAD + entry.key.length();
+        if (entry.content != null) {
+            size += entry.content.getJson().length;
+        }
+        return size;
+    }
+
+    /**
+     * Cached rendering of an entity, or a render under way.
+     */
+    private static final class Entry {
+
+        /**
+         * Service and entity ID.
+         */
+        private final String key;
+
+        /**
+         * Completed with the content once rendered; null after. Guarded by the cache.
+         */
+        private CompletableFuture<RenderedContent> rendering = new CompletableFuture<>();
+
+        /**
+         * Rendered content, null when there is nothing to embed. Guarded by the cache.
+         */
+        private RenderedContent content;
+
+        /**
+         * Time (ms) the entity was rendered. Guarded by the cache.
+         */
+        private long renderedAt;
+
+        /**
+         * Bytes charged for the entry, 0 while rendering. Guarded by the cache.
+         */
+        private long size;
+
+        /**
+         * Version of the rendered entity, null when its resolver does not report one. Written by the
+         * render, before the entry is published.
+         */
+        private String version;
+
+        /**
+         * Version of the expired rendering this entry revalidates, null when there is none.
+         */
+        private String previousVersion;
+
+        /**
+         * Expired rendering this entry revalidates, reused when its entity still has that version.
+         */
+        private RenderedContent previousContent;
+
+        /**
+         * Initializes an instance of <code>Entry</code>, to be rendered.
+         *
+         * @param entryKey service and entity ID
+         */
+        private Entry(final String entryKey) {
+            key = entryKey;
+        }
+
+        /**
+         * Makes this entry revalidate an expired rendering of its entity, when the rendering has a version.
+         *
+         * @param expired Entry replaced by this one
+         */
+        private void revalidate(final Entry expired) {
+            if (expired.rendering == null && expired.version != null) {
+                previousVersion = expired.version;
+                previousContent = expired.content;
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.model.ResponseOption;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.jfr.ValidationFailureEvent;
+import com.starfireaviation.websocket.model.InboundFrame;
+import com.starfireaviation.websocket.util.IdempotencyWindow;
+import com.starfireaviation.websocket.validation.ResponseValidator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ResponseService.
+ */
+@Slf4j
+public class ResponseService {
+
+    /**
+     * Initial capacity of the idempotency window map.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Load factor of the idempotency window map.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * Recently seen client message IDs by user ID, least recently used first, striped by user ID so that
+     * answers from different users rarely contend. Each stripe is guarded by itself and forgets its own
+     * least recently used user.
+     */
+    private final Map<Long, IdempotencyWindow>[] idempotencyWindows;
+
+    /**
+     * Client message IDs remembered per user.
+     */
+    private final int idempotencyWindowSize;
+
+    /**
+     * Furthest a client message ID may be ahead of the highest one seen.
+     */
+    private final long idempotencyMaxJump;
+
+    /**
+     * Number of duplicate responses suppressed.
+     */
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * Number of responses accepted.
+     */
+    private final AtomicLong accepted = new AtomicLong();
+
+    /**
+     * Number of responses rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Initializes an instance of <code>ResponseService</code> remembering the default number of users.
+     *
+     * @param windowSize client message IDs remembered per user
+     */
+    public ResponseService(final int windowSize) {
+        this(windowSize, CommonConstants.DEFAULT_IDEMPOTENCY_USERS, CommonConstants.DEFAULT_IDEMPOTENCY_MAX_JUMP);
+    }
+
+    /**
+     * Initializes an instance of <code>ResponseService</code>.
+     *
+     * @param windowSize client message IDs remembered per user
+     * @param maxUsers users whose client message IDs are remembered
+     * @param maxJump furthest a client message ID may be ahead of the highest one seen
+     */
+    @SuppressWarnings("unchecked")
+    public ResponseService(final int windowSize, final int maxUsers, final long maxJump) {
+        idempotencyWindowSize = windowSize;
+        idempotencyMaxJump = maxJump;
+        final int stripes = Math.max(1, Math.min(CommonConstants.USER_LOCK_STRIPES,
+                maxUsers / CommonConstants.MIN_IDEMPOTENCY_USERS_PER_STRIPE));
+        final int usersPerStripe = maxUsers / stripes;
+        idempotencyWindows = new Map[stripes];
+        for (int i = 0; i < stripes; i++) {
+            idempotencyWindows[i] = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Long, IdempotencyWindow> eldest) {
+                    return size() > usersPerStripe;
+                }
+            };
+        }
+    }
+
+    /**
+     * Handles a user's response to a question. Valid responses resent with an already seen client message
+     * ID are dropped. A client message ID is only recorded once its response has been validated.
+     *
+     * @param userId User ID
+     * @param inboundFrame InboundFrame
+     * @return ResponseOption, or null when the response is a duplicate
+     * @throws InvalidPayloadException when response is not valid, or its client message ID jumps too far
+     */
+    public ResponseOption handleResponse(final Long userId, final InboundFrame inboundFrame)
+            throws InvalidPayloadException {
+        final long clientMessageId = inboundFrame.getClientMessageId();
+        final IdempotencyWindow idempotencyWindow = getIdempotencyWindow(userId, clientMessageId);
+        try {
+            if (idempotencyWindow != null && !idempotencyWindow.isWithinReach(clientMessageId)) {
+                throw new InvalidPayloadException("clientMessageId " + clientMessageId + " is more than "
+                        + idempotencyMaxJump + " ahead of the last one");
+            }
+            ResponseValidator.validate(inboundFrame.getResponse());
+        } catch (InvalidPayloadException ipe) {
+            rejected.incrementAndGet();
+            ValidationFailureEvent.commit(userId, ValidationFailureEvent.RESPONSE, inboundFrame.getQuestionId(),
+                    ipe.getMessage());
+            throw ipe;
+        }
+        if (idempotencyWindow != null && !idempotencyWindow.markIfNew(clientMessageId)) {
+            duplicates.incrementAndGet();
+            log.debug("Dropping duplicate response {} from user {}", clientMessageId, userId);
+            return null;
+        }
+        accepted.incrementAndGet();
+        log.debug("User {} answered question {} with {}", userId, inboundFrame.getQuestionId(),
+                inboundFrame.getResponse());
+        return inboundFrame.getResponse();
+    }
+
+    /**
+     * Number of duplicate responses suppressed.
+     *
+     * @return duplicate count
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * Number of responses accepted.
+     *
+     * @return accepted count
+     */
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * Number of responses rejected.
+     *
+     * @return rejected count
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Number of users whose client message IDs are remembered.
+     *
+     * @return user count
+     */
+    public int getIdempotencyUserCount() {
+        int users = 0;
+        for (final Map<Long, IdempotencyWindow> stripe : idempotencyWindows) {
+            synchronized (stripe) {
+                users += stripe.size();
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Gets the idempotency window of a user, creating it and forgetting the least recently used one of
+     * its stripe if there are too many.
+     *
+     * @param userId User ID
+     * @param clientMessageId client message ID (responses without one are never duplicates)
+     * @return IdempotencyWindow, or null when the response has no client message ID
+     */
+    private IdempotencyWindow getIdempotencyWindow(final Long userId, final long clientMessageId) {
+        if (clientMessageId == InboundFrame.ABSENT) {
+            return null;
+        }
+        final Map<Long, IdempotencyWindow> stripe =
+                idempotencyWindows[Math.floorMod(userId.hashCode(), idempotencyWindows.length)];
+        synchronized (stripe) {
+            return stripe.computeIfAbsent(userId,
+                    key -> new IdempotencyWindow(idempotencyWindowSize, idempotencyMaxJump));
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.util.DirectBufferPool;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Bounded queue of frames waiting to be written to one session. One write is outstanding at a time, so
+ * a client which reads slowly fills its own buffer instead of holding up delivery to anyone else. When
+ * the buffer is full the slow-consumer policy decides what gives. Guarded by the owning DeliverySession.
+ */
+public class SendBuffer {
+
+    /**
+     * Result of offering a frame.
+     */
+    public enum OfferResult {
+
+        /**
+         * Queued without discarding anything.
+         */
+        QUEUED,
+
+        /**
+         * Queued after discarding superseded frames.
+         */
+        COALESCED,
+
+        /**
+         * Lower priority frames, or the offered frame itself, were dropped.
+         */
+        DROPPED,
+
+        /**
+         * The buffer is full and nothing could be discarded; the session must be disconnected.
+         */
+        OVERFLOW
+    }
+
+    /**
+     * Frames not yet written, oldest first.
+     */
+    private final Deque<OutboundFrame> frames = new ArrayDeque<>();
+
+    /**
+     * Max bytes buffered, including the frame being written.
+     */
+    private final long maxBytes;
+
+    /**
+     * Max frames buffered, excluding the frame being written.
+     */
+    private final int maxMessages;
+
+    /**
+     * What to do when the buffer is full.
+     */
+    private final ApplicationProperties.SlowConsumerPolicy policy;
+
+    /**
+     * Bytes buffered, including the frame being written.
+     */
+    @Getter
+    private long bytes;
+
+    /**
+     * Frame being written, null when idle.
+     */
+    @Getter
+    private OutboundFrame writing;
+
+    /**
+     * Time (ms) the current write started.
+     */
+    private long writeStartedAt;
+
+    /**
+     * If a thread is already writing frames from this buffer.
+     */
+    @Getter
+    @Setter
+    private boolean draining;
+
+    /**
+     * If the buffer has overflowed since it was last empty.
+     */
+    @Getter
+    private boolean slow;
+
+    /**
+     * If the session is gone; nothing more is accepted.
+     */
+    @Getter
+    private boolean closed;
+
+    /**
+     * Frames dropped or coalesced away.
+     */
+    @Getter
+    private long discarded;
+
+    /**
+     * Initializes an instance of <code>SendBuffer</code>.
+     *
+     * @param sendBuffer send buffer properties
+     */
+    public SendBuffer(final ApplicationProperties.SendBuffer sendBuffer) {
+        maxBytes = sendBuffer.getMaxBytes();
+        maxMessages = sendBuffer.getMaxMessages();
+        policy = sendBuffer.getSlowConsumerPolicy();
+    }
+
+    /**
+     * Offers a frame, applying the slow-consumer policy when the buffer is full. The buffer owns the
+     * frame from then on, releasing it once it is written or dropped.
+     *
+     * @param frame OutboundFrame
+     * @return OfferResult
+     */
+    public OfferResult offer(final OutboundFrame frame) {
+        if (fits(frame)) {
+            add(frame);
+            return OfferResult.QUEUED;
+        }
+        slow = true;
+        final OfferResult result;
+        switch (policy) {
+            case COALESCE:
+                result = coalesce(frame);
+                break;
+            case DROP_LOWEST_PRIORITY:
+                result = dropLowestPriority(frame);
+                break;
+            default:
+                result = OfferResult.OVERFLOW;
+        }
+        if (result == OfferResult.OVERFLOW) {
+            frame.release();
+        }
+        return result;
+    }
+
+    /**
+     * Starts writing the next frame, unless a write is outstanding.
+     *
+     * @param now current time (ms)
+     * @return frame to write, or null
+     */
+    public OutboundFrame startWrite(final long now) {
+        if (writing != null || closed) {
+            return null;
+        }
+        writing = frames.poll();
+        writeStartedAt = now;
+        return writing;
+    }
+
+    /**
+     * Starts writing the frames at the head of the buffer packed into one batch frame, unless a write is
+     * outstanding. Frames are packed while the batch stays within the byte and message limits; a lone
+     * frame is written as it is.
+     *
+     * @param now current time (ms)
+     * @param batchBytes max bytes of a batch
+     * @param batchMessages max messages in a batch
+     * @param pool DirectBufferPool of batch buffers
+     * @return frame to write, or null
+     */
+    public OutboundFrame startBatch(final long now, final int batchBytes, final int batchMessages,
+                                    final DirectBufferPool pool) {
+        if (writing != null || closed || frames.isEmpty()) {
+            return null;
+        }
+        final OutboundFrame first = frames.poll();
+        writeStartedAt = now;
+        // Brackets around the array
+        int batchLength = first.getLength() + 2;
+        List<OutboundFrame> parts = null;
+        while (!frames.isEmpty() && (parts == null || parts.size() < batchMessages)
+                && batchLength + 1 + frames.peek().getLength() <= batchBytes) {
+            if (parts == null) {
+                parts = new ArrayList<>();
+                parts.add(first);
+            }
+            final OutboundFrame next = frames.poll();
+            parts.add(next);
+            batchLength += 1 + next.getLength();
+        }
+        if (parts == null) {
+            writing = first;
+            return writing;
+        }
+        writing = new OutboundFrame(parts, batchLength, pool);
+        bytes += parts.size() + 1;
+        return writing;
+    }
+
+    /**
+     * Completes the outstanding write.
+     *
+     * @return if the buffer was slow and has now drained
+     */
+    public boolean completeWrite() {
+        if (writing == null) {
+            return false;
+        }
+        bytes -= writing.getLength();
+        writing.release();
+        writing = null;
+        if (slow && frames.isEmpty()) {
+            slow = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Abandons the outstanding write, putting its frame back at the head of the buffer so that it is
+     * spooled with the rest. A batch is unpacked back into its parts.
+     */
+    public void abortWrite() {
+        if (writing == null) {
+            return;
+        }
+        if (writing.isBatch()) {
+            final List<OutboundFrame> parts = writing.unpack();
+            bytes -= parts.size() + 1;
+            for (int i = parts.size() - 1; i >= 0; i--) {
+                frames.addFirst(parts.get(i));
+            }
+        } else {
+            frames.addFirst(writing);
+        }
+        writing = null;
+    }
+
+    /**
+     * Determines if the outstanding write has taken longer than the deadline.
+     *
+     * @param now current time (ms)
+     * @param deadline max time (ms) for a write
+     * @return if stalled
+     */
+    public boolean isStalled(final long now, final long deadline) {
+        return writing != null && now - writeStartedAt > deadline;
+    }
+
+    /**
+     * Determines if a write is outstanding.
+     *
+     * @return if writing
+     */
+    public boolean isWriting() {
+        return writing != null;
+    }
+
+    /**
+     * Determines if a message is waiting to be written or being written, alone or as part of a batch.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return if buffered and not yet written
+     */
+    public boolean contains(final WebsocketMessage websocketMessage) {
+        if (writing != null) {
+            if (writing.getWebsocketMessage() == websocketMessage) {
+                return true;
+            }
+            if (writing.isBatch()) {
+                for (final OutboundFrame part : writing.getParts()) {
+                    if (part.getWebsocketMessage() == websocketMessage) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (final OutboundFrame frame : frames) {
+            if (frame.getWebsocketMessage() == websocketMessage) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the buffer, returning the messages which were never written and are not tracked by the
+     * in-flight window, oldest first. The messages of a frame still being written count as unsent, the
+     * parts of a batch included, since the session is gone before its write could be confirmed.
+     *
+     * @return unsent messages
+     */
+    public List<WebsocketMessage> release() {
+        final List<WebsocketMessage> unsent = new ArrayList<>();
+        if (writing != null) {
+            if (writing.isBatch()) {
+                for (final OutboundFrame part : writing.getParts()) {
+                    if (!part.isTracked()) {
+                        unsent.add(part.getWebsocketMessage());
+                    }
+                }
+            } else if (!writing.isTracked()) {
+                unsent.add(writing.getWebsocketMessage());
+            }
+            writing.release();
+        }
+        for (final OutboundFrame frame : frames) {
+            if (!frame.isTracked()) {
+                unsent.add(frame.getWebsocketMessage());
+            }
+            frame.release();
+        }
+        frames.clear();
+        writing = null;
+        bytes = 0;
+        closed = true;
+        return unsent;
+    }
+
+    /**
+     * Clears the slow flag.
+     *
+     * @return if the buffer was slow
+     */
+    public boolean clearSlow() {
+        final boolean wasSlow = slow;
+        slow = false;
+        return wasSlow;
+    }
+
+    /**
+     * Discards the buffered frames the offered frame supersedes.
+     *
+     * @param frame OutboundFrame
+     * @return COALESCED when the frame now fits, OVERFLOW otherwise
+     */
+    private OfferResult coalesce(final OutboundFrame frame) {
+        final Iterator<OutboundFrame> iterator = frames.iterator();
+        while (iterator.hasNext()) {
+            final OutboundFrame buffered = iterator.next();
+            if (frame.supersedes(buffered)) {
+                iterator.remove();
+                discard(buffered);
+            }
+        }
+        if (!fits(frame)) {
+            return OfferResult.OVERFLOW;
+        }
+        add(frame);
+        return OfferResult.COALESCED;
+    }
+
+    /**
+     * Drops the oldest of the lowest priority frames until the offered frame fits, or drops the offered
+     * frame when everything buffered is more important.
+     *
+     * @param frame OutboundFrame
+     * @return DROPPED, or OVERFLOW when only tracked frames are left
+     */
+    private OfferResult dropLowestPriority(final OutboundFrame frame) {
+        while (!fits(frame)) {
+            OutboundFrame victim = null;
+            for (final OutboundFrame buffered : frames) {
+                if (!buffered.isTracked()
+                        && (victim == null || buffered.getPriority().compareTo(victim.getPriority()) < 0)) {
+                    victim = buffered;
+                }
+            }
+            if (victim == null || victim.getPriority().compareTo(frame.getPriority()) > 0) {
+                if (frame.isTracked()) {
+                    return OfferResult.OVERFLOW;
+                }
+                discarded++;
+                frame.release();
+                return OfferResult.DROPPED;
+            }
+            frames.remove(victim);
+            discard(victim);
+        }
+        add(frame);
+        return OfferResult.DROPPED;
+    }
+
+    /**
+     * Number of frames waiting to be written.
+     *
+     * @return frame count, excluding the frame being written
+     */
+    public int size() {
+        return frames.size();
+    }
+
+    /**
+     * Determines if a frame fits in the buffer. A frame larger than the byte limit is still accepted by
+     * an idle, empty buffer, or it could never be delivered.
+     *
+     * @param frame OutboundFrame
+     * @return if it fits
+     */
+    private boolean fits(final OutboundFrame frame) {
+        if (writing == null && frames.isEmpty()) {
+            return true;
+        }
+        return frames.size() < maxMessages && bytes + frame.getLength() <= maxBytes;
+    }
+
+    /**
+     * Appends a frame.
+     *
+     * @param frame OutboundFrame
+     */
+    private void add(final OutboundFrame frame) {
+        frames.add(frame);
+        bytes += frame.getLength();
+    }
+
+    /**
+     * Accounts for and releases a frame removed from the buffer.
+     *
+     * @param frame OutboundFrame
+     */
+    private void discard(final OutboundFrame frame) {
+        bytes -= frame.getLength();
+        discarded++;
+        frame.release();
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.service;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.jfr.MessageEnqueuedEvent;
+import com.starfireaviation.websocket.jfr.QueueOverflowEvent;
+import com.starfireaviation.websocket.model.MessagePriority;
+import com.starfireaviation.websocket.model.PendingQuery;
+import com.starfireaviation.websocket.model.PendingSummary;
+import com.starfireaviation.websocket.model.TenantStats;
+import com.starfireaviation.websocket.model.TraceStage;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.util.RateLimiter;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queues of one organization, drained by the organization's own workers under its own rate limit,
+ * so that a burst from one organization only delays that organization. Without workers, users are
+ * drained on the sending thread and the rate limit does not apply.
+ */
+@Slf4j
+class TenantShard implements AutoCloseable {
+
+    /**
+     * Organization.
+     */
+    @Getter
+    private final String organization;
+
+    /**
+     * Weight, scaling the drain workers and rate limit.
+     */
+    private final int weight;
+
+    /**
+     * Queued messages by user ID, oldest first.
+     */
+    private final Map<Long, List<WebsocketMessage>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Secondary indexes over the queued messages, null when not indexed.
+     */
+    private final PendingIndex index;
+
+    /**
+     * Notified when a user has messages to deliver.
+     */
+    private final MessageService messageService;
+
+    /**
+     * Limits the messages drained per second.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Users waiting for a drain worker, in arrival order.
+     */
+    private final BlockingQueue<Long> pending = new LinkedBlockingQueue<>();
+
+    /**
+     * Time (ns) each user in the pending queue was queued, so each is queued once.
+     */
+    private final Map<Long, Long> scheduled = new ConcurrentHashMap<>();
+
+    /**
+     * Drain workers.
+     */
+    private final List<Thread> workers = new ArrayList<>();
+
+    /**
+     * Messages enqueued.
+     */
+    private final AtomicLong enqueued = new AtomicLong();
+
+    /**
+     * Messages currently queued.
+     */
+    private final AtomicLong queued = new AtomicLong();
+
+    /**
+     * Messages drained.
+     */
+    private final AtomicLong drained = new AtomicLong();
+
+    /**
+     * Times a worker waited for the rate limit.
+     */
+    private final AtomicLong throttled = new AtomicLong();
+
+    /**
+     * Set when the workers must stop.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Initializes and starts a <code>TenantShard</code>.
+     *
+     * @param name organization
+     * @param shardWeight weight
+     * @param workerCount drain workers, 0 to drain on the sending thread
+     * @param rateLimit messages drained per second, 0 for no limit (ignored without workers)
+     * @param pendingIndex secondary indexes over the queued messages, null for none
+     * @param owner MessageService, notified when a user has messages to deliver
+     */
+    TenantShard(final String name, final int shardWeight, final int workerCount, final long rateLimit,
+                final PendingIndex pendingIndex, final MessageService owner) {
+        organization = name;
+        weight = shardWeight;
+        index = pendingIndex;
+        messageService = owner;
+        if (workerCount > 0) {
+            rateLimiter = new RateLimiter(rateLimit);
+        } else {
+            rateLimiter = new RateLimiter(0);
+        }
+        for (int i = 0; i < workerCount; i++) {
+            final Thread worker = new Thread(this::work, "drain-" + organization + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Adds a message to its user's queue, dropping the oldest message when the queue is full. The caller
+     * schedules the user for delivery.
+     *
+     * @param websocketMessage WebsocketMessage
+     */
+    void add(final WebsocketMessage websocketMessage) {
+        add(websocketMessage, false);
+    }
+
+    /**
+     * Adds a message to its user's queue, dropping the oldest message when the queue is full. The caller
+     * schedules the user for delivery, once it no longer holds the user's lock. When coalescing, a low
+     * priority message replaces the user's queued messages of its event type, which it supersedes.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @param coalesce if a low priority message replaces queued messages of its event type
+     * @return messages replaced by coalescing
+     */
+    int add(final WebsocketMessage websocketMessage, final boolean coalesce) {
+        final Long userId = websocketMessage.getUserId();
+        final int[] replaced = new int[2];
+        queues.compute(userId, (key, websocketMessages) -> {
+            List<WebsocketMessage> queue = websocketMessages;
+            if (queue == null) {
+                queue = new ArrayList<>();
+            } else {
+                if (coalesce && MessageTemplates.priority(websocketMessage) == MessagePriority.LOW) {
+                    replaced[0] = coalesce(key, queue, websocketMessage);
+                }
+                if (queue.size() >= CommonConstants.MAX_QUEUE_SIZE) {
+                    log.warn("Message queue for user {} is full, dropping oldest message", key);
+                    final WebsocketMessage dropped = queue.remove(0);
+                    QueueOverflowEvent.commit(key, dropped.getEventType(), 1);
+                    unindex(key, List.of(dropped));
+                    replaced[1] = 1;
+                }
+            }
+            if (websocketMessage.getTrace() != null) {
+                websocketMessage.getTrace().stamp(TraceStage.ENQUEUED);
+            }
+            queue.add(websocketMessage);
+            if (index != null) {
+                index.add(key, websocketMessage);
+            }
+            MessageEnqueuedEvent.commit(key, websocketMessage.getEventType(), queue.size());
+            return queue;
+        });
+        enqueued.incrementAndGet();
+        queued.addAndGet(1 - replaced[0] - replaced[1]);
+        return replaced[0];
+    }
+
+    /**
+     * Removes and returns as many of a user's queued messages as the rate limit allows. When some are
+     * held back, the user is scheduled again.
+     *
+     * @param userId User ID
+     * @return messages, oldest first (empty when none are queued or the limit is exhausted)
+     */
+    List<WebsocketMessage> drain(final Long userId) {
+        final List<WebsocketMessage> queue = queues.remove(userId);
+        if (queue == null) {
+            return List.of();
+        }
+        unindex(userId, queue);
+        queued.addAndGet(-queue.size());
+        final int granted = rateLimiter.take(queue.size());
+        drained.addAndGet(granted);
+        if (granted == queue.size()) {
+            return queue;
+        }
+        requeue(userId, queue.subList(granted, queue.size()));
+        schedule(userId);
+        return new ArrayList<>(queue.subList(0, granted));
+    }
+
+    /**
+     * Removes and returns all of a user's queued messages, regardless of the rate limit.
+     *
+     * @param userId User ID
+     * @return messages, oldest first (empty when none are queued)
+     */
+    List<WebsocketMessage> remove(final Long userId) {
+        final List<WebsocketMessage> queue = queues.remove(userId);
+        if (queue == null) {
+            return List.of();
+        }
+        unindex(userId, queue);
+        queued.addAndGet(-queue.size());
+        return queue;
+    }
+
+    /**
+     * Puts messages back at the head of a user's queue, dropping the oldest beyond the queue limit.
+     *
+     * @param userId User ID
+     * @param undelivered messages, oldest first
+     */
+    void requeue(final Long userId, final List<WebsocketMessage> undelivered) {
+        if (undelivered.isEmpty()) {
+            return;
+        }
+        final int[] dropped = new int[1];
+        queues.compute(userId, (key, websocketMessages) -> {
+            final List<WebsocketMessage> queue = new ArrayList<>(undelivered);
+            if (index != null) {
+                undelivered.forEach(websocketMessage -> index.add(key, websocketMessage));
+            }
+            if (websocketMessages != null) {
+                queue.addAll(websocketMessages);
+            }
+            if (queue.size() > CommonConstants.MAX_QUEUE_SIZE) {
+                dropped[0] = queue.size() - CommonConstants.MAX_QUEUE_SIZE;
+                QueueOverflowEvent.commit(key, queue.get(0).getEventType(), dropped[0]);
+                unindex(key, queue.subList(0, dropped[0]));
+                queue.subList(0, dropped[0]).clear();
+            }
+            return queue;
+        });
+        queued.addAndGet(undelivered.size() - dropped[0]);
+    }
+
+    /**
+     * Has a user's queue delivered: by a drain worker, or right away on this thread when there are none.
+     * The queue of an offline user is kept for their next session, which drains it on registering,
+     * without taking a worker or a rate limit permit.
+     *
+     * @param userId User ID
+     */
+    void schedule(final Long userId) {
+        if (!messageService.isOnline(userId)) {
+            return;
+        }
+        if (workers.isEmpty()) {
+            messageService.notifyPending(userId);
+        } else if (scheduled.putIfAbsent(userId, System.nanoTime()) == null) {
+            pending.add(userId);
+        }
+    }
+
+    /**
+     * Messages currently queued, from a counter rather than by walking the queues.
+     *
+     * @return queued messages
+     */
+    long getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Time the user at the head of the pending queue has waited for a drain worker.
+     *
+     * @param now current time (ns)
+     * @return drain lag (ns), 0 when no user is waiting
+     */
+    long getDrainLag(final long now) {
+        final Long head = pending.peek();
+        if (head == null) {
+            return 0;
+        }
+        final Long scheduledAt = scheduled.get(head);
+        if (scheduledAt == null) {
+            return 0;
+        }
+        return Math.max(0, now - scheduledAt);
+    }
+
+    /**
+     * Queue and drain counters.
+     *
+     * @return TenantStats
+     */
+    TenantStats getStats() {
+        final TenantStats stats = new TenantStats();
+        stats.setOrganization(organization);
+        stats.setWeight(weight);
+        stats.setDrainWorkers(workers.size());
+        if (rateLimiter.isLimited()) {
+            stats.setRateLimit(rateLimiter.getPermitsPerSecond());
+        }
+        stats.setQueuedUsers(queues.size());
+        stats.setQueuedMessages(queued.get());
+        stats.setPendingUsers(pending.size());
+        stats.setDrainLagMillis(TimeUnit.NANOSECONDS.toMillis(getDrainLag(System.nanoTime())));
+        stats.setEnqueued(enqueued.get());
+        stats.setDrained(drained.get());
+        stats.setThrottled(throttled.get());
+        return stats;
+    }
+
+    /**
+     * Adds the queued messages matching a query to a summary. With an index, only the queues of the
+     * users it points at are examined; otherwise every queue is.
+     *
+     * @param query PendingQuery
+     * @param now current time (ms)
+     * @param summary PendingSummary
+     */
+    void query(final PendingQuery query, final long now, final PendingSummary summary) {
+        final long cutoff = now - query.getMinAge();
+        Collection<Long> users = null;
+        if (index != null) {
+            users = index.candidates(query, cutoff);
+        }
+        if (users == null) {
+            users = queues.keySet();
+        }
+        for (final Long userId : users) {
+            final int matching = countMatching(userId, query, cutoff);
+            summary.setExaminedUsers(summary.getExaminedUsers() + 1);
+            if (matching > 0) {
+                summary.setMessages(summary.getMessages() + matching);
+                summary.setUsers(summary.getUsers() + 1);
+                if (summary.getUserIds().size() < query.getLimit()) {
+                    summary.getUserIds().add(userId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Users with a queue.
+     *
+     * @return live view of the user IDs
+     */
+    Set<Long> getUsers() {
+        return queues.keySet();
+    }
+
+    /**
+     * Copies a user's queue, under the queue lock.
+     *
+     * @param userId User ID
+     * @return messages, oldest first (empty when none are queued)
+     */
+    List<WebsocketMessage> copy(final Long userId) {
+        final List<List<WebsocketMessage>> copy = new ArrayList<>(1);
+        queues.computeIfPresent(userId, (key, queue) -> {
+            copy.add(new ArrayList<>(queue));
+            return queue;
+        });
+        if (copy.isEmpty()) {
+            return List.of();
+        }
+        return copy.get(0);
+    }
+
+    /**
+     * Stops the drain workers.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Counts a user's queued messages matching a query, under the queue lock.
+     *
+     * @param userId User ID
+     * @param query PendingQuery
+     * @param cutoff latest timestamp (epoch ms) old enough to match
+     * @return matching messages
+     */
+    private int countMatching(final Long userId, final PendingQuery query, final long cutoff) {
+        final int[] matching = new int[1];
+        queues.computeIfPresent(userId, (key, queue) -> {
+            for (final WebsocketMessage websocketMessage : queue) {
+                if (PendingIndex.matches(query, websocketMessage, cutoff)) {
+                    matching[0]++;
+                }
+            }
+            return queue;
+        });
+        return matching[0];
+    }
+
+    /**
+     * Removes a user's queued messages of the same event type as a new one, which supersedes them.
+     *
+     * @param userId User ID
+     * @param queue the user's queue, under its lock
+     * @param websocketMessage new WebsocketMessage
+     * @return messages removed
+     */
+    private int coalesce(final Long userId, final List<WebsocketMessage> queue,
+                         final WebsocketMessage websocketMessage) {
+        final List<WebsocketMessage> superseded = new ArrayList<>();
+        final Iterator<WebsocketMessage> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            final WebsocketMessage queuedMessage = iterator.next();
+            if (queuedMessage.getEventType() == websocketMessage.getEventType()) {
+                iterator.remove();
+                superseded.add(queuedMessage);
+            }
+        }
+        unindex(userId, superseded);
+        return superseded.size();
+    }
+
+    /**
+     * Compacts every queue, keeping only the newest low priority message of each event type.
+     *
+     * @return messages removed
+     */
+    int compact() {
+        final int[] removed = new int[1];
+        for (final Long userId : queues.keySet()) {
+            queues.computeIfPresent(userId, (key, queue) -> {
+                final List<WebsocketMessage> superseded = new ArrayList<>();
+                final Set<NotificationEventType> newest = EnumSet.noneOf(NotificationEventType.class);
+                for (int i = queue.size() - 1; i >= 0; i--) {
+                    final WebsocketMessage websocketMessage = queue.get(i);
+                    if (MessageTemplates.priority(websocketMessage) == MessagePriority.LOW
+                            && !newest.add(websocketMessage.getEventType())) {
+                        superseded.add(websocketMessage);
+                    }
+                }
+                if (!superseded.isEmpty()) {
+                    final Set<WebsocketMessage> removing = Collections.newSetFromMap(new IdentityHashMap<>());
+                    removing.addAll(superseded);
+                    queue.removeIf(removing::contains);
+                    unindex(key, superseded);
+                    removed[0] += superseded.size();
+                }
+                return queue;
+            });
+        }
+        queued.addAndGet(-removed[0]);
+        return removed[0];
+    }
+
+    /**
+     * Removes messages no longer queued from the index.
+     *
+     * @param userId User ID
+     * @param websocketMessages WebsocketMessages
+     */
+    private void unindex(final Long userId, final List<WebsocketMessage> websocketMessages) {
+        if (index != null) {
+            index.removeAll(userId, websocketMessages);
+        }
+    }
+
+    /**
+     * Drain worker loop: waits for a scheduled user and for the rate limit, then has the user's queue
+     * delivered.
+     */
+    private void work() {
+        while (!closed) {
+            try {
+                final Long userId = pending.take();
+                scheduled.remove(userId);
+                if (rateLimiter.awaitPermit()) {
+                    throttled.incrementAndGet();
+                }
+                messageService.notifyPending(userId);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException re) {
+                log.warn("Drain of organization {} failed: {}", organization, re.getMessage(), re);
+            }
+        }
+    }
+}
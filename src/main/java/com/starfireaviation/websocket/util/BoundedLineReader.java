@@ -0,0 +1,186 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads newline-delimited records from a stream into a single reusable buffer, so memory stays bounded
+ * whatever the size of the stream. Lines longer than the buffer are skipped and flagged.
+ */
+public final class BoundedLineReader {
+
+    /**
+     * Size of the read buffer.
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * Source stream.
+     */
+    private final InputStream in;
+
+    /**
+     * Bytes read from the stream and not yet consumed.
+     */
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+    /**
+     * Position of the next unconsumed byte in the read buffer.
+     */
+    private int position;
+
+    /**
+     * Number of valid bytes in the read buffer.
+     */
+    private int limit;
+
+    /**
+     * Current line, without its terminator. One byte longer than the longest line, for a carriage
+     * return before the newline.
+     */
+    @Getter
+    private final byte[] line;
+
+    /**
+     * Longest line which is read, without its terminator.
+     */
+    private final int maxLength;
+
+    /**
+     * Length of the current line.
+     */
+    @Getter
+    private int length;
+
+    /**
+     * If the current line exceeded the buffer and was skipped.
+     */
+    @Getter
+    private boolean overflow;
+
+    /**
+     * Initializes an instance of <code>BoundedLineReader</code>.
+     *
+     * @param inputStream source stream
+     * @param maxLineBytes longest line which is read
+     */
+    public BoundedLineReader(final InputStream inputStream, final int maxLineBytes) {
+        in = inputStream;
+        maxLength = maxLineBytes;
+        line = new byte[maxLineBytes + 1];
+    }
+
+    /**
+     * Reads the next non-blank line.
+     *
+     * @return false at the end of the stream
+     * @throws IOException when the stream cannot be read
+     */
+    public boolean next() throws IOException {
+        do {
+            if (!readLine()) {
+                return false;
+            }
+        } while (!overflow && isBlank());
+        return true;
+    }
+
+    /**
+     * Reads the next line, blank or not.
+     *
+     * @return false at the end of the stream
+     * @throws IOException when the stream cannot be read
+     */
+    private boolean readLine() throws IOException {
+        length = 0;
+        overflow = false;
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(readBuffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    checkLength();
+                    return read;
+                }
+            }
+            read = true;
+            final int start = position;
+            while (position < limit && readBuffer[position] != '\n') {
+                position++;
+            }
+            append(start, position - start);
+            if (position < limit) {
+                // Consume the newline
+                position++;
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                checkLength();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Appends part of the read buffer to the current line, or flags the line once it no longer fits.
+     *
+     * @param start offset in the read buffer
+     * @param count number of bytes
+     */
+    private void append(final int start, final int count) {
+        if (overflow) {
+            return;
+        }
+        if (length + count > line.length) {
+            overflow = true;
+            length = 0;
+            return;
+        }
+        System.arraycopy(readBuffer, start, line, length, count);
+        length += count;
+    }
+
+    /**
+     * Flags the current line when it is longer than the longest line.
+     */
+    private void checkLength() {
+        if (length > maxLength) {
+            overflow = true;
+            length = 0;
+        }
+    }
+
+    /**
+     * Determines if the current line has only whitespace.
+     *
+     * @return if blank
+     */
+    private boolean isBlank() {
+        for (int i = 0; i < length; i++) {
+            if (line[i] != ' ' && line[i] != '\t' && line[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
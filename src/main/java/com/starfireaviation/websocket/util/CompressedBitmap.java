@@ -0,0 +1,539 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Immutable compressed set of longs, such as user IDs, in the manner of a Roaring bitmap.
+ * Values are split by their high 48 bits into containers of up to 65536 values. A container holds its
+ * low 16 bits as a sorted <code>char[]</code> while it has at most 4096 values, and as a 1024-word
+ * <code>long[]</code> bitmap beyond that, so each value costs at most two bytes. Membership is a binary
+ * search over the containers followed by a search or a bit test, and intersections and differences
+ * work a container at a time.
+ *
+ * <p>The serialized form is the magic number, the container count, then for each container its key,
+ * its cardinality and either that many <code>char</code>s or 1024 <code>long</code>s.
+ */
+public final class CompressedBitmap {
+
+    /**
+     * Most values a container holds as a sorted array.
+     */
+    static final int ARRAY_LIMIT = 4096;
+
+    /**
+     * Words of a bitmap container.
+     */
+    static final int BITMAP_WORDS = 1024;
+
+    /**
+     * Bits of the low part of a value, kept in its container.
+     */
+    static final int LOW_BITS = 16;
+
+    /**
+     * Mask of the low part of a value.
+     */
+    static final int LOW_MASK = 0xFFFF;
+
+    /**
+     * log2 of the bits per word.
+     */
+    static final int WORD_SHIFT = 6;
+
+    /**
+     * Empty bitmap.
+     */
+    public static final CompressedBitmap EMPTY = new CompressedBitmap(new long[0], new Object[0]);
+
+    /**
+     * Magic number of the serialized form ("CBM1").
+     */
+    private static final int MAGIC = 0x43424D31;
+
+    /**
+     * Serialized bytes of a container's key and cardinality.
+     */
+    private static final int CONTAINER_HEADER_BYTES = Long.BYTES + Integer.BYTES;
+
+    /**
+     * Serialized bytes of the magic number and the container count.
+     */
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+
+    /**
+     * Container keys (the high 48 bits of their values, unsigned), ascending.
+     */
+    private final long[] keys;
+
+    /**
+     * Containers, each a sorted <code>char[]</code> or a <code>long[]</code> bitmap, never empty.
+     */
+    private final Object[] containers;
+
+    /**
+     * Number of values.
+     */
+    private final long cardinality;
+
+    /**
+     * Initializes an instance of <code>CompressedBitmap</code>, taking ownership of the arrays.
+     *
+     * @param containerKeys container keys, ascending
+     * @param containerValues non-empty containers
+     */
+    CompressedBitmap(final long[] containerKeys, final Object[] containerValues) {
+        keys = containerKeys;
+        containers = containerValues;
+        long count = 0;
+        for (final Object container : containerValues) {
+            count += cardinality(container);
+        }
+        cardinality = count;
+    }
+
+    /**
+     * Builds a bitmap of the given values.
+     *
+     * @param values values, in any order and possibly repeated
+     * @return CompressedBitmap
+     */
+    public static CompressedBitmap of(final long... values) {
+        final long[] signed = values.clone();
+        Arrays.sort(signed);
+        // Negative values have the highest keys, so they go last
+        int negatives = 0;
+        while (negatives < signed.length && signed[negatives] < 0) {
+            negatives++;
+        }
+        final long[] sorted = new long[signed.length];
+        System.arraycopy(signed, negatives, sorted, 0, signed.length - negatives);
+        System.arraycopy(signed, 0, sorted, signed.length - negatives, negatives);
+        final long[] containerKeys = new long[sorted.length];
+        final Object[] containerValues = new Object[sorted.length];
+        final char[] lows = new char[sorted.length];
+        int count = 0;
+        int start = 0;
+        while (start < sorted.length) {
+            final long key = sorted[start] >>> LOW_BITS;
+            int size = 0;
+            int end = start;
+            while (end < sorted.length && sorted[end] >>> LOW_BITS == key) {
+                final char low = (char) (sorted[end] & LOW_MASK);
+                if (size == 0 || lows[size - 1] != low) {
+                    lows[size++] = low;
+                }
+                end++;
+            }
+            containerKeys[count] = key;
+            containerValues[count++] = fromSorted(lows, size);
+            start = end;
+        }
+        return new CompressedBitmap(Arrays.copyOf(containerKeys, count), Arrays.copyOf(containerValues, count));
+    }
+
+    /**
+     * Reads a bitmap in its serialized form.
+     *
+     * @param in DataInput
+     * @return CompressedBitmap
+     * @throws IOException when the input is not a serialized bitmap
+     */
+    public static CompressedBitmap readFrom(final DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a compressed bitmap");
+        }
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt compressed bitmap: " + count + " containers");
+        }
+        final long[] containerKeys = new long[count];
+        final Object[] containerValues = new Object[count];
+        for (int i = 0; i < count; i++) {
+            containerKeys[i] = in.readLong();
+            final int size = in.readInt();
+            if (size <= 0 || size > LOW_MASK + 1 || i > 0 && containerKeys[i] <= containerKeys[i - 1]) {
+                throw new IOException("Corrupt compressed bitmap: container " + containerKeys[i]);
+            }
+            if (size <= ARRAY_LIMIT) {
+                final char[] lows = new char[size];
+                for (int j = 0; j < size; j++) {
+                    lows[j] = in.readChar();
+                }
+                containerValues[i] = lows;
+            } else {
+                final long[] words = new long[BITMAP_WORDS];
+                for (int j = 0; j < BITMAP_WORDS; j++) {
+                    words[j] = in.readLong();
+                }
+                containerValues[i] = words;
+            }
+        }
+        return new CompressedBitmap(containerKeys, containerValues);
+    }
+
+    /**
+     * Determines if a value is in the bitmap.
+     *
+     * @param value value
+     * @return if present
+     */
+    public boolean contains(final long value) {
+        final int index = Arrays.binarySearch(keys, value >>> LOW_BITS);
+        return index >= 0 && contains(containers[index], (char) (value & LOW_MASK));
+    }
+
+    /**
+     * Number of values.
+     *
+     * @return cardinality
+     */
+    public long getCardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Number of containers.
+     *
+     * @return container count
+     */
+    public int getContainerCount() {
+        return keys.length;
+    }
+
+    /**
+     * Container keys, ascending.
+     *
+     * @return keys, not to be changed
+     */
+    long[] getKeys() {
+        return keys;
+    }
+
+    /**
+     * Size of the serialized form, which is also roughly the heap the containers take.
+     *
+     * @return bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = HEADER_BYTES;
+        for (final Object container : containers) {
+            bytes += CONTAINER_HEADER_BYTES + serializedSize(container);
+        }
+        return bytes;
+    }
+
+    /**
+     * Values in both this bitmap and another.
+     *
+     * @param other CompressedBitmap
+     * @return intersection
+     */
+    public CompressedBitmap and(final CompressedBitmap other) {
+        final int max = Math.min(keys.length, other.keys.length);
+        final long[] containerKeys = new long[max];
+        final Object[] containerValues = new Object[max];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                final Object container = and(containers[i], other.containers[j]);
+                if (container != null) {
+                    containerKeys[count] = keys[i];
+                    containerValues[count++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new CompressedBitmap(Arrays.copyOf(containerKeys, count), Arrays.copyOf(containerValues, count));
+    }
+
+    /**
+     * Values in this bitmap but not in another.
+     *
+     * @param other CompressedBitmap
+     * @return difference
+     */
+    public CompressedBitmap andNot(final CompressedBitmap other) {
+        final long[] containerKeys = new long[keys.length];
+        final Object[] containerValues = new Object[keys.length];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Object container = containers[i];
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                container = andNot(container, other.containers[j]);
+            }
+            if (container != null) {
+                containerKeys[count] = keys[i];
+                containerValues[count++] = container;
+            }
+        }
+        return new CompressedBitmap(Arrays.copyOf(containerKeys, count), Arrays.copyOf(containerValues, count));
+    }
+
+    /**
+     * Passes every value to a consumer, ascending as unsigned values.
+     *
+     * @param consumer LongConsumer
+     */
+    public void forEach(final LongConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            final long high = keys[i] << LOW_BITS;
+            final Object container = containers[i];
+            if (container instanceof char[]) {
+                for (final char low : (char[]) container) {
+                    consumer.accept(high | low);
+                }
+            } else {
+                final long[] words = (long[]) container;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = words[word];
+                    while (bits != 0) {
+                        consumer.accept(high | (long) word << WORD_SHIFT | Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Values, ascending as unsigned values.
+     *
+     * @return values
+     */
+    public long[] toArray() {
+        final long[] values = new long[(int) cardinality];
+        final int[] count = new int[1];
+        forEach(value -> values[count[0]++] = value);
+        return values;
+    }
+
+    /**
+     * Writes the bitmap in its serialized form.
+     *
+     * @param out DataOutput
+     * @throws IOException when the output fails
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            final int size = cardinality(containers[i]);
+            out.writeLong(keys[i]);
+            out.writeInt(size);
+            if (size <= ARRAY_LIMIT) {
+                for (final char low : toLows(containers[i])) {
+                    out.writeChar(low);
+                }
+            } else {
+                for (final long word : (long[]) containers[i]) {
+                    out.writeLong(word);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a container holds a low part.
+     *
+     * @param container sorted <code>char[]</code> or <code>long[]</code> bitmap
+     * @param low low 16 bits
+     * @return if present
+     */
+    static boolean contains(final Object container, final char low) {
+        if (container instanceof char[]) {
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        }
+        return (((long[]) container)[low >>> WORD_SHIFT] & 1L << low) != 0;
+    }
+
+    /**
+     * Number of values in a container.
+     *
+     * @param container sorted <code>char[]</code> or <code>long[]</code> bitmap
+     * @return cardinality
+     */
+    static int cardinality(final Object container) {
+        if (container instanceof char[]) {
+            return ((char[]) container).length;
+        }
+        int count = 0;
+        for (final long word : (long[]) container) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Container of sorted, distinct low parts: an array up to the array limit, a bitmap beyond it.
+     *
+     * @param lows low parts, ascending
+     * @param size number of low parts used
+     * @return container, null when empty
+     */
+    static Object fromSorted(final char[] lows, final int size) {
+        if (size == 0) {
+            return null;
+        }
+        if (size <= ARRAY_LIMIT) {
+            return Arrays.copyOf(lows, size);
+        }
+        final long[] words = new long[BITMAP_WORDS];
+        for (int i = 0; i < size; i++) {
+            words[lows[i] >>> WORD_SHIFT] |= 1L << lows[i];
+        }
+        return words;
+    }
+
+    /**
+     * Container of a bitmap, converted to an array when it is small enough.
+     *
+     * @param words bitmap, owned by the container
+     * @return container, null when empty
+     */
+    static Object fromWords(final long[] words) {
+        final int size = cardinality(words);
+        if (size == 0) {
+            return null;
+        }
+        if (size <= ARRAY_LIMIT) {
+            return toLows(words);
+        }
+        return words;
+    }
+
+    /**
+     * Low parts of a container, ascending.
+     *
+     * @param container sorted <code>char[]</code> or <code>long[]</code> bitmap
+     * @return low parts (the container itself when it is an array)
+     */
+    static char[] toLows(final Object container) {
+        if (container instanceof char[]) {
+            return (char[]) container;
+        }
+        final long[] words = (long[]) container;
+        final char[] lows = new char[cardinality(words)];
+        int count = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            long bits = words[word];
+            while (bits != 0) {
+                lows[count++] = (char) (word << WORD_SHIFT | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return lows;
+    }
+
+    /**
+     * Intersection of two containers.
+     *
+     * @param left container
+     * @param right container
+     * @return container, null when empty
+     */
+    static Object and(final Object left, final Object right) {
+        if (left instanceof long[] && right instanceof long[]) {
+            final long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] = ((long[]) left)[i] & ((long[]) right)[i];
+            }
+            return fromWords(words);
+        }
+        // Iterate the array, which has at most as many values as the array limit
+        final char[] lows;
+        final Object other;
+        if (left instanceof char[]) {
+            lows = (char[]) left;
+            other = right;
+        } else {
+            lows = (char[]) right;
+            other = left;
+        }
+        final char[] result = new char[lows.length];
+        int size = 0;
+        for (final char low : lows) {
+            if (contains(other, low)) {
+                result[size++] = low;
+            }
+        }
+        return fromSorted(result, size);
+    }
+
+    /**
+     * Difference of two containers.
+     *
+     * @param left container
+     * @param right container whose values are removed
+     * @return container, null when empty
+     */
+    static Object andNot(final Object left, final Object right) {
+        if (left instanceof char[]) {
+            final char[] lows = (char[]) left;
+            final char[] result = new char[lows.length];
+            int size = 0;
+            for (final char low : lows) {
+                if (!contains(right, low)) {
+                    result[size++] = low;
+                }
+            }
+            return fromSorted(result, size);
+        }
+        final long[] words = ((long[]) left).clone();
+        if (right instanceof char[]) {
+            for (final char low : (char[]) right) {
+                words[low >>> WORD_SHIFT] &= ~(1L << low);
+            }
+        } else {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                words[i] &= ~((long[]) right)[i];
+            }
+        }
+        return fromWords(words);
+    }
+
+    /**
+     * Serialized size of a container's values.
+     *
+     * @param container sorted <code>char[]</code> or <code>long[]</code> bitmap
+     * @return bytes
+     */
+    private static long serializedSize(final Object container) {
+        final int size = cardinality(container);
+        if (size <= ARRAY_LIMIT) {
+            return (long) size * Character.BYTES;
+        }
+        return (long) BITMAP_WORDS * Long.BYTES;
+    }
+}
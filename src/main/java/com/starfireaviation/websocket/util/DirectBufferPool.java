@@ -0,0 +1,130 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of same-sized direct buffers that encoded frames are written into and handed to the transport
+ * from, so steady traffic neither allocates nor copies payloads. Requests larger than the pooled size
+ * get a heap buffer of their own, which is dropped on release. Free buffers are reused last in, first
+ * out, so the few a steady load cycles through stay in cache.
+ */
+public class DirectBufferPool {
+
+    /**
+     * Capacity of pooled buffers.
+     */
+    @Getter
+    private final int bufferSize;
+
+    /**
+     * Released buffers waiting for reuse, a stack guarded by this pool.
+     */
+    private final ByteBuffer[] free;
+
+    /**
+     * Number of buffers on the free stack.
+     */
+    private int freeCount;
+
+    /**
+     * Buffers allocated because the pool was empty or the request was too large.
+     */
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * Initializes an instance of <code>DirectBufferPool</code>.
+     *
+     * @param size capacity of pooled buffers
+     * @param maxPooled max buffers kept for reuse
+     */
+    public DirectBufferPool(final int size, final int maxPooled) {
+        bufferSize = size;
+        free = new ByteBuffer[Math.max(1, maxPooled)];
+    }
+
+    /**
+     * Takes a pooled buffer, allocating one if none is free.
+     *
+     * @return empty buffer of the pooled size
+     */
+    public ByteBuffer acquire() {
+        synchronized (this) {
+            if (freeCount > 0) {
+                final ByteBuffer buffer = free[--freeCount];
+                free[freeCount] = null;
+                return buffer;
+            }
+        }
+        allocated.incrementAndGet();
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Takes a buffer of at least the given capacity.
+     *
+     * @param capacity minimum capacity
+     * @return empty buffer
+     */
+    public ByteBuffer acquire(final int capacity) {
+        if (capacity <= bufferSize) {
+            return acquire();
+        }
+        allocated.incrementAndGet();
+        return ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns a buffer for reuse. Buffers not of the pooled kind, or beyond the pool's capacity, are
+     * left to the garbage collector.
+     *
+     * @param buffer ByteBuffer, no longer read or written by its previous owner
+     */
+    public void release(final ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        buffer.clear();
+        synchronized (this) {
+            if (freeCount < free.length) {
+                free[freeCount++] = buffer;
+            }
+        }
+    }
+
+    /**
+     * Number of buffers allocated, pooled or not, since startup.
+     *
+     * @return allocated count
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * Number of buffers free for reuse.
+     *
+     * @return pooled count
+     */
+    public synchronized int getPooledCount() {
+        return freeCount;
+    }
+}
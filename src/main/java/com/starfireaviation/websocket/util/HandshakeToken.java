@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.util;
+
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Signed handshake tokens, <code>&lt;userId&gt;.&lt;organization&gt;.&lt;expiresAt&gt;.&lt;signature&gt;</code>,
+ * where the organization is unpadded base64url UTF-8 (empty when the user has none), <code>expiresAt</code> is
+ * in epoch seconds and the signature is the unpadded base64url HMAC-SHA256 of the text before it. Tokens are
+ * issued by whichever service authenticated the user, sharing the secret, so the organization is as trusted
+ * as the user ID.
+ */
+public final class HandshakeToken {
+
+    /**
+     * MAC algorithm.
+     */
+    private static final String ALGORITHM = "HmacSHA256";
+
+    /**
+     * Separator between the parts of a token.
+     */
+    private static final char SEPARATOR = '.';
+
+    /**
+     * Signing key.
+     */
+    private final SecretKeySpec key;
+
+    /**
+     * Initializes an instance of <code>HandshakeToken</code>.
+     *
+     * @param secret shared secret
+     */
+    public HandshakeToken(final String secret) {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A handshake token secret is required");
+        }
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    /**
+     * Issues a token for a user without an organization.
+     *
+     * @param userId User ID
+     * @param expiresAt time (epoch seconds) the token expires
+     * @return token
+     */
+    public String sign(final long userId, final long expiresAt) {
+        return sign(userId, null, expiresAt);
+    }
+
+    /**
+     * Issues a token.
+     *
+     * @param userId User ID
+     * @param organization organization of the user, null for none
+     * @param expiresAt time (epoch seconds) the token expires
+     * @return token
+     */
+    public String sign(final long userId, final String organization, final long expiresAt) {
+        String encodedOrganization = "";
+        if (organization != null) {
+            encodedOrganization = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(organization.getBytes(StandardCharsets.UTF_8));
+        }
+        final String claims = Long.toString(userId) + SEPARATOR + encodedOrganization + SEPARATOR + expiresAt;
+        return claims + SEPARATOR + mac(claims);
+    }
+
+    /**
+     * Verifies a token.
+     *
+     * @param token token
+     * @param now current time (epoch seconds)
+     * @return HandshakeIdentity, or null when the token is malformed, forged or expired
+     */
+    public HandshakeIdentity verify(final String token, final long now) {
+        if (token == null) {
+            return null;
+        }
+        final int signatureStart = token.lastIndexOf(SEPARATOR);
+        final int expiresStart = token.lastIndexOf(SEPARATOR, signatureStart - 1);
+        final int organizationStart = token.lastIndexOf(SEPARATOR, expiresStart - 1);
+        if (organizationStart <= 0) {
+            return null;
+        }
+        final String claims = token.substring(0, signatureStart);
+        final byte[] expected = mac(claims).getBytes(StandardCharsets.US_ASCII);
+        final byte[] actual = token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return null;
+        }
+        try {
+            if (Long.parseLong(token.substring(expiresStart + 1, signatureStart)) <= now) {
+                return null;
+            }
+            String organization = null;
+            if (expiresStart > organizationStart + 1) {
+                organization = new String(Base64.getUrlDecoder().decode(
+                        token.substring(organizationStart + 1, expiresStart)), StandardCharsets.UTF_8);
+            }
+            return new HandshakeIdentity(Long.valueOf(token.substring(0, organizationStart)), organization);
+        } catch (IllegalArgumentException iae) {
+            return null;
+        }
+    }
+
+    /**
+     * Signs the claims of a token.
+     *
+     * @param claims claims
+     * @return unpadded base64url signature
+     */
+    private String mac(final String claims) {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(mac.doFinal(claims.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException gse) {
+            throw new IllegalStateException(ALGORITHM + " is not available", gse);
+        }
+    }
+}
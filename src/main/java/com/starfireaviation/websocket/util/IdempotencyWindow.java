@@ -0,0 +1,150 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of recently seen message IDs, kept as a fixed-size ring of bits. IDs older than the
+ * window are treated as already seen, and IDs too far ahead of it are out of reach, so that a single
+ * bogus ID cannot push the window past every ID the client will really send. Checks take O(1) and
+ * allocate nothing.
+ */
+public final class IdempotencyWindow {
+
+    /**
+     * Bits per word.
+     */
+    private static final int WORD_BITS = Long.SIZE;
+
+    /**
+     * log2 of WORD_BITS.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * Seen bits, indexed by ID modulo the window size.
+     */
+    private final long[] bits;
+
+    /**
+     * Window size in IDs.
+     */
+    private final int size;
+
+    /**
+     * Furthest an ID may be ahead of the highest ID seen.
+     */
+    private final long maxJump;
+
+    /**
+     * Highest ID seen, -1 when none.
+     */
+    private long highest = -1;
+
+    /**
+     * Initializes an instance of <code>IdempotencyWindow</code>.
+     *
+     * @param windowSize IDs remembered (rounded up to a multiple of 64)
+     * @param jump furthest an ID may be ahead of the highest ID seen
+     */
+    public IdempotencyWindow(final int windowSize, final long jump) {
+        bits = new long[Math.max(1, (windowSize + WORD_BITS - 1) / WORD_BITS)];
+        size = bits.length * WORD_BITS;
+        maxJump = jump;
+    }
+
+    /**
+     * Determines if an ID may be recorded: any ID when none has been seen, otherwise one no further than
+     * the max jump ahead of the highest ID seen.
+     *
+     * @param id message ID (non-negative)
+     * @return if the ID is within reach
+     */
+    public synchronized boolean isWithinReach(final long id) {
+        return highest < 0 || id - highest <= maxJump;
+    }
+
+    /**
+     * Records an ID.
+     *
+     * @param id message ID (non-negative)
+     * @return true if the ID had not been seen (and is not older than the window)
+     */
+    public synchronized boolean markIfNew(final long id) {
+        if (id > highest) {
+            advanceTo(id);
+            set(id);
+            return true;
+        }
+        if (highest - id >= size || isSet(id)) {
+            return false;
+        }
+        set(id);
+        return true;
+    }
+
+    /**
+     * Slides the window so that <code>id</code> is the highest ID, forgetting the IDs which fall out.
+     *
+     * @param id new highest ID
+     */
+    private void advanceTo(final long id) {
+        if (highest < 0 || id - highest >= size) {
+            Arrays.fill(bits, 0L);
+        } else {
+            for (long cleared = highest + 1; cleared <= id; cleared++) {
+                if ((cleared & (WORD_BITS - 1)) == 0 && id - cleared >= WORD_BITS - 1) {
+                    bits[word(cleared)] = 0L;
+                    cleared += WORD_BITS - 1;
+                } else {
+                    bits[word(cleared)] &= ~(1L << cleared);
+                }
+            }
+        }
+        highest = id;
+    }
+
+    /**
+     * Determines if the bit of an ID is set.
+     *
+     * @param id ID
+     * @return if set
+     */
+    private boolean isSet(final long id) {
+        return (bits[word(id)] & (1L << id)) != 0;
+    }
+
+    /**
+     * Sets the bit of an ID.
+     *
+     * @param id ID
+     */
+    private void set(final long id) {
+        bits[word(id)] |= 1L << id;
+    }
+
+    /**
+     * Word holding the bit of an ID.
+     *
+     * @param id ID
+     * @return word index
+     */
+    private int word(final long id) {
+        return (int) ((id >>> WORD_SHIFT) % bits.length);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.model.InboundFrame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming decoder for inbound WebSocket frames. Reads only the known fields of the JSON object,
+ * evaluating the answer in place from the parser's character buffer; no object tree or field value
+ * Strings are created. Frames longer than MAX_PAYLOAD_LENGTH are rejected unread.
+ */
+public final class InboundFrameDecoder {
+
+    /**
+     * Longest frame decoded, in bytes (binary frames) or characters (text frames). Acknowledgements and
+     * answers take well under 200.
+     */
+    public static final int MAX_PAYLOAD_LENGTH = 4096;
+
+    /**
+     * Shared, thread-safe parser factory.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Utility class.
+     */
+    private InboundFrameDecoder() {
+    }
+
+    /**
+     * Decodes a binary frame, reading straight from its buffer.
+     *
+     * @param payload frame payload
+     * @return InboundFrame
+     * @throws InvalidPayloadException when the frame is not a valid inbound message
+     */
+    public static InboundFrame decode(final ByteBuffer payload) throws InvalidPayloadException {
+        checkLength(payload.remaining());
+        try {
+            if (payload.hasArray()) {
+                return decode(JSON_FACTORY.createParser(payload.array(),
+                        payload.arrayOffset() + payload.position(), payload.remaining()));
+            }
+            return decode(JSON_FACTORY.createParser(new ByteBufferBackedInputStream(payload.duplicate())));
+        } catch (IOException ioe) {
+            throw new InvalidPayloadException("Malformed frame", ioe);
+        }
+    }
+
+    /**
+     * Decodes a text frame.
+     *
+     * @param payload frame payload
+     * @return InboundFrame
+     * @throws InvalidPayloadException when the frame is not a valid inbound message
+     */
+    public static InboundFrame decode(final String payload) throws InvalidPayloadException {
+        checkLength(payload.length());
+        try {
+            return decode(JSON_FACTORY.createParser(payload));
+        } catch (IOException ioe) {
+            throw new InvalidPayloadException("Malformed frame", ioe);
+        }
+    }
+
+    /**
+     * Rejects frames longer than MAX_PAYLOAD_LENGTH.
+     *
+     * @param length frame length
+     * @throws InvalidPayloadException when the frame is too long
+     */
+    private static void checkLength(final int length) throws InvalidPayloadException {
+        if (length > MAX_PAYLOAD_LENGTH) {
+            throw new InvalidPayloadException("Frame of " + length + " exceeds " + MAX_PAYLOAD_LENGTH);
+        }
+    }
+
+    /**
+     * Decodes the top level object of a frame.
+     *
+     * @param parser JsonParser
+     * @return InboundFrame
+     * @throws IOException when the frame is not well formed
+     * @throws InvalidPayloadException when a field has an invalid value
+     */
+    private static InboundFrame decode(final JsonParser parser) throws IOException, InvalidPayloadException {
+        try (parser) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new InvalidPayloadException("Frame is not a JSON object");
+            }
+            final InboundFrame inboundFrame = new InboundFrame();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                // Field names are canonicalized by the parser, so this does not allocate
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "clientMessageId":
+                        inboundFrame.setClientMessageId(readId(parser, value));
+                        break;
+                    case "questionId":
+                        inboundFrame.setQuestionId(readId(parser, value));
+                        break;
+                    case "ack":
+                        inboundFrame.setAck(readId(parser, value));
+                        break;
+                    case "answer":
+                        if (value == JsonToken.VALUE_STRING) {
+                            inboundFrame.setResponse(ResponseParser.determineResponse(parser.getTextCharacters(),
+                                    parser.getTextOffset(), parser.getTextLength()));
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return inboundFrame;
+        }
+    }
+
+    /**
+     * Reads a non-negative integer ID.
+     *
+     * @param parser JsonParser positioned on the value
+     * @param value value token
+     * @return ID, or InboundFrame.ABSENT for null
+     * @throws IOException when the value cannot be read
+     * @throws InvalidPayloadException when the value is not a non-negative integer
+     */
+    private static long readId(final JsonParser parser, final JsonToken value)
+            throws IOException, InvalidPayloadException {
+        if (value == JsonToken.VALUE_NULL) {
+            return InboundFrame.ABSENT;
+        }
+        if (value != JsonToken.VALUE_NUMBER_INT || parser.getLongValue() < 0) {
+            throw new InvalidPayloadException("Invalid " + parser.getCurrentName());
+        }
+        return parser.getLongValue();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.starfireaviation.model.Message;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.model.IngestRecord;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes bulk ingestion records, either as a JSON object
+ * (<code>{"eventType":"QUESTION_ASKED","message":{"id":1},"referenceId":2}</code>) or in the binary
+ * layout: a one byte event type name length, the ASCII event type name, the 8 byte message ID and,
+ * optionally, the 8 byte reference ID, all big-endian.
+ */
+public final class IngestRecordDecoder {
+
+    /**
+     * Shared, thread-safe parser factory.
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Utility class.
+     */
+    private IngestRecordDecoder() {
+    }
+
+    /**
+     * Decodes a JSON record.
+     *
+     * @param bytes buffer
+     * @param offset offset of the record
+     * @param length length of the record
+     * @return IngestRecord
+     * @throws InvalidPayloadException when the record is malformed
+     */
+    public static IngestRecord decodeJson(final byte[] bytes, final int offset, final int length)
+            throws InvalidPayloadException {
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new InvalidPayloadException("Record is not a JSON object");
+            }
+            final IngestRecord ingestRecord = new IngestRecord();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "eventType":
+                        ingestRecord.setEventType(eventType(parser.getValueAsString()));
+                        break;
+                    case "message":
+                        ingestRecord.setMessage(readMessage(parser, value));
+                        break;
+                    case "referenceId":
+                        if (value == JsonToken.VALUE_NUMBER_INT) {
+                            ingestRecord.setReferenceId(parser.getLongValue());
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (parser.nextToken() != null) {
+                throw new InvalidPayloadException("Trailing content after record");
+            }
+            return validate(ingestRecord);
+        } catch (IOException ioe) {
+            throw new InvalidPayloadException("Malformed record", ioe);
+        }
+    }
+
+    /**
+     * Decodes a binary record.
+     *
+     * @param bytes buffer
+     * @param offset offset of the record
+     * @param length length of the record
+     * @return IngestRecord
+     * @throws InvalidPayloadException when the record is malformed
+     */
+    public static IngestRecord decodeBinary(final byte[] bytes, final int offset, final int length)
+            throws InvalidPayloadException {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        try {
+            final int nameLength = Byte.toUnsignedInt(buffer.get());
+            if (nameLength > buffer.remaining()) {
+                throw new InvalidPayloadException("Truncated event type");
+            }
+            final IngestRecord ingestRecord = new IngestRecord();
+            ingestRecord.setEventType(eventType(
+                    new String(bytes, buffer.position(), nameLength, StandardCharsets.US_ASCII)));
+            buffer.position(buffer.position() + nameLength);
+            final Message message = new Message();
+            message.setId(buffer.getLong());
+            ingestRecord.setMessage(message);
+            if (buffer.remaining() >= Long.BYTES) {
+                ingestRecord.setReferenceId(buffer.getLong());
+            }
+            return validate(ingestRecord);
+        } catch (BufferUnderflowException bue) {
+            throw new InvalidPayloadException("Truncated record", bue);
+        }
+    }
+
+    /**
+     * Reads the message object.
+     *
+     * @param parser JsonParser positioned on the value
+     * @param value value token
+     * @return Message
+     * @throws IOException when the value cannot be read
+     * @throws InvalidPayloadException when the value is not an object
+     */
+    private static Message readMessage(final JsonParser parser, final JsonToken value)
+            throws IOException, InvalidPayloadException {
+        if (value != JsonToken.START_OBJECT) {
+            throw new InvalidPayloadException("message is not an object");
+        }
+        final Message message = new Message();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken fieldValue = parser.nextToken();
+            if ("id".equals(field) && fieldValue == JsonToken.VALUE_NUMBER_INT) {
+                message.setId(parser.getLongValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Resolves an event type name.
+     *
+     * @param name event type name
+     * @return NotificationEventType
+     * @throws InvalidPayloadException when the name is not an event type
+     */
+    private static NotificationEventType eventType(final String name) throws InvalidPayloadException {
+        if (name == null) {
+            throw new InvalidPayloadException("Missing eventType");
+        }
+        try {
+            return NotificationEventType.valueOf(name);
+        } catch (IllegalArgumentException iae) {
+            throw new InvalidPayloadException("Unknown eventType " + name);
+        }
+    }
+
+    /**
+     * Checks the required fields of a record.
+     *
+     * @param ingestRecord IngestRecord
+     * @return the record
+     * @throws InvalidPayloadException when a required field is missing
+     */
+    private static IngestRecord validate(final IngestRecord ingestRecord) throws InvalidPayloadException {
+        if (ingestRecord.getEventType() == null) {
+            throw new InvalidPayloadException("Missing eventType");
+        }
+        if (ingestRecord.getMessage() == null || ingestRecord.getMessage().getId() == null) {
+            throw new InvalidPayloadException("Missing message id");
+        }
+        return ingestRecord;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent compressed set of the users with a live session, laid out like a {@link CompressedBitmap}:
+ * user IDs are split by their high 48 bits into containers of up to 65536 users. A sparse container is
+ * a sorted <code>char[]</code>, replaced on every change, and a container of more than 4096 users is an
+ * 8 KB bitmap updated in place. Changes to a container are serialized by the map, and lookups take no
+ * lock: one map read, then a binary search or a bit test.
+ */
+public final class PresenceIndex {
+
+    /**
+     * Containers by key (the high 48 bits of their user IDs): a sorted <code>char[]</code> or a Dense.
+     */
+    private final Map<Long, Object> containers = new ConcurrentHashMap<>();
+
+    /**
+     * Number of users present.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Adds a user.
+     *
+     * @param userId User ID
+     * @return true if the user was not present
+     */
+    public boolean add(final long userId) {
+        final char low = (char) (userId & CompressedBitmap.LOW_MASK);
+        final boolean[] added = new boolean[1];
+        containers.compute(userId >>> CompressedBitmap.LOW_BITS, (key, container) -> {
+            if (container == null) {
+                added[0] = true;
+                return new char[] {low};
+            }
+            if (container instanceof Dense) {
+                added[0] = ((Dense) container).set(low);
+                return container;
+            }
+            final char[] lows = (char[]) container;
+            final int index = Arrays.binarySearch(lows, low);
+            if (index >= 0) {
+                return lows;
+            }
+            added[0] = true;
+            if (lows.length == CompressedBitmap.ARRAY_LIMIT) {
+                final Dense dense = new Dense(lows);
+                dense.set(low);
+                return dense;
+            }
+            final int insert = -index - 1;
+            final char[] grown = new char[lows.length + 1];
+            System.arraycopy(lows, 0, grown, 0, insert);
+            grown[insert] = low;
+            System.arraycopy(lows, insert, grown, insert + 1, lows.length - insert);
+            return grown;
+        });
+        if (added[0]) {
+            count.incrementAndGet();
+        }
+        return added[0];
+    }
+
+    /**
+     * Removes a user.
+     *
+     * @param userId User ID
+     * @return true if the user was present
+     */
+    public boolean remove(final long userId) {
+        final char low = (char) (userId & CompressedBitmap.LOW_MASK);
+        final boolean[] removed = new boolean[1];
+        containers.computeIfPresent(userId >>> CompressedBitmap.LOW_BITS, (key, container) -> {
+            if (container instanceof Dense) {
+                final Dense dense = (Dense) container;
+                removed[0] = dense.clear(low);
+                // Half the array limit, so a container at the limit does not flip on every change
+                if (dense.cardinality <= CompressedBitmap.ARRAY_LIMIT / 2) {
+                    return CompressedBitmap.toLows(dense.toWords());
+                }
+                return dense;
+            }
+            final char[] lows = (char[]) container;
+            final int index = Arrays.binarySearch(lows, low);
+            if (index < 0) {
+                return lows;
+            }
+            removed[0] = true;
+            if (lows.length == 1) {
+                return null;
+            }
+            final char[] shrunk = new char[lows.length - 1];
+            System.arraycopy(lows, 0, shrunk, 0, index);
+            System.arraycopy(lows, index + 1, shrunk, index, shrunk.length - index);
+            return shrunk;
+        });
+        if (removed[0]) {
+            count.decrementAndGet();
+        }
+        return removed[0];
+    }
+
+    /**
+     * Determines if a user is present.
+     *
+     * @param userId User ID
+     * @return if present
+     */
+    public boolean contains(final long userId) {
+        final Object container = containers.get(userId >>> CompressedBitmap.LOW_BITS);
+        if (container == null) {
+            return false;
+        }
+        final char low = (char) (userId & CompressedBitmap.LOW_MASK);
+        if (container instanceof Dense) {
+            return ((Dense) container).get(low);
+        }
+        return Arrays.binarySearch((char[]) container, low) >= 0;
+    }
+
+    /**
+     * Number of users present.
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Size of the index's containers, as exported by a snapshot, without copying them.
+     *
+     * @return bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = 0;
+        for (final Object container : containers.values()) {
+            if (container instanceof Dense) {
+                bytes += CompressedBitmap.BITMAP_WORDS * Long.BYTES;
+            } else {
+                bytes += ((char[]) container).length * Character.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Users of a set who are present, such as the online subscribers of a topic. Works a container at a
+     * time, only looking at the containers the set has.
+     *
+     * @param userIds CompressedBitmap
+     * @return users present
+     */
+    public CompressedBitmap and(final CompressedBitmap userIds) {
+        return userIds.and(snapshot(userIds));
+    }
+
+    /**
+     * Users of a set who are not present, such as the subscribers of a topic to keep messages for.
+     *
+     * @param userIds CompressedBitmap
+     * @return users not present
+     */
+    public CompressedBitmap andNot(final CompressedBitmap userIds) {
+        return userIds.andNot(snapshot(userIds));
+    }
+
+    /**
+     * Copies the index. Sparse containers are shared, as they are never changed, so the copy costs
+     * little more than the dense containers. Users added or removed during the copy may or may not be
+     * in it.
+     *
+     * @return CompressedBitmap
+     */
+    public CompressedBitmap snapshot() {
+        final long[] keys = containers.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        return copy(keys);
+    }
+
+    /**
+     * Copies the containers an other set has.
+     *
+     * @param userIds CompressedBitmap
+     * @return CompressedBitmap
+     */
+    private CompressedBitmap snapshot(final CompressedBitmap userIds) {
+        return copy(userIds.getKeys());
+    }
+
+    /**
+     * Copies the given containers, skipping those which are absent.
+     *
+     * @param keys container keys, ascending
+     * @return CompressedBitmap
+     */
+    private CompressedBitmap copy(final long[] keys) {
+        final long[] copiedKeys = new long[keys.length];
+        final Object[] copied = new Object[keys.length];
+        int size = 0;
+        for (final long key : keys) {
+            final Object container = containers.get(key);
+            if (container != null) {
+                copiedKeys[size] = key;
+                if (container instanceof Dense) {
+                    copied[size++] = ((Dense) container).toWords();
+                } else {
+                    copied[size++] = container;
+                }
+            }
+        }
+        return new CompressedBitmap(Arrays.copyOf(copiedKeys, size), Arrays.copyOf(copied, size));
+    }
+
+    /**
+     * Container of more than the array limit of users, as a bitmap updated in place.
+     */
+    private static final class Dense {
+
+        /**
+         * Bits of the low parts of the user IDs.
+         */
+        private final AtomicLongArray words = new AtomicLongArray(CompressedBitmap.BITMAP_WORDS);
+
+        /**
+         * Number of bits set, only read and written while the map serializes changes to the container.
+         */
+        private int cardinality;
+
+        /**
+         * Initializes an instance of <code>Dense</code>.
+         *
+         * @param lows low parts to set
+         */
+        Dense(final char[] lows) {
+            for (final char low : lows) {
+                set(low);
+            }
+        }
+
+        /**
+         * Tests a bit.
+         *
+         * @param low low part
+         * @return if set
+         */
+        boolean get(final char low) {
+            return (words.get(low >>> CompressedBitmap.WORD_SHIFT) & 1L << low) != 0;
+        }
+
+        /**
+         * Sets a bit.
+         *
+         * @param low low part
+         * @return true if it was not set
+         */
+        boolean set(final char low) {
+            final int index = low >>> CompressedBitmap.WORD_SHIFT;
+            final long word = words.get(index);
+            if ((word & 1L << low) != 0) {
+                return false;
+            }
+            words.set(index, word | 1L << low);
+            cardinality++;
+            return true;
+        }
+
+        /**
+         * Clears a bit.
+         *
+         * @param low low part
+         * @return true if it was set
+         */
+        boolean clear(final char low) {
+            final int index = low >>> CompressedBitmap.WORD_SHIFT;
+            final long word = words.get(index);
+            if ((word & 1L << low) == 0) {
+                return false;
+            }
+            words.set(index, word & ~(1L << low));
+            cardinality--;
+            return true;
+        }
+
+        /**
+         * Copies the bits.
+         *
+         * @return words
+         */
+        long[] toWords() {
+            final long[] copy = new long[CompressedBitmap.BITMAP_WORDS];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = words.get(i);
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import lombok.Getter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming reader of a queue snapshot written by QueueSnapshotWriter, one user queue at a time. The
+ * trailer is verified when the end is reached: the counts must match and the CRC-32 must match the
+ * bytes read, otherwise the snapshot is rejected, so callers should not apply what they read before
+ * <code>next()</code> has returned false. Event types unknown to this version are restored as null.
+ * Not thread-safe.
+ */
+public class QueueSnapshotReader implements AutoCloseable {
+
+    /**
+     * Bits per variable-length byte.
+     */
+    private static final int VARINT_SHIFT = 7;
+
+    /**
+     * Payload bits of a variable-length byte.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Continuation bit of a variable-length byte.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Bits in a long.
+     */
+    private static final int LONG_BITS = 64;
+
+    /**
+     * Bits in a byte.
+     */
+    private static final int BYTE_SHIFT = 8;
+
+    /**
+     * Byte mask.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Bytes in an int.
+     */
+    private static final int INT_BYTES = 4;
+
+    /**
+     * Source.
+     */
+    private final InputStream input;
+
+    /**
+     * Bytes read from the source.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Next byte to consume.
+     */
+    private int position;
+
+    /**
+     * Bytes in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Bytes of the buffer already added to the checksum.
+     */
+    private int checked;
+
+    /**
+     * Checksum of the bytes consumed.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Event types by number in this snapshot, null where unknown.
+     */
+    private final NotificationEventType[] eventTypes;
+
+    /**
+     * Dictionary strings, by number.
+     */
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * Organization of the current queue.
+     */
+    @Getter
+    private String organization;
+
+    /**
+     * User ID of the current queue.
+     */
+    @Getter
+    private Long userId;
+
+    /**
+     * Messages of the current queue, oldest first.
+     */
+    @Getter
+    private List<WebsocketMessage> messages;
+
+    /**
+     * Queues read.
+     */
+    @Getter
+    private long users;
+
+    /**
+     * Messages read.
+     */
+    @Getter
+    private long messageCount;
+
+    /**
+     * Initializes an instance of <code>QueueSnapshotReader</code>, reading the header.
+     *
+     * @param in source, closed with the reader
+     * @param bufferSize read buffer size
+     * @throws IOException when the source is not a snapshot this version can read
+     */
+    public QueueSnapshotReader(final InputStream in, final int bufferSize) throws IOException {
+        input = in;
+        buffer = new byte[bufferSize];
+        int magic = 0;
+        for (int i = 0; i < INT_BYTES; i++) {
+            magic = magic << BYTE_SHIFT | readByte();
+        }
+        if (magic != QueueSnapshotWriter.MAGIC) {
+            throw new IOException("Not a queue snapshot");
+        }
+        final long version = readVarLong();
+        if (version != QueueSnapshotWriter.VERSION) {
+            throw new IOException("Unsupported queue snapshot version " + version);
+        }
+        eventTypes = new NotificationEventType[readCount()];
+        for (int i = 0; i < eventTypes.length; i++) {
+            final String name = readString();
+            try {
+                eventTypes[i] = NotificationEventType.valueOf(name);
+            } catch (IllegalArgumentException iae) {
+                eventTypes[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the next queue, or verifies the trailer at the end.
+     *
+     * @return false at the end of a valid snapshot
+     * @throws IOException when the snapshot is truncated or corrupt
+     */
+    public boolean next() throws IOException {
+        final int marker = readByte();
+        if (marker == QueueSnapshotWriter.END) {
+            verifyTrailer();
+            organization = null;
+            userId = null;
+            messages = null;
+            return false;
+        }
+        if (marker != QueueSnapshotWriter.USER) {
+            throw new IOException("Corrupt queue snapshot: unexpected record " + marker);
+        }
+        userId = unZigZag(readVarLong());
+        organization = readDictionaryString();
+        final int count = readCount();
+        messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(readMessage(userId));
+        }
+        users++;
+        messageCount += count;
+        return true;
+    }
+
+    /**
+     * Closes the source.
+     *
+     * @throws IOException when it cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Reads a message.
+     *
+     * @param user User ID
+     * @return WebsocketMessage
+     * @throws IOException when the snapshot is truncated or corrupt
+     */
+    private WebsocketMessage readMessage(final Long user) throws IOException {
+        final WebsocketMessage websocketMessage = new WebsocketMessage();
+        websocketMessage.setUserId(user);
+        final int eventType = readCount();
+        if (eventType > eventTypes.length) {
+            throw new IOException("Corrupt queue snapshot: event type " + eventType);
+        }
+        if (eventType > 0) {
+            websocketMessage.setEventType(eventTypes[eventType - 1]);
+        }
+        websocketMessage.setService(readDictionaryString());
+        websocketMessage.setOperation(readDictionaryString());
+        final int parameterCount = readCount();
+        if (parameterCount > 0) {
+            final List<String> parameters = new ArrayList<>(parameterCount - 1);
+            for (int i = 1; i < parameterCount; i++) {
+                parameters.add(readNullableString());
+            }
+            websocketMessage.setParameters(parameters);
+        }
+        final int nanos = readCount();
+        if (nanos > 0) {
+            websocketMessage.setTimestamp(Instant.ofEpochSecond(unZigZag(readVarLong()), nanos - 1L));
+        }
+        return websocketMessage;
+    }
+
+    /**
+     * Checks the trailer's counts and checksum against what was read.
+     *
+     * @throws IOException when they do not match
+     */
+    private void verifyTrailer() throws IOException {
+        final long expectedUsers = readVarLong();
+        final long expectedMessages = readVarLong();
+        crc.update(buffer, checked, position - checked);
+        checked = position;
+        final int computed = (int) crc.getValue();
+        int checksum = 0;
+        for (int i = 0; i < INT_BYTES; i++) {
+            checksum = checksum << BYTE_SHIFT | readByte();
+        }
+        if (checksum != computed) {
+            throw new IOException("Corrupt queue snapshot: checksum mismatch");
+        }
+        if (expectedUsers != users || expectedMessages != messageCount) {
+            throw new IOException("Corrupt queue snapshot: expected " + expectedUsers + " users and "
+                    + expectedMessages + " messages, read " + users + " and " + messageCount);
+        }
+    }
+
+    /**
+     * Reads a string through the dictionary.
+     *
+     * @return string, may be null
+     * @throws IOException when the snapshot is truncated or corrupt
+     */
+    private String readDictionaryString() throws IOException {
+        final int reference = readCount();
+        if (reference == 0) {
+            return null;
+        }
+        if (reference == QueueSnapshotWriter.NEW_STRING) {
+            final String value = readString();
+            strings.add(value);
+            return value;
+        }
+        final int number = reference - QueueSnapshotWriter.FIRST_STRING_REFERENCE;
+        if (number >= strings.size()) {
+            throw new IOException("Corrupt queue snapshot: string " + number);
+        }
+        return strings.get(number);
+    }
+
+    /**
+     * Reads a string which may be null.
+     *
+     * @return string, may be null
+     * @throws IOException when the snapshot is truncated or corrupt
+     */
+    private String readNullableString() throws IOException {
+        final int length = readCount();
+        if (length == 0) {
+            return null;
+        }
+        return readString(length - 1);
+    }
+
+    /**
+     * Reads a length-prefixed string.
+     *
+     * @return string
+     * @throws IOException when the snapshot is truncated or corrupt
+     */
+    private String readString() throws IOException {
+        return readString(readCount());
+    }
+
+    /**
+     * Reads a UTF-8 string of the given length.
+     *
+     * @param length length in bytes
+     * @return string
+     * @throws IOException when the snapshot is truncated
+     */
+    private String readString(final int length) throws IOException {
+        if (limit - position >= length) {
+            final String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) readByte();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a variable-length count, which must fit an int.
+     *
+     * @return count
+     * @throws IOException when the snapshot is truncated or corrupt
+     */
+    private int readCount() throws IOException {
+        final long value = readVarLong();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt queue snapshot: count " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads an unsigned variable-length long.
+     *
+     * @return value
+     * @throws IOException when the snapshot is truncated or corrupt
+     */
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < LONG_BITS; shift += VARINT_SHIFT) {
+            final int next = readByte();
+            value |= (long) (next & VARINT_MASK) << shift;
+            if ((next & VARINT_MORE) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt queue snapshot: malformed number");
+    }
+
+    /**
+     * Reads a byte, refilling the buffer when it is consumed.
+     *
+     * @return byte, 0 to 255
+     * @throws IOException when the snapshot is truncated
+     */
+    private int readByte() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position++] & BYTE_MASK;
+    }
+
+    /**
+     * Adds the consumed bytes to the checksum and refills the buffer.
+     *
+     * @throws IOException when the source is exhausted
+     */
+    private void fill() throws IOException {
+        crc.update(buffer, checked, position - checked);
+        final int read = input.read(buffer);
+        if (read <= 0) {
+            throw new EOFException("Truncated queue snapshot");
+        }
+        position = 0;
+        checked = 0;
+        limit = read;
+    }
+
+    /**
+     * Reverses the zigzag encoding of a signed long.
+     *
+     * @param value zigzag encoding
+     * @return value
+     */
+    private static long unZigZag(final long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming writer of a queue snapshot: a compact binary file of user queues, read back by
+ * QueueSnapshotReader. Integers are variable-length; organizations, services and operations are written
+ * once and referenced by number afterwards; event types are numbered by a table in the header, so the
+ * file does not depend on enum ordinals. A trailer carries the user and message counts and a CRC-32 of
+ * everything before it. Not thread-safe.
+ *
+ * <pre>
+ * header:  magic, version, event type count, event type names
+ * queue:   USER, user ID, organization, message count, messages
+ * message: event type, service, operation, parameter count + 1, parameters, nanos + 1, epoch seconds
+ * trailer: END, user count, message count, CRC-32 (4 bytes, not checksummed)
+ * </pre>
+ */
+public class QueueSnapshotWriter implements AutoCloseable {
+
+    /**
+     * File magic, "WSQS".
+     */
+    public static final int MAGIC = 0x57535153;
+
+    /**
+     * Format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Marks a queue.
+     */
+    public static final int USER = 1;
+
+    /**
+     * Marks the trailer.
+     */
+    public static final int END = 0;
+
+    /**
+     * Dictionary reference to a string not seen before, which follows.
+     */
+    public static final int NEW_STRING = 1;
+
+    /**
+     * Dictionary references above this are string numbers.
+     */
+    public static final int FIRST_STRING_REFERENCE = 2;
+
+    /**
+     * Max bytes of a variable-length long.
+     */
+    private static final int MAX_VARLONG_BYTES = 10;
+
+    /**
+     * Bits per variable-length byte.
+     */
+    private static final int VARINT_SHIFT = 7;
+
+    /**
+     * Payload bits of a variable-length byte.
+     */
+    private static final int VARINT_MASK = 0x7F;
+
+    /**
+     * Continuation bit of a variable-length byte.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Bits in a byte.
+     */
+    private static final int BYTE_SHIFT = 8;
+
+    /**
+     * Byte mask.
+     */
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Sign shift of a long.
+     */
+    private static final int LONG_SIGN_SHIFT = 63;
+
+    /**
+     * Bytes in an int.
+     */
+    private static final int INT_BYTES = 4;
+
+    /**
+     * Destination.
+     */
+    private final OutputStream output;
+
+    /**
+     * Bytes not yet handed to the destination.
+     */
+    private final byte[] buffer;
+
+    /**
+     * Bytes in the buffer.
+     */
+    private int position;
+
+    /**
+     * Checksum of the bytes handed to the destination.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Number of each dictionary string written so far.
+     */
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    /**
+     * Queues written.
+     */
+    @Getter
+    private long users;
+
+    /**
+     * Messages written.
+     */
+    @Getter
+    private long messages;
+
+    /**
+     * Initializes an instance of <code>QueueSnapshotWriter</code>, writing the header.
+     *
+     * @param out destination, closed with the writer
+     * @param bufferSize write buffer size
+     * @throws IOException when the header cannot be written
+     */
+    public QueueSnapshotWriter(final OutputStream out, final int bufferSize) throws IOException {
+        output = out;
+        buffer = new byte[Math.max(bufferSize, MAX_VARLONG_BYTES)];
+        writeInt(MAGIC);
+        writeVarLong(VERSION);
+        final NotificationEventType[] eventTypes = NotificationEventType.values();
+        writeVarLong(eventTypes.length);
+        for (final NotificationEventType eventType : eventTypes) {
+            writeString(eventType.name());
+        }
+    }
+
+    /**
+     * Writes a user's queue.
+     *
+     * @param organization organization of the user
+     * @param userId User ID
+     * @param queue messages, oldest first
+     * @throws IOException when the queue cannot be written
+     */
+    public void write(final String organization, final Long userId, final List<WebsocketMessage> queue)
+            throws IOException {
+        writeByte(USER);
+        writeVarLong(zigZag(userId));
+        writeDictionaryString(organization);
+        writeVarLong(queue.size());
+        for (final WebsocketMessage websocketMessage : queue) {
+            write(websocketMessage);
+        }
+        users++;
+        messages += queue.size();
+    }
+
+    /**
+     * Writes the trailer and flushes. Nothing may be written afterwards.
+     *
+     * @throws IOException when the trailer cannot be written
+     */
+    public void finish() throws IOException {
+        writeByte(END);
+        writeVarLong(users);
+        writeVarLong(messages);
+        flushBuffer();
+        final int checksum = (int) crc.getValue();
+        for (int shift = (INT_BYTES - 1) * BYTE_SHIFT; shift >= 0; shift -= BYTE_SHIFT) {
+            output.write(checksum >>> shift & BYTE_MASK);
+        }
+        output.flush();
+    }
+
+    /**
+     * Closes the destination.
+     *
+     * @throws IOException when it cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * Writes a message.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @throws IOException when the message cannot be written
+     */
+    private void write(final WebsocketMessage websocketMessage) throws IOException {
+        if (websocketMessage.getEventType() == null) {
+            writeVarLong(0);
+        } else {
+            writeVarLong(websocketMessage.getEventType().ordinal() + 1L);
+        }
+        writeDictionaryString(websocketMessage.getService());
+        writeDictionaryString(websocketMessage.getOperation());
+        final List<String> parameters = websocketMessage.getParameters();
+        if (parameters == null) {
+            writeVarLong(0);
+        } else {
+            writeVarLong(parameters.size() + 1L);
+            for (final String parameter : parameters) {
+                writeNullableString(parameter);
+            }
+        }
+        final Instant timestamp = websocketMessage.getTimestamp();
+        if (timestamp == null) {
+            writeVarLong(0);
+        } else {
+            writeVarLong(timestamp.getNano() + 1L);
+            writeVarLong(zigZag(timestamp.getEpochSecond()));
+        }
+    }
+
+    /**
+     * Writes a string through the dictionary: 0 for null, NEW_STRING followed by the string the first
+     * time, and its number plus FIRST_STRING_REFERENCE after that.
+     *
+     * @param value string, may be null
+     * @throws IOException when the string cannot be written
+     */
+    private void writeDictionaryString(final String value) throws IOException {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        final Integer number = strings.get(value);
+        if (number != null) {
+            writeVarLong(number + (long) FIRST_STRING_REFERENCE);
+            return;
+        }
+        strings.put(value, strings.size());
+        writeVarLong(NEW_STRING);
+        writeString(value);
+    }
+
+    /**
+     * Writes a string which may be null: 0 for null, otherwise its UTF-8 length plus one and its bytes.
+     *
+     * @param value string, may be null
+     * @throws IOException when the string cannot be written
+     */
+    private void writeNullableString(final String value) throws IOException {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        final int length = value.length();
+        if (length < buffer.length - MAX_VARLONG_BYTES && isAscii(value)) {
+            // Common case: IDs and names, copied without an intermediate byte array
+            writeVarLong(length + 1L);
+            if (buffer.length - position < length) {
+                flushBuffer();
+            }
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Determines if a string is plain ASCII, so its UTF-8 bytes are its chars.
+     *
+     * @param value string
+     * @return if ASCII
+     */
+    private static boolean isAscii(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > VARINT_MASK) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a string: its UTF-8 length and its bytes.
+     *
+     * @param value string
+     * @throws IOException when the string cannot be written
+     */
+    private void writeString(final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Writes bytes, straight through to the destination when they do not fit the buffer.
+     *
+     * @param bytes bytes
+     * @throws IOException when they cannot be written
+     */
+    private void writeBytes(final byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                crc.update(bytes, 0, bytes.length);
+                output.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes an unsigned variable-length long: seven bits per byte, low bits first.
+     *
+     * @param value value, not negative unless zigzagged
+     * @throws IOException when it cannot be written
+     */
+    private void writeVarLong(final long value) throws IOException {
+        if (buffer.length - position < MAX_VARLONG_BYTES) {
+            flushBuffer();
+        }
+        long remaining = value;
+        while ((remaining & ~VARINT_MASK) != 0) {
+            buffer[position++] = (byte) (remaining & VARINT_MASK | VARINT_MORE);
+            remaining >>>= VARINT_SHIFT;
+        }
+        buffer[position++] = (byte) remaining;
+    }
+
+    /**
+     * Writes a big-endian int.
+     *
+     * @param value value
+     * @throws IOException when it cannot be written
+     */
+    private void writeInt(final int value) throws IOException {
+        for (int shift = (INT_BYTES - 1) * BYTE_SHIFT; shift >= 0; shift -= BYTE_SHIFT) {
+            writeByte(value >>> shift & BYTE_MASK);
+        }
+    }
+
+    /**
+     * Writes a byte.
+     *
+     * @param value byte
+     * @throws IOException when it cannot be written
+     */
+    private void writeByte(final int value) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Hands the buffered bytes to the destination, adding them to the checksum.
+     *
+     * @throws IOException when they cannot be written
+     */
+    private void flushBuffer() throws IOException {
+        crc.update(buffer, 0, position);
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Maps a signed long to an unsigned one, small magnitudes staying small.
+     *
+     * @param value value
+     * @return zigzag encoding
+     */
+    private static long zigZag(final long value) {
+        return value << 1 ^ value >> LONG_SIGN_SHIFT;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.util;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket holding up to one second of permits. A rate of 0 or less never limits.
+ */
+public class RateLimiter {
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Permits per second, 0 or less for no limit.
+     */
+    @Getter
+    private final long permitsPerSecond;
+
+    /**
+     * Permits available.
+     */
+    private double tokens;
+
+    /**
+     * Time (ns) permits were last added.
+     */
+    private long refilledAt = System.nanoTime();
+
+    /**
+     * Initializes an instance of <code>RateLimiter</code>, starting full.
+     *
+     * @param rate permits per second, 0 or less for no limit
+     */
+    public RateLimiter(final long rate) {
+        permitsPerSecond = rate;
+        tokens = rate;
+    }
+
+    /**
+     * Determines if this limiter limits anything.
+     *
+     * @return if the rate is positive
+     */
+    public boolean isLimited() {
+        return permitsPerSecond > 0;
+    }
+
+    /**
+     * Takes up to the wanted number of permits, without waiting.
+     *
+     * @param wanted permits wanted
+     * @return permits granted, between 0 and wanted
+     */
+    public synchronized int take(final int wanted) {
+        if (!isLimited()) {
+            return wanted;
+        }
+        refill();
+        final int granted = (int) Math.min(wanted, Math.floor(tokens));
+        tokens -= granted;
+        return granted;
+    }
+
+    /**
+     * Waits until at least one permit is available, without taking it.
+     *
+     * @return if the caller had to wait
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public boolean awaitPermit() throws InterruptedException {
+        boolean waited = false;
+        long waitNanos = nanosToPermit();
+        while (waitNanos > 0) {
+            waited = true;
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            waitNanos = nanosToPermit();
+        }
+        return waited;
+    }
+
+    /**
+     * Time until a permit is available.
+     *
+     * @return time (ns), 0 when one is available now
+     */
+    private synchronized long nanosToPermit() {
+        if (!isLimited()) {
+            return 0;
+        }
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) * NANOS_PER_SECOND / permitsPerSecond);
+    }
+
+    /**
+     * Adds the permits accrued since the last refill, up to one second's worth.
+     */
+    private void refill() {
+        final long now = System.nanoTime();
+        final double accrued = (double) (now - refilledAt) * permitsPerSecond / NANOS_PER_SECOND;
+        tokens = Math.min(permitsPerSecond, tokens + accrued);
+        refilledAt = now;
+    }
+}
@@ -66,6 +66,79 @@ public class ResponseParser {
      */
     public static final Pattern DECLINE_PATTERN = Pattern.compile("^(DECLINE)$", Pattern.CASE_INSENSITIVE);
 
+    /**
+     * Responses recognized by the character level parser, in evaluation order.
+     */
+    private static final ResponseOption[] RESPONSES = {
+        ResponseOption.STOP,
+        ResponseOption.SKIP,
+        ResponseOption.DECLINE,
+        ResponseOption.CONFIRM,
+        ResponseOption.A,
+        ResponseOption.B,
+        ResponseOption.C,
+        ResponseOption.D,
+    };
+
+    /**
+     * Determines user's response from a slice of characters, as the patterns above would, without
+     * creating a String.
+     *
+     * @param chars characters holding the message
+     * @param offset start of the message
+     * @param length length of the message
+     * @return SMSResponseOption
+     */
+    public static ResponseOption determineResponse(final char[] chars, final int offset, final int length) {
+        // Like "$", allow a single trailing line terminator
+        int end = offset + length;
+        if (end > offset && isLineTerminator(chars[end - 1])) {
+            end--;
+            if (end > offset && chars[end] == '\n' && chars[end - 1] == '\r') {
+                end--;
+            }
+        }
+        for (final ResponseOption responseOption : RESPONSES) {
+            if (matches(responseOption.name(), chars, offset, end)) {
+                return responseOption;
+            }
+        }
+        return ResponseOption.UNKNOWN;
+    }
+
+    /**
+     * Compares a slice of characters to an upper case ASCII keyword, ignoring case.
+     *
+     * @param keyword upper case keyword
+     * @param chars characters
+     * @param start start of slice
+     * @param end end of slice (exclusive)
+     * @return if equal
+     */
+    private static boolean matches(final String keyword, final char[] chars, final int start, final int end) {
+        if (end - start != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            final char c = chars[start + i];
+            // ASCII-only case folding, like Pattern.CASE_INSENSITIVE
+            if (c != keyword.charAt(i) && (c < 'a' || c > 'z' || c - ('a' - 'A') != keyword.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if a character is a line terminator, as understood by the patterns above.
+     *
+     * @param c character
+     * @return if a line terminator
+     */
+    private static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
     /**
      * Determines user's response.
      *
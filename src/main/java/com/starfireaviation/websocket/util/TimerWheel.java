@@ -0,0 +1,206 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel: a single thread advances one bucket per tick and expires the timeouts due in it.
+ * Timeouts are intrusive list nodes, so scheduling and cancelling allocate nothing and take O(1). Deadlines
+ * count ticks of the clock rather than ticks run, so the ticks a stalled thread runs back to back to
+ * catch up do not expire timeouts scheduled meanwhile early.
+ */
+@Slf4j
+public final class TimerWheel implements AutoCloseable {
+
+    /**
+     * Bucket heads.
+     */
+    private final Timeout[] buckets;
+
+    /**
+     * Duration of one tick in milliseconds.
+     */
+    private final long tickMillis;
+
+    /**
+     * Duration of one tick in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * Time (ns) the wheel started.
+     */
+    private final long startedAt = System.nanoTime();
+
+    /**
+     * Ticks run since the wheel started; behind the clock while the thread catches up.
+     */
+    private long currentTick;
+
+    /**
+     * Timeouts expired by the current tick (only used by the tick thread).
+     */
+    private final List<Timeout> expired = new ArrayList<>();
+
+    /**
+     * Tick thread.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Initializes and starts a <code>TimerWheel</code>.
+     *
+     * @param name name of the tick thread
+     * @param size number of buckets
+     * @param tick duration of one tick in milliseconds
+     */
+    public TimerWheel(final String name, final int size, final long tick) {
+        buckets = new Timeout[size];
+        tickMillis = tick;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tick);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules (or reschedules) a timeout.
+     *
+     * @param timeout Timeout
+     * @param delayMillis delay in milliseconds
+     */
+    public synchronized void schedule(final Timeout timeout, final long delayMillis) {
+        unlink(timeout);
+        final long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        timeout.deadline = Math.max(currentTick, (System.nanoTime() - startedAt) / tickNanos) + ticks;
+        timeout.bucket = (int) (timeout.deadline % buckets.length);
+        timeout.next = buckets[timeout.bucket];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[timeout.bucket] = timeout;
+    }
+
+    /**
+     * Cancels a timeout.
+     *
+     * @param timeout Timeout
+     * @return if the timeout was scheduled
+     */
+    public synchronized boolean cancel(final Timeout timeout) {
+        return unlink(timeout);
+    }
+
+    /**
+     * Stops the tick thread.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Advances the wheel one bucket and expires the timeouts which are due.
+     */
+    private void tick() {
+        synchronized (this) {
+            currentTick++;
+            Timeout timeout = buckets[(int) (currentTick % buckets.length)];
+            while (timeout != null) {
+                final Timeout next = timeout.next;
+                if (timeout.deadline <= currentTick) {
+                    unlink(timeout);
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        for (final Timeout timeout : expired) {
+            try {
+                timeout.expire();
+            } catch (RuntimeException e) {
+                log.warn("Timeout expiry failed", e);
+            }
+        }
+        expired.clear();
+    }
+
+    /**
+     * Removes a timeout from its bucket.
+     *
+     * @param timeout Timeout
+     * @return if the timeout was scheduled
+     */
+    private boolean unlink(final Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return false;
+        }
+        if (timeout.prev == null) {
+            buckets[timeout.bucket] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        return true;
+    }
+
+    /**
+     * Something which can be scheduled on a TimerWheel.
+     */
+    public abstract static class Timeout {
+
+        /**
+         * Previous timeout in the bucket.
+         */
+        private Timeout prev;
+
+        /**
+         * Next timeout in the bucket.
+         */
+        private Timeout next;
+
+        /**
+         * Bucket index, -1 when not scheduled.
+         */
+        private int bucket = -1;
+
+        /**
+         * Tick of the clock the timeout expires at.
+         */
+        private long deadline;
+
+        /**
+         * Called on the tick thread when the timeout expires.
+         */
+        protected abstract void expire();
+    }
+}
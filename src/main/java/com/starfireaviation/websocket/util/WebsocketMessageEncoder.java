@@ -0,0 +1,675 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.util;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes WebsocketMessages to the same JSON Jackson produces for them, splicing the variable
+ * fields around a pre-encoded fragment. Field names are pre-encoded and numbers, timestamps and
+ * strings are written byte by byte, so encoding into a pooled buffer allocates nothing.
+ */
+public final class WebsocketMessageEncoder {
+
+    /**
+     * Initial output buffer size, large enough for the typical message.
+     */
+    private static final int INITIAL_SIZE = 192;
+
+    /**
+     * Most bytes a single char can encode to (a unicode escape).
+     */
+    private static final int MAX_BYTES_PER_CHAR = 6;
+
+    /**
+     * Characters below this value must be escaped.
+     */
+    private static final int FIRST_PRINTABLE = 0x20;
+
+    /**
+     * Upper bound of single byte UTF-8 characters.
+     */
+    private static final int MAX_ONE_BYTE = 0x80;
+
+    /**
+     * Upper bound of two byte UTF-8 characters.
+     */
+    private static final int MAX_TWO_BYTES = 0x800;
+
+    /**
+     * Lead byte of a two byte UTF-8 sequence.
+     */
+    private static final int LEAD_TWO_BYTES = 0xC0;
+
+    /**
+     * Lead byte of a three byte UTF-8 sequence.
+     */
+    private static final int LEAD_THREE_BYTES = 0xE0;
+
+    /**
+     * Lead byte of a four byte UTF-8 sequence.
+     */
+    private static final int LEAD_FOUR_BYTES = 0xF0;
+
+    /**
+     * Marker of a UTF-8 continuation byte.
+     */
+    private static final int CONTINUATION = 0x80;
+
+    /**
+     * Payload bits of a UTF-8 continuation byte.
+     */
+    private static final int CONTINUATION_BITS = 6;
+
+    /**
+     * Mask of the payload of a UTF-8 continuation byte.
+     */
+    private static final int CONTINUATION_MASK = 0x3F;
+
+    /**
+     * Shift of the lead byte of a three byte UTF-8 sequence.
+     */
+    private static final int THREE_BYTE_SHIFT = 12;
+
+    /**
+     * Shift of the lead byte of a four byte UTF-8 sequence.
+     */
+    private static final int FOUR_BYTE_SHIFT = 18;
+
+    /**
+     * Written in place of a lone surrogate, as String.getBytes does.
+     */
+    private static final byte REPLACEMENT = '?';
+
+    /**
+     * Bits per hex digit.
+     */
+    private static final int HEX_DIGIT_BITS = 4;
+
+    /**
+     * Mask of the low hex digit.
+     */
+    private static final int HEX_DIGIT_MASK = 0xF;
+
+    /**
+     * Decimal radix.
+     */
+    private static final int RADIX = 10;
+
+    /**
+     * Seconds per day.
+     */
+    private static final long SECONDS_PER_DAY = 86_400L;
+
+    /**
+     * Seconds per hour.
+     */
+    private static final int SECONDS_PER_HOUR = 3_600;
+
+    /**
+     * Seconds per minute.
+     */
+    private static final int SECONDS_PER_MINUTE = 60;
+
+    /**
+     * Epoch second of 0000-01-01T00:00:00Z. Earlier instants are not written as four digit years.
+     */
+    private static final long MIN_FOUR_DIGIT_YEAR = -62_167_219_200L;
+
+    /**
+     * Epoch second of 9999-12-31T23:59:59Z. Later instants are not written as four digit years.
+     */
+    private static final long MAX_FOUR_DIGIT_YEAR = 253_402_300_799L;
+
+    /**
+     * Days from 0000-03-01, the start of the shifted calendar, to the epoch.
+     */
+    private static final long DAYS_TO_EPOCH = 719_468L;
+
+    /**
+     * Days per 400 year cycle of the Gregorian calendar.
+     */
+    private static final long DAYS_PER_CYCLE = 146_097L;
+
+    /**
+     * Years per Gregorian cycle.
+     */
+    private static final int YEARS_PER_CYCLE = 400;
+
+    /**
+     * Days per (non-leap) year.
+     */
+    private static final int DAYS_PER_YEAR = 365;
+
+    /**
+     * Days per four years of a cycle, the first leap day not counted.
+     */
+    private static final int DAYS_PER_4_YEARS = 1_460;
+
+    /**
+     * Days per century of a cycle.
+     */
+    private static final int DAYS_PER_CENTURY = 36_524;
+
+    /**
+     * Days per cycle, the final leap day not counted.
+     */
+    private static final int DAYS_PER_CYCLE_LESS_ONE = 146_096;
+
+    /**
+     * Years per leap year.
+     */
+    private static final int YEARS_PER_LEAP = 4;
+
+    /**
+     * Years per century.
+     */
+    private static final int YEARS_PER_CENTURY = 100;
+
+    /**
+     * Days in the five months from March, the span of the month formula.
+     */
+    private static final int DAYS_PER_5_MONTHS = 153;
+
+    /**
+     * Months in the span of the month formula.
+     */
+    private static final int MONTHS_PER_SPAN = 5;
+
+    /**
+     * Shifted months (from March) up to December.
+     */
+    private static final int MONTHS_MARCH_TO_DECEMBER = 10;
+
+    /**
+     * Offset from a shifted month, starting with March at 0, to its month of year.
+     */
+    private static final int MARCH = 3;
+
+    /**
+     * Offset from a shifted month after December back to its month of year.
+     */
+    private static final int MONTHS_AFTER_DECEMBER = 9;
+
+    /**
+     * Digits of a year.
+     */
+    private static final int YEAR_DIGITS = 4;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final int NANOS_PER_MILLI = 1_000_000;
+
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final int NANOS_PER_MICRO = 1_000;
+
+    /**
+     * Digits of a fraction of milliseconds.
+     */
+    private static final int MILLI_DIGITS = 3;
+
+    /**
+     * Digits of a fraction of microseconds.
+     */
+    private static final int MICRO_DIGITS = 6;
+
+    /**
+     * Digits of a fraction of nanoseconds.
+     */
+    private static final int NANO_DIGITS = 9;
+
+    /**
+     * Hex digits used for unicode escapes.
+     */
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Start of message through the userId field name.
+     */
+    private static final byte[] USER_ID = ascii("{\"userId\":");
+
+    /**
+     * EventType field name.
+     */
+    private static final byte[] EVENT_TYPE = ascii(",\"eventType\":");
+
+    /**
+     * Service field name.
+     */
+    private static final byte[] SERVICE = ascii(",\"service\":");
+
+    /**
+     * Operation field name.
+     */
+    private static final byte[] OPERATION = ascii(",\"operation\":");
+
+    /**
+     * Parameters field name.
+     */
+    private static final byte[] PARAMETERS = ascii(",\"parameters\":");
+
+    /**
+     * Timestamp field name.
+     */
+    private static final byte[] TIMESTAMP = ascii(",\"timestamp\":");
+
+    /**
+     * Payload field name.
+     */
+    private static final byte[] PAYLOAD = ascii(",\"payload\":");
+
+    /**
+     * Message ID field name.
+     */
+    private static final byte[] MESSAGE_ID = ascii(",\"messageId\":");
+
+    /**
+     * JSON null.
+     */
+    private static final byte[] NULL = ascii("null");
+
+    /**
+     * Long.MIN_VALUE, which has no positive counterpart to write digits of.
+     */
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+
+    /**
+     * Utility class.
+     */
+    private WebsocketMessageEncoder() {
+    }
+
+    /**
+     * Pre-encodes the fields between userId and the parameters value.
+     *
+     * @param eventType NotificationEventType
+     * @param service Service
+     * @param operation Operation
+     * @return encoded fragment
+     */
+    public static byte[] encodeFragment(final NotificationEventType eventType, final String service,
+                                        final String operation) {
+        String name = null;
+        if (eventType != null) {
+            name = eventType.name();
+        }
+        final ByteBuffer out = ByteBuffer.allocate(INITIAL_SIZE
+                + MAX_BYTES_PER_CHAR * (length(name) + length(service) + length(operation)));
+        out.put(EVENT_TYPE);
+        writeString(out, name);
+        out.put(SERVICE);
+        writeString(out, service);
+        out.put(OPERATION);
+        writeString(out, operation);
+        out.put(PARAMETERS);
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Encodes a WebsocketMessage.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return JSON bytes
+     */
+    public static byte[] encode(final WebsocketMessage websocketMessage) {
+        return encode(websocketMessage, encodeFragment(websocketMessage.getEventType(),
+                websocketMessage.getService(), websocketMessage.getOperation()));
+    }
+
+    /**
+     * Encodes a WebsocketMessage using an already encoded fragment for its constant fields.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @param fragment encoded eventType, service and operation
+     * @return JSON bytes
+     */
+    public static byte[] encode(final WebsocketMessage websocketMessage, final byte[] fragment) {
+        int capacity = INITIAL_SIZE + fragment.length + payloadLength(websocketMessage);
+        while (true) {
+            final ByteBuffer out = ByteBuffer.allocate(capacity);
+            try {
+                write(out, websocketMessage, fragment);
+                return Arrays.copyOf(out.array(), out.position());
+            } catch (BufferOverflowException e) {
+                capacity *= 2;
+            }
+        }
+    }
+
+    /**
+     * Encodes a WebsocketMessage into a buffer from the pool. Messages too large for a pooled buffer
+     * are encoded into a larger one, which the pool does not keep when it is released.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @param fragment encoded eventType, service and operation
+     * @param pool DirectBufferPool
+     * @return buffer holding the JSON bytes, ready to be read
+     */
+    public static ByteBuffer encode(final WebsocketMessage websocketMessage, final byte[] fragment,
+                                    final DirectBufferPool pool) {
+        ByteBuffer out = pool.acquire(INITIAL_SIZE + fragment.length + payloadLength(websocketMessage));
+        while (true) {
+            try {
+                write(out, websocketMessage, fragment);
+                return out.flip();
+            } catch (BufferOverflowException e) {
+                final int capacity = out.capacity() * 2;
+                pool.release(out);
+                out = pool.acquire(capacity);
+            }
+        }
+    }
+
+    /**
+     * Writes a WebsocketMessage.
+     *
+     * @param out output
+     * @param websocketMessage WebsocketMessage
+     * @param fragment encoded eventType, service and operation
+     * @throws BufferOverflowException if the output is too small
+     */
+    private static void write(final ByteBuffer out, final WebsocketMessage websocketMessage,
+                              final byte[] fragment) {
+        out.put(USER_ID);
+        if (websocketMessage.getUserId() == null) {
+            out.put(NULL);
+        } else {
+            writeLong(out, websocketMessage.getUserId());
+        }
+        out.put(fragment);
+        final List<String> parameters = websocketMessage.getParameters();
+        if (parameters == null) {
+            out.put(NULL);
+        } else {
+            out.put((byte) '[');
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) {
+                    out.put((byte) ',');
+                }
+                writeString(out, parameters.get(i));
+            }
+            out.put((byte) ']');
+        }
+        out.put(TIMESTAMP);
+        if (websocketMessage.getTimestamp() == null) {
+            out.put(NULL);
+        } else {
+            out.put((byte) '"');
+            writeInstant(out, websocketMessage.getTimestamp());
+            out.put((byte) '"');
+        }
+        if (websocketMessage.getPayload() != null) {
+            out.put(PAYLOAD);
+            out.put(websocketMessage.getPayload().getJson());
+        }
+        if (websocketMessage.getMessageId() != null) {
+            out.put(MESSAGE_ID);
+            writeLong(out, websocketMessage.getMessageId());
+        }
+        out.put((byte) '}');
+    }
+
+    /**
+     * Writes the decimal digits of a long, as Long.toString does.
+     *
+     * @param out output
+     * @param value long
+     */
+    static void writeLong(final ByteBuffer out, final long value) {
+        if (value == Long.MIN_VALUE) {
+            out.put(MIN_LONG);
+            return;
+        }
+        long remaining = value;
+        if (remaining < 0) {
+            out.put((byte) '-');
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long bound = remaining / RADIX; bound > 0; bound /= RADIX) {
+            digits++;
+        }
+        final int end = out.position() + digits;
+        if (end > out.limit()) {
+            throw new BufferOverflowException();
+        }
+        for (int i = end - 1; i >= out.position(); i--) {
+            out.put(i, (byte) ('0' + remaining % RADIX));
+            remaining /= RADIX;
+        }
+        out.position(end);
+    }
+
+    /**
+     * Writes an Instant as Instant.toString does: ISO-8601 in UTC, seconds always present and the
+     * fraction, if any, in groups of three digits. Years outside 0000-9999 fall back to toString.
+     *
+     * @param out output
+     * @param instant Instant
+     */
+    static void writeInstant(final ByteBuffer out, final Instant instant) {
+        final long epochSecond = instant.getEpochSecond();
+        if (epochSecond < MIN_FOUR_DIGIT_YEAR || epochSecond > MAX_FOUR_DIGIT_YEAR) {
+            out.put(ascii(instant.toString()));
+            return;
+        }
+        writeDate(out, Math.floorDiv(epochSecond, SECONDS_PER_DAY));
+        final int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        out.put((byte) 'T');
+        writeDigits(out, secondOfDay / SECONDS_PER_HOUR, 2);
+        out.put((byte) ':');
+        writeDigits(out, secondOfDay % SECONDS_PER_HOUR / SECONDS_PER_MINUTE, 2);
+        out.put((byte) ':');
+        writeDigits(out, secondOfDay % SECONDS_PER_MINUTE, 2);
+        final int nano = instant.getNano();
+        if (nano > 0) {
+            out.put((byte) '.');
+            if (nano % NANOS_PER_MILLI == 0) {
+                writeDigits(out, nano / NANOS_PER_MILLI, MILLI_DIGITS);
+            } else if (nano % NANOS_PER_MICRO == 0) {
+                writeDigits(out, nano / NANOS_PER_MICRO, MICRO_DIGITS);
+            } else {
+                writeDigits(out, nano, NANO_DIGITS);
+            }
+        }
+        out.put((byte) 'Z');
+    }
+
+    /**
+     * Writes the date of an epoch day as yyyy-MM-dd, converting with the days-from-civil inverse over
+     * a calendar shifted to start in March, so the leap day ends each year.
+     *
+     * @param out output
+     * @param epochDay days since 1970-01-01
+     */
+    private static void writeDate(final ByteBuffer out, final long epochDay) {
+        final long shifted = epochDay + DAYS_TO_EPOCH;
+        final long cycle = Math.floorDiv(shifted, DAYS_PER_CYCLE);
+        final int dayOfCycle = (int) (shifted - cycle * DAYS_PER_CYCLE);
+        final int yearOfCycle = (dayOfCycle - dayOfCycle / DAYS_PER_4_YEARS + dayOfCycle / DAYS_PER_CENTURY
+                - dayOfCycle / DAYS_PER_CYCLE_LESS_ONE) / DAYS_PER_YEAR;
+        final int dayOfYear = dayOfCycle - (DAYS_PER_YEAR * yearOfCycle + yearOfCycle / YEARS_PER_LEAP
+                - yearOfCycle / YEARS_PER_CENTURY);
+        final int shiftedMonth = (MONTHS_PER_SPAN * dayOfYear + 2) / DAYS_PER_5_MONTHS;
+        final int day = dayOfYear - (DAYS_PER_5_MONTHS * shiftedMonth + 2) / MONTHS_PER_SPAN + 1;
+        int month = shiftedMonth - MONTHS_AFTER_DECEMBER;
+        long year = yearOfCycle + cycle * YEARS_PER_CYCLE;
+        if (shiftedMonth < MONTHS_MARCH_TO_DECEMBER) {
+            month = shiftedMonth + MARCH;
+        } else {
+            year++;
+        }
+        writeDigits(out, (int) year, YEAR_DIGITS);
+        out.put((byte) '-');
+        writeDigits(out, month, 2);
+        out.put((byte) '-');
+        writeDigits(out, day, 2);
+    }
+
+    /**
+     * Writes a non-negative int as a fixed number of digits, zero padded.
+     *
+     * @param out output
+     * @param value int
+     * @param digits number of digits
+     */
+    private static void writeDigits(final ByteBuffer out, final int value, final int digits) {
+        final int end = out.position() + digits;
+        if (end > out.limit()) {
+            throw new BufferOverflowException();
+        }
+        int remaining = value;
+        for (int i = end - 1; i >= out.position(); i--) {
+            out.put(i, (byte) ('0' + remaining % RADIX));
+            remaining /= RADIX;
+        }
+        out.position(end);
+    }
+
+    /**
+     * Writes a quoted and escaped JSON string (or null) as UTF-8.
+     *
+     * @param out output
+     * @param value String
+     */
+    private static void writeString(final ByteBuffer out, final String value) {
+        if (value == null) {
+            out.put(NULL);
+            return;
+        }
+        out.put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.put((byte) '\\');
+                out.put((byte) c);
+            } else if (c < FIRST_PRINTABLE) {
+                writeControl(out, c);
+            } else if (c < MAX_ONE_BYTE) {
+                out.put((byte) c);
+            } else if (c < MAX_TWO_BYTES) {
+                out.put((byte) (LEAD_TWO_BYTES | c >> CONTINUATION_BITS));
+                out.put(continuation(c, 0));
+            } else if (!Character.isSurrogate(c)) {
+                out.put((byte) (LEAD_THREE_BYTES | c >> THREE_BYTE_SHIFT));
+                out.put(continuation(c, 1));
+                out.put(continuation(c, 0));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (LEAD_FOUR_BYTES | codePoint >> FOUR_BYTE_SHIFT));
+                out.put(continuation(codePoint, 2));
+                out.put(continuation(codePoint, 1));
+                out.put(continuation(codePoint, 0));
+            } else {
+                out.put(REPLACEMENT);
+            }
+        }
+        out.put((byte) '"');
+    }
+
+    /**
+     * A UTF-8 continuation byte of a code point.
+     *
+     * @param codePoint code point
+     * @param index continuation bytes which follow this one
+     * @return continuation byte
+     */
+    private static byte continuation(final int codePoint, final int index) {
+        return (byte) (CONTINUATION | codePoint >> (index * CONTINUATION_BITS) & CONTINUATION_MASK);
+    }
+
+    /**
+     * Writes an escaped control character the way Jackson does.
+     *
+     * @param out output
+     * @param c control character
+     */
+    private static void writeControl(final ByteBuffer out, final char c) {
+        out.put((byte) '\\');
+        switch (c) {
+            case '\b':
+                out.put((byte) 'b');
+                break;
+            case '\t':
+                out.put((byte) 't');
+                break;
+            case '\n':
+                out.put((byte) 'n');
+                break;
+            case '\f':
+                out.put((byte) 'f');
+                break;
+            case '\r':
+                out.put((byte) 'r');
+                break;
+            default:
+                out.put((byte) 'u');
+                out.put((byte) '0');
+                out.put((byte) '0');
+                out.put(HEX[c >> HEX_DIGIT_BITS]);
+                out.put(HEX[c & HEX_DIGIT_MASK]);
+        }
+    }
+
+    /**
+     * Length of a message's payload, 0 when it has none.
+     *
+     * @param websocketMessage WebsocketMessage
+     * @return bytes
+     */
+    private static int payloadLength(final WebsocketMessage websocketMessage) {
+        if (websocketMessage.getPayload() == null) {
+            return 0;
+        }
+        return websocketMessage.getPayload().getJson().length;
+    }
+
+    /**
+     * Length of a String, 0 for null.
+     *
+     * @param value String
+     * @return length
+     */
+    private static int length(final String value) {
+        if (value == null) {
+            return 0;
+        }
+        return value.length();
+    }
+
+    /**
+     * ASCII bytes of a String.
+     *
+     * @param value String
+     * @return bytes
+     */
+    private static byte[] ascii(final String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.starfireaviation.websocket.validation;
 
+import com.starfireaviation.model.ResponseOption;
 import com.starfireaviation.websocket.exception.InvalidPayloadException;
 import com.starfireaviation.websocket.util.ResponseParser;
 
@@ -31,7 +32,20 @@ public class ResponseValidator {
      * @throws InvalidPayloadException when response is not valid
      */
     public static void validate(final String message) throws InvalidPayloadException {
-        switch (ResponseParser.determineResponse(message)) {
+        validate(ResponseParser.determineResponse(message));
+    }
+
+    /**
+     * Response Validation.
+     *
+     * @param responseOption ResponseOption (null when there was no response)
+     * @throws InvalidPayloadException when response is not valid
+     */
+    public static void validate(final ResponseOption responseOption) throws InvalidPayloadException {
+        if (responseOption == null) {
+            throw new InvalidPayloadException("Missing response");
+        }
+        switch (responseOption) {
             case A:
             case B:
             case C:
@@ -0,0 +1,146 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.Pressure;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.MessageService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sheds display updates and handshakes under pressure.
+ */
+class AdmissionTests {
+
+	private static final Long USER_ID = 42L;
+
+	private final MessageService messageService = new MessageService();
+
+	@Test
+	void elevatedPressureCoalescesDisplayUpdates() {
+		messageService.setPressure(Pressure.ELEVATED);
+		send(NotificationEventType.QUESTION_DISPLAYED, "q1");
+		send(NotificationEventType.USER_SETTINGS, "s1");
+		send(NotificationEventType.QUESTION_DISPLAYED, "q2");
+		send(NotificationEventType.LESSON_DISPLAYED, "l1");
+		send(NotificationEventType.QUESTION_DISPLAYED, "q3");
+
+		assertEquals(3, messageService.getQueuedMessages());
+		assertEquals(2, messageService.getShedCount());
+		assertEquals(List.of("s1", "l1", "q3"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0)).collect(Collectors.toList()));
+		assertEquals(0, messageService.getQueuedMessages());
+	}
+
+	@Test
+	void criticalPressureCoalescesDisplayUpdatesWithoutDroppingThem() {
+		messageService.setPressure(Pressure.CRITICAL);
+		send(NotificationEventType.QUESTION_DISPLAYED, "q1");
+		send(NotificationEventType.USER_SETTINGS, "s1");
+		send(NotificationEventType.QUESTION_DISPLAYED, "q2");
+
+		assertEquals(2, messageService.getQueuedMessages());
+		assertEquals(1, messageService.getShedCount());
+		assertEquals(List.of("s1", "q2"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0)).collect(Collectors.toList()));
+	}
+
+	@Test
+	void compactionKeepsTheNewestDisplayUpdateOfEachType() {
+		send(NotificationEventType.QUESTION_DISPLAYED, "q1");
+		send(NotificationEventType.LESSON_DISPLAYED, "l1");
+		send(NotificationEventType.USER_SETTINGS, "s1");
+		send(NotificationEventType.QUESTION_DISPLAYED, "q2");
+		send(NotificationEventType.LESSON_DISPLAYED, "l2");
+
+		assertEquals(2, messageService.compactQueues());
+		assertEquals(List.of("s1", "q2", "l2"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0)).collect(Collectors.toList()));
+	}
+
+	@Test
+	void handshakesAreDeferredOverTheQueueLimit() throws InterruptedException {
+		final ApplicationProperties.Admission admission = new ApplicationProperties.Admission();
+		admission.setSampleInterval(10);
+		admission.setMaxQueuedMessages(2);
+		admission.setMaxHeapOccupancy(Double.MAX_VALUE);
+		admission.setCriticalHandshakeRate(1);
+		try (AdmissionController admissionController = new AdmissionController(admission, messageService)) {
+			assertEquals(0, admissionController.admit());
+			send(NotificationEventType.USER_SETTINGS, "s1");
+			send(NotificationEventType.USER_SETTINGS, "s2");
+			awaitPressure(admissionController, Pressure.CRITICAL);
+
+			assertEquals(0, admissionController.admit());
+			final int retryAfter = admissionController.admit();
+			assertTrue(retryAfter >= admission.getRetryAfter() && retryAfter <= 2 * admission.getRetryAfter());
+			assertEquals(Pressure.CRITICAL, messageService.getPressure());
+
+			messageService.drain(USER_ID);
+			awaitPressure(admissionController, Pressure.NORMAL);
+			assertEquals(0, admissionController.admit());
+			assertEquals(3, admissionController.getStats().getAdmitted());
+			assertEquals(1, admissionController.getStats().getRejected());
+		}
+	}
+
+	@Test
+	void heapOccupancyLeavesOutGarbageNotYetCollected() throws InterruptedException {
+		final ApplicationProperties.Admission admission = new ApplicationProperties.Admission();
+		admission.setSampleInterval(10);
+		try (AdmissionController admissionController = new AdmissionController(admission, messageService)) {
+			System.gc();
+			Thread.sleep(50);
+			final double live = admissionController.getStats().getHeapOccupancy();
+
+			// An array this large is allocated straight into the old generation
+			byte[] garbage = new byte[(int) (Runtime.getRuntime().maxMemory() / 4)];
+			garbage[garbage.length - 1] = 1;
+			garbage = null;
+			Thread.sleep(50);
+
+			assertTrue(admissionController.getStats().getHeapOccupancy() < live + 0.1);
+			assertEquals(Pressure.NORMAL, admissionController.getPressure());
+		}
+	}
+
+	private void send(final NotificationEventType eventType, final String parameter) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(USER_ID);
+		websocketMessage.setEventType(eventType);
+		websocketMessage.setParameters(List.of(parameter));
+		messageService.sendMessage(websocketMessage);
+	}
+
+	private static void awaitPressure(final AdmissionController admissionController, final Pressure pressure)
+			throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (admissionController.getPressure() != pressure && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(pressure, admissionController.getPressure());
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Delivers to a client which opted in to batching, completing its writes when the test lets them.
+ */
+class BatchingTests {
+
+	private static final Long USER_ID = 42L;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final MessageService messageService = new MessageService();
+
+	private DeliveryService deliveryService;
+
+	@AfterEach
+	void close() {
+		deliveryService.close();
+	}
+
+	@Test
+	void idleSessionWritesAtOnce() {
+		final BatchingChannel channel = connect(true);
+		send("q1");
+
+		assertEquals(1, channel.written.size());
+		assertFalse(channel.written.get(0).isArray());
+		assertEquals("q1", channel.written.get(0).get("parameters").get(0).asText());
+	}
+
+	@Test
+	void messagesBufferedBehindAWriteAreBatched() {
+		final BatchingChannel channel = connect(true);
+		send("q1");
+		send("q2");
+		send("q3");
+		send("q4");
+		channel.completeWrites();
+
+		assertEquals(2, channel.written.size());
+		final JsonNode batch = channel.written.get(1);
+		assertTrue(batch.isArray());
+		assertEquals(List.of("q2", "q3", "q4"), parameters(batch));
+		assertEquals(2, deliveryService.getStats().getFramesWritten());
+		assertEquals(4, deliveryService.getStats().getMessagesWritten());
+	}
+
+	@Test
+	void clientsWhichDidNotOptInGetSingleFrames() {
+		final BatchingChannel channel = connect(false);
+		send("q1");
+		send("q2");
+		send("q3");
+		channel.completeWrites();
+
+		assertEquals(3, channel.written.size());
+		assertTrue(channel.written.stream().noneMatch(JsonNode::isArray));
+	}
+
+	@Test
+	void failedBatchIsRequeuedInOrder() {
+		final BatchingChannel channel = connect(true);
+		send("q1");
+		send("q2");
+		send("q3");
+		channel.completeWrite(null);
+		assertTrue(channel.written.get(1).isArray());
+		channel.completeWrite(new IllegalStateException("reset"));
+
+		assertFalse(channel.isOpen());
+		assertEquals(List.of("q2", "q3"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0))
+				.collect(Collectors.toList()));
+	}
+
+	private BatchingChannel connect(final boolean batching) {
+		final ApplicationProperties.Heartbeat heartbeat = new ApplicationProperties.Heartbeat();
+		heartbeat.setEnabled(false);
+		final ApplicationProperties.Batching batchingProperties = new ApplicationProperties.Batching();
+		batchingProperties.setEnabled(true);
+		deliveryService = new DeliveryService(messageService, new ApplicationProperties.Delivery(), heartbeat,
+				new ApplicationProperties.SendBuffer(), batchingProperties);
+		messageService.setPendingMessageListener(deliveryService);
+		final BatchingChannel channel = new BatchingChannel(batching);
+		deliveryService.register(USER_ID, channel);
+		return channel;
+	}
+
+	private void send(final String parameter) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(USER_ID);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setParameters(List.of(parameter));
+		messageService.sendMessage(websocketMessage);
+	}
+
+	private static List<String> parameters(final JsonNode batch) {
+		final List<String> parameters = new ArrayList<>();
+		batch.forEach(message -> parameters.add(message.get("parameters").get(0).asText()));
+		return parameters;
+	}
+
+	/**
+	 * Client whose writes stay outstanding until completeWrites is called.
+	 */
+	private static final class BatchingChannel implements DeliveryChannel {
+
+		private final boolean batching;
+
+		private final Deque<SendCallback> outstanding = new ArrayDeque<>();
+
+		private final List<JsonNode> written = new ArrayList<>();
+
+		private boolean open = true;
+
+		BatchingChannel(final boolean batch) {
+			batching = batch;
+		}
+
+		void completeWrites() {
+			while (!outstanding.isEmpty()) {
+				outstanding.poll().onComplete(null);
+			}
+		}
+
+		void completeWrite(final Throwable failure) {
+			outstanding.poll().onComplete(failure);
+		}
+
+		@Override
+		public String getId() {
+			return "batching";
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public boolean isBatching() {
+			return batching;
+		}
+
+		@Override
+		public void send(final ByteBuffer payload, final SendCallback callback) {
+			try {
+				written.add(MAPPER.readTree(StandardCharsets.UTF_8.decode(payload.duplicate()).toString()));
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+			outstanding.add(callback);
+		}
+
+		@Override
+		public void ping() {
+		}
+
+		@Override
+		public void close(final CloseReason closeReason) {
+			open = false;
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.websocket.util.BoundedLineReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reads lines split across reads and lines longer than the buffer.
+ */
+class BoundedLineReaderTests {
+
+	@Test
+	void linesSplitAcrossReadsAreJoined() throws IOException {
+		final String body = "first\r\n\n  \nsecond line\nlast";
+		for (int chunk = 1; chunk <= body.length(); chunk++) {
+			assertEquals(List.of("first", "second line", "last"),
+					read(new ChunkedStream(body.getBytes(StandardCharsets.UTF_8), chunk), 16));
+		}
+	}
+
+	@Test
+	void longLinesAreSkippedAndFlagged() throws IOException {
+		final String longLine = "x".repeat(20_000);
+		final String body = "12345678\n123456789\n" + longLine + "\nafter\n";
+		assertEquals(List.of("12345678", "<overflow>", "<overflow>", "after"),
+				read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), 8));
+		assertEquals(List.of("12345678", "<overflow>", "<overflow>", "after"),
+				read(new ChunkedStream(body.getBytes(StandardCharsets.UTF_8), 3), 8));
+	}
+
+	@Test
+	void lineFillingTheBufferExactlyFits() throws IOException {
+		assertEquals(List.of("abcd", "efgh"), read(new ByteArrayInputStream(
+				"abcd\r\nefgh".getBytes(StandardCharsets.UTF_8)), 4));
+	}
+
+	private static List<String> read(final InputStream in, final int maxLineBytes) throws IOException {
+		final BoundedLineReader reader = new BoundedLineReader(in, maxLineBytes);
+		final List<String> lines = new ArrayList<>();
+		while (reader.next()) {
+			if (reader.isOverflow()) {
+				lines.add("<overflow>");
+			} else {
+				lines.add(new String(reader.getLine(), 0, reader.getLength(), StandardCharsets.UTF_8));
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Stream which returns at most a few bytes per read.
+	 */
+	private static final class ChunkedStream extends InputStream {
+
+		private final byte[] bytes;
+
+		private final int chunk;
+
+		private int position;
+
+		ChunkedStream(final byte[] body, final int chunkSize) {
+			bytes = body;
+			chunk = chunkSize;
+		}
+
+		@Override
+		public int read() {
+			if (position == bytes.length) {
+				return -1;
+			}
+			return bytes[position++];
+		}
+
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) {
+			if (position == bytes.length) {
+				return -1;
+			}
+			final int count = Math.min(Math.min(length, chunk), bytes.length - position);
+			System.arraycopy(bytes, position, buffer, offset, count);
+			position += count;
+			return count;
+		}
+	}
+
+}
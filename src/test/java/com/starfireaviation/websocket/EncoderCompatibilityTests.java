@@ -0,0 +1,127 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.RenderedContent;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.util.DirectBufferPool;
+import com.starfireaviation.websocket.util.WebsocketMessageEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks the encoder writes exactly the bytes clients received when messages were serialized with
+ * Jackson and sent as text.
+ */
+class EncoderCompatibilityTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule())
+			.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+	/**
+	 * Small enough that longer messages take the oversized path.
+	 */
+	private final DirectBufferPool pool = new DirectBufferPool(128, 4);
+
+	@Test
+	void fieldsMatchJackson() throws Exception {
+		assertCompatible(message(null, null, null, null, null, null));
+		assertCompatible(message(42L, NotificationEventType.QUESTION_ASKED, MessageService.QUESTION_SERVICE,
+				"GET", List.of("123"), Instant.parse("2022-10-19T12:00:00Z")));
+		assertCompatible(message(Long.MIN_VALUE, NotificationEventType.HOME_DISPLAYED, null, null, List.of(),
+				Instant.parse("2022-10-19T12:34:56.789Z")));
+		assertCompatible(message(Long.MAX_VALUE, NotificationEventType.EVENT_RSVP, "svc \"quoted\" \\",
+				"op\b\t\n\f\r\u0001\u001f", Arrays.asList("é", null, "€ 😀", "\ud800 lone", "lone \udc00"),
+				Instant.parse("2022-10-19T00:00:00.000001Z")));
+		final WebsocketMessage tracked = message(-7L, NotificationEventType.USER_DELETE, "u", "DELETE",
+				List.of("x".repeat(1000)), Instant.parse("2022-10-19T23:59:59.123456789Z"));
+		tracked.setMessageId(0L);
+		assertCompatible(tracked);
+		final WebsocketMessage embedded = message(42L, NotificationEventType.QUESTION_ASKED,
+				MessageService.QUESTION_SERVICE, "GET", List.of("123"), Instant.parse("2022-10-19T12:00:00Z"));
+		embedded.setPayload(new RenderedContent(MessageService.QUESTION_SERVICE, "123",
+				MAPPER.writeValueAsBytes(Map.of("text", "Cleared for the \"option\" ✈", "choices", List.of("A", "B")))));
+		embedded.setMessageId(7L);
+		assertCompatible(embedded);
+	}
+
+	@Test
+	void timestampsMatchJackson() throws Exception {
+		final Random random = new Random(1);
+		final long min = Instant.parse("-1000-01-01T00:00:00Z").getEpochSecond();
+		final long max = Instant.parse("+12000-01-01T00:00:00Z").getEpochSecond();
+		for (int i = 0; i < 100_000; i++) {
+			final long second = min + (long) (random.nextDouble() * (max - min));
+			int nano = random.nextInt(1_000_000_000);
+			switch (i % 4) {
+				case 0:
+					nano = 0;
+					break;
+				case 1:
+					nano -= nano % 1_000_000;
+					break;
+				case 2:
+					nano -= nano % 1_000;
+					break;
+				default:
+			}
+			assertCompatible(message(1L, null, null, null, null, Instant.ofEpochSecond(second, nano)));
+		}
+		assertCompatible(message(1L, null, null, null, null, Instant.parse("0000-01-01T00:00:00Z")));
+		assertCompatible(message(1L, null, null, null, null, Instant.parse("9999-12-31T23:59:59.999Z")));
+		assertCompatible(message(1L, null, null, null, null, Instant.parse("2000-02-29T00:00:00Z")));
+	}
+
+	private void assertCompatible(final WebsocketMessage websocketMessage) throws Exception {
+		final byte[] expected = MAPPER.writeValueAsString(websocketMessage).getBytes(StandardCharsets.UTF_8);
+		assertArrayEquals(expected, WebsocketMessageEncoder.encode(websocketMessage));
+		final ByteBuffer buffer = WebsocketMessageEncoder.encode(websocketMessage, WebsocketMessageEncoder
+				.encodeFragment(websocketMessage.getEventType(), websocketMessage.getService(),
+						websocketMessage.getOperation()), pool);
+		final byte[] actual = new byte[buffer.remaining()];
+		buffer.get(actual);
+		assertArrayEquals(expected, actual);
+		pool.release(buffer);
+	}
+
+	private static WebsocketMessage message(final Long userId, final NotificationEventType eventType,
+			final String service, final String operation, final List<String> parameters, final Instant timestamp) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setEventType(eventType);
+		websocketMessage.setService(service);
+		websocketMessage.setOperation(operation);
+		websocketMessage.setParameters(parameters);
+		websocketMessage.setTimestamp(timestamp);
+		return websocketMessage;
+	}
+
+}
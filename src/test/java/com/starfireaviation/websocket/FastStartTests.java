@@ -0,0 +1,78 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.websocket.controller.IngestController;
+import com.starfireaviation.websocket.handler.NotificationWebSocketHandler;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.IngestService;
+import com.starfireaviation.websocket.service.MessageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jmx.export.MBeanExporter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts the fast-start profile and checks that only the beans needed to take connections are created at
+ * startup. Time-to-ready is measured by FastStartBenchmark.
+ */
+class FastStartTests {
+
+	@Test
+	void fastStartCreatesOnlyEagerBeans() {
+		try (ConfigurableApplicationContext context = start("faststart")) {
+			assertTrue(context.isActive());
+			final ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+			assertTrue(beanFactory.containsSingleton("messageService"));
+			assertTrue(beanFactory.containsSingleton("deliveryService"));
+			assertTrue(beanFactory.containsSingleton("notificationWebSocketHandler"));
+			assertFalse(beanFactory.containsSingleton("ingestService"));
+			assertFalse(beanFactory.containsSingleton("ingestController"));
+			assertEquals(0, context.getBeanNamesForType(MBeanExporter.class).length);
+
+			// Lazy beans are still created on first use, wired to the eager ones
+			assertNotNull(context.getBean(IngestService.class));
+			assertNotNull(context.getBean(IngestController.class));
+			assertTrue(beanFactory.containsSingleton("ingestService"));
+			assertNotNull(context.getBean(NotificationWebSocketHandler.class));
+			assertNotNull(context.getBean(DeliveryService.class));
+			assertNotNull(context.getBean(MessageService.class));
+		}
+	}
+
+	@Test
+	void defaultProfileCreatesEveryBean() {
+		try (ConfigurableApplicationContext context = start()) {
+			assertTrue(context.getBeanFactory().containsSingleton("ingestService"));
+			assertTrue(context.getBeanFactory().containsSingleton("ingestController"));
+		}
+	}
+
+	private static ConfigurableApplicationContext start(final String... profiles) {
+		return new SpringApplicationBuilder(WebsocketApplication.class)
+				.profiles(profiles)
+				.properties("server.port=0")
+				.run();
+	}
+
+}
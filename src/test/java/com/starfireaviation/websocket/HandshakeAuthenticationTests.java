@@ -0,0 +1,140 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.websocket.handler.TokenHandshakeAuthenticator;
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+import com.starfireaviation.websocket.util.HandshakeToken;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Identifies handshake users by principal or signed token, never by an unverified query parameter.
+ */
+class HandshakeAuthenticationTests {
+
+	private static final String SECRET = "test-secret";
+
+	private static final long NOW = 1_700_000_000L;
+
+	private final HandshakeToken handshakeToken = new HandshakeToken(SECRET);
+
+	private final TokenHandshakeAuthenticator authenticator = new TokenHandshakeAuthenticator(handshakeToken,
+			Clock.fixed(Instant.ofEpochSecond(NOW), ZoneOffset.UTC));
+
+	@Test
+	void validTokenIdentifiesTheUser() {
+		final String token = handshakeToken.sign(42L, NOW + 60);
+
+		assertEquals(42L, userId(authenticator.authenticate(null, null, Map.of("access_token", List.of(token)))));
+		assertEquals(42L, userId(authenticator.authenticate(null, "Bearer " + token, Map.of())));
+	}
+
+	@Test
+	void onlyTheTokenNamesTheOrganization() {
+		final String token = handshakeToken.sign(42L, "acme.corp", NOW + 60);
+		final HandshakeIdentity identity = authenticator.authenticate(null, "Bearer " + token,
+				Map.of("organization", List.of("rival")));
+		assertEquals(42L, identity.getUserId());
+		assertEquals("acme.corp", identity.getOrganization());
+
+		// Without a claim, the query parameter is ignored
+		assertNull(authenticator.authenticate(null, "Bearer " + handshakeToken.sign(42L, NOW + 60),
+				Map.of("organization", List.of("rival"))).getOrganization());
+		assertNull(authenticator.authenticate(() -> "7", null, Map.of("organization", List.of("rival")))
+				.getOrganization());
+
+		// Swapping the organization claim breaks the signature
+		final String rival = handshakeToken.sign(42L, "rival", NOW + 60);
+		final String[] parts = token.split("\\.");
+		final String swapped = parts[0] + "." + rival.split("\\.")[1] + "." + parts[2] + "." + parts[3];
+		assertNull(authenticator.authenticate(null, "Bearer " + swapped, Map.of()));
+	}
+
+	@Test
+	void forgedExpiredOrMissingTokensAreRejected() {
+		final String token = handshakeToken.sign(42L, NOW + 60);
+		final String otherUser = "43" + token.substring(2);
+		final String otherSecret = new HandshakeToken("other-secret").sign(42L, NOW + 60);
+
+		assertNull(authenticator.authenticate(null, null, Map.of("access_token", List.of(otherUser))));
+		assertNull(authenticator.authenticate(null, null, Map.of("access_token", List.of(otherSecret))));
+		assertNull(authenticator.authenticate(null, null,
+				Map.of("access_token", List.of(handshakeToken.sign(42L, NOW)))));
+		assertNull(authenticator.authenticate(null, null, Map.of("access_token", List.of("42"))));
+		assertNull(authenticator.authenticate(null, null, Map.of("userId", List.of("42"))));
+	}
+
+	@Test
+	void principalIdentifiesTheUser() {
+		assertEquals(7L, userId(authenticator.authenticate(() -> "7", null, Map.of())));
+		assertNull(authenticator.authenticate(() -> "alice", null, Map.of()));
+		assertEquals(7L, userId(new TokenHandshakeAuthenticator(null, Clock.systemUTC()).authenticate(() -> "7",
+				null, Map.of())));
+	}
+
+	@Test
+	void endpointRequiresATokenAndAnAllowedOrigin() {
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WebsocketApplication.class)
+				.properties("server.port=0", "websocket.auth.secret=" + SECRET)
+				.run()) {
+			final String endpoint = "ws://localhost:"
+					+ context.getEnvironment().getRequiredProperty("local.server.port") + "/ws";
+			final String token = new HandshakeToken(SECRET).sign(42L, Instant.now().getEpochSecond() + 60);
+			final HttpClient httpClient = HttpClient.newHttpClient();
+
+			assertEquals(401, handshakeStatus(httpClient.newWebSocketBuilder(), endpoint + "?userId=42"));
+			assertEquals(403, handshakeStatus(httpClient.newWebSocketBuilder()
+					.header("Origin", "https://evil.example"), endpoint + "?access_token=" + token));
+			httpClient.newWebSocketBuilder()
+					.buildAsync(URI.create(endpoint + "?access_token=" + token), new WebSocket.Listener() { })
+					.join()
+					.sendClose(WebSocket.NORMAL_CLOSURE, "")
+					.join();
+		}
+	}
+
+	private static int handshakeStatus(final WebSocket.Builder builder, final String uri) {
+		final CompletionException ce = assertThrows(CompletionException.class,
+				() -> builder.buildAsync(URI.create(uri), new WebSocket.Listener() { }).join());
+		assertInstanceOf(WebSocketHandshakeException.class, ce.getCause());
+		return ((WebSocketHandshakeException) ce.getCause()).getResponse().statusCode();
+	}
+
+	private static Long userId(final HandshakeIdentity identity) {
+		return identity.getUserId();
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pings live sessions and reaps those which stay silent for the heartbeat timeout, while a pong or any
+ * other inbound frame keeps a session alive.
+ */
+class HeartbeatTests {
+
+	private static final Long USER_ID = 42L;
+
+	private static final long INTERVAL = 50;
+
+	private static final long TIMEOUT = 500;
+
+	private final MessageService messageService = new MessageService();
+
+	private DeliveryService deliveryService;
+
+	@AfterEach
+	void close() {
+		deliveryService.close();
+	}
+
+	@Test
+	void silentSessionIsReapedAfterTheTimeout() {
+		final long start = System.currentTimeMillis();
+		final HeartbeatChannel channel = connect(ApplicationProperties.ReapPolicy.RETAIN, false);
+		send();
+
+		await(() -> channel.closeReason != null);
+		assertTrue(System.currentTimeMillis() - start >= TIMEOUT);
+		assertTrue(channel.pings.get() > 0);
+		assertEquals(CloseReason.HEARTBEAT_TIMEOUT, channel.closeReason);
+		assertEquals(1, deliveryService.getReapedCount());
+		assertFalse(deliveryService.isOnline(USER_ID));
+		// The unacknowledged message is kept for the user's next session
+		assertEquals(1, messageService.getQueuedMessages());
+	}
+
+	@Test
+	void discardPolicyDropsTheQueueOfAReapedSession() {
+		final HeartbeatChannel channel = connect(ApplicationProperties.ReapPolicy.DISCARD, false);
+		send();
+
+		await(() -> channel.closeReason != null);
+		assertEquals(0, messageService.getQueuedMessages());
+	}
+
+	@Test
+	void pongsResetTheTimer() throws InterruptedException {
+		final HeartbeatChannel channel = connect(ApplicationProperties.ReapPolicy.RETAIN, true);
+
+		Thread.sleep(TIMEOUT * 3);
+		assertNull(channel.closeReason);
+		assertTrue(channel.pings.get() >= 3);
+		assertEquals(0, deliveryService.getReapedCount());
+
+		// Once the pongs stop, the session is reaped
+		channel.answerPings = false;
+		final long silentSince = System.currentTimeMillis();
+		await(() -> channel.closeReason != null);
+		assertTrue(System.currentTimeMillis() - silentSince >= TIMEOUT - INTERVAL);
+		assertEquals(1, deliveryService.getReapedCount());
+	}
+
+	private HeartbeatChannel connect(final ApplicationProperties.ReapPolicy reapPolicy, final boolean answerPings) {
+		final ApplicationProperties.Heartbeat heartbeat = new ApplicationProperties.Heartbeat();
+		heartbeat.setInterval(INTERVAL);
+		heartbeat.setTimeout(TIMEOUT);
+		heartbeat.setBuckets(2);
+		heartbeat.setReapPolicy(reapPolicy);
+		// Messages stay unacknowledged, so a reaped session hands them back to the queue
+		final ApplicationProperties.Delivery delivery = new ApplicationProperties.Delivery();
+		delivery.setAtLeastOnceTypes(Set.of(NotificationEventType.QUESTION_ASKED));
+		delivery.setAckTimeout(TimeUnit.MINUTES.toMillis(1));
+		deliveryService = new DeliveryService(messageService, delivery, heartbeat,
+				new ApplicationProperties.SendBuffer());
+		messageService.setPendingMessageListener(deliveryService);
+		final HeartbeatChannel channel = new HeartbeatChannel();
+		channel.answerPings = answerPings;
+		deliveryService.register(USER_ID, channel);
+		return channel;
+	}
+
+	private void send() {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(USER_ID);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setParameters(List.of("q1"));
+		messageService.sendMessage(websocketMessage);
+	}
+
+	private static void await(final BooleanSupplier condition) {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Client which never acknowledges messages, and answers pings with a pong while told to.
+	 */
+	private final class HeartbeatChannel implements DeliveryChannel {
+
+		private final AtomicInteger pings = new AtomicInteger();
+
+		private volatile boolean answerPings;
+
+		private volatile CloseReason closeReason;
+
+		@Override
+		public String getId() {
+			return "heartbeat";
+		}
+
+		@Override
+		public boolean isOpen() {
+			return closeReason == null;
+		}
+
+		@Override
+		public void send(final ByteBuffer payload, final SendCallback callback) {
+			callback.onComplete(null);
+		}
+
+		@Override
+		public void ping() {
+			pings.incrementAndGet();
+			if (answerPings) {
+				deliveryService.touch(USER_ID, this);
+			}
+		}
+
+		@Override
+		public void close(final CloseReason reason) {
+			closeReason = reason;
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.ResponseOption;
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.model.InboundFrame;
+import com.starfireaviation.websocket.service.ResponseService;
+import com.starfireaviation.websocket.util.IdempotencyWindow;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Suppresses resent client message IDs like a HashSet of every ID seen would, within a fixed window, and
+ * keeps a bounded number of windows.
+ */
+class IdempotencyWindowTests {
+
+	private static final int WINDOW = 128;
+
+	private static final long MAX_JUMP = 1000;
+
+	@Test
+	void matchesHashSetReferenceModel() {
+		final Random random = new Random(42);
+		for (int stream = 0; stream < 50; stream++) {
+			final IdempotencyWindow window = new IdempotencyWindow(WINDOW, MAX_JUMP);
+			final Set<Long> seen = new HashSet<>();
+			long highest = -1;
+			long base = random.nextInt(1000);
+			for (int i = 0; i < 5000; i++) {
+				// Mostly increasing IDs, with resends, reordering and the occasional jump
+				base += random.nextInt(100) == 0 ? random.nextInt((int) MAX_JUMP) : random.nextInt(3);
+				final long id = Math.max(0, base - random.nextInt(WINDOW * 2));
+				final boolean expected;
+				if (id > highest) {
+					highest = id;
+					expected = true;
+				} else {
+					expected = highest - id < WINDOW && !seen.contains(id);
+				}
+				seen.add(id);
+				assertEquals(expected, window.markIfNew(id), "stream " + stream + ", id " + id);
+			}
+		}
+	}
+
+	@Test
+	void idsTooFarAheadAreOutOfReach() {
+		final IdempotencyWindow window = new IdempotencyWindow(WINDOW, MAX_JUMP);
+		assertTrue(window.isWithinReach(Long.MAX_VALUE));
+		assertTrue(window.markIfNew(10));
+
+		assertTrue(window.isWithinReach(10 + MAX_JUMP));
+		assertFalse(window.isWithinReach(11 + MAX_JUMP));
+		assertFalse(window.isWithinReach(Long.MAX_VALUE));
+		assertTrue(window.isWithinReach(0));
+	}
+
+	@Test
+	void hugeClientMessageIdIsRejectedWithoutMovingTheWindow() throws InvalidPayloadException {
+		final ResponseService responseService = new ResponseService(WINDOW, 10, MAX_JUMP);
+		assertNotNull(responseService.handleResponse(1L, frame(1, ResponseOption.A)));
+
+		assertThrows(InvalidPayloadException.class,
+				() -> responseService.handleResponse(1L, frame(Long.MAX_VALUE, ResponseOption.A)));
+		assertNotNull(responseService.handleResponse(1L, frame(2, ResponseOption.B)));
+		assertEquals(1, responseService.getRejectedCount());
+		assertEquals(0, responseService.getDuplicateCount());
+	}
+
+	@Test
+	void invalidResponseDoesNotUseUpItsId() throws InvalidPayloadException {
+		final ResponseService responseService = new ResponseService(WINDOW, 10, MAX_JUMP);
+		assertThrows(InvalidPayloadException.class, () -> responseService.handleResponse(1L, frame(1, null)));
+
+		assertNotNull(responseService.handleResponse(1L, frame(1, ResponseOption.A)));
+		assertNull(responseService.handleResponse(1L, frame(1, ResponseOption.A)));
+		assertEquals(1, responseService.getDuplicateCount());
+	}
+
+	@Test
+	void leastRecentlyActiveUsersAreForgotten() throws InvalidPayloadException {
+		final ResponseService responseService = new ResponseService(WINDOW, 2, MAX_JUMP);
+		responseService.handleResponse(1L, frame(1, ResponseOption.A));
+		responseService.handleResponse(2L, frame(1, ResponseOption.A));
+		responseService.handleResponse(1L, frame(2, ResponseOption.A));
+		responseService.handleResponse(3L, frame(1, ResponseOption.A));
+		assertEquals(2, responseService.getIdempotencyUserCount());
+
+		// User 2 was least recently active, user 1 is still remembered
+		assertNotNull(responseService.handleResponse(2L, frame(1, ResponseOption.A)));
+		assertNull(responseService.handleResponse(3L, frame(1, ResponseOption.A)));
+		assertEquals(2, responseService.getIdempotencyUserCount());
+	}
+
+	@Test
+	void stripedUsersStayWithinTheLimit() throws InvalidPayloadException {
+		// Enough users for several stripes, each forgetting its own least recently active users
+		final int maxUsers = 1_000;
+		final ResponseService responseService = new ResponseService(WINDOW, maxUsers, MAX_JUMP);
+		for (long userId = 1; userId <= 3L * maxUsers; userId++) {
+			assertNotNull(responseService.handleResponse(userId, frame(1, ResponseOption.A)));
+		}
+		assertTrue(responseService.getIdempotencyUserCount() <= maxUsers);
+		assertTrue(responseService.getIdempotencyUserCount() > maxUsers / 2);
+
+		// The most recently active user is still remembered
+		assertNull(responseService.handleResponse(3L * maxUsers, frame(1, ResponseOption.A)));
+	}
+
+	private static InboundFrame frame(final long clientMessageId, final ResponseOption response) {
+		final InboundFrame inboundFrame = new InboundFrame();
+		inboundFrame.setClientMessageId(clientMessageId);
+		inboundFrame.setResponse(response);
+		return inboundFrame;
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.ResponseOption;
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.model.InboundFrame;
+import com.starfireaviation.websocket.util.InboundFrameDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Decodes inbound frames from text, heap and direct buffers alike, rejecting malformed, mistyped and
+ * oversized ones.
+ */
+class InboundFrameDecoderTests {
+
+	@Test
+	void decodesAnswer() throws InvalidPayloadException {
+		for (final InboundFrame inboundFrame : decodeAll(
+				"{\"clientMessageId\":7,\"questionId\":3,\"answer\":\"b\",\"extra\":{\"nested\":[1,2]}}")) {
+			assertEquals(7, inboundFrame.getClientMessageId());
+			assertEquals(3, inboundFrame.getQuestionId());
+			assertEquals(ResponseOption.B, inboundFrame.getResponse());
+			assertEquals(InboundFrame.ABSENT, inboundFrame.getAck());
+		}
+	}
+
+	@Test
+	void missingFieldsAreAbsent() throws InvalidPayloadException {
+		for (final InboundFrame inboundFrame : decodeAll("{\"ack\":12}")) {
+			assertEquals(12, inboundFrame.getAck());
+			assertEquals(InboundFrame.ABSENT, inboundFrame.getClientMessageId());
+			assertEquals(InboundFrame.ABSENT, inboundFrame.getQuestionId());
+			assertNull(inboundFrame.getResponse());
+		}
+		for (final InboundFrame inboundFrame : decodeAll("{\"clientMessageId\":null,\"answer\":null}")) {
+			assertEquals(InboundFrame.ABSENT, inboundFrame.getClientMessageId());
+			assertNull(inboundFrame.getResponse());
+		}
+	}
+
+	@Test
+	void nonStringAnswerIsMissing() throws InvalidPayloadException {
+		for (final InboundFrame inboundFrame : decodeAll("{\"answer\":1}")) {
+			assertNull(inboundFrame.getResponse());
+		}
+	}
+
+	@Test
+	void rejectsWrongTypesAndMalformedFrames() {
+		for (final String payload : List.of(
+				"{\"clientMessageId\":\"7\"}",
+				"{\"questionId\":1.5}",
+				"{\"ack\":-1}",
+				"{\"ack\":true}",
+				"[{\"ack\":1}]",
+				"\"A\"",
+				"{\"ack\":",
+				"not json",
+				"")) {
+			assertRejected(payload);
+		}
+	}
+
+	@Test
+	void rejectsOversizedFrames() throws InvalidPayloadException {
+		final String prefix = "{\"answer\":\"A\",\"padding\":\"";
+		final String fits = prefix + "x".repeat(InboundFrameDecoder.MAX_PAYLOAD_LENGTH - prefix.length() - 2) + "\"}";
+		assertEquals(InboundFrameDecoder.MAX_PAYLOAD_LENGTH, fits.length());
+		for (final InboundFrame inboundFrame : decodeAll(fits)) {
+			assertEquals(ResponseOption.A, inboundFrame.getResponse());
+		}
+
+		assertRejected(prefix + "x".repeat(InboundFrameDecoder.MAX_PAYLOAD_LENGTH) + "\"}");
+	}
+
+	private static List<InboundFrame> decodeAll(final String payload) throws InvalidPayloadException {
+		final byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		// A heap buffer whose frame starts part way into its array
+		final ByteBuffer heap = ByteBuffer.wrap(("  " + payload).getBytes(StandardCharsets.UTF_8), 2, bytes.length)
+				.slice();
+		return List.of(InboundFrameDecoder.decode(payload), InboundFrameDecoder.decode(heap),
+				InboundFrameDecoder.decode(direct));
+	}
+
+	private static void assertRejected(final String payload) {
+		final byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		assertThrows(InvalidPayloadException.class, () -> InboundFrameDecoder.decode(payload), payload);
+		assertThrows(InvalidPayloadException.class, () -> InboundFrameDecoder.decode(ByteBuffer.wrap(bytes)),
+				payload);
+		assertThrows(InvalidPayloadException.class, () -> InboundFrameDecoder.decode(direct), payload);
+	}
+
+}
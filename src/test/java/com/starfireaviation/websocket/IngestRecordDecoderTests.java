@@ -0,0 +1,116 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.exception.InvalidPayloadException;
+import com.starfireaviation.websocket.model.IngestRecord;
+import com.starfireaviation.websocket.util.IngestRecordDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Decodes well-formed and malformed ingestion records in both formats.
+ */
+class IngestRecordDecoderTests {
+
+	@Test
+	void jsonRecordsAreDecoded() throws InvalidPayloadException {
+		IngestRecord ingestRecord = json("{\"eventType\":\"QUESTION_DISPLAYED\",\"message\":{\"id\":1,\"x\":[1]},"
+				+ "\"referenceId\":7,\"extra\":{\"a\":1}}");
+		assertEquals(NotificationEventType.QUESTION_DISPLAYED, ingestRecord.getEventType());
+		assertEquals(1L, ingestRecord.getMessage().getId());
+		assertEquals(7L, ingestRecord.getReferenceId());
+
+		ingestRecord = json("{\"message\":{\"id\":2},\"eventType\":\"EVENT_START\"}");
+		assertEquals(NotificationEventType.EVENT_START, ingestRecord.getEventType());
+		assertEquals(2L, ingestRecord.getMessage().getId());
+		assertNull(ingestRecord.getReferenceId());
+	}
+
+	@Test
+	void malformedJsonRecordsAreRejected() {
+		for (final String invalid : new String[] {
+				"", "[]", "{", "not json",
+				"{\"message\":{\"id\":1}}",
+				"{\"eventType\":\"NO_SUCH_TYPE\",\"message\":{\"id\":1}}",
+				"{\"eventType\":\"EVENT_START\"}",
+				"{\"eventType\":\"EVENT_START\",\"message\":{}}",
+				"{\"eventType\":\"EVENT_START\",\"message\":7}",
+				"{\"eventType\":\"EVENT_START\",\"message\":{\"id\":1}} {}",
+		}) {
+			assertThrows(InvalidPayloadException.class, () -> json(invalid), invalid);
+		}
+	}
+
+	@Test
+	void binaryRecordsAreDecoded() throws InvalidPayloadException {
+		IngestRecord ingestRecord = binary("QUESTION_ASKED", 3L, null);
+		assertEquals(NotificationEventType.QUESTION_ASKED, ingestRecord.getEventType());
+		assertEquals(3L, ingestRecord.getMessage().getId());
+		assertNull(ingestRecord.getReferenceId());
+
+		ingestRecord = binary("LESSON_DISPLAYED", 4L, 9L);
+		assertEquals(4L, ingestRecord.getMessage().getId());
+		assertEquals(9L, ingestRecord.getReferenceId());
+	}
+
+	@Test
+	void malformedBinaryRecordsAreRejected() {
+		assertThrows(InvalidPayloadException.class, () -> binary("NO_SUCH_TYPE", 1L, null));
+		final byte[] valid = toBytes("EVENT_START", 1L, null);
+		for (int length = 0; length < valid.length; length++) {
+			final int truncated = length;
+			assertThrows(InvalidPayloadException.class,
+					() -> IngestRecordDecoder.decodeBinary(valid, 0, truncated), "length " + truncated);
+		}
+		final byte[] longName = {(byte) 200, 'E'};
+		assertThrows(InvalidPayloadException.class, () -> IngestRecordDecoder.decodeBinary(longName, 0, 2));
+	}
+
+	private static IngestRecord json(final String record) throws InvalidPayloadException {
+		// Decoded from the middle of a larger buffer, as records are from the line reader
+		final byte[] bytes = ("xx" + record + "yy").getBytes(StandardCharsets.UTF_8);
+		return IngestRecordDecoder.decodeJson(bytes, 2, bytes.length - 4);
+	}
+
+	private static IngestRecord binary(final String eventType, final Long messageId, final Long referenceId)
+			throws InvalidPayloadException {
+		final byte[] bytes = toBytes(eventType, messageId, referenceId);
+		return IngestRecordDecoder.decodeBinary(bytes, 0, bytes.length);
+	}
+
+	private static byte[] toBytes(final String eventType, final Long messageId, final Long referenceId) {
+		final ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put((byte) eventType.length());
+		buffer.put(eventType.getBytes(StandardCharsets.US_ASCII));
+		buffer.putLong(messageId);
+		if (referenceId != null) {
+			buffer.putLong(referenceId);
+		}
+		final byte[] bytes = new byte[buffer.position()];
+		buffer.flip().get(bytes);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.websocket.model.IngestSummary;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.IngestService;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTracer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ingests records through a MessageService with and without a MessageResolver.
+ */
+class IngestServiceTests {
+
+	private static final String BODY = String.join("\n",
+			"{\"eventType\":\"QUESTION_ASKED\",\"message\":{\"id\":2}}",
+			"{\"eventType\":\"QUESTION_DISPLAYED\",\"message\":{\"id\":3},\"referenceId\":7}",
+			"{\"eventType\":\"QUESTION_DISPLAYED\",\"message\":{\"id\":4}}",
+			"{\"eventType\":\"EVENT_COMPLETED\",\"message\":{\"id\":5}}",
+			"{\"eventType\":\"USER_DELETE\",\"message\":{\"id\":-1}}",
+			"{\"eventType\":\"USER_DELETE\"}");
+
+	private final MessageService messageService = new MessageService();
+
+	@Test
+	void recordsAreAcceptedWithAResolver() throws IOException {
+		messageService.setMessageResolver(new StubMessageResolver());
+		final ByteArrayOutputStream status = new ByteArrayOutputStream();
+		final IngestSummary summary = ingest(status);
+
+		assertEquals(6, summary.getRecords());
+		assertEquals(2, summary.getAccepted());
+		assertEquals(3, summary.getRejected());
+		assertEquals(1, summary.getInvalid());
+		final List<String> lines = List.of(status.toString(StandardCharsets.UTF_8).split("\n"));
+		assertEquals("{\"record\":1,\"status\":\"ACCEPTED\"}", lines.get(0));
+		assertEquals("{\"record\":3,\"status\":\"REJECTED\",\"error\":\"Missing referenceId for message 4\"}",
+				lines.get(2));
+		assertEquals("{\"record\":4,\"status\":\"REJECTED\",\"error\":\"Unsupported eventType EVENT_COMPLETED\"}",
+				lines.get(3));
+		assertEquals("{\"record\":5,\"status\":\"REJECTED\",\"error\":\"Unknown user for message -1\"}",
+				lines.get(4));
+
+		final List<WebsocketMessage> asked = messageService.drain(2 + StubMessageResolver.USER_OFFSET);
+		assertEquals(List.of(String.valueOf(2 + StubMessageResolver.QUESTION_OFFSET),
+				String.valueOf(2 + StubMessageResolver.QUIZ_OFFSET)), asked.get(0).getParameters());
+		final List<WebsocketMessage> displayed = messageService.drain(3 + StubMessageResolver.USER_OFFSET);
+		assertEquals(List.of("7"), displayed.get(0).getParameters());
+	}
+
+	@Test
+	void recordsAreRejectedWithoutAResolver() throws IOException {
+		final ByteArrayOutputStream status = new ByteArrayOutputStream();
+		final IngestSummary summary = ingest(status);
+
+		assertEquals(0, summary.getAccepted());
+		assertEquals(5, summary.getRejected());
+		assertTrue(status.toString(StandardCharsets.UTF_8).startsWith(
+				"{\"record\":1,\"status\":\"REJECTED\",\"error\":\"No MessageResolver is configured\"}"));
+	}
+
+	private IngestSummary ingest(final ByteArrayOutputStream status) throws IOException {
+		final IngestService ingestService = new IngestService(messageService, 1024, MessageTracer.DISABLED);
+		return ingestService.ingestNdjson(new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8)), status);
+	}
+
+}
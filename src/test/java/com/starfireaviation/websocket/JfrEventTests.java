@@ -0,0 +1,158 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.model.ResponseOption;
+import com.starfireaviation.websocket.jfr.DeliveryDrainEvent;
+import com.starfireaviation.websocket.jfr.InboundParseEvent;
+import com.starfireaviation.websocket.jfr.MessageEnqueuedEvent;
+import com.starfireaviation.websocket.jfr.QueueOverflowEvent;
+import com.starfireaviation.websocket.jfr.ValidationFailureEvent;
+import com.starfireaviation.websocket.model.InboundFrame;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Commits the notification traffic events with their fields under websocket.jfc, and records none of
+ * them when no recording enables them.
+ */
+class JfrEventTests {
+
+	private static final String PREFIX = "com.starfireaviation.websocket.";
+
+	private static final Path PROFILE = Path.of("src", "main", "jfr", "websocket.jfc");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void profileRecordsEventsWithTheirFields() throws IOException, ParseException {
+		final List<RecordedEvent> recordedEvents;
+		try (Recording recording = new Recording(Configuration.create(PROFILE))) {
+			recording.start();
+			emitAll();
+			recording.stop();
+			recordedEvents = read(recording);
+		}
+		final Map<String, RecordedEvent> byName = recordedEvents.stream()
+				.collect(Collectors.toMap(event -> event.getEventType().getName(), Function.identity()));
+
+		final RecordedEvent enqueued = byName.get(PREFIX + "MessageEnqueued");
+		assertEquals(7L, enqueued.getLong("userId"));
+		assertEquals("QUESTION_ASKED", enqueued.getString("eventType"));
+		assertEquals(3, enqueued.getInt("queueDepth"));
+
+		final RecordedEvent overflow = byName.get(PREFIX + "QueueOverflow");
+		assertEquals(-1L, overflow.getLong("userId"));
+		assertNull(overflow.getString("eventType"));
+		assertEquals(2, overflow.getInt("dropped"));
+
+		final RecordedEvent failure = byName.get(PREFIX + "ValidationFailure");
+		assertEquals(7L, failure.getLong("userId"));
+		assertEquals(ValidationFailureEvent.RESPONSE, failure.getString("stage"));
+		assertEquals(11L, failure.getLong("questionId"));
+		assertEquals("bad answer", failure.getString("reason"));
+		// The profile enables stack traces for failures only
+		assertTrue(failure.getStackTrace() != null);
+		assertNull(enqueued.getStackTrace());
+
+		final RecordedEvent drain = byName.get(PREFIX + "DeliveryDrain");
+		assertEquals(7L, drain.getLong("userId"));
+		assertEquals(5, drain.getInt("drained"));
+		assertEquals(2, drain.getInt("bufferedFrames"));
+		assertEquals(640L, drain.getLong("bufferedBytes"));
+
+		final RecordedEvent parse = byName.get(PREFIX + "InboundParse");
+		assertEquals(7L, parse.getLong("userId"));
+		assertEquals(42, parse.getInt("payloadSize"));
+		assertEquals(11L, parse.getLong("questionId"));
+		assertEquals(-1L, parse.getLong("ack"));
+		assertEquals("C", parse.getString("response"));
+	}
+
+	@Test
+	void emptyDrainIsNotRecorded() throws IOException, ParseException {
+		try (Recording recording = new Recording(Configuration.create(PROFILE))) {
+			recording.start();
+			final DeliveryDrainEvent drainEvent = new DeliveryDrainEvent();
+			drainEvent.begin();
+			drainEvent.complete(7L, 0, 0, 0);
+			recording.stop();
+			assertTrue(read(recording).isEmpty());
+		}
+	}
+
+	@Test
+	void eventsAreNotRecordedWhenDisabled() throws IOException, ParseException {
+		// No recording at all: the events report disabled and their fields are never filled in
+		assertFalse(new MessageEnqueuedEvent().isEnabled());
+		assertFalse(new QueueOverflowEvent().isEnabled());
+		assertFalse(new ValidationFailureEvent().isEnabled());
+
+		// A recording with only a JDK profile records none of them
+		try (Recording recording = new Recording(Configuration.getConfiguration("default"))) {
+			recording.start();
+			assertFalse(new MessageEnqueuedEvent().isEnabled());
+			emitAll();
+			recording.stop();
+			assertTrue(read(recording).isEmpty());
+		}
+	}
+
+	private static void emitAll() {
+		MessageEnqueuedEvent.commit(7L, NotificationEventType.QUESTION_ASKED, 3);
+		QueueOverflowEvent.commit(null, null, 2);
+		ValidationFailureEvent.commit(7L, ValidationFailureEvent.RESPONSE, 11, "bad answer");
+
+		final DeliveryDrainEvent drainEvent = new DeliveryDrainEvent();
+		drainEvent.begin();
+		drainEvent.complete(7L, 5, 2, 640);
+
+		final InboundFrame inboundFrame = new InboundFrame();
+		inboundFrame.setQuestionId(11);
+		inboundFrame.setResponse(ResponseOption.C);
+		final InboundParseEvent parseEvent = new InboundParseEvent();
+		parseEvent.begin();
+		parseEvent.complete(7L, 42, inboundFrame);
+	}
+
+	private List<RecordedEvent> read(final Recording recording) throws IOException {
+		final Path file = directory.resolve(recording.getId() + ".jfr");
+		recording.dump(file);
+		return RecordingFile.readAllEvents(file).stream()
+				.filter(event -> event.getEventType().getName().startsWith(PREFIX))
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.Message;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTemplates;
+import com.starfireaviation.websocket.util.WebsocketMessageEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that messages built from the templates are the ones the hand-written send methods built, and
+ * that their pre-encoded fragments encode the same bytes as encoding every field.
+ */
+class MessageTemplateTests {
+
+	private static final long REFERENCE_ID = 77L;
+
+	private final MessageService messageService = new MessageService();
+
+	MessageTemplateTests() {
+		messageService.setMessageResolver(new StubMessageResolver());
+	}
+
+	@Test
+	void displayMessagesMatchThePreviousMapping() {
+		assertDisplay(NotificationEventType.LESSON_DISPLAYED, NotificationEventType.LESSON_DISPLAYED,
+				MessageService.USER_SERVICE);
+		assertDisplay(NotificationEventType.QUESTION_DISPLAYED, NotificationEventType.QUESTION_DISPLAYED,
+				MessageService.QUESTION_SERVICE);
+		assertDisplay(NotificationEventType.REFERENCE_MATERIAL_DISPLAYED,
+				NotificationEventType.REFERENCE_MATERIAL_DISPLAYED, MessageService.REFERENCE_MATERIAL_SERVICE);
+		// Every other type, display or not, was sent as HOME_DISPLAYED without a service or parameters
+		Arrays.stream(NotificationEventType.values())
+				.filter(type -> type != NotificationEventType.LESSON_DISPLAYED
+						&& type != NotificationEventType.QUESTION_DISPLAYED
+						&& type != NotificationEventType.REFERENCE_MATERIAL_DISPLAYED)
+				.forEach(type -> assertDisplay(type, NotificationEventType.HOME_DISPLAYED, null));
+	}
+
+	@Test
+	void sendMethodsMatchThePreviousMapping() {
+		assertSent(messageService::sendEventUpcomingMsg, 2, NotificationEventType.EVENT_UPCOMING,
+				MessageService.EVENT_SERVICE, List.of("2002"));
+		assertSent(messageService::sendEventStartMsg, 2, NotificationEventType.EVENT_START,
+				MessageService.EVENT_SERVICE, List.of("2002"));
+		assertSent(messageService::sendEventRSVPMsg, 2, NotificationEventType.EVENT_RSVP,
+				MessageService.EVENT_SERVICE, List.of("2002"));
+		assertSent(messageService::sendEventRegisterMsg, 2, NotificationEventType.EVENT_REGISTER,
+				MessageService.EVENT_SERVICE, List.of("2002"));
+		assertSent(messageService::sendEventUnregisterMsg, 2, NotificationEventType.EVENT_UNREGISTER,
+				MessageService.EVENT_SERVICE, List.of("2002"));
+		assertSent(messageService::sendQuestionAskedMsg, 2, NotificationEventType.QUESTION_ASKED,
+				MessageService.QUESTION_SERVICE, List.of("3002", "4002"));
+		assertSent(messageService::sendQuestionAskedMsg, 3, NotificationEventType.QUESTION_ASKED,
+				MessageService.QUESTION_SERVICE, List.of("3003"));
+		assertSent(messageService::sendQuizCompleteMsg, 2, NotificationEventType.QUIZ_COMPLETE,
+				MessageService.QUIZ_SERVICE, List.of("1002", "4002"));
+		assertSent(messageService::sendQuizCompleteMsg, 3, NotificationEventType.QUIZ_COMPLETE,
+				MessageService.QUIZ_SERVICE, List.of("1003"));
+		assertSent(messageService::sendUserDeleteMsg, 2, NotificationEventType.USER_DELETE,
+				MessageService.USER_SERVICE, List.of("1002"));
+		assertSent(messageService::sendUserSettingsVerifiedMsg, 2, NotificationEventType.USER_VERIFIED,
+				MessageService.USER_SERVICE, List.of("1002"));
+		assertSent(messageService::sendUserSettingsChangeMsg, 2, NotificationEventType.USER_SETTINGS,
+				MessageService.USER_SERVICE, List.of("1002"));
+		assertSent(messageService::sendPasswordResetMsg, 2, NotificationEventType.PASSWORD_RESET,
+				MessageService.USER_SERVICE, List.of("1002"));
+	}
+
+	private void assertDisplay(final NotificationEventType requested, final NotificationEventType expected,
+			final String service) {
+		final WebsocketMessage websocketMessage = sent(
+				message -> messageService.sendDisplayMsg(message, REFERENCE_ID, requested), 1);
+		assertEquals(expected, websocketMessage.getEventType(), requested.name());
+		assertEquals(service, websocketMessage.getService(), requested.name());
+		if (service == null) {
+			assertNull(websocketMessage.getOperation(), requested.name());
+			assertNull(websocketMessage.getParameters(), requested.name());
+		} else {
+			assertEquals(MessageService.GET_OPERATION, websocketMessage.getOperation(), requested.name());
+			assertEquals(List.of(String.valueOf(REFERENCE_ID)), websocketMessage.getParameters(), requested.name());
+		}
+	}
+
+	private void assertSent(final Consumer<Message> send, final long messageId,
+			final NotificationEventType eventType, final String service, final List<String> parameters) {
+		final WebsocketMessage websocketMessage = sent(send, messageId);
+		assertEquals(eventType, websocketMessage.getEventType());
+		assertEquals(service, websocketMessage.getService(), eventType.name());
+		assertEquals(MessageService.GET_OPERATION, websocketMessage.getOperation(), eventType.name());
+		assertEquals(parameters, websocketMessage.getParameters(), eventType.name());
+	}
+
+	private WebsocketMessage sent(final Consumer<Message> send, final long messageId) {
+		final Message message = new Message();
+		message.setId(messageId);
+		send.accept(message);
+		final List<WebsocketMessage> queued = messageService.drain(messageId + StubMessageResolver.USER_OFFSET);
+		assertEquals(1, queued.size());
+		final WebsocketMessage websocketMessage = queued.get(0);
+		assertEquals(messageId + StubMessageResolver.USER_OFFSET, websocketMessage.getUserId());
+		assertNotNull(websocketMessage.getTimestamp());
+		assertArrayEquals(WebsocketMessageEncoder.encode(websocketMessage), MessageTemplates.encode(websocketMessage));
+		return websocketMessage;
+	}
+
+}
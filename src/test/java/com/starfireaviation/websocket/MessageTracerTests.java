@@ -0,0 +1,154 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.Message;
+import com.starfireaviation.model.User;
+import com.starfireaviation.websocket.model.MessageTrace;
+import com.starfireaviation.websocket.model.TraceReport;
+import com.starfireaviation.websocket.model.TraceStage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTracer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Samples one in sampleRate messages, stamps the stages they pass through and keeps only the newest
+ * completed traces in its ring.
+ */
+class MessageTracerTests {
+
+	private static final int STARTS = 20_000;
+
+	@Test
+	void rateZeroNeverSamples() {
+		final MessageTracer messageTracer = new MessageTracer(0, 8);
+		for (int i = 0; i < STARTS; i++) {
+			assertNull(messageTracer.start());
+		}
+		assertNull(MessageTracer.DISABLED.start());
+	}
+
+	@Test
+	void rateOneSamplesEveryMessage() {
+		final MessageTracer messageTracer = new MessageTracer(1, 8);
+		for (int i = 0; i < 100; i++) {
+			assertNotNull(messageTracer.start());
+		}
+	}
+
+	@Test
+	void samplesAboutOneInRate() {
+		final MessageTracer messageTracer = new MessageTracer(10, 8);
+		int sampled = 0;
+		for (int i = 0; i < STARTS; i++) {
+			if (messageTracer.start() != null) {
+				sampled++;
+			}
+		}
+		// Expected 2000, standard deviation about 42
+		assertTrue(sampled > 1_700 && sampled < 2_300, "sampled " + sampled);
+	}
+
+	@Test
+	void ringKeepsTheNewestTracesNewestFirst() {
+		// 5 rounds up to 8
+		final MessageTracer messageTracer = new MessageTracer(1, 5);
+		for (int i = 0; i < 20; i++) {
+			messageTracer.start().complete();
+		}
+
+		assertEquals(20, messageTracer.getRecordedCount());
+		final List<Long> traceIds = messageTracer.recent(0, 100).stream()
+				.map(TraceReport::getTraceId).collect(Collectors.toList());
+		assertEquals(List.of(20L, 19L, 18L, 17L, 16L, 15L, 14L, 13L), traceIds);
+		assertEquals(List.of(20L, 19L, 18L), messageTracer.recent(0, 3).stream()
+				.map(TraceReport::getTraceId).collect(Collectors.toList()));
+	}
+
+	@Test
+	void partlyFilledRingReportsOnlyRecordedTraces() {
+		final MessageTracer messageTracer = new MessageTracer(1, 8);
+		messageTracer.start();
+		messageTracer.start().complete();
+
+		// Only completed traces are recorded
+		final List<TraceReport> traceReports = messageTracer.recent(0, 100);
+		assertEquals(1, traceReports.size());
+		assertEquals(2L, traceReports.get(0).getTraceId());
+	}
+
+	@Test
+	void completingTwiceRecordsOnce() {
+		final MessageTracer messageTracer = new MessageTracer(1, 8);
+		final MessageTrace messageTrace = messageTracer.start();
+		messageTrace.complete();
+		messageTrace.complete();
+
+		assertEquals(1, messageTracer.getRecordedCount());
+	}
+
+	@Test
+	void slowThresholdFiltersFastTraces() throws InterruptedException {
+		final MessageTracer messageTracer = new MessageTracer(1, 8);
+		messageTracer.start().complete();
+		final MessageTrace slow = messageTracer.start();
+		Thread.sleep(30);
+		slow.stamp(TraceStage.ENQUEUED);
+		slow.complete();
+
+		final List<TraceReport> traceReports = messageTracer.recent(20, 100);
+		assertEquals(1, traceReports.size());
+		assertEquals(slow.getTraceId(), traceReports.get(0).getTraceId());
+		assertFalse(traceReports.get(0).getStageMillis().isEmpty());
+	}
+
+	@Test
+	void resolverTimeIsStampedApartFromBuildingTheMessage() {
+		final MessageTracer messageTracer = new MessageTracer(1, 8);
+		final MessageService messageService = new MessageService();
+		messageService.setMessageTracer(messageTracer);
+		messageService.setMessageResolver(new StubMessageResolver() {
+			@Override
+			public User getUser(final Message message) {
+				try {
+					Thread.sleep(30);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				return super.getUser(message);
+			}
+		});
+		final Message message = new Message();
+		message.setId(7L);
+		messageService.sendEventStartMsg(message);
+		messageService.drain(7L + StubMessageResolver.USER_OFFSET).get(0).getTrace().complete();
+
+		final Map<TraceStage, Double> stageMillis = messageTracer.recent(0, 1).get(0).getStageMillis();
+		assertTrue(stageMillis.get(TraceStage.LOOKED_UP) >= 25, stageMillis.toString());
+		assertTrue(stageMillis.get(TraceStage.BUILT) < stageMillis.get(TraceStage.LOOKED_UP), stageMillis.toString());
+	}
+}
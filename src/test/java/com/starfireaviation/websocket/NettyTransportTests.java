@@ -0,0 +1,193 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.handler.InboundFrameDispatcher;
+import com.starfireaviation.websocket.handler.NettyNotificationServer;
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.ResponseService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Delivers over a real Netty WebSocket connection, and takes the client's acknowledgements.
+ */
+class NettyTransportTests {
+
+	private static final Long USER_ID = 42L;
+
+	private static final long ACK_TIMEOUT = 300;
+
+	private final MessageService messageService = new MessageService();
+
+	private DeliveryService deliveryService;
+
+	private AdmissionController admissionController;
+
+	private NettyNotificationServer server;
+
+	@BeforeEach
+	void start() {
+		final ApplicationProperties.Delivery delivery = new ApplicationProperties.Delivery();
+		delivery.setAtLeastOnceTypes(Set.of(NotificationEventType.QUESTION_ASKED));
+		delivery.setAckTimeout(ACK_TIMEOUT);
+		delivery.setTimerTick(10);
+		// One message in flight at a time, so receiving the next message shows the last ack was taken
+		delivery.setInFlightWindow(1);
+		final ApplicationProperties.Heartbeat heartbeat = new ApplicationProperties.Heartbeat();
+		heartbeat.setEnabled(false);
+		deliveryService = new DeliveryService(messageService, delivery, heartbeat,
+				new ApplicationProperties.SendBuffer());
+		messageService.setPendingMessageListener(deliveryService);
+		final ApplicationProperties.Admission admission = new ApplicationProperties.Admission();
+		admission.setEnabled(false);
+		admissionController = new AdmissionController(admission, messageService);
+		server = new NettyNotificationServer(deliveryService,
+				new InboundFrameDispatcher(deliveryService, new ResponseService(0)), admissionController,
+				(principal, authorization, parameters) -> "Bearer valid".equals(authorization) ? new HandshakeIdentity(USER_ID, null) : null,
+				"/ws", 0);
+		server.start();
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop();
+		admissionController.close();
+		deliveryService.close();
+	}
+
+	@Test
+	void deliversAndTakesAcknowledgements() throws InterruptedException {
+		final Client client = new Client();
+		final WebSocket webSocket = HttpClient.newHttpClient().newWebSocketBuilder()
+				.header("Authorization", "Bearer valid")
+				.buildAsync(URI.create("ws://localhost:" + server.getPort() + "/ws"), client)
+				.join();
+		await(() -> deliveryService.isOnline(USER_ID));
+
+		send("q1");
+		send("q2");
+		assertEquals(1, messageId(client.next("q1")));
+		webSocket.sendText("{\"ack\":1}", true).join();
+
+		// Until acknowledged, q2 is retransmitted
+		assertEquals(2, messageId(client.next("q2")));
+		assertEquals(2, messageId(client.next("q2")));
+		webSocket.sendText("{\"ack\":2}", true).join();
+
+		send("q3");
+		assertEquals(3, messageId(client.next("q3")));
+		webSocket.sendText("{\"ack\":3}", true).join();
+		assertEquals(1, deliveryService.getSessionCount());
+
+		webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "").join();
+		await(() -> !deliveryService.isOnline(USER_ID));
+		assertEquals(0, messageService.getQueuedMessages());
+	}
+
+	@Test
+	void rejectsUnauthenticatedHandshakes() {
+		final CompletionException ce = assertThrows(CompletionException.class,
+				() -> HttpClient.newHttpClient().newWebSocketBuilder()
+						.buildAsync(URI.create("ws://localhost:" + server.getPort() + "/ws?userId=42"), new Client())
+						.join());
+		assertInstanceOf(WebSocketHandshakeException.class, ce.getCause());
+		assertEquals(401, ((WebSocketHandshakeException) ce.getCause()).getResponse().statusCode());
+	}
+
+	private static long messageId(final String frame) {
+		return Long.parseLong(frame.replaceAll(".*\"messageId\":(\\d+).*", "$1"));
+	}
+
+	private void send(final String parameter) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(USER_ID);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setParameters(List.of(parameter));
+		messageService.sendMessage(websocketMessage);
+	}
+
+	private static void await(final BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Client collecting the text frames it receives.
+	 */
+	private static final class Client implements WebSocket.Listener {
+
+		private final BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+
+		private final StringBuilder partial = new StringBuilder();
+
+		// Waits for the next frame carrying a parameter, skipping retransmissions of earlier messages
+		String next(final String parameter) throws InterruptedException {
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (true) {
+				final String frame = frames.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				assertNotNull(frame, "Timed out waiting for " + parameter);
+				if (frame.contains("\"" + parameter + "\"")) {
+					return frame;
+				}
+			}
+		}
+
+		@Override
+		public CompletionStage<?> onText(final WebSocket webSocket, final CharSequence data, final boolean last) {
+			partial.append(data);
+			if (last) {
+				frames.add(partial.toString());
+				partial.setLength(0);
+			}
+			webSocket.request(1);
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+}
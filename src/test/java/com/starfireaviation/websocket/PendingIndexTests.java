@@ -0,0 +1,163 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.PendingQuery;
+import com.starfireaviation.websocket.model.PendingSummary;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Answers pending queries from the type, entity and age indexes exactly as a scan of every queue would,
+ * while examining only the queues the indexes point at, and forgets messages once they leave a queue.
+ */
+class PendingIndexTests {
+
+	private static final long BUCKET = TimeUnit.HOURS.toMillis(1);
+
+	private static final NotificationEventType[] TYPES = {NotificationEventType.EVENT_START,
+			NotificationEventType.QUESTION_ASKED, NotificationEventType.QUIZ_COMPLETE};
+
+	private final MessageService indexed = messageService(true);
+
+	private final MessageService scanning = messageService(false);
+
+	@AfterEach
+	void close() {
+		indexed.close();
+		scanning.close();
+	}
+
+	@Test
+	void indexesAreOffByDefault() {
+		assertFalse(new ApplicationProperties.PendingIndex().isEnabled());
+	}
+
+	@Test
+	void typeAndEntityQueriesMatchAScanExaminingFewerQueues() {
+		final long now = System.currentTimeMillis();
+		// Each user has one type queued, for three entities
+		for (long userId = 0; userId < 60; userId++) {
+			for (int i = 0; i < 3; i++) {
+				final WebsocketMessage websocketMessage = message(userId, TYPES[(int) (userId % TYPES.length)],
+						Long.toString((userId + i) % 7), now);
+				indexed.sendMessage(websocketMessage);
+				scanning.sendMessage(websocketMessage);
+			}
+		}
+
+		for (final NotificationEventType eventType : TYPES) {
+			for (int entity = 0; entity < 8; entity++) {
+				final PendingQuery query = query(eventType, Integer.toString(entity), 0);
+				final PendingSummary expected = scanning.queryPending(query);
+				final PendingSummary actual = indexed.queryPending(query);
+				assertEquals(expected.getMessages(), actual.getMessages());
+				assertEquals(expected.getUsers(), actual.getUsers());
+				assertEquals(Set.copyOf(expected.getUserIds()), Set.copyOf(actual.getUserIds()));
+				assertEquals(60, expected.getExaminedUsers());
+				// Only users with both the type and the entity queued are examined, and each of them matches
+				assertEquals(actual.getUsers(), actual.getExaminedUsers());
+			}
+		}
+	}
+
+	@Test
+	void removedMessagesLeaveTheIndexes() {
+		final long now = System.currentTimeMillis();
+		indexed.sendMessage(message(1L, NotificationEventType.EVENT_START, "42", now));
+		indexed.sendMessage(message(1L, NotificationEventType.EVENT_START, "42", now));
+		indexed.sendMessage(message(2L, NotificationEventType.EVENT_START, "42", now));
+		final PendingQuery query = query(NotificationEventType.EVENT_START, "42", 0);
+		assertEquals(2, indexed.queryPending(query).getExaminedUsers());
+		assertEquals(3, indexed.queryPending(query).getMessages());
+
+		indexed.drain(1L);
+		assertEquals(1, indexed.queryPending(query).getExaminedUsers());
+		indexed.discard(2L);
+		assertEquals(0, indexed.queryPending(query).getExaminedUsers());
+
+		// Requeued messages are indexed again
+		indexed.requeue(2L, List.of(message(2L, NotificationEventType.EVENT_START, "42", now)));
+		assertEquals(1, indexed.queryPending(query).getMessages());
+	}
+
+	@Test
+	void ageQueriesExamineTheBucketsUpToTheCutoffAndCheckEachMessage() {
+		// A cutoff in the middle of a bucket, so that the query runs against the same bucket
+		final long now = System.currentTimeMillis();
+		final long cutoff = Math.floorDiv(now, BUCKET) * BUCKET - BUCKET / 2;
+		final long minAge = now - cutoff;
+		final long minute = TimeUnit.MINUTES.toMillis(1);
+		// Older, in the cutoff's bucket
+		indexed.sendMessage(message(1L, NotificationEventType.EVENT_START, "1", cutoff - 10 * minute));
+		// Newer, in the cutoff's bucket: examined, but too young
+		indexed.sendMessage(message(2L, NotificationEventType.EVENT_START, "2", cutoff + 10 * minute));
+		// In a later bucket: not examined
+		indexed.sendMessage(message(3L, NotificationEventType.EVENT_START, "3", cutoff + BUCKET));
+		// In an earlier bucket
+		indexed.sendMessage(message(4L, NotificationEventType.EVENT_START, "4", cutoff - 3 * BUCKET));
+
+		final PendingSummary summary = indexed.queryPending(query(null, null, minAge));
+		assertEquals(3, summary.getExaminedUsers());
+		assertEquals(2, summary.getMessages());
+		assertEquals(Set.of(1L, 4L), Set.copyOf(summary.getUserIds()));
+
+		indexed.drain(4L);
+		assertEquals(2, indexed.queryPending(query(null, null, minAge)).getExaminedUsers());
+	}
+
+	private static MessageService messageService(final boolean indexing) {
+		final ApplicationProperties.Tenancy tenancy = new ApplicationProperties.Tenancy();
+		tenancy.setEnabled(false);
+		final ApplicationProperties.PendingIndex pendingIndex = new ApplicationProperties.PendingIndex();
+		pendingIndex.setEnabled(indexing);
+		pendingIndex.setAgeBucket(BUCKET);
+		return new MessageService(tenancy, pendingIndex);
+	}
+
+	private static PendingQuery query(final NotificationEventType eventType, final String entityId,
+			final long minAge) {
+		final PendingQuery query = new PendingQuery();
+		query.setEventType(eventType);
+		query.setEntityId(entityId);
+		query.setMinAge(minAge);
+		query.setLimit(100);
+		return query;
+	}
+
+	private static WebsocketMessage message(final Long userId, final NotificationEventType eventType,
+			final String entityId, final long timestamp) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setEventType(eventType);
+		websocketMessage.setParameters(List.of(entityId));
+		websocketMessage.setTimestamp(Instant.ofEpochMilli(timestamp));
+		return websocketMessage;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.PendingMessageListener;
+import com.starfireaviation.websocket.util.CompressedBitmap;
+import com.starfireaviation.websocket.util.PresenceIndex;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the presence index and compressed bitmaps against sets of longs, across sparse and dense
+ * containers, and that deliveries are only scheduled for users with a live session.
+ */
+class PresenceIndexTests {
+
+	@Test
+	void indexMatchesASet() {
+		final Random random = new Random(1);
+		final PresenceIndex index = new PresenceIndex();
+		final Set<Long> expected = new HashSet<>();
+		// Enough users in one container to make it dense and sparse again, plus scattered ones
+		for (int i = 0; i < 200_000; i++) {
+			final long userId;
+			if (i % 10 == 0) {
+				userId = random.nextLong();
+			} else {
+				userId = 1_000_000 + random.nextInt(12_000);
+			}
+			if (i < 120_000 || random.nextBoolean()) {
+				assertEquals(expected.add(userId), index.add(userId));
+			} else {
+				final long removed = 1_000_000 + random.nextInt(12_000);
+				assertEquals(expected.remove(removed), index.remove(removed));
+			}
+			if (i % 997 == 0) {
+				assertMatches(expected, index);
+			}
+		}
+		assertMatches(expected, index);
+		new ArrayList<>(expected).forEach(index::remove);
+		assertEquals(0, index.getCount());
+		assertEquals(0, index.snapshot().getContainerCount());
+	}
+
+	@Test
+	void setOperationsMatchSets() {
+		final Random random = new Random(2);
+		final PresenceIndex index = new PresenceIndex();
+		final Set<Long> online = new HashSet<>();
+		for (int i = 0; i < 50_000; i++) {
+			final long userId = random.nextInt(200_000);
+			index.add(userId);
+			online.add(userId);
+		}
+		final long[] subscribers = random.longs(20_000, 0, 300_000).toArray();
+		final CompressedBitmap topic = CompressedBitmap.of(subscribers);
+		final Set<Long> topicSet = LongStream.of(subscribers).boxed().collect(Collectors.toSet());
+		assertEquals(topicSet.size(), topic.getCardinality());
+
+		final Set<Long> expectedOnline = new HashSet<>(topicSet);
+		expectedOnline.retainAll(online);
+		assertEquals(expectedOnline, toSet(index.and(topic)));
+		assertEquals(expectedOnline, toSet(topic.and(index.snapshot())));
+
+		final Set<Long> expectedOffline = new HashSet<>(topicSet);
+		expectedOffline.removeAll(online);
+		assertEquals(expectedOffline, toSet(index.andNot(topic)));
+		assertEquals(expectedOffline, toSet(topic.andNot(index.snapshot())));
+	}
+
+	@Test
+	void snapshotRoundTrips() throws IOException {
+		final PresenceIndex index = new PresenceIndex();
+		LongStream.range(0, 70_000).forEach(index::add);
+		LongStream.of(-1L, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 40).forEach(index::add);
+		final CompressedBitmap snapshot = index.snapshot();
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		snapshot.writeTo(new DataOutputStream(bytes));
+		assertEquals(snapshot.getSizeInBytes(), bytes.size());
+		final CompressedBitmap read = CompressedBitmap.readFrom(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+		assertArrayEquals(snapshot.toArray(), read.toArray());
+		assertEquals(70_004, read.getCardinality());
+		assertTrue(read.contains(Long.MIN_VALUE));
+		assertFalse(read.contains(70_000));
+
+		assertThrows(IOException.class, () -> CompressedBitmap.readFrom(new DataInputStream(
+				new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 0, 0, 0, 0}))));
+	}
+
+	@Test
+	void offlineUsersAreNotScheduled() {
+		final MessageService messageService = new MessageService();
+		final Set<Long> online = new HashSet<>();
+		final List<Long> scheduled = new ArrayList<>();
+		messageService.setPendingMessageListener(new PendingMessageListener() {
+			@Override
+			public void onPending(final Long userId) {
+				scheduled.add(userId);
+			}
+
+			@Override
+			public boolean isOnline(final Long userId) {
+				return online.contains(userId);
+			}
+		});
+		messageService.sendMessage(message(1L));
+		assertEquals(List.of(), scheduled);
+		online.add(1L);
+		messageService.sendMessage(message(1L));
+		assertEquals(List.of(1L), scheduled);
+		assertEquals(2, messageService.drain(1L).size());
+	}
+
+	@Test
+	void presenceFollowsSessions() {
+		final ApplicationProperties.Heartbeat heartbeat = new ApplicationProperties.Heartbeat();
+		heartbeat.setEnabled(false);
+		final MessageService messageService = new MessageService();
+		final DeliveryService deliveryService = new DeliveryService(messageService,
+				new ApplicationProperties.Delivery(), heartbeat, new ApplicationProperties.SendBuffer());
+		messageService.setPendingMessageListener(deliveryService);
+		try {
+			messageService.sendMessage(message(7L));
+			assertFalse(deliveryService.isOnline(7L));
+
+			final CountingChannel first = new CountingChannel();
+			deliveryService.register(7L, first);
+			assertTrue(deliveryService.isOnline(7L));
+			assertEquals(1, first.sent);
+
+			final CountingChannel second = new CountingChannel();
+			deliveryService.register(7L, second);
+			deliveryService.unregister(7L, first);
+			assertTrue(deliveryService.isOnline(7L));
+			messageService.sendMessage(message(7L));
+			assertEquals(1, second.sent);
+
+			deliveryService.unregister(7L, second);
+			assertFalse(deliveryService.isOnline(7L));
+			assertEquals(0, deliveryService.getPresence().getCount());
+		} finally {
+			deliveryService.close();
+		}
+	}
+
+	private static void assertMatches(final Set<Long> expected, final PresenceIndex index) {
+		assertEquals(expected.size(), index.getCount());
+		for (final Long userId : expected) {
+			assertTrue(index.contains(userId));
+		}
+		assertEquals(expected, toSet(index.snapshot()));
+	}
+
+	private static Set<Long> toSet(final CompressedBitmap bitmap) {
+		final Set<Long> values = new HashSet<>();
+		bitmap.forEach(values::add);
+		assertEquals(values.size(), bitmap.getCardinality());
+		return values;
+	}
+
+	private static WebsocketMessage message(final Long userId) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setParameters(List.of("1"));
+		return websocketMessage;
+	}
+
+	/**
+	 * Client which counts the frames written to it.
+	 */
+	private static final class CountingChannel implements DeliveryChannel {
+
+		private int sent;
+
+		private boolean open = true;
+
+		@Override
+		public String getId() {
+			return "counting-" + System.identityHashCode(this);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void send(final ByteBuffer payload, final SendCallback callback) {
+			sent++;
+			callback.onComplete(null);
+		}
+
+		@Override
+		public void ping() {
+		}
+
+		@Override
+		public void close(final CloseReason closeReason) {
+			open = false;
+		}
+	}
+
+}
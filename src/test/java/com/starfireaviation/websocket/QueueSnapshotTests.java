@@ -0,0 +1,150 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.QueueSnapshotService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes queues to a snapshot and restores them into a fresh MessageService.
+ */
+class QueueSnapshotTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void restoresEveryQueueInOrder() throws Exception {
+		final MessageService before = new MessageService();
+		final List<WebsocketMessage> sent = new ArrayList<>();
+		for (long userId = -2; userId < 50; userId++) {
+			for (int i = 0; i < 3; i++) {
+				final WebsocketMessage websocketMessage = message(userId, i);
+				sent.add(websocketMessage);
+				before.sendMessage(websocketMessage);
+			}
+		}
+		final WebsocketMessage bare = new WebsocketMessage();
+		bare.setUserId(99L);
+		sent.add(bare);
+		before.sendMessage(bare);
+		before.assignOrganization(7L, "acme");
+
+		assertEquals(sent.size(), snapshotService(before).snapshot());
+		final MessageService after = new MessageService();
+		assertEquals(sent.size(), snapshotService(after).restore());
+
+		final List<WebsocketMessage> restored = new ArrayList<>();
+		for (long userId = -2; userId < 100; userId++) {
+			restored.addAll(after.drain(userId));
+		}
+		assertEquals(sent, restored);
+		assertEquals(1, after.getTenantStats().stream()
+				.filter(stats -> "acme".equals(stats.getOrganization())).count());
+		try (var files = Files.list(directory)) {
+			assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	void corruptFileIsSetAside() throws Exception {
+		final MessageService before = new MessageService();
+		before.sendMessage(message(3L, 0));
+		snapshotService(before).snapshot();
+		final Path file = directory.resolve("queues-pod-a_0.snapshot");
+		final byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(file, bytes);
+
+		final MessageService after = new MessageService();
+		assertEquals(0, snapshotService(after).restore());
+		assertTrue(after.drain(3L).isEmpty());
+		assertTrue(Files.exists(directory.resolve("queues-pod-a_0.snapshot.corrupt")));
+	}
+
+	@Test
+	void podsSharingADirectoryKeepToTheirOwnSnapshots() throws Exception {
+		final MessageService podA = new MessageService();
+		podA.sendMessage(message(1L, 0));
+		final MessageService podB = new MessageService();
+		podB.sendMessage(message(2L, 0));
+		podB.sendMessage(message(2L, 1));
+		assertEquals(1, snapshotService(podA, "pod-a").snapshot());
+		assertEquals(2, snapshotService(podB, "pod-b").snapshot());
+
+		// A second snapshot by pod-a replaces its own files only
+		assertEquals(1, snapshotService(podA, "pod-a").snapshot());
+		try (var files = Files.list(directory)) {
+			assertEquals(6, files.count());
+		}
+
+		// Owners are sanitized, so a glob-like owner cannot reach another pod's files
+		assertEquals(0, snapshotService(new MessageService(), "pod-*").restore());
+
+		final MessageService restartedA = new MessageService();
+		assertEquals(1, snapshotService(restartedA, "pod-a").restore());
+		assertEquals(1, restartedA.drain(1L).size());
+		assertTrue(restartedA.drain(2L).isEmpty());
+		try (var files = Files.list(directory)) {
+			assertTrue(files.allMatch(file -> file.getFileName().toString().startsWith("queues-pod-b_")));
+		}
+
+		final MessageService restartedB = new MessageService();
+		assertEquals(2, snapshotService(restartedB, "pod-b").restore());
+		assertEquals(2, restartedB.drain(2L).size());
+	}
+
+	private QueueSnapshotService snapshotService(final MessageService messageService) {
+		return snapshotService(messageService, "pod-a");
+	}
+
+	private QueueSnapshotService snapshotService(final MessageService messageService, final String owner) {
+		final ApplicationProperties.Snapshot snapshot = new ApplicationProperties.Snapshot();
+		snapshot.setDirectory(directory.toString());
+		snapshot.setPartitions(3);
+		snapshot.setOwner(owner);
+		return new QueueSnapshotService(messageService, snapshot);
+	}
+
+	private static WebsocketMessage message(final long userId, final int i) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setEventType(NotificationEventType.values()[(int) Math.floorMod(userId + i,
+				(long) NotificationEventType.values().length)]);
+		websocketMessage.setService(MessageService.QUESTION_SERVICE);
+		websocketMessage.setOperation(MessageService.GET_OPERATION);
+		websocketMessage.setParameters(Arrays.asList(String.valueOf(userId), null, "café 🚀"));
+		websocketMessage.setTimestamp(Instant.ofEpochSecond(1_660_000_000L + userId, 123_456_789L * i % 1_000_000_000));
+		return websocketMessage;
+	}
+
+}
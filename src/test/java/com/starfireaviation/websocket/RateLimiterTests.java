@@ -0,0 +1,86 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.websocket.util.RateLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Grants at most one second of permits at once, refills at the configured rate and never limits at a
+ * rate of 0.
+ */
+class RateLimiterTests {
+
+	@Test
+	void zeroRateNeverLimits() throws InterruptedException {
+		final RateLimiter rateLimiter = new RateLimiter(0);
+		assertFalse(rateLimiter.isLimited());
+		assertEquals(1_000_000, rateLimiter.take(1_000_000));
+		assertEquals(1_000_000, rateLimiter.take(1_000_000));
+		assertFalse(rateLimiter.awaitPermit());
+	}
+
+	@Test
+	void startsWithOneSecondOfPermits() {
+		final RateLimiter rateLimiter = new RateLimiter(100);
+		assertTrue(rateLimiter.isLimited());
+		assertEquals(40, rateLimiter.take(40));
+		assertEquals(60, rateLimiter.take(150));
+		// Less than a permit has accrued since
+		assertEquals(0, rateLimiter.take(10));
+	}
+
+	@Test
+	void refillsAtTheRate() throws InterruptedException {
+		final RateLimiter rateLimiter = new RateLimiter(100);
+		rateLimiter.take(100);
+		Thread.sleep(100);
+
+		// About 10 permits; sleeps may overshoot, but never beyond one second's worth
+		final int granted = rateLimiter.take(1_000);
+		assertTrue(granted >= 9 && granted <= 100, "granted " + granted);
+	}
+
+	@Test
+	void holdsNoMoreThanOneSecondOfPermits() throws InterruptedException {
+		final RateLimiter rateLimiter = new RateLimiter(10);
+		rateLimiter.take(10);
+		Thread.sleep(1_500);
+
+		assertEquals(10, rateLimiter.take(1_000));
+	}
+
+	@Test
+	void awaitPermitWaitsOnlyWhenEmpty() throws InterruptedException {
+		final RateLimiter rateLimiter = new RateLimiter(20);
+		assertFalse(rateLimiter.awaitPermit());
+		// Waiting does not take the permit
+		assertEquals(20, rateLimiter.take(20));
+
+		final long start = System.nanoTime();
+		assertTrue(rateLimiter.awaitPermit());
+		// One permit accrues every 50ms
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+		assertEquals(1, rateLimiter.take(20));
+	}
+}
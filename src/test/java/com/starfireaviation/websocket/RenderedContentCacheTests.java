@@ -0,0 +1,309 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.RenderedContent;
+import com.starfireaviation.websocket.model.ResolvedEntity;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.ContentResolver;
+import com.starfireaviation.websocket.service.HttpContentResolver;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTemplates;
+import com.starfireaviation.websocket.service.RenderedContentCache;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Embeds entities rendered once into the messages about them.
+ */
+class RenderedContentCacheTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final ApplicationProperties.Inline inline = new ApplicationProperties.Inline();
+
+	private final AtomicInteger resolved = new AtomicInteger();
+
+	@Test
+	void questionIsRenderedOnceForTheWholeClassWithoutHoldingUpTheSenders() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final RenderedContentCache cache = new RenderedContentCache((service, entityId) -> {
+			resolved.incrementAndGet();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException();
+			}
+			return Map.of("id", entityId, "text", "What is Vso?");
+		}, MAPPER, inline);
+		final MessageService messageService = new MessageService();
+		messageService.setContentCache(cache);
+		final ExecutorService senders = Executors.newFixedThreadPool(8);
+		final List<Future<?>> sent = new ArrayList<>();
+		for (long userId = 1; userId <= 100; userId++) {
+			final long recipient = userId;
+			sent.add(senders.submit(() -> messageService.sendMessage(questionAsked(recipient, "7"))));
+		}
+		// Every sender returns while the fetch is still held up
+		for (final Future<?> future : sent) {
+			future.get(1, TimeUnit.SECONDS);
+		}
+		senders.shutdown();
+		assertEquals(100, messageService.getQueuedMessages());
+		release.countDown();
+		awaitRendered(cache);
+
+		assertEquals(1, resolved.get());
+		final RenderedContent payload = messageService.drain(1L).get(0).getPayload();
+		assertNotNull(payload);
+		for (long userId = 2; userId <= 100; userId++) {
+			assertSame(payload, messageService.drain(userId).get(0).getPayload());
+		}
+		assertNull(MAPPER.readTree(MessageTemplates.encode(questionAsked(1L, "7"))).get("payload"));
+		final WebsocketMessage embedded = questionAsked(1L, "7");
+		embedded.setPayload(payload);
+		assertEquals("What is Vso?", MAPPER.readTree(MessageTemplates.encode(embedded)).get("payload").get("text")
+				.asText());
+		// The first sender started the render, the others found it under way; drains are not counted
+		assertEquals(1, cache.getStats().getMisses());
+		assertEquals(99, cache.getStats().getPending());
+		assertEquals(0, cache.getStats().getHits());
+		cache.close();
+	}
+
+	@Test
+	void drainWaitsForARenderUnderWay() throws Exception {
+		inline.setRenderWait(5000);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RenderedContentCache cache = new RenderedContentCache((service, entityId) -> {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException();
+			}
+			return Map.of("id", entityId);
+		}, MAPPER, inline);
+		final MessageService messageService = new MessageService();
+		messageService.setContentCache(cache);
+		messageService.sendMessage(questionAsked(1L, "7"));
+		final Thread releaser = new Thread(() -> {
+			sleep(50);
+			release.countDown();
+		});
+		releaser.start();
+
+		assertNotNull(messageService.drain(1L).get(0).getPayload());
+		releaser.join();
+		cache.close();
+	}
+
+	@Test
+	void drainGivesUpOnASlowRender() {
+		inline.setRenderWait(20);
+		final CountDownLatch release = new CountDownLatch(1);
+		final RenderedContentCache cache = new RenderedContentCache((service, entityId) -> {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException();
+			}
+			return Map.of("id", entityId);
+		}, MAPPER, inline);
+		final MessageService messageService = new MessageService();
+		messageService.setContentCache(cache);
+		messageService.sendMessage(questionAsked(1L, "7"));
+
+		final long start = System.nanoTime();
+		assertNull(messageService.drain(1L).get(0).getPayload());
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+		release.countDown();
+		cache.close();
+	}
+
+	@Test
+	void renderedEntityIsEmbeddedWhenSent() {
+		final RenderedContentCache cache = new RenderedContentCache((service, entityId) -> {
+			resolved.incrementAndGet();
+			return Map.of("id", entityId);
+		}, MAPPER, inline);
+		final RenderedContent rendered = cache.get(MessageService.QUESTION_SERVICE, "7");
+		final MessageService messageService = new MessageService();
+		messageService.setContentCache(cache);
+		final WebsocketMessage websocketMessage = questionAsked(1L, "7");
+		messageService.sendMessage(websocketMessage);
+
+		assertSame(rendered, websocketMessage.getPayload());
+		assertEquals(1, resolved.get());
+		assertNull(cache.peek(MessageService.QUESTION_SERVICE, "8"));
+		cache.close();
+	}
+
+	@Test
+	void expiredRenderingIsReusedWhileItsVersionHolds() {
+		inline.setMaxAge(0);
+		final String[] version = {"v1"};
+		final List<String> asked = new ArrayList<>();
+		final RenderedContentCache cache = new RenderedContentCache(new ContentResolver() {
+			@Override
+			public Object resolve(final String service, final String entityId) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public ResolvedEntity resolve(final String service, final String entityId, final String held) {
+				asked.add(String.valueOf(held));
+				if (version[0].equals(held)) {
+					return ResolvedEntity.UNCHANGED;
+				}
+				return new ResolvedEntity(Map.of("version", version[0]), version[0]);
+			}
+		}, MAPPER, inline);
+		final RenderedContent first = cache.get(MessageService.QUESTION_SERVICE, "7");
+		assertSame(first, cache.get(MessageService.QUESTION_SERVICE, "7"));
+		version[0] = "v2";
+		final RenderedContent second = cache.get(MessageService.QUESTION_SERVICE, "7");
+
+		assertNotSame(first, second);
+		assertEquals(List.of("null", "v1", "v1"), asked);
+		assertEquals(1, cache.getStats().getRevalidations());
+		assertTrue(cache.getStats().getBytes() > 0);
+		cache.close();
+	}
+
+	@Test
+	void httpResolverRevalidatesWithTheETag() throws Exception {
+		final AtomicInteger bodies = new AtomicInteger();
+		final HttpServer backend = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		backend.createContext("/questions/", exchange -> {
+			if ("\"1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				bodies.incrementAndGet();
+				final byte[] body = "{\"text\":\"What is Vso?\"}".getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().add("ETag", "\"1\"");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+			}
+			exchange.close();
+		});
+		backend.start();
+		try {
+			final HttpContentResolver resolver = new HttpContentResolver(Map.of(MessageService.QUESTION_SERVICE,
+					"http://localhost:" + backend.getAddress().getPort() + "/questions/{id}"), 5000, MAPPER);
+			final ResolvedEntity resolved = resolver.resolve(MessageService.QUESTION_SERVICE, "7", null);
+			assertEquals("\"1\"", resolved.getVersion());
+			assertTrue(resolver.resolve(MessageService.QUESTION_SERVICE, "7", resolved.getVersion()).isUnchanged());
+			assertEquals(1, bodies.get());
+		} finally {
+			backend.stop(0);
+		}
+	}
+
+	@Test
+	void invalidationRendersAgain() {
+		final RenderedContentCache cache = new RenderedContentCache((service, entityId) ->
+				Map.of("version", resolved.incrementAndGet()), MAPPER, inline);
+		final RenderedContent first = cache.get(MessageService.QUESTION_SERVICE, "7");
+		assertSame(first, cache.get(MessageService.QUESTION_SERVICE, "7"));
+		assertTrue(cache.invalidate(MessageService.QUESTION_SERVICE, "7"));
+
+		final RenderedContent second = cache.get(MessageService.QUESTION_SERVICE, "7");
+		assertNotSame(first, second);
+		assertEquals(2, resolved.get());
+	}
+
+	@Test
+	void renderInvalidatedWhileUnderWayIsNotCached() {
+		final RenderedContentCache[] cache = new RenderedContentCache[1];
+		cache[0] = new RenderedContentCache((service, entityId) -> {
+			if (resolved.incrementAndGet() == 1) {
+				cache[0].invalidate(service, entityId);
+			}
+			return Map.of("version", resolved.get());
+		}, MAPPER, inline);
+		cache[0].get(MessageService.EVENT_SERVICE, "3");
+		cache[0].get(MessageService.EVENT_SERVICE, "3");
+
+		assertEquals(2, resolved.get());
+	}
+
+	@Test
+	void leastRecentlyUsedEntriesAreEvicted() {
+		inline.setMaxBytes(1000);
+		final RenderedContentCache cache = new RenderedContentCache((service, entityId) -> {
+			resolved.incrementAndGet();
+			return Map.of("text", "x".repeat(200));
+		}, MAPPER, inline);
+		for (int i = 0; i < 10; i++) {
+			cache.get(MessageService.EVENT_SERVICE, "0");
+			cache.get(MessageService.EVENT_SERVICE, String.valueOf(i));
+		}
+
+		assertTrue(cache.getStats().getBytes() <= 1000);
+		assertTrue(cache.getStats().getEvictions() > 0);
+		assertEquals(10, resolved.get());
+	}
+
+	private static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void awaitRendered(final RenderedContentCache cache) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (cache.getStats().getBytes() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(cache.getStats().getBytes() > 0);
+	}
+
+	private static WebsocketMessage questionAsked(final long userId, final String questionId) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setService(MessageService.QUESTION_SERVICE);
+		websocketMessage.setOperation(MessageService.GET_OPERATION);
+		websocketMessage.setParameters(List.of(questionId));
+		return websocketMessage;
+	}
+}
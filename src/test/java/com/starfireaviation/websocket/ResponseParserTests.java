@@ -0,0 +1,66 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.ResponseOption;
+import com.starfireaviation.websocket.util.ResponseParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Parses answers from a slice of characters exactly as the regular expressions do from a String.
+ */
+class ResponseParserTests {
+
+	private static final List<String> INPUTS = List.of(
+			// Valid, in upper and lower case
+			"A", "B", "C", "D", "STOP", "SKIP", "CONFIRM", "DECLINE",
+			"a", "b", "c", "d", "stop", "Skip", "confirm", "DeClInE",
+			// A single trailing line terminator is allowed, like "$"
+			"A\n", "b\r", "STOP\r\n", "skip\u0085", "C\u2028", "d\u2029",
+			// Padded or otherwise invalid
+			" A", "A ", "\tB", "A\n\n", "A\r\r", "\nA", "\r\nSTOP", "A\n\r",
+			"", "\n", "\r\n", "AB", "E", "STOPS", "STO", "CONFIRMED", "DECLINE!",
+			// Non-ASCII look-alikes, which only match with Unicode case folding
+			"\u017Ftop", "\u0131", "\uFF21", "\u00C0");
+
+	@Test
+	void charSliceMatchesRegularExpressions() {
+		for (final String input : INPUTS) {
+			final ResponseOption expected = ResponseParser.determineResponse(input);
+			final char[] chars = input.toCharArray();
+			assertEquals(expected, ResponseParser.determineResponse(chars, 0, chars.length), input);
+
+			// The slice is read from its offset, ignoring what surrounds it
+			final char[] padded = ("xA\n" + input + "\nBx").toCharArray();
+			assertEquals(expected, ResponseParser.determineResponse(padded, 3, input.length()), input);
+		}
+	}
+
+	@Test
+	void expectedResponses() {
+		assertEquals(ResponseOption.A, ResponseParser.determineResponse("a\r\n".toCharArray(), 0, 3));
+		assertEquals(ResponseOption.STOP, ResponseParser.determineResponse("Stop"));
+		assertEquals(ResponseOption.UNKNOWN, ResponseParser.determineResponse(" A".toCharArray(), 0, 2));
+		assertEquals(ResponseOption.UNKNOWN, ResponseParser.determineResponse(new char[0], 0, 0));
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.DeliverySession;
+import com.starfireaviation.websocket.service.InFlightMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tracks at-least-once messages in the in-flight window, retransmits them until acknowledged and gives
+ * up on the session after max-retransmits, requeueing each message exactly once.
+ */
+class RetransmissionTests {
+
+	private static final Long USER_ID = 42L;
+
+	private static final long ACK_TIMEOUT = 30;
+
+	private final MessageService messageService = new MessageService();
+
+	private DeliveryService deliveryService;
+
+	@AfterEach
+	void close() {
+		if (deliveryService != null) {
+			deliveryService.close();
+		}
+	}
+
+	@Test
+	void acknowledgementsSlideTheWindow() {
+		final DeliverySession deliverySession = new DeliverySession(USER_ID, new RecordingChannel(false), null, 3,
+				new ApplicationProperties.SendBuffer());
+		final InFlightMessage first = deliverySession.track(message("q1"));
+		final InFlightMessage second = deliverySession.track(message("q2"));
+		final InFlightMessage third = deliverySession.track(message("q3"));
+		assertEquals(List.of(1L, 2L, 3L), List.of(first.getWebsocketMessage().getMessageId(),
+				second.getWebsocketMessage().getMessageId(), third.getWebsocketMessage().getMessageId()));
+		assertFalse(deliverySession.hasWindowCapacity());
+
+		// Out of order: the window cannot slide past the oldest unacknowledged message
+		assertSame(second, deliverySession.acknowledge(2));
+		assertFalse(deliverySession.hasWindowCapacity());
+		assertNull(deliverySession.acknowledge(2));
+		assertSame(first, deliverySession.acknowledge(1));
+		assertTrue(deliverySession.hasWindowCapacity());
+		assertNull(deliverySession.acknowledge(1));
+		assertNull(deliverySession.acknowledge(4));
+
+		final InFlightMessage fourth = deliverySession.track(message("q4"));
+		assertFalse(deliverySession.isInFlight(first));
+		assertTrue(deliverySession.isInFlight(third));
+		assertEquals(List.of(third, fourth), deliverySession.release());
+		assertFalse(deliverySession.isInFlight(fourth));
+	}
+
+	@Test
+	void unacknowledgedMessageIsRetransmittedUntilAcknowledged() {
+		final RecordingChannel channel = connect(5, true);
+		send("q1");
+		await(() -> channel.written.size() >= 2);
+
+		assertEquals(Set.of("q1"), Set.copyOf(channel.parameters()));
+		deliveryService.acknowledge(USER_ID, 1);
+		final int written = channel.written.size();
+		sleep(ACK_TIMEOUT * 3);
+		assertEquals(written, channel.written.size());
+		assertTrue(channel.isOpen());
+	}
+
+	@Test
+	void exhaustedRetransmitsCloseTheSessionAndRequeue() {
+		final RecordingChannel channel = connect(2, true);
+		send("q1");
+		await(() -> !channel.isOpen());
+
+		assertEquals(List.of("q1", "q1", "q1"), channel.parameters());
+		assertEquals(CloseReason.NOT_RELIABLE, channel.closeReason);
+		final List<WebsocketMessage> requeued = messageService.drain(USER_ID);
+		assertEquals(1, requeued.size());
+		assertNull(requeued.get(0).getMessageId());
+	}
+
+	@Test
+	void messageStillBeingWrittenIsNotRetransmitted() {
+		final RecordingChannel channel = connect(5, false);
+		send("q1");
+		// The timer fires several times while the first write is outstanding on a slow link
+		sleep(ACK_TIMEOUT * 3);
+		assertEquals(List.of("q1"), channel.parameters());
+
+		channel.completeWrites();
+		assertEquals(List.of("q1"), channel.parameters());
+		assertTrue(channel.isOpen());
+	}
+
+	@Test
+	void bufferedTrackedMessagesAreRequeuedOnce() {
+		final RecordingChannel channel = connect(5, false);
+		send("q1");
+		send("q2");
+		send("q3");
+		assertEquals(List.of("q1"), channel.parameters());
+
+		// q2 and q3 are both in the send buffer and in the in-flight window
+		deliveryService.unregister(USER_ID, channel);
+		assertEquals(List.of("q1", "q2", "q3"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0))
+				.collect(Collectors.toList()));
+		assertEquals(0, messageService.getQueuedMessages());
+	}
+
+	private RecordingChannel connect(final int maxRetransmits, final boolean completeWrites) {
+		final ApplicationProperties.Heartbeat heartbeat = new ApplicationProperties.Heartbeat();
+		heartbeat.setEnabled(false);
+		final ApplicationProperties.Delivery delivery = new ApplicationProperties.Delivery();
+		delivery.setAtLeastOnceTypes(Set.of(NotificationEventType.QUESTION_ASKED));
+		delivery.setAckTimeout(ACK_TIMEOUT);
+		delivery.setMaxRetransmits(maxRetransmits);
+		delivery.setTimerTick(5);
+		deliveryService = new DeliveryService(messageService, delivery, heartbeat,
+				new ApplicationProperties.SendBuffer());
+		messageService.setPendingMessageListener(deliveryService);
+		final RecordingChannel channel = new RecordingChannel(completeWrites);
+		deliveryService.register(USER_ID, channel);
+		return channel;
+	}
+
+	private void send(final String parameter) {
+		messageService.sendMessage(message(parameter));
+	}
+
+	private static WebsocketMessage message(final String parameter) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(USER_ID);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setParameters(List.of(parameter));
+		return websocketMessage;
+	}
+
+	private static void await(final BooleanSupplier condition) {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+			sleep(5);
+		}
+	}
+
+	private static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Client which records the frames written to it, and completes writes at once or holds them.
+	 */
+	private static final class RecordingChannel implements DeliveryChannel {
+
+		private final boolean completeWrites;
+
+		private final List<String> written = new CopyOnWriteArrayList<>();
+
+		private final Deque<SendCallback> outstanding = new ConcurrentLinkedDeque<>();
+
+		private volatile CloseReason closeReason;
+
+		private RecordingChannel(final boolean complete) {
+			completeWrites = complete;
+		}
+
+		void completeWrites() {
+			SendCallback callback;
+			while ((callback = outstanding.poll()) != null) {
+				callback.onComplete(null);
+			}
+		}
+
+		List<String> parameters() {
+			return written.stream()
+					.map(json -> json.replaceAll(".*\"parameters\":\\[\"([^\"]*)\"].*", "$1"))
+					.collect(Collectors.toList());
+		}
+
+		@Override
+		public String getId() {
+			return "recording";
+		}
+
+		@Override
+		public boolean isOpen() {
+			return closeReason == null;
+		}
+
+		@Override
+		public void send(final ByteBuffer payload, final SendCallback callback) {
+			written.add(StandardCharsets.UTF_8.decode(payload.duplicate()).toString());
+			if (completeWrites) {
+				callback.onComplete(null);
+			} else {
+				outstanding.add(callback);
+			}
+		}
+
+		@Override
+		public void ping() {
+		}
+
+		@Override
+		public void close(final CloseReason reason) {
+			closeReason = reason;
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Delivers to a simulated throttled client, whose writes only complete when the test lets them, under
+ * each slow-consumer policy.
+ */
+class SlowConsumerTests {
+
+	private static final Long USER_ID = 42L;
+
+	private final MessageService messageService = new MessageService();
+
+	private DeliveryService deliveryService;
+
+	@AfterEach
+	void close() {
+		deliveryService.close();
+	}
+
+	@Test
+	void disconnectSpoolsUndeliveredMessagesToTheQueue() {
+		final ThrottledChannel channel = connect(ApplicationProperties.SlowConsumerPolicy.DISCONNECT);
+		for (int i = 1; i <= 5; i++) {
+			send(NotificationEventType.QUESTION_ASKED, "q" + i);
+		}
+
+		assertFalse(channel.isOpen());
+		assertEquals(1, deliveryService.getSlowDisconnectCount());
+		assertEquals(0, deliveryService.getSlowConsumerCount());
+		assertEquals(List.of("q1", "q2", "q3", "q4", "q5"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0))
+				.collect(Collectors.toList()));
+	}
+
+	@Test
+	void dropLowestPriorityKeepsImportantMessages() {
+		final ThrottledChannel channel = connect(ApplicationProperties.SlowConsumerPolicy.DROP_LOWEST_PRIORITY);
+		send(NotificationEventType.QUESTION_ASKED, "q1");
+		send(NotificationEventType.HOME_DISPLAYED, null);
+		send(NotificationEventType.QUESTION_ASKED, "q2");
+		send(NotificationEventType.PASSWORD_RESET, "u1");
+
+		assertEquals(1, deliveryService.getSlowConsumerCount());
+		assertEquals(1, deliveryService.getDiscardedCount());
+
+		channel.completeWrites();
+		assertEquals(List.of("QUESTION_ASKED", "QUESTION_ASKED", "PASSWORD_RESET"), channel.written);
+		assertEquals(0, deliveryService.getSlowConsumerCount());
+		assertTrue(channel.isOpen());
+	}
+
+	@Test
+	void coalesceKeepsOnlyTheLatestDisplay() {
+		final ThrottledChannel channel = connect(ApplicationProperties.SlowConsumerPolicy.COALESCE);
+		send(NotificationEventType.QUESTION_ASKED, "q1");
+		send(NotificationEventType.LESSON_DISPLAYED, "l1");
+		send(NotificationEventType.QUESTION_DISPLAYED, "q1");
+		send(NotificationEventType.LESSON_DISPLAYED, "l1");
+
+		assertEquals(1, deliveryService.getDiscardedCount());
+
+		channel.completeWrites();
+		assertEquals(List.of("QUESTION_ASKED", "QUESTION_DISPLAYED", "LESSON_DISPLAYED"), channel.written);
+		assertEquals(0, deliveryService.getSlowConsumerCount());
+	}
+
+	@Test
+	void coalesceKeepsDisplaysOfDifferentThings() {
+		final ThrottledChannel channel = connect(ApplicationProperties.SlowConsumerPolicy.COALESCE);
+		send(NotificationEventType.QUESTION_ASKED, "q1");
+		send(NotificationEventType.LESSON_DISPLAYED, "l1");
+		send(NotificationEventType.REFERENCE_MATERIAL_DISPLAYED, "r1");
+		// Nothing buffered is superseded by an update of another thing, so the buffer overflows
+		send(NotificationEventType.HOME_DISPLAYED, null);
+
+		assertEquals(0, deliveryService.getDiscardedCount());
+		assertFalse(channel.isOpen());
+		assertEquals(List.of("QUESTION_ASKED", "LESSON_DISPLAYED", "REFERENCE_MATERIAL_DISPLAYED", "HOME_DISPLAYED"),
+				messageService.drain(USER_ID).stream()
+						.map(websocketMessage -> websocketMessage.getEventType().name())
+						.collect(Collectors.toList()));
+	}
+
+	@Test
+	void stalledWriteDisconnectsWhateverThePolicy() throws InterruptedException {
+		final ThrottledChannel channel = connect(ApplicationProperties.SlowConsumerPolicy.DROP_LOWEST_PRIORITY);
+		send(NotificationEventType.QUESTION_ASKED, "q1");
+		Thread.sleep(20);
+		send(NotificationEventType.QUESTION_ASKED, "q2");
+
+		assertFalse(channel.isOpen());
+		assertEquals(1, deliveryService.getSlowDisconnectCount());
+		// The message whose write stalled is requeued ahead of the one still buffered
+		assertEquals(List.of("q1", "q2"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0))
+				.collect(Collectors.toList()));
+	}
+
+	@Test
+	void unregisterDuringAWriteRequeuesTheMessageBeingWritten() {
+		final ThrottledChannel channel = connect(ApplicationProperties.SlowConsumerPolicy.DISCONNECT);
+		send(NotificationEventType.QUESTION_ASKED, "q1");
+		assertEquals(1, channel.written.size());
+		deliveryService.unregister(USER_ID, channel);
+
+		assertEquals(List.of("q1"), messageService.drain(USER_ID).stream()
+				.map(websocketMessage -> websocketMessage.getParameters().get(0))
+				.collect(Collectors.toList()));
+		// The write failing after the session is gone changes nothing
+		channel.failWrites();
+		assertTrue(messageService.drain(USER_ID).isEmpty());
+	}
+
+	private ThrottledChannel connect(final ApplicationProperties.SlowConsumerPolicy policy) {
+		final ApplicationProperties.Heartbeat heartbeat = new ApplicationProperties.Heartbeat();
+		heartbeat.setEnabled(false);
+		final ApplicationProperties.SendBuffer sendBuffer = new ApplicationProperties.SendBuffer();
+		sendBuffer.setMaxMessages(2);
+		sendBuffer.setSendDeadline(10);
+		sendBuffer.setSlowConsumerPolicy(policy);
+		deliveryService = new DeliveryService(messageService, new ApplicationProperties.Delivery(), heartbeat,
+				sendBuffer);
+		messageService.setPendingMessageListener(deliveryService);
+		final ThrottledChannel channel = new ThrottledChannel();
+		deliveryService.register(USER_ID, channel);
+		return channel;
+	}
+
+	private void send(final NotificationEventType eventType, final String parameter) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(USER_ID);
+		websocketMessage.setEventType(eventType);
+		if (parameter != null) {
+			websocketMessage.setParameters(List.of(parameter));
+		}
+		messageService.sendMessage(websocketMessage);
+	}
+
+	/**
+	 * Client whose writes stay outstanding until completeWrites is called.
+	 */
+	private static final class ThrottledChannel implements DeliveryChannel {
+
+		private final Deque<SendCallback> outstanding = new ArrayDeque<>();
+
+		private final List<String> written = new ArrayList<>();
+
+		private boolean open = true;
+
+		void completeWrites() {
+			while (!outstanding.isEmpty()) {
+				outstanding.poll().onComplete(null);
+			}
+		}
+
+		void failWrites() {
+			while (!outstanding.isEmpty()) {
+				outstanding.poll().onComplete(new IOException("Broken pipe"));
+			}
+		}
+
+		@Override
+		public String getId() {
+			return "throttled";
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void send(final ByteBuffer payload, final SendCallback callback) {
+			final String json = StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+			written.add(json.replaceAll(".*\"eventType\":\"([A-Z_]+)\".*", "$1"));
+			outstanding.add(callback);
+		}
+
+		@Override
+		public void ping() {
+		}
+
+		@Override
+		public void close(final CloseReason closeReason) {
+			open = false;
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.Event;
+import com.starfireaviation.model.Message;
+import com.starfireaviation.model.Question;
+import com.starfireaviation.model.Quiz;
+import com.starfireaviation.model.User;
+import com.starfireaviation.websocket.service.MessageResolver;
+
+/**
+ * Resolves message N to user N + 1000, event N + 2000, question N + 3000 and, for even N, quiz N + 4000.
+ * Messages with a negative ID are for an unknown user.
+ */
+class StubMessageResolver implements MessageResolver {
+
+	static final long USER_OFFSET = 1000;
+
+	static final long EVENT_OFFSET = 2000;
+
+	static final long QUESTION_OFFSET = 3000;
+
+	static final long QUIZ_OFFSET = 4000;
+
+	@Override
+	public User getUser(final Message message) {
+		if (message.getId() < 0) {
+			return null;
+		}
+		final User user = new User();
+		user.setId(message.getId() + USER_OFFSET);
+		return user;
+	}
+
+	@Override
+	public Event getEvent(final Message message) {
+		final Event event = new Event();
+		event.setId(message.getId() + EVENT_OFFSET);
+		return event;
+	}
+
+	@Override
+	public Question getQuestion(final Message message) {
+		final Question question = new Question();
+		question.setId(message.getId() + QUESTION_OFFSET);
+		return question;
+	}
+
+	@Override
+	public Quiz getQuiz(final Message message) {
+		if (message.getId() % 2 != 0) {
+			return null;
+		}
+		final Quiz quiz = new Quiz();
+		quiz.setId(message.getId() + QUIZ_OFFSET);
+		return quiz;
+	}
+
+}
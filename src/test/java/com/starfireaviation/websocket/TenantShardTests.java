@@ -0,0 +1,186 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.model.TenantStats;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.PendingMessageListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Keeps each organization's queues in its own shard, drains them under the organization's rate limit,
+ * and moves a user's queue whole and in order when the user changes organization, even while messages
+ * are being queued for them.
+ */
+class TenantShardTests {
+
+	private static final Long USER_ID = 7L;
+
+	private MessageService messageService = new MessageService();
+
+	@AfterEach
+	void close() {
+		messageService.close();
+	}
+
+	@Test
+	void organizationsHaveTheirOwnShards() {
+		messageService.assignOrganization(USER_ID, "acme");
+		messageService.sendMessage(message(USER_ID, 0));
+		messageService.sendMessage(message(USER_ID, 1));
+		messageService.sendMessage(message(8L, 0));
+
+		final Map<String, TenantStats> stats = stats();
+		assertEquals(2, stats.get("acme").getQueuedMessages());
+		assertEquals(1, stats.get("acme").getQueuedUsers());
+		assertEquals(1, stats.get(CommonConstants.DEFAULT_ORGANIZATION).getQueuedMessages());
+		assertEquals(2, messageService.drain(USER_ID).size());
+		assertEquals(0, stats().get("acme").getQueuedMessages());
+		assertEquals(2, stats().get("acme").getDrained());
+	}
+
+	@Test
+	void fullQueueDropsTheOldest() {
+		for (int i = 0; i < CommonConstants.MAX_QUEUE_SIZE + 5; i++) {
+			messageService.sendMessage(message(USER_ID, i));
+		}
+
+		final List<WebsocketMessage> drained = messageService.drain(USER_ID);
+		assertEquals(CommonConstants.MAX_QUEUE_SIZE, drained.size());
+		assertEquals(5, sequence(drained.get(0)));
+		assertEquals(CommonConstants.MAX_QUEUE_SIZE + 4, sequence(drained.get(drained.size() - 1)));
+	}
+
+	@Test
+	void requeuedMessagesGoBackAtTheHead() {
+		messageService.sendMessage(message(USER_ID, 2));
+		messageService.requeue(USER_ID, List.of(message(USER_ID, 0), message(USER_ID, 1)));
+
+		assertEquals(List.of(0, 1, 2), sequences(messageService.drain(USER_ID)));
+	}
+
+	@Test
+	void rateLimitHoldsBackTheRestAndReschedules() throws InterruptedException {
+		final ApplicationProperties.Tenancy tenancy = new ApplicationProperties.Tenancy();
+		tenancy.setDrainWorkers(1);
+		tenancy.setRateLimit(10);
+		messageService = new MessageService(tenancy);
+		final Semaphore notifications = new Semaphore(0);
+		messageService.setPendingMessageListener(new PendingMessageListener() {
+			@Override
+			public void onPending(final Long userId) {
+				notifications.release();
+			}
+		});
+		for (int i = 0; i < 25; i++) {
+			messageService.sendMessage(message(USER_ID, i));
+		}
+		assertTrue(notifications.tryAcquire(5, TimeUnit.SECONDS));
+
+		// The bucket starts with one second of permits
+		final List<WebsocketMessage> first = messageService.drain(USER_ID);
+		assertEquals(10, first.size());
+		assertEquals(0, sequence(first.get(0)));
+		assertEquals(15, stats().get(CommonConstants.DEFAULT_ORGANIZATION).getQueuedMessages());
+		// The user is scheduled again, and the worker waits for the next permit before notifying
+		notifications.drainPermits();
+		assertTrue(notifications.tryAcquire(5, TimeUnit.SECONDS));
+		final List<WebsocketMessage> next = messageService.drain(USER_ID);
+		assertTrue(!next.isEmpty() && next.size() < 15, "drained " + next.size());
+		assertEquals(10, sequence(next.get(0)));
+	}
+
+	@Test
+	void assignmentMovesTheQueueInOrder() {
+		messageService.sendMessage(message(USER_ID, 0));
+		messageService.sendMessage(message(USER_ID, 1));
+		messageService.assignOrganization(USER_ID, "acme");
+		messageService.sendMessage(message(USER_ID, 2));
+
+		assertEquals(0, stats().get(CommonConstants.DEFAULT_ORGANIZATION).getQueuedMessages());
+		assertEquals(3, stats().get("acme").getQueuedMessages());
+		assertEquals(List.of(0, 1, 2), sequences(messageService.drain(USER_ID)));
+	}
+
+	@Test
+	void assignmentsRacingEnqueuesLoseAndReorderNothing() throws InterruptedException {
+		final int count = 50_000;
+		final Thread producer = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				messageService.sendMessage(message(USER_ID, i));
+			}
+		});
+		producer.start();
+		int assignments = 0;
+		while (producer.isAlive()) {
+			messageService.assignOrganization(USER_ID, "org-" + assignments++ % 3);
+		}
+		producer.join();
+
+		// Every message is in the user's current shard, none left behind in another
+		final List<WebsocketMessage> drained = new ArrayList<>();
+		List<WebsocketMessage> batch = messageService.drain(USER_ID);
+		while (!batch.isEmpty()) {
+			drained.addAll(batch);
+			batch = messageService.drain(USER_ID);
+		}
+		assertEquals(0, messageService.getQueuedMessages());
+		final List<Integer> sequences = sequences(drained);
+		final int dropped = count - CommonConstants.MAX_QUEUE_SIZE;
+		assertEquals(CommonConstants.MAX_QUEUE_SIZE, sequences.size());
+		for (int i = 0; i < sequences.size(); i++) {
+			assertEquals(dropped + i, sequences.get(i));
+		}
+	}
+
+	private Map<String, TenantStats> stats() {
+		return messageService.getTenantStats().stream()
+				.collect(Collectors.toMap(TenantStats::getOrganization, Function.identity()));
+	}
+
+	private static List<Integer> sequences(final List<WebsocketMessage> websocketMessages) {
+		return websocketMessages.stream().map(TenantShardTests::sequence).collect(Collectors.toList());
+	}
+
+	private static int sequence(final WebsocketMessage websocketMessage) {
+		return Integer.parseInt(websocketMessage.getParameters().get(0));
+	}
+
+	private static WebsocketMessage message(final Long userId, final int sequence) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setParameters(List.of(Integer.toString(sequence)));
+		return websocketMessage;
+	}
+}
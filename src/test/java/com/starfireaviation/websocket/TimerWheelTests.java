@@ -0,0 +1,129 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket;
+
+import com.starfireaviation.websocket.util.TimerWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Expires timeouts no earlier than their delay, including delays spanning several turns of the wheel.
+ */
+class TimerWheelTests {
+
+	private static final int SIZE = 4;
+
+	private static final long TICK = 10;
+
+	private final TimerWheel timerWheel = new TimerWheel("test-timer", SIZE, TICK);
+
+	@AfterEach
+	void close() {
+		timerWheel.close();
+	}
+
+	@Test
+	void timeoutSpanningRotationsWaitsForItsRounds() throws InterruptedException {
+		// 9 ticks on a 4-bucket wheel: passes its bucket twice before it is due
+		final LatchTimeout rotating = new LatchTimeout();
+		final LatchTimeout sameBucket = new LatchTimeout();
+		final long start = System.nanoTime();
+		timerWheel.schedule(rotating, TICK * 9);
+		timerWheel.schedule(sameBucket, TICK);
+
+		assertTrue(sameBucket.latch.await(5, TimeUnit.SECONDS));
+		assertTrue(rotating.latch.await(5, TimeUnit.SECONDS));
+		assertTrue(rotating.expiredAt - start >= TimeUnit.MILLISECONDS.toNanos(TICK * 8));
+		assertTrue(sameBucket.expiredAt < rotating.expiredAt);
+	}
+
+	@Test
+	void rescheduledTimeoutExpiresOnce() throws InterruptedException {
+		final LatchTimeout timeout = new LatchTimeout();
+		timerWheel.schedule(timeout, TICK);
+		timerWheel.schedule(timeout, TICK * 3);
+
+		assertTrue(timeout.latch.await(5, TimeUnit.SECONDS));
+		Thread.sleep(TICK * SIZE * 2);
+		assertEquals(1, timeout.expiries);
+	}
+
+	@Test
+	void cancelledTimeoutNeverExpires() throws InterruptedException {
+		final LatchTimeout cancelled = new LatchTimeout();
+		final LatchTimeout kept = new LatchTimeout();
+		timerWheel.schedule(cancelled, TICK * 2);
+		timerWheel.schedule(kept, TICK * 2);
+
+		assertTrue(timerWheel.cancel(cancelled));
+		assertFalse(timerWheel.cancel(cancelled));
+		assertTrue(kept.latch.await(5, TimeUnit.SECONDS));
+		Thread.sleep(TICK * SIZE);
+		assertEquals(1, cancelled.latch.getCount());
+	}
+
+	@Test
+	void ticksRunToCatchUpAfterAStallDoNotExpireTimeoutsEarly() throws InterruptedException {
+		final CountDownLatch stalling = new CountDownLatch(1);
+		final TimerWheel.Timeout stall = new TimerWheel.Timeout() {
+			@Override
+			protected void expire() {
+				stalling.countDown();
+				try {
+					Thread.sleep(TICK * 30);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		timerWheel.schedule(stall, TICK);
+		assertTrue(stalling.await(5, TimeUnit.SECONDS));
+		// Scheduled near the end of the stall, while the wheel is about 25 ticks behind the clock
+		Thread.sleep(TICK * 25);
+		final LatchTimeout timeout = new LatchTimeout();
+		final long scheduledAt = System.nanoTime();
+		timerWheel.schedule(timeout, TICK * 8);
+
+		assertTrue(timeout.latch.await(5, TimeUnit.SECONDS));
+		assertTrue(timeout.expiredAt - scheduledAt >= TimeUnit.MILLISECONDS.toNanos(TICK * 7));
+	}
+
+	private static final class LatchTimeout extends TimerWheel.Timeout {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		private volatile long expiredAt;
+
+		private volatile int expiries;
+
+		@Override
+		protected void expire() {
+			expiredAt = System.nanoTime();
+			expiries++;
+			latch.countDown();
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.model.MessageTemplate;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageTemplates;
+import com.starfireaviation.websocket.util.DirectBufferPool;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares Jackson, the byte[] encoder and the pooled direct buffer encoder on a mix of typical
+ * messages, all matching their template. Reports ns and bytes allocated per message, after checking all three produce the same bytes.
+ */
+public final class EncoderBenchmark {
+
+	private static final int MESSAGES = 1024;
+
+	private static final int ITERATIONS = 5_000_000;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new JavaTimeModule())
+			.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+	private static long sink;
+
+	public static void main(final String[] args) throws Exception {
+		final WebsocketMessage[] messages = messages();
+		final DirectBufferPool pool = new DirectBufferPool(1024, 16);
+		for (final WebsocketMessage websocketMessage : messages) {
+			final byte[] expected = MAPPER.writeValueAsString(websocketMessage).getBytes(StandardCharsets.UTF_8);
+			final ByteBuffer buffer = MessageTemplates.encode(websocketMessage, pool);
+			final byte[] pooled = new byte[buffer.remaining()];
+			buffer.get(pooled);
+			pool.release(buffer);
+			if (!Arrays.equals(expected, MessageTemplates.encode(websocketMessage))
+					|| !Arrays.equals(expected, pooled)) {
+				throw new IllegalStateException("Encoders differ for " + websocketMessage);
+			}
+		}
+		System.out.println("byte-identical for " + messages.length + " messages");
+		for (int round = 0; round < 3; round++) {
+			measure("jackson", messages, m -> MAPPER.writeValueAsBytes(m).length);
+			measure("byte[]", messages, m -> MessageTemplates.encode(m).length);
+			measure("pooled direct", messages, m -> {
+				final ByteBuffer buffer = MessageTemplates.encode(m, pool);
+				final int length = buffer.remaining();
+				pool.release(buffer);
+				return length;
+			});
+		}
+		System.out.println("direct buffers allocated " + pool.getAllocatedCount());
+	}
+
+	private static void measure(final String name, final WebsocketMessage[] messages, final Encoder encoder)
+			throws Exception {
+		final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final long allocated = threads.getThreadAllocatedBytes(threadId);
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += encoder.encode(messages[i % MESSAGES]);
+		}
+		final long elapsed = System.nanoTime() - start;
+		final double bytes = (double) (threads.getThreadAllocatedBytes(threadId) - allocated) / ITERATIONS;
+		System.out.printf("%-14s %6.1f ns/op %6.1f B/op%n", name, (double) elapsed / ITERATIONS, bytes);
+	}
+
+	private static WebsocketMessage[] messages() {
+		final NotificationEventType[] types = {NotificationEventType.QUESTION_ASKED,
+				NotificationEventType.EVENT_START, NotificationEventType.QUESTION_DISPLAYED,
+				NotificationEventType.USER_SETTINGS, NotificationEventType.HOME_DISPLAYED};
+		final WebsocketMessage[] messages = new WebsocketMessage[MESSAGES];
+		for (int i = 0; i < MESSAGES; i++) {
+			final WebsocketMessage websocketMessage = new WebsocketMessage();
+			websocketMessage.setUserId(100_000L + i);
+			websocketMessage.setEventType(types[i % types.length]);
+			final MessageTemplate template = MessageTemplates.forType(websocketMessage.getEventType());
+			websocketMessage.setService(template.getService());
+			websocketMessage.setOperation(template.getOperation());
+			if (i % types.length != types.length - 1) {
+				websocketMessage.setParameters(List.of(Long.toString(1_000_000L + i * 7919L)));
+			}
+			websocketMessage.setTimestamp(Instant.ofEpochSecond(1_666_000_000L + i, (i % 4) * 250_000_000));
+			if (i % 3 == 0) {
+				websocketMessage.setMessageId((long) i);
+			}
+			messages[i] = websocketMessage;
+		}
+		return messages;
+	}
+
+	@FunctionalInterface
+	private interface Encoder {
+
+		int encode(WebsocketMessage websocketMessage) throws Exception;
+	}
+
+}
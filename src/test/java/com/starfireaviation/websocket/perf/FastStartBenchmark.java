@@ -0,0 +1,60 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import com.starfireaviation.websocket.WebsocketApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reports time-to-ready of the fast-start profile against the default configuration, after a warm-up
+ * start so class loading does not penalize the first measurement. Usage:
+ * <code>FastStartBenchmark [rounds]</code>.
+ */
+public final class FastStartBenchmark {
+
+	public static void main(final String[] args) {
+		final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		timeToReady();
+		for (int round = 0; round < rounds; round++) {
+			final Duration defaults = timeToReady();
+			final Duration fastStart = timeToReady("faststart");
+			System.out.printf("time-to-ready  default %5d ms  faststart %5d ms%n", defaults.toMillis(),
+					fastStart.toMillis());
+		}
+	}
+
+	private static Duration timeToReady(final String... profiles) {
+		final AtomicReference<Duration> timeTaken = new AtomicReference<>();
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WebsocketApplication.class)
+				.profiles(profiles)
+				.properties("server.port=0")
+				.listeners(event -> {
+					if (event instanceof ApplicationReadyEvent) {
+						timeTaken.set(((ApplicationReadyEvent) event).getTimeTaken());
+					}
+				})
+				.run()) {
+			return timeTaken.get();
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.service.CloseReason;
+import com.starfireaviation.websocket.service.DeliveryChannel;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the heartbeat subsystem with idle connections simulated by channels which only count pings:
+ * heap per registered session, sweeper CPU while the sessions stay alive, and the time to reap them
+ * all once they go silent. Usage: <code>HeartbeatBenchmark [sessions] [intervalMillis]</code>.
+ */
+public final class HeartbeatBenchmark {
+
+	private static final AtomicLong PINGS = new AtomicLong();
+
+	public static void main(final String[] args) throws Exception {
+		final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		final long interval = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		final ApplicationProperties.Heartbeat heartbeat = new ApplicationProperties.Heartbeat();
+		heartbeat.setInterval(interval);
+		heartbeat.setBuckets(100);
+		heartbeat.setTimeout(interval * 5);
+
+		final MessageService messageService = new MessageService();
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		final long heapBefore = usedHeap(memory);
+		final DeliveryService deliveryService =
+				new DeliveryService(messageService, new ApplicationProperties.Delivery(), heartbeat,
+						new ApplicationProperties.SendBuffer());
+		final IdleChannel[] channels = new IdleChannel[sessions];
+		for (int i = 0; i < sessions; i++) {
+			channels[i] = new IdleChannel(i);
+			deliveryService.register((long) i, channels[i]);
+		}
+		final long heapAfter = usedHeap(memory);
+		System.out.printf("sessions            %d%n", deliveryService.getSessionCount());
+		System.out.printf("heap per session    %d B (including the simulated channel)%n",
+				(heapAfter - heapBefore) / sessions);
+
+		// Alive phase: clients answer every ping, so nothing is reaped
+		final Thread sweeper = findThread("heartbeat-sweeper");
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		final long cpuBefore = threads.getThreadCpuTime(sweeper.getId());
+		final long pingsBefore = PINGS.get();
+		final long start = System.nanoTime();
+		final long rounds = 5;
+		for (long elapsed = 0; elapsed < interval * rounds; elapsed += interval / 10) {
+			Thread.sleep(interval / 10);
+			for (int i = 0; i < sessions; i++) {
+				deliveryService.touch((long) i, channels[i]);
+			}
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final long cpu = threads.getThreadCpuTime(sweeper.getId()) - cpuBefore;
+		final long pings = PINGS.get() - pingsBefore;
+		System.out.printf("pings               %d (%.0f/s)%n", pings, pings / seconds);
+		System.out.printf("sweeper CPU         %.2f%% of one core, %.0f ns/ping%n",
+				100.0 * cpu / (seconds * 1e9), (double) cpu / Math.max(1, pings));
+		System.out.printf("sweeper CPU at 30s  %.3f%% of one core (projected for the default interval)%n",
+				100.0 * cpu / (seconds * 1e9) * interval / 30000);
+
+		// Silent phase: every session misses its deadline
+		final long silentStart = System.nanoTime();
+		while (deliveryService.getSessionCount() > 0) {
+			Thread.sleep(10);
+		}
+		System.out.printf("reaped              %d in %.1f s after going silent (timeout %d ms)%n",
+				deliveryService.getReapedCount(), (System.nanoTime() - silentStart) / 1e9, heartbeat.getTimeout());
+		deliveryService.close();
+	}
+
+	private static long usedHeap(final MemoryMXBean memory) throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+	private static Thread findThread(final String name) {
+		return Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> name.equals(thread.getName()))
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private static final class IdleChannel implements DeliveryChannel {
+
+		private final int id;
+
+		private volatile boolean open = true;
+
+		IdleChannel(final int channelId) {
+			id = channelId;
+		}
+
+		@Override
+		public String getId() {
+			return "idle-" + id;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void send(final ByteBuffer payload, final SendCallback callback) {
+			callback.onComplete(null);
+		}
+
+		@Override
+		public void ping() {
+			PINGS.incrementAndGet();
+		}
+
+		@Override
+		public void close(final CloseReason closeReason) {
+			open = false;
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.model.ResponseOption;
+import com.starfireaviation.websocket.model.InboundFrame;
+import com.starfireaviation.websocket.util.InboundFrameDecoder;
+import com.starfireaviation.websocket.util.ResponseParser;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the streaming InboundFrameDecoder with decoding through a String and a Jackson tree.
+ * Reports time and bytes allocated per decoded frame.
+ */
+public final class InboundDecoderBenchmark {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final byte[] FRAME = "{\"clientMessageId\":12345,\"questionId\":987654,\"answer\":\"b\"}"
+			.getBytes(StandardCharsets.UTF_8);
+
+	private static final int ITERATIONS = 2_000_000;
+
+	private static long sink;
+
+	public static void main(final String[] args) throws Exception {
+		for (int round = 0; round < 3; round++) {
+			measure("tree", () -> {
+				final JsonNode node = MAPPER.readTree(new String(FRAME, StandardCharsets.UTF_8));
+				final ResponseOption responseOption = ResponseParser.determineResponse(node.get("answer").asText());
+				return node.get("questionId").asLong() + node.get("clientMessageId").asLong() + responseOption.ordinal();
+			});
+			measure("streaming", () -> {
+				final InboundFrame frame = InboundFrameDecoder.decode(ByteBuffer.wrap(FRAME));
+				return frame.getQuestionId() + frame.getClientMessageId() + frame.getResponse().ordinal();
+			});
+		}
+		System.out.println(sink);
+	}
+
+	private static void measure(final String name, final Decode decode) throws Exception {
+		final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final long allocated = threads.getThreadAllocatedBytes(threadId);
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += decode.decode();
+		}
+		final long elapsed = System.nanoTime() - start;
+		System.out.printf("%-10s %6.1f ns/op %6d B/op%n", name, (double) elapsed / ITERATIONS,
+				(threads.getThreadAllocatedBytes(threadId) - allocated) / ITERATIONS);
+	}
+
+	@FunctionalInterface
+	private interface Decode {
+		long decode() throws Exception;
+	}
+
+}
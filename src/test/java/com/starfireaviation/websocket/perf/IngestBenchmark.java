@@ -0,0 +1,197 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import com.starfireaviation.model.Message;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.model.IngestSummary;
+import com.starfireaviation.websocket.model.MessageTrace;
+import com.starfireaviation.websocket.service.IngestService;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTracer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Ingests 1M generated records as NDJSON and as length-prefixed binary. Bodies are generated as they
+ * are read, so the only memory in play is the ingestion pipeline's. Sends are counted instead of
+ * queued, isolating ingestion from delivery. Reports records/s, bytes allocated per record and peak
+ * heap. Usage: <code>IngestBenchmark [records]</code>.
+ */
+public final class IngestBenchmark {
+
+	private static final NotificationEventType[] TYPES = {
+			NotificationEventType.QUESTION_ASKED, NotificationEventType.EVENT_UPCOMING,
+			NotificationEventType.QUESTION_DISPLAYED,
+	};
+
+	private static final byte[][] JSON_PREFIX = new byte[TYPES.length][];
+
+	private static final byte[][] NAMES = new byte[TYPES.length][];
+
+	private static final byte[] JSON_REFERENCE = ",\"referenceId\":".getBytes(StandardCharsets.US_ASCII);
+
+	static {
+		for (int i = 0; i < TYPES.length; i++) {
+			NAMES[i] = TYPES[i].name().getBytes(StandardCharsets.US_ASCII);
+			JSON_PREFIX[i] = ("{\"eventType\":\"" + TYPES[i] + "\",\"message\":{\"id\":")
+					.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		final CountingMessageService messageService = new CountingMessageService();
+		final IngestService ingestService = new IngestService(messageService,
+				CommonConstants.DEFAULT_INGEST_MAX_RECORD_BYTES, MessageTracer.DISABLED);
+		for (int round = 0; round < 3; round++) {
+			measure("ndjson", records, () -> ingestService.ingestNdjson(new GeneratedBody(records, false),
+					OutputStream.nullOutputStream()));
+			measure("binary", records, () -> ingestService.ingestBinary(new GeneratedBody(records, true),
+					OutputStream.nullOutputStream()));
+		}
+		System.out.println("sent " + messageService.sent);
+	}
+
+	private static void measure(final String name, final int records, final Ingest ingest) throws Exception {
+		final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		System.gc();
+		ManagementFactory.getMemoryPoolMXBeans().forEach(pool -> pool.resetPeakUsage());
+		final long allocated = threads.getThreadAllocatedBytes(threadId);
+		final long start = System.nanoTime();
+		final IngestSummary summary = ingest.ingest();
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		final long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(pool -> pool.getType() == java.lang.management.MemoryType.HEAP)
+				.mapToLong(pool -> pool.getPeakUsage().getUsed())
+				.sum();
+		System.out.printf("%-7s %,10.0f records/s %5d B/record  peak heap %4d MB  %s%n", name,
+				records / seconds, (threads.getThreadAllocatedBytes(threadId) - allocated) / records,
+				peakHeap >> 20, summary);
+	}
+
+	@FunctionalInterface
+	private interface Ingest {
+		IngestSummary ingest() throws Exception;
+	}
+
+	/**
+	 * MessageService which counts sends instead of queueing them.
+	 */
+	private static final class CountingMessageService extends MessageService {
+
+		private long sent;
+
+		@Override
+		protected void send(final NotificationEventType eventType, final Message message, final Long referenceId,
+				final MessageTrace trace) {
+			sent += message.getId();
+		}
+	}
+
+	/**
+	 * Request body generated record by record as it is read.
+	 */
+	private static final class GeneratedBody extends InputStream {
+
+		private final int records;
+
+		private final boolean binary;
+
+		private int next;
+
+		private ByteBuffer current = ByteBuffer.allocate(0);
+
+		private final ByteBuffer binaryRecord = ByteBuffer.allocate(64);
+
+		private final ByteBuffer jsonRecord = ByteBuffer.allocate(128);
+
+		GeneratedBody(final int recordCount, final boolean binaryRecords) {
+			records = recordCount;
+			binary = binaryRecords;
+		}
+
+		@Override
+		public int read() {
+			final byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) {
+			if (!current.hasRemaining()) {
+				if (next == records) {
+					return -1;
+				}
+				current = binary ? binaryRecord(next) : jsonRecord(next);
+				next++;
+			}
+			final int count = Math.min(length, current.remaining());
+			current.get(bytes, offset, count);
+			return count;
+		}
+
+		private ByteBuffer jsonRecord(final int i) {
+			final NotificationEventType type = TYPES[i % TYPES.length];
+			jsonRecord.clear();
+			jsonRecord.put(JSON_PREFIX[i % TYPES.length]);
+			putDigits(i);
+			jsonRecord.put((byte) '}');
+			if (type == NotificationEventType.QUESTION_DISPLAYED) {
+				jsonRecord.put(JSON_REFERENCE);
+				putDigits(i);
+			}
+			jsonRecord.put((byte) '}').put((byte) '\n');
+			return jsonRecord.flip();
+		}
+
+		private void putDigits(final int value) {
+			final int start = jsonRecord.position();
+			int remaining = value;
+			do {
+				jsonRecord.put((byte) ('0' + remaining % 10));
+				remaining /= 10;
+			} while (remaining > 0);
+			for (int left = start, right = jsonRecord.position() - 1; left < right; left++, right--) {
+				final byte digit = jsonRecord.get(left);
+				jsonRecord.put(left, jsonRecord.get(right));
+				jsonRecord.put(right, digit);
+			}
+		}
+
+		private ByteBuffer binaryRecord(final int i) {
+			final NotificationEventType type = TYPES[i % TYPES.length];
+			final byte[] name = NAMES[i % TYPES.length];
+			final boolean reference = type == NotificationEventType.QUESTION_DISPLAYED;
+			binaryRecord.clear();
+			binaryRecord.putInt(1 + name.length + Long.BYTES + (reference ? Long.BYTES : 0));
+			binaryRecord.put((byte) name.length).put(name).putLong(i);
+			if (reference) {
+				binaryRecord.putLong(i);
+			}
+			return binaryRecord.flip();
+		}
+	}
+
+}
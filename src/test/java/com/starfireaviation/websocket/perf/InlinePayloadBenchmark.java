@@ -0,0 +1,188 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.HttpContentResolver;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTemplates;
+import com.starfireaviation.websocket.service.RenderedContentCache;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asks a class of students a series of questions, against a local question service which takes 5 ms
+ * per request. Without inline payloads every recipient fetches the question after the notification;
+ * with them the question is fetched and rendered once and embedded in every notification. Reports the
+ * backend requests, the time until every recipient has the question and the bytes per notification.
+ */
+public final class InlinePayloadBenchmark {
+
+	private static final int STUDENTS = 2_000;
+
+	private static final int QUESTIONS = 10;
+
+	private static final int SENDERS = 8;
+
+	private static final int CLIENT_CONCURRENCY = 64;
+
+	private static final long BACKEND_LATENCY_MILLIS = 5;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final AtomicLong BACKEND_REQUESTS = new AtomicLong();
+
+	public static void main(final String[] args) throws Exception {
+		((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+		final HttpServer backend = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		backend.createContext("/questions/", exchange -> {
+			BACKEND_REQUESTS.incrementAndGet();
+			try {
+				Thread.sleep(BACKEND_LATENCY_MILLIS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			final String id = exchange.getRequestURI().getPath().substring("/questions/".length());
+			final byte[] body = MAPPER.writeValueAsBytes(Map.of("id", id, "text",
+					"An aircraft is cleared for the option. Which of these may the pilot do?",
+					"choices", List.of("Touch-and-go", "Low approach", "Missed approach", "Any of these")));
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		backend.setExecutor(Executors.newFixedThreadPool(CLIENT_CONCURRENCY));
+		backend.start();
+		final String url = "http://localhost:" + backend.getAddress().getPort() + "/questions/{id}";
+		try {
+			for (int round = 0; round < 2; round++) {
+				fetchPerRecipient(url);
+				inline(url);
+			}
+		} finally {
+			backend.stop(0);
+			System.exit(0);
+		}
+	}
+
+	private static void fetchPerRecipient(final String url) throws Exception {
+		final MessageService messageService = new MessageService();
+		final HttpClient httpClient = HttpClient.newHttpClient();
+		final Semaphore inFlight = new Semaphore(CLIENT_CONCURRENCY);
+		final long requestsBefore = BACKEND_REQUESTS.get();
+		final long start = System.nanoTime();
+		final long frameBytes = send(messageService, () -> { });
+		final List<CompletableFuture<?>> fetches = new ArrayList<>();
+		for (int question = 0; question < QUESTIONS; question++) {
+			for (int student = 0; student < STUDENTS; student++) {
+				inFlight.acquire();
+				fetches.add(httpClient.sendAsync(HttpRequest.newBuilder(URI.create(url.replace(
+								HttpContentResolver.ID_PLACEHOLDER, String.valueOf(question)))).build(),
+						HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, throwable) -> inFlight.release()));
+			}
+		}
+		CompletableFuture.allOf(fetches.toArray(new CompletableFuture[0])).join();
+		report("Fetch per recipient", start, BACKEND_REQUESTS.get() - requestsBefore, frameBytes);
+	}
+
+	private static void inline(final String url) throws Exception {
+		final ApplicationProperties.Inline inline = new ApplicationProperties.Inline();
+		inline.setEnabled(true);
+		inline.setUrls(Map.of(MessageService.QUESTION_SERVICE, url));
+		final MessageService messageService = new MessageService();
+		final RenderedContentCache cache = new RenderedContentCache(new HttpContentResolver(inline.getUrls(),
+				inline.getTimeout(), MAPPER), MAPPER, inline);
+		messageService.setContentCache(cache);
+		final long requestsBefore = BACKEND_REQUESTS.get();
+		final long start = System.nanoTime();
+		// Senders do not wait for the fetches, so wait for them before the messages are drained
+		final long frameBytes = send(messageService, () -> {
+			for (int question = 0; question < QUESTIONS; question++) {
+				cache.get(MessageService.QUESTION_SERVICE, String.valueOf(question));
+			}
+		});
+		report("Inline payload", start, BACKEND_REQUESTS.get() - requestsBefore, frameBytes);
+	}
+
+	// Sends every question to the whole class and returns the bytes of the encoded notifications
+	private static long send(final MessageService messageService, final Runnable beforeDrain) throws Exception {
+		final ExecutorService senders = Executors.newFixedThreadPool(SENDERS);
+		for (int question = 0; question < QUESTIONS; question++) {
+			final List<Future<?>> sent = new ArrayList<>();
+			for (int sender = 0; sender < SENDERS; sender++) {
+				final int first = sender;
+				final String questionId = String.valueOf(question);
+				sent.add(senders.submit(() -> {
+					for (long student = first; student < STUDENTS; student += SENDERS) {
+						messageService.sendMessage(questionAsked(student, questionId));
+					}
+				}));
+			}
+			for (final Future<?> future : sent) {
+				future.get();
+			}
+		}
+		senders.shutdown();
+		senders.awaitTermination(1, TimeUnit.MINUTES);
+		beforeDrain.run();
+		long bytes = 0;
+		for (long student = 0; student < STUDENTS; student++) {
+			for (final WebsocketMessage websocketMessage : messageService.drain(student)) {
+				bytes += MessageTemplates.encode(websocketMessage).length;
+			}
+		}
+		return bytes;
+	}
+
+	private static void report(final String mode, final long start, final long requests, final long frameBytes) {
+		System.out.printf("%-20s backend requests %6d, every recipient has the question after %5d ms, "
+						+ "%4d bytes per notification%n", mode, requests,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), frameBytes / ((long) STUDENTS * QUESTIONS));
+	}
+
+	private static WebsocketMessage questionAsked(final long userId, final String questionId) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setService(MessageService.QUESTION_SERVICE);
+		websocketMessage.setOperation(MessageService.GET_OPERATION);
+		websocketMessage.setParameters(List.of(questionId));
+		websocketMessage.setTimestamp(java.time.Instant.now());
+		return websocketMessage;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.perf;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.starfireaviation.websocket.handler.InboundFrameDispatcher;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.ResponseService;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Measures the cost of the custom JFR events on the enqueue and inbound paths: with no recording,
+ * with a recording using the JDK default profile (custom events disabled) and with the websocket.jfc
+ * profile (custom events enabled). Reports ns and bytes allocated per operation, then the events
+ * recorded with the websocket.jfc profile. Run from the project root.
+ */
+public final class JfrOverheadBenchmark {
+
+	private static final Path SETTINGS = Path.of("src/main/jfr/websocket.jfc");
+
+	private static final byte[] FRAME = "{\"questionId\":987654,\"answer\":\"b\"}"
+			.getBytes(StandardCharsets.UTF_8);
+
+	private static final int USERS = 1000;
+
+	private static final int ITERATIONS = 2_000_000;
+
+	public static void main(final String[] args) throws Exception {
+		((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+		final Path output = Files.createTempFile("websocket", ".jfr");
+		for (int round = 0; round < 3; round++) {
+			measure("no recording", null, null);
+			measure("default.jfc", Configuration.getConfiguration("default"), null);
+			measure("websocket.jfc", Configuration.create(SETTINGS), output);
+		}
+		final Map<String, Integer> counts = new TreeMap<>();
+		for (final RecordedEvent event : RecordingFile.readAllEvents(output)) {
+			if (event.getEventType().getName().startsWith("com.starfireaviation")) {
+				counts.merge(event.getEventType().getName(), 1, Integer::sum);
+			}
+		}
+		System.out.println("recorded " + counts);
+		Files.delete(output);
+	}
+
+	private static void measure(final String name, final Configuration configuration, final Path output)
+			throws Exception {
+		final MessageService messageService = new MessageService();
+		final InboundFrameDispatcher dispatcher = new InboundFrameDispatcher(null, new ResponseService(0));
+		final ByteBuffer frame = ByteBuffer.wrap(FRAME);
+		final Recording recording = configuration == null ? null : new Recording(configuration);
+		if (recording != null) {
+			recording.start();
+		}
+		final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final long allocated = threads.getThreadAllocatedBytes(threadId);
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			final long userId = i % USERS;
+			final WebsocketMessage websocketMessage = new WebsocketMessage();
+			websocketMessage.setUserId(userId);
+			messageService.sendMessage(websocketMessage);
+			messageService.drain(userId);
+			dispatcher.dispatch(userId, frame);
+		}
+		final long elapsed = System.nanoTime() - start;
+		final long bytes = (threads.getThreadAllocatedBytes(threadId) - allocated) / ITERATIONS;
+		if (recording != null) {
+			recording.stop();
+			if (output != null) {
+				recording.dump(output);
+			}
+			recording.close();
+		}
+		System.out.printf("%-14s %6.1f ns/op %6d B/op%n", name, (double) elapsed / ITERATIONS, bytes);
+	}
+
+}
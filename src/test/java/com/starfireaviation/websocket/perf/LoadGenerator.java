@@ -0,0 +1,455 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.WebsocketApplication;
+import com.starfireaviation.websocket.handler.NettyNotificationServer;
+import com.starfireaviation.websocket.model.AdmissionStats;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.AdmissionController;
+import com.starfireaviation.websocket.service.DeliveryService;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.ResponseService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.net.http.WebSocketHandshakeException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Offline load generator. Starts the application locally, opens N concurrent WebSocket clients,
+ * drives QUESTION_ASKED notifications through MessageService, answers each one over the inbound path
+ * and reports throughput plus end-to-end delivery latency percentiles. Messages carrying a messageId
+ * (at-least-once delivery) are acknowledged. Clients opt in to batching, so batch array frames are
+ * unpacked; frames per second and the process's read and write syscalls (server and client together,
+ * from <code>/proc/self/io</code>) are reported so runs with <code>--websocket.batching.enabled</code>
+ * true and false can be compared.
+ *
+ * <p>With <code>--storm-messages</code>, a reconnect storm follows: all but the first
+ * <code>--steady-clients</code> clients drop, that many QUESTION_DISPLAYED notifications are queued for
+ * each while it is offline, and all of them reconnect at once, retrying deferred handshakes after their
+ * <code>Retry-After</code>. Notifications keep flowing to the steady clients meanwhile, and their latency,
+ * the time until every client is back, the handshakes deferred, the display updates shed, GC time and peak
+ * heap are reported so runs with <code>--websocket.admission.enabled</code> true and false can be compared.
+ *
+ * <p>Pass <code>--websocket.transport=netty</code> to load the Reactor Netty transport instead of the servlet one.
+ *
+ * <p>Options (all <code>--name=value</code>, anything else is passed to the application):
+ * <ul>
+ *     <li><code>--clients</code> concurrent WebSocket clients (default 1000)</li>
+ *     <li><code>--rounds</code> notifications per client (default 10)</li>
+ *     <li><code>--interval-ms</code> pause between rounds, to model light load (default 0: all at once)</li>
+ *     <li><code>--connect-concurrency</code> handshakes in flight at once (default 500)</li>
+ *     <li><code>--timeout-seconds</code> time allowed for delivery (default 120)</li>
+ *     <li><code>--max-p99-ms</code> exit non-zero when p99 latency exceeds this (default: no gate)</li>
+ * </ul>
+ *
+ * <p>Run with
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.starfireaviation.websocket.perf.LoadGenerator -Dexec.args="--clients=5000"</code>.
+ * Raise the open file limit (<code>ulimit -n</code>) above twice the client count first.
+ */
+public final class LoadGenerator {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final Map<String, String> options = new HashMap<>();
+
+	private final List<String> applicationArgs = new ArrayList<>();
+
+	private final Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(5), 3);
+
+	private final AtomicLong received = new AtomicLong();
+
+	private final AtomicLong answered = new AtomicLong();
+
+	private final AtomicLong frames = new AtomicLong();
+
+	private final Histogram stormLatency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(5), 3);
+
+	private final AtomicLong displayed = new AtomicLong();
+
+	private final AtomicLong deferred = new AtomicLong();
+
+	private volatile boolean storming;
+
+	private LoadGenerator(final String[] args) {
+		for (final String arg : args) {
+			final int eq = arg.indexOf('=');
+			final String name = eq > 2 ? arg.substring(2, eq) : "";
+			if (arg.startsWith("--") && List.of("clients", "rounds", "connect-concurrency", "timeout-seconds",
+					"max-p99-ms", "interval-ms", "storm-messages", "steady-clients").contains(name)) {
+				options.put(name, arg.substring(eq + 1));
+			} else {
+				applicationArgs.add(arg);
+			}
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		System.exit(new LoadGenerator(args).run());
+	}
+
+	private int option(final String name, final int defaultValue) {
+		return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+	}
+
+	private int run() throws Exception {
+		final int clients = option("clients", 1000);
+		final int rounds = option("rounds", 10);
+		final List<String> args = new ArrayList<>(applicationArgs);
+		args.add("--server.port=0");
+		args.add("--spring.main.banner-mode=off");
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WebsocketApplication.class)
+				.profiles(LoadTestConfig.PROFILE)
+				.run(args.toArray(new String[0]))) {
+			final int port = context.getBeanProvider(NettyNotificationServer.class)
+					.stream()
+					.map(NettyNotificationServer::getPort)
+					.findFirst()
+					.orElseGet(() -> context.getEnvironment().getRequiredProperty("local.server.port", Integer.class));
+			final String endpoint = context.getEnvironment().getProperty("websocket.endpoint", "/ws");
+			final MessageService messageService = context.getBean(MessageService.class);
+			final ResponseService responseService = context.getBean(ResponseService.class);
+
+			final HttpClient httpClient = HttpClient.newHttpClient();
+			final Semaphore handshakes = new Semaphore(option("connect-concurrency", 500));
+			final List<CompletableFuture<WebSocket>> connecting = new ArrayList<>(clients);
+			final long heapBefore = usedHeapAfterGc();
+			final long connectStart = System.nanoTime();
+			for (long userId = 1; userId <= clients; userId++) {
+				handshakes.acquire();
+				connecting.add(httpClient.newWebSocketBuilder()
+						.buildAsync(URI.create("ws://localhost:" + port + endpoint + "?batch=true&userId=" + userId), new Client())
+						.whenComplete((webSocket, throwable) -> handshakes.release()));
+			}
+			CompletableFuture.allOf(connecting.toArray(new CompletableFuture[0])).join();
+			System.out.printf("Connected %d clients in %d ms%n", clients,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+			// Includes the client side of each connection, which is the same whichever transport is used
+			System.out.printf("Idle heap per connection (server + client): %.1f KB, live threads: %d%n",
+					(usedHeapAfterGc() - heapBefore) / 1024.0 / clients, Thread.activeCount());
+
+			final long expected = (long) clients * rounds;
+			final int interval = option("interval-ms", 0);
+			final long[] syscallsBefore = syscalls();
+			final long start = System.nanoTime();
+			for (int round = 0; round < rounds; round++) {
+				for (long userId = 1; userId <= clients; userId++) {
+					messageService.sendMessage(questionAsked(userId, round));
+				}
+				if (interval > 0) {
+					Thread.sleep(interval);
+				}
+			}
+			final long deadline = start + TimeUnit.SECONDS.toNanos(option("timeout-seconds", 120));
+			while ((received.get() < expected || responseService.getAcceptedCount() < expected)
+					&& System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			final double seconds = (System.nanoTime() - start) / 1e9;
+			final long[] syscallsAfter = syscalls();
+
+			System.out.printf("Delivered %d/%d notifications in %.2f s (%.0f msg/s)%n", received.get(), expected,
+					seconds, received.get() / seconds);
+			System.out.printf("Frames received %d (%.0f frames/s, %.2f msg/frame)%n", frames.get(),
+					frames.get() / seconds, received.get() / (double) Math.max(1, frames.get()));
+			if (syscallsBefore.length > 0 && syscallsAfter.length > 0) {
+				System.out.printf("Syscalls (server + client): read %d, write %d (%.2f per message)%n",
+						syscallsAfter[0] - syscallsBefore[0], syscallsAfter[1] - syscallsBefore[1],
+						(syscallsAfter[0] - syscallsBefore[0] + syscallsAfter[1] - syscallsBefore[1])
+								/ (double) Math.max(1, received.get()));
+			}
+			System.out.printf("Answers sent %d, accepted by server %d%n", answered.get(),
+					responseService.getAcceptedCount());
+			System.out.printf("Delivery latency (us): p50=%d p99=%d p999=%d max=%d%n",
+					latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+					latency.getValueAtPercentile(99.9), latency.getMaxValue());
+			latency.outputPercentileDistribution(System.out, 1.0);
+
+			if (received.get() < expected) {
+				return 1;
+			}
+			if (option("storm-messages", 0) > 0) {
+				storm(context, connecting, port, endpoint);
+			}
+			for (final CompletableFuture<WebSocket> webSocket : connecting) {
+				webSocket.join().abort();
+			}
+			final String maxP99 = options.get("max-p99-ms");
+			if (maxP99 != null && latency.getValueAtPercentile(99) > TimeUnit.MILLISECONDS.toMicros(Long.parseLong(maxP99))) {
+				System.out.printf("p99 latency exceeds %s ms%n", maxP99);
+				return 2;
+			}
+			return 0;
+		}
+	}
+
+	private void storm(final ConfigurableApplicationContext context, final List<CompletableFuture<WebSocket>> connected,
+			final int port, final String endpoint) throws Exception {
+		final MessageService messageService = context.getBean(MessageService.class);
+		final AdmissionController admissionController = context.getBean(AdmissionController.class);
+		final int clients = connected.size();
+		final int steady = Math.min(option("steady-clients", 100), clients);
+		final int stormMessages = option("storm-messages", 0);
+		for (int i = steady; i < clients; i++) {
+			connected.get(i).join().abort();
+		}
+		// Let the server see the connections go before queueing for them
+		final DeliveryService deliveryService = context.getBean(DeliveryService.class);
+		final long closing = System.nanoTime() + TimeUnit.SECONDS.toNanos(option("timeout-seconds", 120));
+		while (deliveryService.getSessionCount() > steady && System.nanoTime() < closing) {
+			Thread.sleep(10);
+		}
+		final AdmissionStats before = admissionController.getStats();
+		for (int message = 0; message < stormMessages; message++) {
+			for (long userId = steady + 1; userId <= clients; userId++) {
+				messageService.sendMessage(questionDisplayed(userId, message));
+			}
+		}
+		System.out.printf("Storm: %d clients dropped, %d display updates queued while offline, %d queued after "
+				+ "shedding%n", clients - steady, (long) (clients - steady) * stormMessages,
+				messageService.getQueuedMessages());
+
+		final long gcBefore = gcMillis();
+		ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+		storming = true;
+		final Thread ticker = new Thread(() -> {
+			for (int round = 0; storming; round++) {
+				for (long userId = 1; userId <= steady; userId++) {
+					messageService.sendMessage(questionAsked(userId, round));
+				}
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException ie) {
+					return;
+				}
+			}
+		}, "storm-ticker");
+		ticker.start();
+
+		final HttpClient httpClient = HttpClient.newHttpClient();
+		final long start = System.nanoTime();
+		final List<CompletableFuture<WebSocket>> reconnecting = new ArrayList<>(clients - steady);
+		for (long userId = steady + 1; userId <= clients; userId++) {
+			reconnecting.add(connect(httpClient, URI.create("ws://localhost:" + port + endpoint + "?batch=true&userId="
+					+ userId)));
+		}
+		CompletableFuture.allOf(reconnecting.toArray(new CompletableFuture[0])).join();
+		final long reconnected = System.nanoTime() - start;
+		final long deadline = start + TimeUnit.SECONDS.toNanos(option("timeout-seconds", 120));
+		while (messageService.getQueuedMessages() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		final long drained = System.nanoTime() - start;
+		storming = false;
+		ticker.join();
+		long peakHeap = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+		final AdmissionStats after = admissionController.getStats();
+
+		System.out.printf("Storm: %d clients back in %d ms, queues drained in %d ms%n", clients - steady,
+				TimeUnit.NANOSECONDS.toMillis(reconnected), TimeUnit.NANOSECONDS.toMillis(drained));
+		System.out.printf("Storm: handshakes deferred %d (server counted %d), display updates delivered %d, shed %d%n",
+				deferred.get(), after.getRejected() - before.getRejected(), displayed.get(),
+				after.getShedMessages() - before.getShedMessages());
+		System.out.printf("Storm: GC %d ms, peak heap %d MB of %d MB%n", gcMillis() - gcBefore, peakHeap >> 20,
+				Runtime.getRuntime().maxMemory() >> 20);
+		System.out.printf("Storm: steady client latency (us): p50=%d p99=%d max=%d over %d notifications%n",
+				stormLatency.getValueAtPercentile(50), stormLatency.getValueAtPercentile(99),
+				stormLatency.getMaxValue(), stormLatency.getTotalCount());
+		for (final CompletableFuture<WebSocket> webSocket : reconnecting) {
+			webSocket.join().abort();
+		}
+		connected.subList(steady, clients).clear();
+	}
+
+	// Connects, retrying after the Retry-After of each deferred handshake
+	private CompletableFuture<WebSocket> connect(final HttpClient httpClient, final URI uri) {
+		return httpClient.newWebSocketBuilder()
+				.buildAsync(uri, new Client())
+				.handle((webSocket, throwable) -> {
+					if (throwable == null) {
+						return CompletableFuture.completedFuture(webSocket);
+					}
+					final Throwable cause = throwable.getCause() == null ? throwable : throwable.getCause();
+					if (!(cause instanceof WebSocketHandshakeException)) {
+						return CompletableFuture.<WebSocket>failedFuture(cause);
+					}
+					deferred.incrementAndGet();
+					final long retryAfter = ((WebSocketHandshakeException) cause).getResponse().headers()
+							.firstValueAsLong("Retry-After").orElse(1);
+					return CompletableFuture.supplyAsync(() -> uri,
+									CompletableFuture.delayedExecutor(retryAfter, TimeUnit.SECONDS))
+							.thenCompose(retry -> connect(httpClient, retry));
+				})
+				.thenCompose(Function.identity());
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private static long usedHeapAfterGc() throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	// Read and write syscalls of this process so far, or nothing where /proc is unavailable
+	private static long[] syscalls() {
+		try {
+			long reads = 0;
+			long writes = 0;
+			for (final String line : Files.readAllLines(Path.of("/proc/self/io"))) {
+				if (line.startsWith("syscr:")) {
+					reads = Long.parseLong(line.substring(6).trim());
+				} else if (line.startsWith("syscw:")) {
+					writes = Long.parseLong(line.substring(6).trim());
+				}
+			}
+			return new long[] {reads, writes};
+		} catch (IOException | RuntimeException e) {
+			return new long[0];
+		}
+	}
+
+	private static WebsocketMessage questionAsked(final long userId, final int round) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setService(MessageService.QUESTION_SERVICE);
+		websocketMessage.setOperation(MessageService.GET_OPERATION);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_ASKED);
+		websocketMessage.setParameters(List.of(String.valueOf(round)));
+		websocketMessage.setTimestamp(Instant.now());
+		return websocketMessage;
+	}
+
+	private static WebsocketMessage questionDisplayed(final long userId, final int message) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setService(MessageService.QUESTION_SERVICE);
+		websocketMessage.setOperation(MessageService.GET_OPERATION);
+		websocketMessage.setEventType(NotificationEventType.QUESTION_DISPLAYED);
+		websocketMessage.setParameters(List.of(String.valueOf(message)));
+		websocketMessage.setTimestamp(Instant.now());
+		return websocketMessage;
+	}
+
+	private final class Client implements WebSocket.Listener {
+
+		private final StringBuilder text = new StringBuilder();
+
+		private CompletableFuture<WebSocket> sending;
+
+		private long nextClientMessageId;
+
+		@Override
+		public CompletionStage<?> onText(final WebSocket webSocket, final CharSequence data, final boolean last) {
+			text.append(data);
+			if (last) {
+				onMessage(webSocket, text.toString());
+				text.setLength(0);
+			}
+			webSocket.request(1);
+			return null;
+		}
+
+		private void onMessage(final WebSocket webSocket, final String json) {
+			final Instant now = Instant.now();
+			frames.incrementAndGet();
+			try {
+				final JsonNode frame = MAPPER.readTree(json);
+				if (frame.isArray()) {
+					for (final JsonNode message : frame) {
+						onMessage(webSocket, message, now);
+					}
+				} else {
+					onMessage(webSocket, frame, now);
+				}
+			} catch (Exception e) {
+				System.err.println("Unable to process " + json + ": " + e);
+			}
+		}
+
+		private void onMessage(final WebSocket webSocket, final JsonNode message, final Instant now) {
+			if (message.has("messageId")) {
+				reply(webSocket, "{\"ack\":" + message.get("messageId").asLong() + "}");
+			}
+			if (NotificationEventType.QUESTION_DISPLAYED.name().equals(message.path("eventType").asText())) {
+				displayed.incrementAndGet();
+				return;
+			}
+			final Instant timestamp = Instant.parse(message.get("timestamp").asText());
+			final long micros = Math.max(0, ChronoUnit.MICROS.between(timestamp, now));
+			if (storming) {
+				stormLatency.recordValue(micros);
+			} else {
+				latency.recordValue(micros);
+				received.incrementAndGet();
+			}
+			answered.incrementAndGet();
+			reply(webSocket, "{\"clientMessageId\":" + nextClientMessageId++ + ",\"questionId\":"
+					+ message.get("parameters").get(0).asText() + ",\"answer\":\"A\"}");
+		}
+
+		private void reply(final WebSocket webSocket, final String json) {
+			if (sending == null) {
+				sending = webSocket.sendText(json, true);
+			} else {
+				sending = sending.thenCompose(ws -> ws.sendText(json, true));
+			}
+		}
+	}
+
+}
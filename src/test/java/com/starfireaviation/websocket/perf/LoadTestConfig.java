@@ -0,0 +1,53 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.perf;
+
+import com.starfireaviation.websocket.handler.HandshakeAuthenticator;
+import com.starfireaviation.websocket.handler.UserHandshakeInterceptor;
+import com.starfireaviation.websocket.model.HandshakeIdentity;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import java.util.List;
+
+/**
+ * Test-only <code>loadtest</code> profile, used by LoadGenerator: trusts the <code>userId</code> query
+ * parameter of each handshake, so that thousands of simulated users can connect without tokens.
+ */
+@Configuration
+@Profile(LoadTestConfig.PROFILE)
+public class LoadTestConfig {
+
+	public static final String PROFILE = "loadtest";
+
+	@Bean
+	@Primary
+	public HandshakeAuthenticator trustedUserIdAuthenticator() {
+		return (principal, authorization, parameters) -> {
+			final List<String> userIds = parameters.getOrDefault(UserHandshakeInterceptor.USER_ID_ATTRIBUTE, List.of());
+			try {
+				return userIds.isEmpty() ? null : new HandshakeIdentity(Long.valueOf(userIds.get(0)), null);
+			} catch (NumberFormatException nfe) {
+				return null;
+			}
+		};
+	}
+
+}
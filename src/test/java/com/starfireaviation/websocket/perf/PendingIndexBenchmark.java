@@ -0,0 +1,129 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.PendingQuery;
+import com.starfireaviation.websocket.model.PendingSummary;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Measures what the pending indexes cost on the enqueue and drain paths and what they save on admin
+ * queries. Queues 500k messages for 25k users, created over the last two minutes, then answers two
+ * incident queries and drains every user, with the indexes enabled and disabled.
+ */
+public final class PendingIndexBenchmark {
+
+	private static final int USERS = 25_000;
+
+	private static final int MESSAGES = 500_000;
+
+	private static final long SPREAD_MILLIS = 120_000;
+
+	private static final int QUERIES = 20;
+
+	private static final NotificationEventType[] TYPES = {NotificationEventType.QUESTION_ASKED,
+			NotificationEventType.EVENT_START, NotificationEventType.QUESTION_DISPLAYED,
+			NotificationEventType.USER_SETTINGS, NotificationEventType.EVENT_RSVP};
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(final String[] args) {
+		((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+		for (int round = 0; round < 3; round++) {
+			run(false);
+			run(true);
+		}
+	}
+
+	private static void run(final boolean indexed) {
+		final ApplicationProperties.Tenancy tenancy = new ApplicationProperties.Tenancy();
+		tenancy.setEnabled(false);
+		final ApplicationProperties.PendingIndex pendingIndex = new ApplicationProperties.PendingIndex();
+		pendingIndex.setEnabled(indexed);
+		final MessageService messageService = new MessageService(tenancy, pendingIndex);
+		final WebsocketMessage[] messages = messages();
+		final long threadId = Thread.currentThread().getId();
+
+		long allocated = THREADS.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (final WebsocketMessage websocketMessage : messages) {
+			messageService.sendMessage(websocketMessage);
+		}
+		final double enqueueNanos = (double) (System.nanoTime() - start) / MESSAGES;
+		final double enqueueBytes = (double) (THREADS.getThreadAllocatedBytes(threadId) - allocated) / MESSAGES;
+
+		final PendingQuery oldQuestions = new PendingQuery();
+		oldQuestions.setEventType(NotificationEventType.QUESTION_ASKED);
+		oldQuestions.setMinAge(SPREAD_MILLIS - 30_000);
+		oldQuestions.setLimit(100);
+		final PendingQuery eventStarts = new PendingQuery();
+		eventStarts.setEventType(NotificationEventType.EVENT_START);
+		eventStarts.setEntityId("42");
+		eventStarts.setLimit(100);
+		final String first = query(messageService, oldQuestions);
+		final String second = query(messageService, eventStarts);
+
+		allocated = THREADS.getThreadAllocatedBytes(threadId);
+		start = System.nanoTime();
+		for (long userId = 0; userId < USERS; userId++) {
+			messageService.drain(userId);
+		}
+		final double drainNanos = (double) (System.nanoTime() - start) / MESSAGES;
+		final double drainBytes = (double) (THREADS.getThreadAllocatedBytes(threadId) - allocated) / MESSAGES;
+		messageService.close();
+		System.out.printf("%-9s enqueue %5.0f ns %4.0f B  drain %4.0f ns %4.0f B  | old QUESTION_ASKED %s"
+						+ " | EVENT_START 42 %s%n", indexed ? "indexed" : "scan", enqueueNanos, enqueueBytes,
+				drainNanos, drainBytes, first, second);
+	}
+
+	private static String query(final MessageService messageService, final PendingQuery query) {
+		PendingSummary summary = null;
+		final long start = System.nanoTime();
+		for (int i = 0; i < QUERIES; i++) {
+			summary = messageService.queryPending(query);
+		}
+		final double millis = (System.nanoTime() - start) / 1e6 / QUERIES;
+		return String.format("%6.2f ms, %d messages for %d users, %d queues examined", millis,
+				summary.getMessages(), summary.getUsers(), summary.getExaminedUsers());
+	}
+
+	private static WebsocketMessage[] messages() {
+		final long now = System.currentTimeMillis();
+		final WebsocketMessage[] messages = new WebsocketMessage[MESSAGES];
+		for (int i = 0; i < MESSAGES; i++) {
+			final WebsocketMessage websocketMessage = new WebsocketMessage();
+			websocketMessage.setUserId((long) (i % USERS));
+			websocketMessage.setEventType(TYPES[i % TYPES.length]);
+			websocketMessage.setParameters(List.of(Integer.toString(i / TYPES.length % 1000)));
+			websocketMessage.setTimestamp(Instant.ofEpochMilli(now - SPREAD_MILLIS + SPREAD_MILLIS * i / MESSAGES));
+			messages[i] = websocketMessage;
+		}
+		return messages;
+	}
+
+}
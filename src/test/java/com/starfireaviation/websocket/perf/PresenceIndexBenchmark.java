@@ -0,0 +1,163 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import com.starfireaviation.websocket.util.CompressedBitmap;
+import com.starfireaviation.websocket.util.PresenceIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * Compares the presence index with a concurrent <code>Set&lt;Long&gt;</code> of 1M online users: heap,
+ * membership checks, intersecting a topic of 100k subscribers with the online users, and exporting a
+ * snapshot. User IDs are dense (1M consecutive), clustered (1M of 5M consecutive IDs) or scattered
+ * (1M random 40-bit IDs). Usage: <code>PresenceIndexBenchmark [users]</code>.
+ */
+public final class PresenceIndexBenchmark {
+
+	private static final int LOOKUPS = 10_000_000;
+
+	private static final int SUBSCRIBERS = 100_000;
+
+	private static final int ROUNDS = 5;
+
+	public static void main(final String[] args) throws Exception {
+		final int users = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		run("dense", users, users, new Random(1));
+		run("clustered", users, users * 5L, new Random(2));
+		run("scattered", users, 1L << 40, new Random(3));
+	}
+
+	private static void run(final String name, final int users, final long idSpace, final Random random)
+			throws Exception {
+		final long[] online = new long[users];
+		final Set<Long> seen = ConcurrentHashMap.newKeySet();
+		for (int i = 0; i < users; i++) {
+			long userId = i;
+			if (idSpace > users) {
+				do {
+					userId = (long) (random.nextDouble() * idSpace);
+				} while (!seen.add(userId));
+			}
+			online[i] = userId;
+		}
+		seen.clear();
+		final long[] probes = random.longs(LOOKUPS, 0, idSpace).toArray();
+		final long[] subscribers = random.longs(SUBSCRIBERS, 0, idSpace).toArray();
+		final Set<Long> topicSet = ConcurrentHashMap.newKeySet();
+		for (final long subscriber : subscribers) {
+			topicSet.add(subscriber);
+		}
+
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		usedHeap(memory);
+		long heapBefore = usedHeap(memory);
+		final PresenceIndex index = new PresenceIndex();
+		for (final long userId : online) {
+			index.add(userId);
+		}
+		final long indexBytes = usedHeap(memory) - heapBefore;
+		heapBefore = usedHeap(memory);
+		final Set<Long> set = ConcurrentHashMap.newKeySet();
+		for (final long userId : online) {
+			set.add(userId);
+		}
+		final long setBytes = usedHeap(memory) - heapBefore;
+
+		System.out.printf("%s: %d online users, IDs below %d%n", name, users, idSpace);
+		System.out.printf("  heap      Set<Long> %6.1f MB (%5.1f B/user), index %6.1f MB (%5.1f B/user)%n",
+				setBytes / 1e6, (double) setBytes / users, indexBytes / 1e6, (double) indexBytes / users);
+		for (int round = 0; round < ROUNDS; round++) {
+			final double setLookup = lookups(set::contains, probes);
+			final double indexLookup = lookups(index::contains, probes);
+			final long buildStart = System.nanoTime();
+			final CompressedBitmap topic = CompressedBitmap.of(subscribers);
+			final double build = (System.nanoTime() - buildStart) / 1e6;
+			final double setAnd = intersect(set, topicSet);
+			final double indexAnd = intersect(index, topic);
+			System.out.printf("  round %d   lookup %5.1f / %5.1f ns, online subscribers %6.2f / %6.2f ms"
+					+ " (Set<Long> / index), topic bitmap built in %.2f ms%n", round, setLookup, indexLookup,
+					setAnd, indexAnd, build);
+		}
+		System.out.printf("  snapshot  %.2f MB, the size of the index's containers%n",
+				index.snapshot().getSizeInBytes() / 1e6);
+		final long start = System.nanoTime();
+		final CompressedBitmap snapshot = index.snapshot();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			snapshot.writeTo(out);
+		}
+		System.out.printf("  export    %.2f MB in %.1f ms, %d containers%n", bytes.size() / 1e6,
+				(System.nanoTime() - start) / 1e6, snapshot.getContainerCount());
+		// Keep both alive until measured
+		if (set.size() != index.getCount()) {
+			throw new IllegalStateException("Set and index differ");
+		}
+	}
+
+	private static double lookups(final LongPredicate contains, final long[] probes) {
+		final long start = System.nanoTime();
+		int found = 0;
+		for (final long probe : probes) {
+			if (contains.test(probe)) {
+				found++;
+			}
+		}
+		final double nanos = (double) (System.nanoTime() - start) / probes.length;
+		if (found < 0) {
+			throw new IllegalStateException();
+		}
+		return nanos;
+	}
+
+	private static double intersect(final Set<Long> set, final Set<Long> subscribers) {
+		final long start = System.nanoTime();
+		final Set<Long> result = new HashSet<>();
+		for (final Long subscriber : subscribers) {
+			if (set.contains(subscriber)) {
+				result.add(subscriber);
+			}
+		}
+		return (System.nanoTime() - start) / 1e6;
+	}
+
+	private static double intersect(final PresenceIndex index, final CompressedBitmap subscribers) {
+		final long start = System.nanoTime();
+		final CompressedBitmap result = index.and(subscribers);
+		if (result.getCardinality() < 0) {
+			throw new IllegalStateException();
+		}
+		return (System.nanoTime() - start) / 1e6;
+	}
+
+	private static long usedHeap(final MemoryMXBean memory) throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.starfireaviation.websocket.perf;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.starfireaviation.model.NotificationEventType;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.QueueSnapshotService;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long the queue snapshot takes to write on shutdown and to restore on startup, to size
+ * the pod's termination grace period. Queues 10M messages (first argument) for 1M users (second
+ * argument), snapshots them into a temporary directory and restores them into a fresh MessageService,
+ * with the snapshot split into as many files as the third argument (default: one per processor).
+ * Run with a heap of at least 6 GB for the default sizes.
+ */
+public final class SnapshotBenchmark {
+
+	private static final NotificationEventType[] TYPES = {NotificationEventType.QUESTION_ASKED,
+			NotificationEventType.EVENT_START, NotificationEventType.QUESTION_DISPLAYED,
+			NotificationEventType.USER_SETTINGS, NotificationEventType.EVENT_RSVP};
+
+	public static void main(final String[] args) throws Exception {
+		((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+		final int messages = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+		final int users = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+		final int partitions = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		final Path directory = Files.createTempDirectory("snapshot-benchmark");
+		try {
+			run(directory, messages, users, partitions);
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				files.forEach(file -> file.toFile().delete());
+			}
+			Files.delete(directory);
+		}
+	}
+
+	private static void run(final Path directory, final int messages, final int users, final int partitions)
+			throws Exception {
+		final ApplicationProperties.Snapshot snapshot = new ApplicationProperties.Snapshot();
+		snapshot.setDirectory(directory.toString());
+		snapshot.setPartitions(partitions);
+
+		MessageService before = new MessageService();
+		final Instant now = Instant.now();
+		for (int i = 0; i < messages; i++) {
+			final WebsocketMessage websocketMessage = new WebsocketMessage();
+			websocketMessage.setUserId((long) (i % users));
+			websocketMessage.setEventType(TYPES[i % TYPES.length]);
+			websocketMessage.setService(MessageService.QUESTION_SERVICE);
+			websocketMessage.setOperation(MessageService.GET_OPERATION);
+			websocketMessage.setParameters(List.of(String.valueOf(i), String.valueOf(i % 97)));
+			websocketMessage.setTimestamp(now.minusNanos(i * 1000L));
+			before.sendMessage(websocketMessage);
+		}
+		System.out.printf("Queued %,d messages for %,d users%n", messages, users);
+
+		long gc = gcMillis();
+		long start = System.nanoTime();
+		final long written = new QueueSnapshotService(before, snapshot).snapshot();
+		final double snapshotMillis = (System.nanoTime() - start) / 1e6;
+		final long snapshotGc = gcMillis() - gc;
+		long bytes = 0;
+		int files = 0;
+		try (Stream<Path> list = Files.list(directory)) {
+			for (final Path file : (Iterable<Path>) list::iterator) {
+				bytes += Files.size(file);
+				files++;
+			}
+		}
+		System.out.printf("Snapshot: %,d messages in %d files, %.1f MB (%.1f bytes/message), %.0f ms "
+						+ "(%.1f M messages/s, synced to disk), of which GC %d ms%n", written, files, bytes / 1e6,
+				(double) bytes / written, snapshotMillis, written / snapshotMillis / 1e3, snapshotGc);
+
+		before.close();
+		before = null;
+		System.gc();
+
+		final MessageService after = new MessageService();
+		gc = gcMillis();
+		start = System.nanoTime();
+		final long restored = new QueueSnapshotService(after, snapshot).restore();
+		final double restoreMillis = (System.nanoTime() - start) / 1e6;
+		System.out.printf("Restore: %,d messages in %.0f ms (%.1f M messages/s, verified and indexed), "
+				+ "of which GC %d ms%n", restored, restoreMillis, restored / restoreMillis / 1e3, gcMillis() - gc);
+		if (restored != written) {
+			throw new IllegalStateException("Restored " + restored + " of " + written + " messages");
+		}
+		after.close();
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += collector.getCollectionTime();
+		}
+		return millis;
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.perf;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.starfireaviation.websocket.config.ApplicationProperties;
+import com.starfireaviation.websocket.config.CommonConstants;
+import com.starfireaviation.websocket.model.TenantStats;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One noisy organization floods its users while several quiet organizations send at a steady pace.
+ * Delivery is simulated by a fixed amount of CPU work per message. Runs once with every user in the
+ * default organization (one shared shard) and once with each organization in its own shard, and reports
+ * the quiet organizations' delivery latency and the noisy organization's throughput.
+ * Usage: <code>TenantIsolationBenchmark [noisyMessages] [noisyRateLimit]</code>.
+ */
+public final class TenantIsolationBenchmark {
+
+	private static final int QUIET_TENANTS = 4;
+
+	private static final int USERS_PER_TENANT = 50;
+
+	private static final long QUIET_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+	private static final long DELIVERY_WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(5);
+
+	private static final String NOISY = "noisy";
+
+	public static void main(final String[] args) throws Exception {
+		((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+		final int noisyMessages = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+		final long noisyRateLimit = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		run("shared", false, noisyMessages, noisyRateLimit);
+		run("sharded", true, noisyMessages, noisyRateLimit);
+	}
+
+	private static void run(final String name, final boolean sharded, final int noisyMessages,
+			final long noisyRateLimit) throws Exception {
+		final ApplicationProperties.Tenancy tenancy = new ApplicationProperties.Tenancy();
+		final MessageService messageService = new MessageService(tenancy);
+		final Histogram quietLatency = new ConcurrentHistogram(TimeUnit.SECONDS.toMicros(60), 3);
+		final Histogram noisyLatency = new ConcurrentHistogram(TimeUnit.SECONDS.toMicros(60), 3);
+		messageService.setPendingMessageListener(userId -> {
+			for (final WebsocketMessage websocketMessage : messageService.drain(userId)) {
+				final long deadline = System.nanoTime() + DELIVERY_WORK_NANOS;
+				while (System.nanoTime() < deadline) {
+					Thread.onSpinWait();
+				}
+				// The benchmark carries the enqueue time in the message ID
+				final long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - websocketMessage.getMessageId());
+				if (userId < USERS_PER_TENANT) {
+					noisyLatency.recordValue(micros);
+				} else {
+					quietLatency.recordValue(micros);
+				}
+			}
+		});
+		if (sharded) {
+			for (long userId = 0; userId < USERS_PER_TENANT; userId++) {
+				messageService.assignOrganization(userId, NOISY);
+			}
+			for (long userId = USERS_PER_TENANT; userId < (QUIET_TENANTS + 1) * USERS_PER_TENANT; userId++) {
+				messageService.assignOrganization(userId, "quiet-" + userId / USERS_PER_TENANT);
+			}
+		}
+
+		final List<Thread> quiet = new ArrayList<>();
+		final long[] quietSent = new long[1];
+		final boolean[] done = new boolean[1];
+		for (int tenant = 1; tenant <= QUIET_TENANTS; tenant++) {
+			final int first = tenant * USERS_PER_TENANT;
+			final Thread thread = new Thread(() -> {
+				int next = 0;
+				while (!done[0]) {
+					messageService.sendMessage(message(first + next % USERS_PER_TENANT));
+					next++;
+					LockSupport.parkNanos(QUIET_INTERVAL_NANOS);
+				}
+				synchronized (quietSent) {
+					quietSent[0] += next;
+				}
+			}, "quiet-" + tenant);
+			quiet.add(thread);
+			thread.start();
+		}
+		Thread.sleep(200);
+		// Shards are created on first use and take the rate limit then: only the noisy organization's
+		// shard is created after this point
+		tenancy.setRateLimit(noisyRateLimit);
+		final long start = System.nanoTime();
+		for (int i = 0; i < noisyMessages; i++) {
+			messageService.sendMessage(message(i % USERS_PER_TENANT));
+		}
+		while (noisyLatency.getTotalCount() < noisyMessages) {
+			Thread.sleep(1);
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		done[0] = true;
+		for (final Thread thread : quiet) {
+			thread.join();
+		}
+		Thread.sleep(100);
+		System.out.printf("%-8s noisy: %,9.0f msg/s p99=%,9d us   quiet (%,d sent): p50=%,8d us p99=%,8d us "
+				+ "max=%,8d us%n", name, noisyMessages / seconds, noisyLatency.getValueAtPercentile(99),
+				quietSent[0], quietLatency.getValueAtPercentile(50), quietLatency.getValueAtPercentile(99),
+				quietLatency.getMaxValue());
+		for (final TenantStats stats : messageService.getTenantStats()) {
+			System.out.printf("         %-8s workers=%d rate=%d drained=%,d throttled=%,d%n", stats.getOrganization(),
+					stats.getDrainWorkers(), stats.getRateLimit(), stats.getDrained(), stats.getThrottled());
+		}
+		messageService.close();
+	}
+
+	private static WebsocketMessage message(final long userId) {
+		final WebsocketMessage websocketMessage = new WebsocketMessage();
+		websocketMessage.setUserId(userId);
+		websocketMessage.setMessageId(System.nanoTime());
+		return websocketMessage;
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ *  Copyright (C) 2022 Starfire Aviation, LLC
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package com.starfireaviation.websocket.perf;
+
+import com.starfireaviation.websocket.model.TraceStage;
+import com.starfireaviation.websocket.model.WebsocketMessage;
+import com.starfireaviation.websocket.service.MessageService;
+import com.starfireaviation.websocket.service.MessageTracer;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Queues and drains messages through the MessageService with tracing off, sampling 1 in 100 and
+ * sampling every message, stamping the delivery stages and completing each sampled trace. Reports ns
+ * and bytes allocated per message, isolating the cost of tracing from delivery.
+ * Usage: <code>TracingBenchmark [messages]</code>.
+ */
+public final class TracingBenchmark {
+
+	private static final int USERS = 1000;
+
+	private static final int[] RATES = {0, 100, 1};
+
+	public static void main(final String[] args) {
+		final int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+		for (int round = 0; round < 3; round++) {
+			for (final int rate : RATES) {
+				measure(rate, messages);
+			}
+		}
+	}
+
+	private static void measure(final int rate, final int messages) {
+		final MessageTracer tracer = new MessageTracer(rate, 1024);
+		final MessageService messageService = new MessageService();
+		messageService.setMessageTracer(tracer);
+		final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		System.gc();
+		final long allocated = threads.getThreadAllocatedBytes(threadId);
+		final long start = System.nanoTime();
+		long delivered = 0;
+		for (int i = 0; i < messages; i++) {
+			final long userId = i % USERS;
+			final WebsocketMessage websocketMessage = new WebsocketMessage();
+			websocketMessage.setUserId(userId);
+			messageService.sendMessage(websocketMessage);
+			final List<WebsocketMessage> pending = messageService.drain(userId);
+			for (int j = 0; j < pending.size(); j++) {
+				if (pending.get(j).getTrace() != null) {
+					pending.get(j).getTrace().stamp(TraceStage.DEQUEUED);
+					pending.get(j).getTrace().stamp(TraceStage.ENCODED);
+					pending.get(j).getTrace().complete();
+				}
+				delivered++;
+			}
+		}
+		final long nanos = System.nanoTime() - start;
+		System.out.printf("rate %3d  %6.1f ns/message  %4d B/message  recorded %,d  delivered %,d%n", rate,
+				(double) nanos / messages, (threads.getThreadAllocatedBytes(threadId) - allocated) / messages,
+				tracer.getRecordedCount(), delivered);
+	}
+
+}